@@ -0,0 +1,108 @@
+package com.depot.ims.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files, benchmark by benchmark, and exits with status 1 if any score
+ * got worse than the baseline by more than the threshold. Throughput regresses when it falls;
+ * sampled latency regresses when its mean or its p99 rises.
+ *
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.depot.ims.benchmarks.BenchmarkComparison \
+ *       jmh-results/baseline.json jmh-results/current.json 10
+ * </pre>
+ */
+public final class BenchmarkComparison {
+
+  // default tolerated change, in percent
+  private static final double DEFAULT_THRESHOLD = 10.0;
+
+  private BenchmarkComparison() {}
+
+  /**
+   * Print the change of every benchmark present in both files.
+   *
+   * @param args baseline file, current file and an optional threshold in percent
+   * @throws IOException if a result file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: BenchmarkComparison <baseline.json> <current.json> [threshold %]");
+      System.exit(2);
+    }
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+    Map<String, JsonNode> baseline = read(new File(args[0]));
+    Map<String, JsonNode> current = read(new File(args[1]));
+
+    boolean regressed = false;
+    for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+      JsonNode before = baseline.get(entry.getKey());
+      if (before == null) {
+        System.out.printf("%-90s new%n", entry.getKey());
+        continue;
+      }
+      JsonNode after = entry.getValue();
+      boolean higherIsBetter = "thrpt".equals(after.path("mode").asText());
+      JsonNode beforeMetric = before.path("primaryMetric");
+      JsonNode afterMetric = after.path("primaryMetric");
+      regressed |=
+          report(
+              entry.getKey(),
+              beforeMetric.path("score").asDouble(),
+              afterMetric.path("score").asDouble(),
+              afterMetric.path("scoreUnit").asText(),
+              higherIsBetter,
+              threshold);
+      JsonNode beforeP99 = beforeMetric.path("scorePercentiles").path("99.0");
+      JsonNode afterP99 = afterMetric.path("scorePercentiles").path("99.0");
+      if (!higherIsBetter && beforeP99.isNumber() && afterP99.isNumber()) {
+        regressed |=
+            report(
+                entry.getKey() + " p99",
+                beforeP99.asDouble(),
+                afterP99.asDouble(),
+                afterMetric.path("scoreUnit").asText(),
+                false,
+                threshold);
+      }
+    }
+    System.exit(regressed ? 1 : 0);
+  }
+
+  private static boolean report(
+      String name,
+      double before,
+      double after,
+      String unit,
+      boolean higherIsBetter,
+      double threshold) {
+    double change = before == 0 ? 0 : (after - before) * 100 / before;
+    boolean regressed = higherIsBetter ? change < -threshold : change > threshold;
+    System.out.printf(
+        "%-90s %12.3f -> %12.3f %-8s %+7.1f%%%s%n",
+        name, before, after, unit, change, regressed ? "  REGRESSION" : "");
+    return regressed;
+  }
+
+  /** Read a result file into a map keyed by benchmark, mode and parameters. */
+  private static Map<String, JsonNode> read(File file) throws IOException {
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    for (JsonNode result : new ObjectMapper().readTree(file)) {
+      StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+      key.append(" [").append(result.path("mode").asText());
+      Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+      while (params.hasNext()) {
+        Map.Entry<String, JsonNode> param = params.next();
+        key.append(", ").append(param.getKey()).append('=').append(param.getValue().asText());
+      }
+      results.put(key.append(']').toString(), result);
+    }
+    return results;
+  }
+}
@@ -0,0 +1,46 @@
+package com.depot.ims.benchmarks;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line, e.g.
+ *
+ * <pre>
+ *   java -jar benchmarks/target/benchmarks.jar ServiceBenchmarks.addShip -p sites=200 -t 8
+ * </pre>
+ *
+ * <p>Unless -rf/-rff say otherwise, results are written as JSON to
+ * jmh-results/&lt;timestamp&gt;.json, so that two runs can be compared with BenchmarkComparison.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {}
+
+  /**
+   * Run the benchmarks selected on the command line.
+   *
+   * @param args JMH command line arguments
+   * @throws Exception if the command line is invalid or a benchmark fails
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!commandLine.getResult().hasValue()) {
+      File directory = new File("jmh-results");
+      directory.mkdirs();
+      String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+      options.result(new File(directory, name + ".json").getPath());
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,131 @@
+package com.depot.ims.benchmarks;
+
+import com.depot.ims.metrics.SqlStatementStats;
+import com.depot.ims.metrics.SqlStatementTracker;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ShipBatchRequest;
+import com.depot.ims.requests.ShipLineRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bulk writes that insert many rows in one transaction. Besides the time per operation, each
+ * benchmark counts the rows it wrote and the JDBC round trips it took, so the two counters show how
+ * well Hibernate batches: one round trip per row means every insert went on its own, while one per
+ * hibernate.jdbc.batch_size rows (plus one per id block) means the inserts were batched.
+ *
+ * <pre>
+ *   java -jar benchmarks/target/benchmarks.jar BulkWriteBenchmarks -p sitesPerOp=2000
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkWriteBenchmarks {
+
+  /** Rows written and round trips taken, reported next to the score. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RoundTrips {
+    public long rows;
+    public long roundTrips;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+      roundTrips = 0;
+    }
+
+    <T> T count(int written, Supplier<T> work) {
+      SqlStatementStats stats = SqlStatementTracker.start();
+      try {
+        return work.get();
+      } finally {
+        SqlStatementTracker.stop();
+        rows += written;
+        roundTrips += stats.getRoundTrips();
+      }
+    }
+  }
+
+  /** Per-thread repositories and the next unused site name. */
+  @State(Scope.Thread)
+  public static class Writer {
+    @Param("500")
+    int sitesPerOp;
+
+    private TransactionTemplate transaction;
+    private SiteRepository siteRepository;
+    private ShipmentRepository shipmentRepository;
+    private String prefix;
+    private int nextSite;
+    private int shipSite;
+
+    @Setup
+    public void setup(InventoryState state) {
+      transaction =
+          new TransactionTemplate(state.context.getBean(PlatformTransactionManager.class));
+      siteRepository = state.context.getBean(SiteRepository.class);
+      shipmentRepository = state.context.getBean(ShipmentRepository.class);
+      prefix = "Bulk " + Thread.currentThread().getId() + "-";
+    }
+  }
+
+  /** Insert sitesPerOp new sites in one transaction, as a bulk import would. */
+  @Benchmark
+  public List<Site> seedSites(Writer writer, RoundTrips roundTrips) {
+    List<Site> sites = new ArrayList<>(writer.sitesPerOp);
+    for (int i = 0; i < writer.sitesPerOp; i++) {
+      String name = writer.prefix + writer.nextSite++;
+      sites.add(new Site(name, "Location", "Open", null, true));
+    }
+    return roundTrips.count(
+        sites.size(), () -> writer.transaction.execute(s -> writer.siteRepository.saveAll(sites)));
+  }
+
+  /** Ship one unit of every item a site holds to the neighbouring site, as one manifest. */
+  @Benchmark
+  public Object addShips(InventoryState state, Writer writer, RoundTrips roundTrips) {
+    int site = writer.shipSite;
+    writer.shipSite = (site + 1) % state.sites;
+    Long shipmentId =
+        writer
+            .shipmentRepository
+            .save(
+                Shipment.builder()
+                    .source(state.siteIds[site])
+                    .destination(state.siteIds[(site + 1) % state.sites])
+                    .shipmentStatus("In Transit")
+                    .build())
+            .getShipmentId();
+    List<ShipLineRequest> lines = new ArrayList<>(state.itemsPerSite);
+    for (int j = 0; j < state.itemsPerSite; j++) {
+      lines.add(ShipLineRequest.builder().itemId(state.itemOfSite(site, j)).quantity(1).build());
+    }
+    ShipBatchRequest request =
+        ShipBatchRequest.builder().shipmentId(shipmentId).lines(lines).build();
+    return roundTrips.count(lines.size(), () -> state.shipService.addShips(request));
+  }
+}
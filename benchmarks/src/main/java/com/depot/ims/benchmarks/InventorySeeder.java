@@ -0,0 +1,147 @@
+package com.depot.ims.benchmarks;
+
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Seeds an empty database with a synthetic inventory, bypassing the services so that seeding a
+ * large dataset takes seconds. Sites, items and shipments are persisted through Hibernate, whose
+ * pooled ids let it send them in JDBC batches; availabilities, whose keys are known up front, go
+ * through plain JDBC batches. Callers re-warm the inventory ledger afterwards.
+ *
+ * <p>Site s holds itemsPerSite consecutive items starting at item s * itemsPerSite (wrapping
+ * around the item count), each with the same starting quantity.
+ */
+public class InventorySeeder {
+
+  // entities persisted between two flushes, keeping the persistence context small
+  private static final int FLUSH_EVERY = 1_000;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final EntityManagerFactory entityManagerFactory;
+  private final int itemsPerSite;
+  private long[] siteIds;
+  private long[] itemIds;
+
+  /**
+   * Constructor for InventorySeeder.
+   *
+   * @param jdbcTemplate template over the application's DataSource
+   * @param entityManagerFactory the application's EntityManagerFactory
+   * @param itemsPerSite availabilities seeded per site
+   */
+  public InventorySeeder(
+      JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory, int itemsPerSite) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.entityManagerFactory = entityManagerFactory;
+    this.itemsPerSite = itemsPerSite;
+  }
+
+  /**
+   * Insert the sites, items and availabilities.
+   *
+   * @param sites number of sites
+   * @param items number of items, at least itemsPerSite
+   * @param quantity starting quantity of every availability
+   */
+  public void seed(int sites, int items, int quantity) {
+    if (itemsPerSite > items) {
+      throw new IllegalArgumentException("itemsPerSite cannot exceed items");
+    }
+    List<Site> siteRows = new ArrayList<>(sites);
+    for (int s = 0; s < sites; s++) {
+      siteRows.add(new Site("Site " + s, "Location " + s, "Open", null, true));
+    }
+    persistAll(siteRows);
+    siteIds = siteRows.stream().mapToLong(Site::getSiteId).toArray();
+
+    List<Item> itemRows = new ArrayList<>(items);
+    for (int i = 0; i < items; i++) {
+      itemRows.add(new Item("Item " + i, 1.0 + i % 100));
+    }
+    persistAll(itemRows);
+    itemIds = itemRows.stream().mapToLong(Item::getItemId).toArray();
+
+    List<Object[]> availabilityRows = new ArrayList<>(sites * itemsPerSite);
+    for (int s = 0; s < sites; s++) {
+      for (int j = 0; j < itemsPerSite; j++) {
+        availabilityRows.add(new Object[] {siteIds[s], itemOfSite(s, j), quantity});
+      }
+    }
+    jdbcTemplate.batchUpdate(
+        "insert into availabilities"
+            + " (pk1_fk_availabilities_sites, pk2_fk_availabilities_items, quantity)"
+            + " values (?, ?, ?)",
+        availabilityRows);
+  }
+
+  /**
+   * Insert in-transit shipments, the i-th one from site i to site i + 1 (both wrapping around).
+   *
+   * @param count number of shipments
+   * @return the shipment ids, in insertion order
+   */
+  public long[] seedShipments(int count) {
+    List<Shipment> rows = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(
+          Shipment.builder()
+              .source(siteIds[i % siteIds.length])
+              .destination(siteIds[(i + 1) % siteIds.length])
+              .shipmentStatus("In Transit")
+              .build());
+    }
+    persistAll(rows);
+    return rows.stream().mapToLong(Shipment::getShipmentId).toArray();
+  }
+
+  /**
+   * The id of the j-th item held by a site.
+   *
+   * @param site index of the site
+   * @param j index of the item within the site, below itemsPerSite
+   * @return the item id
+   */
+  public long itemOfSite(int site, int j) {
+    return itemIds[(site * itemsPerSite + j) % itemIds.length];
+  }
+
+  public long[] getSiteIds() {
+    return siteIds;
+  }
+
+  public long[] getItemIds() {
+    return itemIds;
+  }
+
+  public int getItemsPerSite() {
+    return itemsPerSite;
+  }
+
+  /**
+   * Persist entities in one transaction. Their ids are assigned on persist, a block at a time, and
+   * the inserts are sent in batches of hibernate.jdbc.batch_size at each flush.
+   */
+  private void persistAll(List<?> entities) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      entityManager.getTransaction().begin();
+      for (int i = 0; i < entities.size(); i++) {
+        entityManager.persist(entities.get(i));
+        if ((i + 1) % FLUSH_EVERY == 0) {
+          entityManager.flush();
+          entityManager.clear();
+        }
+      }
+      entityManager.getTransaction().commit();
+    } finally {
+      entityManager.close();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.depot.ims.benchmarks;
+
+import com.depot.ims.ImsApplication;
+import com.depot.ims.inventory.InventoryLedgerLoader;
+import com.depot.ims.services.AuditService;
+import com.depot.ims.services.AvailabilityService;
+import com.depot.ims.services.ShipService;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * The application under benchmark: a full Spring context on an in-memory H2 database, seeded by
+ * InventorySeeder before the first iteration and shared by every benchmark thread. Every
+ * availability starts with a quantity large enough that no benchmark runs it out.
+ */
+@State(Scope.Benchmark)
+public class InventoryState {
+
+  // starting quantity of every seeded availability
+  static final int SEEDED_QUANTITY = 1_000_000;
+
+  @Param("50")
+  int sites;
+
+  @Param("2000")
+  int items;
+
+  @Param("200")
+  int itemsPerSite;
+
+  @Param("fire-and-forget")
+  String auditMode;
+
+  ConfigurableApplicationContext context;
+  AvailabilityService availabilityService;
+  ShipService shipService;
+  AuditService auditService;
+  InventorySeeder seeder;
+  long[] siteIds;
+
+  /** Start the application and seed the inventory. */
+  @Setup(Level.Trial)
+  public void start() {
+    context =
+        new SpringApplicationBuilder(ImsApplication.class)
+            .web(WebApplicationType.NONE)
+            .logStartupInfo(false)
+            .run(
+                "--spring.main.banner-mode=off",
+                "--spring.datasource.url=jdbc:h2:mem:ims-bench;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.database=h2",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--ims.audit.mode=" + auditMode);
+    availabilityService = context.getBean(AvailabilityService.class);
+    shipService = context.getBean(ShipService.class);
+    auditService = context.getBean(AuditService.class);
+
+    seeder =
+        new InventorySeeder(
+            context.getBean(JdbcTemplate.class),
+            context.getBean(EntityManagerFactory.class),
+            itemsPerSite);
+    seeder.seed(sites, items, SEEDED_QUANTITY);
+    siteIds = seeder.getSiteIds();
+    // the ledger warmed on startup against the empty database
+    context.getBean(InventoryLedgerLoader.class).warm();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  /**
+   * The id of the j-th item held by a site.
+   *
+   * @param site index of the site
+   * @param j index of the item within the site, below itemsPerSite
+   * @return the item id
+   */
+  long itemOfSite(int site, int j) {
+    return seeder.itemOfSite(site, j);
+  }
+}
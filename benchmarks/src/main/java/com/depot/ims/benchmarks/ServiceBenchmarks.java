@@ -0,0 +1,106 @@
+package com.depot.ims.benchmarks;
+
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.requests.ShipRequest;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Throughput and latency of the service-layer hot paths, each called exactly as its controller
+ * calls it. Throughput mode reports operations per millisecond; sample mode reports the latency
+ * distribution, including p50, p99 and p99.9, in milliseconds.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmarks {
+
+  /** Per-thread position in the seeded inventory. */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private SplittableRandom random;
+    private ShipmentRepository shipmentRepository;
+    private int shipSite;
+    private int shipItem;
+    private Long shipmentId;
+    private boolean add;
+
+    @Setup
+    public void setup(InventoryState state) {
+      random = new SplittableRandom(Thread.currentThread().getId());
+      shipmentRepository = state.context.getBean(ShipmentRepository.class);
+      shipSite = random.nextInt(state.sites);
+      shipItem = state.itemsPerSite;
+    }
+
+    /**
+     * Next line to ship. A ship's key is (item, shipment), so each shipment carries every item of
+     * its source site once before the thread opens the next shipment.
+     */
+    ShipRequest nextShip(InventoryState state) {
+      if (shipItem == state.itemsPerSite) {
+        shipSite = (shipSite + 1) % state.sites;
+        Shipment shipment =
+            Shipment.builder()
+                .source(state.siteIds[shipSite])
+                .destination(state.siteIds[(shipSite + 1) % state.sites])
+                .shipmentStatus("In Transit")
+                .build();
+        shipmentId = shipmentRepository.save(shipment).getShipmentId();
+        shipItem = 0;
+      }
+      return new ShipRequest(state.itemOfSite(shipSite, shipItem++), shipmentId, 1, null);
+    }
+  }
+
+  /** Add to or take one unit from a random availability; the two alternate per thread. */
+  @Benchmark
+  public ResponseEntity<?> changeQuantity(InventoryState state, Cursor cursor) {
+    int site = cursor.random.nextInt(state.sites);
+    long itemId = state.itemOfSite(site, cursor.random.nextInt(state.itemsPerSite));
+    cursor.add = !cursor.add;
+    return state.availabilityService.changeQuantity(
+        state.siteIds[site], itemId, cursor.add ? "+" : "-", 1);
+  }
+
+  /** Find the sites holding two items that at least one site holds together. */
+  @Benchmark
+  public ResponseEntity<?> getSitesByItems(InventoryState state, Cursor cursor) {
+    int site = cursor.random.nextInt(state.sites);
+    MultiValueMap<String, String> items = new LinkedMultiValueMap<>();
+    items.add("itemId", String.valueOf(state.itemOfSite(site, 0)));
+    items.add(
+        "itemId",
+        String.valueOf(state.itemOfSite(site, cursor.random.nextInt(state.itemsPerSite))));
+    return state.availabilityService.getSitesByItems(items);
+  }
+
+  /** Ship one unit of an item to the neighbouring site. */
+  @Benchmark
+  public ResponseEntity<?> addShip(InventoryState state, Cursor cursor) {
+    return state.shipService.addShip(cursor.nextShip(state));
+  }
+
+  /** Record one audit outside of any transaction, as the non-transactional services do. */
+  @Benchmark
+  public void saveAudit(InventoryState state) {
+    state.auditService.saveUpdate("sites", AuditField.SITE_NAME, 1L, null, "old", "new");
+  }
+}
@@ -0,0 +1,22 @@
+package com.depot.ims.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** Measured throughput and latency of one operation, or of all of them, during one load step. */
+@Data
+@AllArgsConstructor
+public class EndpointResult {
+  private String name;
+  private long requests;
+  private long errors;
+  // arrivals not sent because too many requests were already in flight
+  private long dropped;
+  // requests completed per second of the measured period; falls behind the offered rate once
+  // the node saturates
+  private double throughput;
+  private double p50Millis;
+  private double p99Millis;
+  private double p999Millis;
+  private double maxMillis;
+}
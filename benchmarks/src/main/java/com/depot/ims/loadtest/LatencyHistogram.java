@@ -0,0 +1,85 @@
+package com.depot.ims.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the style of HdrHistogram. Values are
+ * recorded in microseconds: below 64 each value has its own bucket, and above that each
+ * power-of-two range is split into 32 linear buckets, so every reported percentile is within about
+ * 3% of the recorded value, up to about 35 minutes.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // powers of two above the exact range, covering values below 2^31 microseconds
+  private static final int MAGNITUDES = 31 - SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts =
+      new AtomicLongArray(SUB_BUCKETS + MAGNITUDES * SUB_BUCKETS / 2);
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Record one latency.
+   *
+   * @param micros latency in microseconds
+   */
+  public void record(long micros) {
+    long value = Math.max(0, Math.min(micros, Integer.MAX_VALUE));
+    counts.incrementAndGet(bucketOf(value));
+    total.increment();
+    max.accumulate(value);
+  }
+
+  public long count() {
+    return total.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * The value at a percentile of the recorded latencies.
+   *
+   * @param percentile between 0 and 100
+   * @return the highest value of the bucket the percentile falls in, in microseconds, or 0 if
+   *     nothing was recorded
+   */
+  public long percentile(double percentile) {
+    long recorded = count();
+    if (recorded == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length(); bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(highestValueOf(bucket), max());
+      }
+    }
+    return max();
+  }
+
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS / 2;
+    return magnitude * SUB_BUCKETS / 2 + SUB_BUCKETS / 2 + subBucket;
+  }
+
+  private static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int magnitude = (bucket - SUB_BUCKETS) / (SUB_BUCKETS / 2) + 1;
+    int subBucket = (bucket - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+    return (((long) subBucket + 1) << magnitude) - 1;
+  }
+}
@@ -0,0 +1,241 @@
+package com.depot.ims.loadtest;
+
+import com.depot.ims.ImsApplication;
+import com.depot.ims.benchmarks.InventorySeeder;
+import com.depot.ims.inventory.InventoryLedgerLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Starts the application on a random port, seeds it, and drives its controllers over HTTP with an
+ * open workload at each of a series of arrival rates. Prints p50/p99/p99.9 latency and throughput
+ * per operation for every rate, and the first rate the node could not keep up with.
+ *
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.depot.ims.loadtest.LoadTest \
+ *       --rates=100,200,400,800 --duration=30 --warmup=10
+ * </pre>
+ *
+ * <p>Runs against an in-memory H2 database unless --datasource-url points elsewhere, e.g. the db2
+ * MySQL container of docker-compose.yml. The database must be empty; its schema is recreated.
+ */
+public final class LoadTest {
+
+  private static final Map<String, String> DEFAULTS = defaults();
+
+  // starting quantity of every seeded availability, large enough that no step runs it out
+  private static final int SEEDED_QUANTITY = 1_000_000;
+
+  private LoadTest() {}
+
+  /**
+   * Run the load test.
+   *
+   * @param args --name=value options, see DEFAULTS
+   * @throws IOException if the results cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0 || !DEFAULTS.containsKey(arg.substring(2, equals))) {
+        System.err.println("usage: LoadTest [--name=value ...], options and defaults:");
+        DEFAULTS.forEach((name, value) -> System.err.printf("  --%s=%s%n", name, value));
+        System.exit(2);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+
+    List<Double> rates = new ArrayList<>();
+    for (String rate : options.get("rates").split(",")) {
+      rates.add(Double.parseDouble(rate.trim()));
+    }
+    Duration warmup = Duration.ofSeconds(Long.parseLong(options.get("warmup")));
+    Duration duration = Duration.ofSeconds(Long.parseLong(options.get("duration")));
+    double p99Objective = Double.parseDouble(options.get("slo-p99-ms"));
+
+    ConfigurableApplicationContext context = start(options);
+    try {
+      int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+      InventorySeeder seeder =
+          new InventorySeeder(
+              context.getBean(JdbcTemplate.class),
+              context.getBean(EntityManagerFactory.class),
+              Integer.parseInt(options.get("items-per-site")));
+      seeder.seed(
+          Integer.parseInt(options.get("sites")),
+          Integer.parseInt(options.get("items")),
+          SEEDED_QUANTITY);
+      // the ledger warmed on startup against the empty database
+      context.getBean(InventoryLedgerLoader.class).warm();
+
+      Map<String, Integer> weights = parseMix(options.get("mix"));
+      // every ship needs an (item, shipment) pair not used before; seed enough for all steps
+      double shipShare = TrafficMix.share(weights, "ship");
+      double arrivals = 0;
+      for (double rate : rates) {
+        arrivals += rate * (warmup.getSeconds() + duration.getSeconds());
+      }
+      long[] shipmentIds =
+          seeder.seedShipments(
+              (int) Math.ceil(arrivals * shipShare * 1.1 / seeder.getItemsPerSite()) + 1);
+      TrafficMix mix = new TrafficMix("http://localhost:" + port, seeder, shipmentIds, weights);
+
+      int maxInFlight = Integer.parseInt(options.get("max-in-flight"));
+      HttpClient client =
+          HttpClient.newBuilder()
+              .version(HttpClient.Version.HTTP_1_1)
+              .executor(Executors.newFixedThreadPool(4))
+              .connectTimeout(Duration.ofSeconds(10))
+              .build();
+      OpenLoadGenerator generator =
+          new OpenLoadGenerator(client, mix, "poisson".equals(options.get("arrival")), maxInFlight);
+
+      List<StepResult> results = new ArrayList<>();
+      StepResult saturated = null;
+      for (double rate : rates) {
+        System.out.printf(
+            "%nOffering %.0f req/s: %ds warmup, %ds measured%n",
+            rate, warmup.getSeconds(), duration.getSeconds());
+        StepResult result = generator.run(rate, warmup, duration);
+        results.add(result);
+        print(result);
+        if (saturated == null && !result.keptUp(p99Objective)) {
+          saturated = result;
+        }
+      }
+
+      if (saturated == null) {
+        System.out.printf(
+            "%nKept up with every rate (p99 objective %.0f ms); offer higher rates to find the"
+                + " saturation point%n",
+            p99Objective);
+      } else {
+        System.out.printf(
+            "%nSaturated at %.0f req/s offered: %.0f req/s completed, p99 %.1f ms, %d dropped"
+                + " (p99 objective %.0f ms)%n",
+            saturated.getOfferedRate(),
+            saturated.getTotal().getThroughput(),
+            saturated.getTotal().getP99Millis(),
+            saturated.getTotal().getDropped(),
+            p99Objective);
+      }
+      write(results, options.get("out"));
+    } finally {
+      context.close();
+    }
+    System.exit(0);
+  }
+
+  private static ConfigurableApplicationContext start(Map<String, String> options) {
+    List<String> args = new ArrayList<>();
+    args.add("--server.port=0");
+    args.add("--spring.main.banner-mode=off");
+    args.add("--spring.datasource.url=" + options.get("datasource-url"));
+    args.add("--spring.datasource.username=" + options.get("datasource-username"));
+    args.add("--spring.datasource.password=" + options.get("datasource-password"));
+    if (options.get("datasource-url").startsWith("jdbc:h2:")) {
+      args.add("--spring.datasource.driver-class-name=org.h2.Driver");
+      args.add("--spring.jpa.database=h2");
+    }
+    args.add("--spring.jpa.hibernate.ddl-auto=create-drop");
+    args.add("--spring.jpa.show-sql=false");
+    args.add("--logging.level.root=WARN");
+    args.add("--ims.audit.mode=" + options.get("audit-mode"));
+    args.add("--spring.threads.virtual.enabled=" + options.get("virtual-threads"));
+    return new SpringApplicationBuilder(ImsApplication.class)
+        .logStartupInfo(false)
+        .run(args.toArray(new String[0]));
+  }
+
+  private static Map<String, Integer> parseMix(String mix) {
+    if (mix.isEmpty()) {
+      return TrafficMix.DEFAULT_WEIGHTS;
+    }
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String entry : mix.split(",")) {
+      String[] parts = entry.split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Expected operation=weight, got " + entry);
+      }
+      weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+    }
+    return weights;
+  }
+
+  private static void print(StepResult result) {
+    System.out.printf(
+        "%-16s %9s %7s %7s %10s %9s %9s %9s %9s%n",
+        "operation", "requests", "errors", "dropped", "req/s", "p50 ms", "p99 ms", "p99.9 ms",
+        "max ms");
+    for (EndpointResult endpoint : result.getEndpoints()) {
+      print(endpoint);
+    }
+    print(result.getTotal());
+  }
+
+  private static void print(EndpointResult endpoint) {
+    System.out.printf(
+        "%-16s %9d %7d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+        endpoint.getName(),
+        endpoint.getRequests(),
+        endpoint.getErrors(),
+        endpoint.getDropped(),
+        endpoint.getThroughput(),
+        endpoint.getP50Millis(),
+        endpoint.getP99Millis(),
+        endpoint.getP999Millis(),
+        endpoint.getMaxMillis());
+  }
+
+  private static void write(List<StepResult> results, String out) throws IOException {
+    File file;
+    if (out.isEmpty()) {
+      File directory = new File("loadtest-results");
+      directory.mkdirs();
+      String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+      file = new File(directory, name + ".json");
+    } else {
+      file = new File(out);
+    }
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, results);
+    System.out.println("Results written to " + file.getPath());
+  }
+
+  private static Map<String, String> defaults() {
+    Map<String, String> defaults = new LinkedHashMap<>();
+    defaults.put("rates", "50,100,200,400");
+    defaults.put("warmup", "10");
+    defaults.put("duration", "30");
+    defaults.put("arrival", "poisson");
+    defaults.put("slo-p99-ms", "100");
+    defaults.put("max-in-flight", "2000");
+    defaults.put("sites", "50");
+    defaults.put("items", "2000");
+    defaults.put("items-per-site", "200");
+    defaults.put("mix", "");
+    defaults.put("audit-mode", "fire-and-forget");
+    defaults.put("virtual-threads", "false");
+    defaults.put("datasource-url", "jdbc:h2:mem:ims-load;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+    defaults.put("datasource-username", "sa");
+    defaults.put("datasource-password", "");
+    defaults.put("out", "");
+    return defaults;
+  }
+}
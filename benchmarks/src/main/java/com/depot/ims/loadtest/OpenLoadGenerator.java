@@ -0,0 +1,141 @@
+package com.depot.ims.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the application with an open workload: requests are started on a fixed schedule of
+ * arrival times, whether or not earlier requests have completed, the way independent clients
+ * arrive at a real depot. Latency is measured from each request's scheduled start, so time spent
+ * queued behind a slow server counts against it instead of silently lowering the offered rate.
+ */
+public class OpenLoadGenerator {
+
+  private final HttpClient client;
+  private final TrafficMix mix;
+  private final boolean poisson;
+  private final int maxInFlight;
+
+  /**
+   * Constructor for OpenLoadGenerator.
+   *
+   * @param client the HTTP client requests are sent with
+   * @param mix the traffic mix
+   * @param poisson true for exponentially distributed gaps between arrivals, false for even gaps
+   * @param maxInFlight requests allowed in flight at once; arrivals beyond it are dropped
+   */
+  public OpenLoadGenerator(HttpClient client, TrafficMix mix, boolean poisson, int maxInFlight) {
+    this.client = client;
+    this.mix = mix;
+    this.poisson = poisson;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Offer one arrival rate for a warmup period and then a measured period.
+   *
+   * @param rate arrivals per second
+   * @param warmup unmeasured period before the measurement starts
+   * @param duration measured period
+   * @return the latencies and counts of the measured period
+   */
+  public StepResult run(double rate, Duration warmup, Duration duration) {
+    Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    for (TrafficMix.Operation operation : mix.getOperations()) {
+      endpoints.put(operation.getName(), new Endpoint());
+    }
+    Endpoint all = new Endpoint();
+    AtomicInteger inFlight = new AtomicInteger();
+    SplittableRandom random = new SplittableRandom(42);
+
+    long start = System.nanoTime();
+    long measureFrom = start + warmup.toNanos();
+    long end = measureFrom + duration.toNanos();
+    double gapNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    double next = start;
+    while (next < end) {
+      long intended = (long) next;
+      next += poisson ? -Math.log(1 - random.nextDouble()) * gapNanos : gapNanos;
+      long wait = intended - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+
+      TrafficMix.Operation operation = mix.next(random);
+      Endpoint endpoint = endpoints.get(operation.getName());
+      boolean measured = intended >= measureFrom;
+      if (inFlight.get() >= maxInFlight) {
+        if (measured) {
+          endpoint.dropped.increment();
+          all.dropped.increment();
+        }
+        continue;
+      }
+      inFlight.incrementAndGet();
+      client
+          .sendAsync(operation.request(random), HttpResponse.BodyHandlers.discarding())
+          .whenComplete(
+              (response, error) -> {
+                long finished = System.nanoTime();
+                inFlight.decrementAndGet();
+                if (finished >= measureFrom && finished <= end) {
+                  endpoint.completed.increment();
+                  all.completed.increment();
+                }
+                if (!measured) {
+                  return;
+                }
+                long micros = (finished - intended) / 1000;
+                endpoint.latency.record(micros);
+                all.latency.record(micros);
+                if (error != null || response.statusCode() >= 400) {
+                  endpoint.errors.increment();
+                  all.errors.increment();
+                }
+              });
+    }
+
+    // let the last arrivals finish; their latency still counts
+    long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    double seconds = duration.toNanos() / 1e9;
+    StepResult result = new StepResult(rate);
+    endpoints.forEach(
+        (name, endpoint) -> result.getEndpoints().add(endpoint.result(name, seconds)));
+    result.setTotal(all.result("all", seconds));
+    return result;
+  }
+
+  /** Counters of one operation during one step. */
+  private static class Endpoint {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    // requests, measured or not, that finished during the measured period
+    private final LongAdder completed = new LongAdder();
+
+    EndpointResult result(String name, double seconds) {
+      return new EndpointResult(
+          name,
+          latency.count(),
+          errors.sum(),
+          dropped.sum(),
+          completed.sum() / seconds,
+          latency.percentile(50) / 1000.0,
+          latency.percentile(99) / 1000.0,
+          latency.percentile(99.9) / 1000.0,
+          latency.max() / 1000.0);
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.depot.ims.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+/** The outcome of offering one arrival rate: per-operation results and their total. */
+@Data
+public class StepResult {
+  private final double offeredRate;
+  private final List<EndpointResult> endpoints = new ArrayList<>();
+  private EndpointResult total;
+
+  /**
+   * Whether the application kept up with this step: it completed nearly every arrival, with no
+   * drops, and its p99 latency stayed within the objective.
+   *
+   * @param p99ObjectiveMillis the p99 latency objective
+   * @return true if the step is below the saturation point
+   */
+  public boolean keptUp(double p99ObjectiveMillis) {
+    return total.getDropped() == 0
+        && total.getThroughput() >= offeredRate * 0.95
+        && total.getP99Millis() <= p99ObjectiveMillis;
+  }
+}
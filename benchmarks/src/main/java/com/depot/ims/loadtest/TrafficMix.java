@@ -0,0 +1,205 @@
+package com.depot.ims.loadtest;
+
+import com.depot.ims.benchmarks.InventorySeeder;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The weighted mix of depot requests the load test sends. Each operation builds a request against
+ * the seeded inventory, so every request hits an existing row and is expected to succeed.
+ */
+public class TrafficMix {
+
+  /** Weights of the default mix, mostly reads, as a depot front end issues them. */
+  public static final Map<String, Integer> DEFAULT_WEIGHTS =
+      Collections.unmodifiableMap(defaultWeights());
+
+  private final List<Operation> operations = new ArrayList<>();
+  private final int totalWeight;
+
+  /** One kind of request and its share of the traffic. */
+  public static class Operation {
+    private final String name;
+    private final int weight;
+    private final Function<SplittableRandom, HttpRequest> request;
+
+    Operation(String name, int weight, Function<SplittableRandom, HttpRequest> request) {
+      this.name = name;
+      this.weight = weight;
+      this.request = request;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    HttpRequest request(SplittableRandom random) {
+      return request.apply(random);
+    }
+  }
+
+  /**
+   * Build the mix.
+   *
+   * @param baseUri root URI of the application, e.g. http://localhost:8080
+   * @param seeder the seeder that filled the database
+   * @param shipmentIds the seeded shipments that ships are added to
+   * @param weights weight of each operation by its key in DEFAULT_WEIGHTS; zero drops it
+   */
+  public TrafficMix(
+      String baseUri, InventorySeeder seeder, long[] shipmentIds, Map<String, Integer> weights) {
+    long[] siteIds = seeder.getSiteIds();
+    int itemsPerSite = seeder.getItemsPerSite();
+    AtomicLong nextShip = new AtomicLong();
+
+    Map<String, Function<SplittableRandom, HttpRequest>> builders = new LinkedHashMap<>();
+    builders.put(
+        "site-item",
+        random -> {
+          int site = random.nextInt(siteIds.length);
+          long item = seeder.itemOfSite(site, random.nextInt(itemsPerSite));
+          return get(
+              baseUri + "/availabilities/site/item?siteId=" + siteIds[site] + "&itemId=" + item);
+        });
+    builders.put(
+        "site",
+        random ->
+            get(
+                baseUri
+                    + "/availabilities/site?siteId="
+                    + siteIds[random.nextInt(siteIds.length)]));
+    builders.put(
+        "search",
+        random -> {
+          int site = random.nextInt(siteIds.length);
+          return get(
+              baseUri
+                  + "/availabilities/searchByItems?itemId="
+                  + seeder.itemOfSite(site, 0)
+                  + "&itemId="
+                  + seeder.itemOfSite(site, random.nextInt(itemsPerSite)));
+        });
+    builders.put(
+        "quantity",
+        random -> {
+          int site = random.nextInt(siteIds.length);
+          long item = seeder.itemOfSite(site, random.nextInt(itemsPerSite));
+          return post(
+              baseUri + "/availabilities/quantity",
+              String.format(
+                  "{\"siteId\":%d,\"itemId\":%d,\"operation\":\"%s\",\"quantity\":1}",
+                  siteIds[site], item, random.nextBoolean() ? "+" : "-"));
+        });
+    builders.put(
+        "ship",
+        random -> {
+          // a ship's key is (item, shipment): walk every item of a shipment's source site once
+          long n = nextShip.getAndIncrement();
+          int shipment = (int) (n / itemsPerSite % shipmentIds.length);
+          long item = seeder.itemOfSite(shipment % siteIds.length, (int) (n % itemsPerSite));
+          return post(
+              baseUri + "/ships/add",
+              String.format(
+                  "{\"itemId\":%d,\"shipmentId\":%d,\"quantity\":1}",
+                  item, shipmentIds[shipment]));
+        });
+    builders.put(
+        "shipment-update",
+        random ->
+            post(
+                baseUri
+                    + "/shipments/update?shipmentId="
+                    + shipmentIds[random.nextInt(shipmentIds.length)]
+                    + "&currentLocation=Dock%20"
+                    + random.nextInt(100),
+                ""));
+    builders.put("audit-page", random -> get(baseUri + "/audits?limit=100"));
+    builders.put(
+        "audit-table", random -> get(baseUri + "/audits/onTable?tableName=Ships&limit=100"));
+
+    int total = 0;
+    for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+      Function<SplittableRandom, HttpRequest> builder = builders.get(weight.getKey());
+      if (builder == null) {
+        throw new IllegalArgumentException(
+            "Unknown operation " + weight.getKey() + ", expected one of " + builders.keySet());
+      }
+      if (weight.getValue() > 0) {
+        operations.add(new Operation(weight.getKey(), weight.getValue(), builder));
+        total += weight.getValue();
+      }
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("The traffic mix is empty");
+    }
+    this.totalWeight = total;
+  }
+
+  public List<Operation> getOperations() {
+    return operations;
+  }
+
+  /**
+   * Draw the next operation in proportion to the weights.
+   *
+   * @param random source of randomness of the calling thread
+   * @return the operation
+   */
+  public Operation next(SplittableRandom random) {
+    int pick = random.nextInt(totalWeight);
+    for (Operation operation : operations) {
+      pick -= operation.weight;
+      if (pick < 0) {
+        return operation;
+      }
+    }
+    return operations.get(operations.size() - 1);
+  }
+
+  /**
+   * The share of the traffic an operation receives under a set of weights.
+   *
+   * @param weights weight of each operation by its key
+   * @param name operation key
+   * @return fraction between 0 and 1
+   */
+  public static double share(Map<String, Integer> weights, String name) {
+    int total = 0;
+    for (int weight : weights.values()) {
+      total += Math.max(weight, 0);
+    }
+    return total == 0 ? 0 : Math.max(weights.getOrDefault(name, 0), 0) / (double) total;
+  }
+
+  private static HttpRequest get(String uri) {
+    return HttpRequest.newBuilder(URI.create(uri)).GET().build();
+  }
+
+  private static HttpRequest post(String uri, String json) {
+    return HttpRequest.newBuilder(URI.create(uri))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(json))
+        .build();
+  }
+
+  private static Map<String, Integer> defaultWeights() {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    weights.put("site-item", 25);
+    weights.put("site", 10);
+    weights.put("search", 20);
+    weights.put("quantity", 15);
+    weights.put("ship", 10);
+    weights.put("shipment-update", 5);
+    weights.put("audit-page", 10);
+    weights.put("audit-table", 5);
+    return weights;
+  }
+}
@@ -0,0 +1,485 @@
+package com.depot.ims.audit;
+
+import com.depot.ims.models.projections.AuditRow;
+import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.sharding.ShardContext;
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves old audits out of the Audits table into one AuditSegment file per month. The table is
+ * treated as partitioned by the month of actionTimestamp, which its (action_timestamp, PK_audits)
+ * index already orders it by: every ims.audit.archive.check-interval-ms each whole month older than
+ * ims.audit.archive.retain-months is written to audits-YYYY-MM.seg in ims.audit.archive.dir and
+ * then deleted from the table in batches. Archival is off unless retain-months is set, and then
+ * needs an absolute directory on durable storage, since the archived audits exist nowhere else.
+ *
+ * <p>Instances serving the same database must share the directory, and only one of them may set
+ * retain-months. The others read the segments it writes, rereading the directory whenever it
+ * changes.
+ *
+ * <p>A period query that reaches before archivedUntil reads the segments merged with the table over
+ * the whole period, in (actionTimestamp, auditId) order, and an audit found in both, exported but
+ * not yet deleted, is returned once. A Catalog holds the segments and that boundary, and is
+ * replaced as a whole when a month is archived. Only the period queries read the archive; the
+ * listings by auditId, by table and by row cover the table alone.
+ *
+ * <p>Only the audits a segment holds are deleted from the table. An audit of an archived month that
+ * is written after its segment, which the audit writer's clock makes unlikely, stays in the table,
+ * where period queries still find it, until the next run exports the month again with it included.
+ */
+@Component
+public class AuditArchive {
+
+  private static final Logger log = LoggerFactory.getLogger(AuditArchive.class);
+
+  private static final String PREFIX = "audits-";
+  private static final String SUFFIX = ".seg";
+
+  private final AuditRepository auditRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final BackgroundThreads backgroundThreads;
+  private final Path directory;
+  private final int retainMonths;
+  private final long intervalMillis;
+  private final int batchSize;
+
+  private volatile Catalog catalog = Catalog.EMPTY;
+  private volatile FileTime loadedModified;
+  private volatile Thread archiveThread;
+  private volatile boolean running;
+
+  /**
+   * The archived months and the moment up to which the archive answers period queries. A catalog
+   * never changes once published.
+   */
+  public static final class Catalog {
+
+    /** The catalog of an empty archive. */
+    public static final Catalog EMPTY = new Catalog(Collections.emptyNavigableMap(), null);
+
+    private final NavigableMap<YearMonth, AuditSegment> segments;
+    private final Timestamp archivedUntil;
+
+    private Catalog(NavigableMap<YearMonth, AuditSegment> segments, Timestamp archivedUntil) {
+      this.segments = segments;
+      this.archivedUntil = archivedUntil;
+    }
+
+    /**
+     * The end of the last archived month.
+     *
+     * @return the moment before which audits are read from the archive, or null if nothing is
+     *     archived
+     */
+    public Timestamp getArchivedUntil() {
+      return archivedUntil;
+    }
+
+    /**
+     * Whether a period that starts at start reaches into the archive.
+     *
+     * @param start start of the period
+     * @return true if audits recorded from start on may be archived
+     */
+    public boolean covers(Timestamp start) {
+      return archivedUntil != null && start.before(archivedUntil);
+    }
+
+    /**
+     * Read the archived audits recorded within a period, in (actionTimestamp, auditId) order.
+     * Segments are read as the stream reaches them.
+     *
+     * @param start start of the period, inclusive
+     * @param end end of the period, inclusive
+     * @return a stream of AuditRows
+     */
+    public Stream<AuditRow> streamBetween(Timestamp start, Timestamp end) {
+      if (archivedUntil == null || !start.before(archivedUntil) || end.before(start)) {
+        return Stream.empty();
+      }
+      return segments.subMap(monthOf(start), true, monthOf(end), true).values().stream()
+          .flatMap(segment -> segment.rows(start, end));
+    }
+
+    /**
+     * Merge the archived audits recorded within a period with those the Audits table holds for it,
+     * in (actionTimestamp, auditId) order. An audit in both is returned once. Closing the returned
+     * stream closes live.
+     *
+     * @param start start of the period, inclusive
+     * @param end end of the period, inclusive
+     * @param live the audits in the table within the same period, in (actionTimestamp, auditId)
+     *     order
+     * @return a stream of AuditRows
+     */
+    public Stream<AuditRow> withArchived(Timestamp start, Timestamp end, Stream<AuditRow> live) {
+      Stream<AuditRow> archived = streamBetween(start, end);
+      return StreamSupport.stream(
+              Spliterators.spliteratorUnknownSize(
+                  new MergedRows(archived.iterator(), live.iterator()),
+                  Spliterator.ORDERED | Spliterator.NONNULL),
+              false)
+          .onClose(archived::close)
+          .onClose(live::close);
+    }
+
+    /**
+     * The archived months.
+     *
+     * @return the months that have a segment, in order
+     */
+    public List<YearMonth> getMonths() {
+      return List.copyOf(segments.keySet());
+    }
+  }
+
+  /**
+   * Two streams of audits in (actionTimestamp, auditId) order merged into one, returning an audit
+   * found in both, such as one exported but not yet deleted, once.
+   */
+  private static final class MergedRows implements Iterator<AuditRow> {
+
+    private final Iterator<AuditRow> archived;
+    private final Iterator<AuditRow> live;
+    private AuditRow nextArchived;
+    private AuditRow nextLive;
+
+    MergedRows(Iterator<AuditRow> archived, Iterator<AuditRow> live) {
+      this.archived = archived;
+      this.live = live;
+      this.nextArchived = archived.hasNext() ? archived.next() : null;
+      this.nextLive = live.hasNext() ? live.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextArchived != null || nextLive != null;
+    }
+
+    @Override
+    public AuditRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (nextArchived == null) {
+        return takeLive();
+      }
+      if (nextLive == null) {
+        return takeArchived();
+      }
+      int order = AuditSegment.compare(nextArchived, nextLive);
+      if (order == 0) {
+        takeLive();
+      }
+      return order <= 0 ? takeArchived() : takeLive();
+    }
+
+    private AuditRow takeArchived() {
+      AuditRow row = nextArchived;
+      nextArchived = archived.hasNext() ? archived.next() : null;
+      return row;
+    }
+
+    private AuditRow takeLive() {
+      AuditRow row = nextLive;
+      nextLive = live.hasNext() ? live.next() : null;
+      return row;
+    }
+  }
+
+  /**
+   * Constructor for AuditArchive.
+   *
+   * @param auditRepository reads and deletes the audits of the months to archive
+   * @param transactionManager used to export each month, and delete each batch, in a transaction
+   * @param backgroundThreads creates the archive thread
+   * @param directory where the segment files are kept, ims.audit.archive.dir; must be absolute when
+   *     this instance archives
+   * @param retainMonths how many whole months stay in the table besides the current one,
+   *     ims.audit.archive.retain-months; 0, the default, archives nothing
+   * @param intervalMillis how often to look for months to archive,
+   *     ims.audit.archive.check-interval-ms
+   * @param batchSize the most audits deleted in one transaction, ims.audit.batch-size
+   */
+  public AuditArchive(
+      AuditRepository auditRepository,
+      PlatformTransactionManager transactionManager,
+      BackgroundThreads backgroundThreads,
+      @Value("${ims.audit.archive.dir:audit-archive}") String directory,
+      @Value("${ims.audit.archive.retain-months:0}") int retainMonths,
+      @Value("${ims.audit.archive.check-interval-ms:3600000}") long intervalMillis,
+      @Value("${ims.audit.batch-size:200}") int batchSize) {
+    this.auditRepository = auditRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.backgroundThreads = backgroundThreads;
+    this.directory = Paths.get(directory);
+    this.retainMonths = retainMonths;
+    this.intervalMillis = intervalMillis;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Open the segments already in the archive directory, and start the archive thread.
+   *
+   * @throws IllegalStateException if this instance archives into a relative directory
+   */
+  @PostConstruct
+  public void start() throws IOException {
+    if (retainMonths > 0 && !directory.isAbsolute()) {
+      // archived audits leave the table, so they must not land somewhere a redeploy wipes
+      throw new IllegalStateException(
+          "ims.audit.archive.dir must be an absolute path on durable storage when"
+              + " ims.audit.archive.retain-months is set, not "
+              + directory);
+    }
+    loadedModified = lastModified();
+    catalog = load();
+    if (!catalog.segments.isEmpty()) {
+      log.info(
+          "Audit archive holds {} months, up to {}",
+          catalog.segments.size(),
+          catalog.archivedUntil);
+    }
+    if (retainMonths > 0 && intervalMillis > 0) {
+      running = true;
+      archiveThread = backgroundThreads.newThread("audit-archiver", this::run);
+      archiveThread.start();
+    }
+  }
+
+  /**
+   * Stop the archive thread. A month it was exporting is exported again on the next run.
+   *
+   * @throws InterruptedException if interrupted while waiting for the thread to finish
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    Thread thread = archiveThread;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(5_000);
+    }
+  }
+
+  /**
+   * The current catalog. Read it once per query, so that every segment the query reads belongs to
+   * the same moment. When the archive directory has changed since it was last read, e.g. because
+   * another instance sharing it archived a month, the segments are read again first.
+   *
+   * @return the catalog
+   */
+  public Catalog catalog() {
+    FileTime modified = lastModified();
+    if (modified != null && !modified.equals(loadedModified)) {
+      reload(modified);
+    }
+    return catalog;
+  }
+
+  private synchronized void reload(FileTime modified) {
+    if (modified.equals(loadedModified)) {
+      return;
+    }
+    // taken before reading, so that a change made while reading is picked up by the next query
+    loadedModified = modified;
+    try {
+      catalog = load();
+    } catch (IOException e) {
+      loadedModified = null;
+      log.warn("Could not read the audit archive {}", directory, e);
+    }
+  }
+
+  private FileTime lastModified() {
+    try {
+      return Files.getLastModifiedTime(directory);
+    } catch (IOException e) {
+      // not created until the first month is archived
+      return null;
+    }
+  }
+
+  /**
+   * Archive every whole month older than retainMonths that still has audits in the table. A month
+   * that already has a segment is exported again, with the audits left in the table added to it.
+   *
+   * @return the number of months whose segment was written
+   */
+  public int archive() {
+    if (retainMonths <= 0) {
+      return 0;
+    }
+    return ShardContext.on(ShardContext.HOME, this::archiveMonths);
+  }
+
+  private int archiveMonths() {
+    Timestamp cutoff = startOf(YearMonth.now().minusMonths(retainMonths));
+    Timestamp from = new Timestamp(0);
+    int exported = 0;
+    Timestamp oldest;
+    while ((oldest = auditRepository.findOldestTimestampFrom(from)) != null
+        && oldest.before(cutoff)) {
+      YearMonth month = monthOf(oldest);
+      purge(export(month, catalog.segments.get(month)));
+      exported++;
+      from = startOf(month.plusMonths(1));
+    }
+    return exported;
+  }
+
+  private AuditSegment export(YearMonth month, AuditSegment previous) {
+    Timestamp start = startOf(month);
+    Timestamp end = startOf(month.plusMonths(1));
+    Path path = directory.resolve(PREFIX + month + SUFFIX);
+    AuditSegment segment =
+        transactionTemplate.execute(
+            status -> {
+              try (Stream<AuditRow> rows = auditRepository.streamRowsFromUntil(start, end)) {
+                Files.createDirectories(directory);
+                Iterator<AuditRow> table = rows.iterator();
+                // the segment is replaced by a copy that also holds the audits written after it
+                return AuditSegment.write(
+                    path,
+                    month,
+                    previous == null
+                        ? table
+                        : new MergedRows(previous.rows(start, end).iterator(), table));
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    publish(segment);
+    log.info(
+        "Archived {} audits of {} to {} ({} bytes)",
+        segment.getRowCount(),
+        month,
+        path,
+        segment.getSizeBytes());
+    return segment;
+  }
+
+  private synchronized void publish(AuditSegment segment) {
+    Catalog current = catalog;
+    TreeMap<YearMonth, AuditSegment> segments = new TreeMap<>(current.segments);
+    segments.put(segment.getMonth(), segment);
+    Timestamp end = startOf(segment.getMonth().plusMonths(1));
+    Timestamp until =
+        current.archivedUntil == null || current.archivedUntil.before(end)
+            ? end
+            : current.archivedUntil;
+    catalog = new Catalog(Collections.unmodifiableNavigableMap(segments), until);
+  }
+
+  private void purge(AuditSegment segment) {
+    Timestamp start = startOf(segment.getMonth());
+    Timestamp end = startOf(segment.getMonth().plusMonths(1));
+    // deletes exactly the audits the segment holds; any written since stay for the next run
+    List<Long> ids = new ArrayList<>(batchSize);
+    try (Stream<AuditRow> rows = segment.rows(start, end)) {
+      Iterator<AuditRow> archived = rows.iterator();
+      while (archived.hasNext()) {
+        ids.add(archived.next().getAuditId());
+        if (ids.size() == batchSize || !archived.hasNext()) {
+          List<Long> batch = List.copyOf(ids);
+          transactionTemplate.executeWithoutResult(
+              status -> auditRepository.deleteAllByIdInBatch(batch));
+          ids.clear();
+        }
+      }
+    }
+    log.info(
+        "Deleted the {} archived audits of {} from the table",
+        segment.getRowCount(),
+        segment.getMonth());
+  }
+
+  private Catalog load() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return Catalog.EMPTY;
+    }
+    TreeMap<YearMonth, AuditSegment> segments = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.startsWith(PREFIX) && name.endsWith(SUFFIX + ".tmp")) {
+          if (retainMonths > 0) {
+            // left by an export of this instance that did not finish; the month is still in the
+            // table
+            Files.deleteIfExists(file);
+          }
+          continue;
+        }
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+          continue;
+        }
+        try {
+          YearMonth month =
+              YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+          AuditSegment segment = AuditSegment.open(file);
+          if (!segment.getMonth().equals(month)) {
+            throw new IllegalStateException(file + " holds the audits of " + segment.getMonth());
+          }
+          segments.put(month, segment);
+        } catch (DateTimeParseException | IllegalStateException e) {
+          log.error("Skipping audit segment {}: {}", file, e.getMessage());
+        }
+      }
+    }
+    if (segments.isEmpty()) {
+      return Catalog.EMPTY;
+    }
+    return new Catalog(
+        Collections.unmodifiableNavigableMap(segments), startOf(segments.lastKey().plusMonths(1)));
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(intervalMillis);
+        archive();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Audit archival failed", e);
+      }
+    }
+  }
+
+  private static Timestamp startOf(YearMonth month) {
+    return Timestamp.valueOf(month.atDay(1).atStartOfDay());
+  }
+
+  private static YearMonth monthOf(Timestamp timestamp) {
+    return YearMonth.from(timestamp.toLocalDateTime());
+  }
+}
@@ -0,0 +1,35 @@
+package com.depot.ims.audit;
+
+/** How the AuditWriter hands the audits recorded by a transaction to the database. */
+public enum AuditDurability {
+
+  /**
+   * Audits are queued once the surrounding transaction commits and written in the background in
+   * multi-row inserts. Fastest on the request path; audits still queued when the process dies are
+   * lost.
+   */
+  FIRE_AND_FORGET,
+
+  /**
+   * Audits of a transaction are buffered and written in one multi-row insert just before it
+   * commits, so they commit or roll back together with the change they describe.
+   */
+  FLUSH_BEFORE_COMMIT,
+
+  /**
+   * Audits of a transaction are written as a single outbox row just before it commits, and relayed
+   * to the Audits table in the background. As durable as FLUSH_BEFORE_COMMIT, with one insert per
+   * transaction on the request path.
+   */
+  OUTBOX;
+
+  /**
+   * Parse a durability mode from configuration, accepting both OUTBOX and "fire-and-forget" forms.
+   *
+   * @param value the configured mode
+   * @return the matching mode
+   */
+  public static AuditDurability parse(String value) {
+    return valueOf(value.trim().replace('-', '_').toUpperCase());
+  }
+}
@@ -0,0 +1,186 @@
+package com.depot.ims.audit;
+
+import jakarta.persistence.AttributeConverter;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+/**
+ * The fields an UPDATE audit can record, stored as a small code instead of the field name. Each
+ * field knows the type of its values: text values are kept as text, every other value as a number
+ * (ids and counts as they are, prices in cents, times in epoch milliseconds, dates in epoch days,
+ * booleans as 0 or 1), so that old and new values can be compared and indexed without parsing.
+ */
+public enum AuditField {
+  SITE_NAME(1, "siteName", Kind.TEXT),
+  SITE_LOCATION(2, "siteLocation", Kind.TEXT),
+  SITE_STATUS(3, "siteStatus", Kind.TEXT),
+  INTERNAL_SITE(4, "internalSite", Kind.BOOLEAN),
+  CEASE_DATE(5, "ceaseDate", Kind.DATE),
+  ITEM_NAME(6, "itemName", Kind.TEXT),
+  ITEM_PRICE(7, "itemPrice", Kind.MONEY),
+  QUANTITY(8, "quantity", Kind.COUNT),
+  SOURCE(9, "source", Kind.COUNT),
+  DESTINATION(10, "destination", Kind.COUNT),
+  CURRENT_LOCATION(11, "currentLocation", Kind.TEXT),
+  DEPARTURE_TIME(12, "departureTime", Kind.TIME),
+  ESTIMATED_ARRIVAL_TIME(13, "estimatedArrivalTime", Kind.TIME),
+  ACTUAL_ARRIVAL_TIME(14, "actualArrivalTime", Kind.TIME),
+  SHIPMENT_STATUS(15, "shipmentStatus", Kind.TEXT);
+
+  /** How the values of a field are stored. */
+  enum Kind {
+    TEXT,
+    COUNT,
+    MONEY,
+    TIME,
+    DATE,
+    BOOLEAN
+  }
+
+  private final short code;
+  private final String fieldName;
+  private final Kind kind;
+
+  AuditField(int code, String fieldName, Kind kind) {
+    this.code = (short) code;
+    this.fieldName = fieldName;
+    this.kind = kind;
+  }
+
+  /**
+   * The name of the field on its entity, as audits reported it before they were typed.
+   *
+   * @return the field name, e.g. siteName
+   */
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /**
+   * Whether the values of this field are stored as numbers rather than text.
+   *
+   * @return true unless the field holds text
+   */
+  public boolean isNumeric() {
+    return kind != Kind.TEXT;
+  }
+
+  /**
+   * Find a field by the name audits used to record.
+   *
+   * @param fieldName the field name, e.g. siteName
+   * @return the field, or null if there is none of that name
+   */
+  public static AuditField fromFieldName(String fieldName) {
+    for (AuditField field : values()) {
+      if (field.fieldName.equals(fieldName)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Convert a value of this numeric field to the number it is stored as.
+   *
+   * @param value the value, e.g. an Integer quantity, a Double price or a Timestamp
+   * @return the number, or null for a null value
+   */
+  public Long toNumber(Object value) {
+    if (value == null) {
+      return null;
+    }
+    switch (kind) {
+      case MONEY:
+        return Math.round(((Number) value).doubleValue() * 100);
+      case TIME:
+        return ((java.util.Date) value).getTime();
+      case DATE:
+        return ((Date) value).toLocalDate().toEpochDay();
+      case BOOLEAN:
+        return (Boolean) value ? 1L : 0L;
+      case COUNT:
+        return ((Number) value).longValue();
+      default:
+        throw new IllegalArgumentException(fieldName + " is not a numeric field");
+    }
+  }
+
+  /**
+   * Parse a value of this numeric field from the text audits used to record.
+   *
+   * @param text the text, e.g. "3.5" for a price or "2024-05-07" for a date
+   * @return the number, or null for null text
+   * @throws IllegalArgumentException if the text is not a value of this field
+   */
+  public Long parse(String text) {
+    if (text == null) {
+      return null;
+    }
+    switch (kind) {
+      case MONEY:
+        return Math.round(Double.parseDouble(text) * 100);
+      case TIME:
+        return Timestamp.valueOf(text).getTime();
+      case DATE:
+        return LocalDate.parse(text).toEpochDay();
+      case BOOLEAN:
+        if (!text.equals("true") && !text.equals("false")) {
+          throw new IllegalArgumentException(text + " is not a boolean");
+        }
+        return text.equals("true") ? 1L : 0L;
+      case COUNT:
+        return Long.parseLong(text);
+      default:
+        throw new IllegalArgumentException(fieldName + " is not a numeric field");
+    }
+  }
+
+  /**
+   * Render a stored number of this field as the text audits used to record.
+   *
+   * @param number the number
+   * @return the text, or null for a null number
+   */
+  public String render(Long number) {
+    if (number == null) {
+      return null;
+    }
+    switch (kind) {
+      case MONEY:
+        return Double.toString(number / 100.0);
+      case TIME:
+        return new Timestamp(number).toString();
+      case DATE:
+        return LocalDate.ofEpochDay(number).toString();
+      case BOOLEAN:
+        return Boolean.toString(number != 0);
+      default:
+        return number.toString();
+    }
+  }
+
+  /** Stores an AuditField as its code. */
+  @jakarta.persistence.Converter
+  public static class Converter implements AttributeConverter<AuditField, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(AuditField field) {
+      return field == null ? null : field.code;
+    }
+
+    @Override
+    public AuditField convertToEntityAttribute(Short code) {
+      if (code == null) {
+        return null;
+      }
+      for (AuditField field : values()) {
+        if (field.code == code) {
+          return field;
+        }
+      }
+      throw new IllegalArgumentException("Unknown audit field code " + code);
+    }
+  }
+}
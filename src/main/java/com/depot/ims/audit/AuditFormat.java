@@ -0,0 +1,91 @@
+package com.depot.ims.audit;
+
+import com.depot.ims.models.Audit;
+import com.depot.ims.models.projections.AuditRow;
+import com.depot.ims.response.AuditResponse;
+
+/**
+ * Renders typed audits in the text form AuditResponse has always had, so that clients of the audit
+ * endpoints see no change: the row key as "itemId: 3, siteId: 7" for an availability, "shipmentId:
+ * 4, itemId: 3" for a ship and the plain id for any other row, the field by its name, numeric
+ * values as text and the snapshot of an INSERT or DELETE as the new or old value.
+ */
+public final class AuditFormat {
+
+  private AuditFormat() {}
+
+  /**
+   * Render an audit entity.
+   *
+   * @param audit the audit
+   * @return the AuditResponse
+   */
+  public static AuditResponse toResponse(Audit audit) {
+    return toResponse(
+        new AuditRow(
+            audit.getAuditId(),
+            audit.getTableName(),
+            audit.getField(),
+            audit.getEntityId(),
+            audit.getItemId(),
+            audit.getOldNumber(),
+            audit.getNewNumber(),
+            audit.getOldText(),
+            audit.getNewText(),
+            audit.getSnapshot(),
+            audit.getAction(),
+            audit.getActionTimestamp()));
+  }
+
+  /**
+   * Render an audit read as an AuditRow.
+   *
+   * @param row the audit
+   * @return the AuditResponse
+   */
+  public static AuditResponse toResponse(AuditRow row) {
+    String oldValue;
+    String newValue;
+    AuditField field = row.getField();
+    if (field == null) {
+      String snapshot = AuditSnapshot.render(row.getSnapshot());
+      boolean deleted = "DELETE".equals(row.getAction());
+      oldValue = deleted ? snapshot : null;
+      newValue = deleted ? null : snapshot;
+    } else if (field.isNumeric()) {
+      oldValue = field.render(row.getOldNumber());
+      newValue = field.render(row.getNewNumber());
+    } else {
+      oldValue = row.getOldText();
+      newValue = row.getNewText();
+    }
+    return AuditResponse.builder()
+        .auditId(row.getAuditId())
+        .tableName(row.getTableName())
+        .fieldName(field == null ? null : field.getFieldName())
+        .rowKey(rowKey(row.getTableName(), row.getEntityId(), row.getItemId()))
+        .oldValue(oldValue)
+        .newValue(newValue)
+        .action(row.getAction())
+        .actionTimestamp(row.getActionTimestamp())
+        .build();
+  }
+
+  /**
+   * The text form of the key of an audited row.
+   *
+   * @param tableName the table of the row
+   * @param entityId the id of the row, or of its site or shipment
+   * @param itemId the item of an availability or ship, or null
+   * @return the row key, e.g. "itemId: 3, siteId: 7"
+   */
+  public static String rowKey(String tableName, Long entityId, Long itemId) {
+    if (itemId == null) {
+      return String.valueOf(entityId);
+    }
+    if ("Ships".equals(tableName)) {
+      return "shipmentId: " + entityId + ", itemId: " + itemId;
+    }
+    return "itemId: " + itemId + ", siteId: " + entityId;
+  }
+}
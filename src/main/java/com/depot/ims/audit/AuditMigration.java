@@ -0,0 +1,290 @@
+package com.depot.ims.audit;
+
+import com.depot.ims.sharding.ShardContext;
+import jakarta.annotation.PostConstruct;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Converts audits written before audits were typed. Those rows kept the row key, field name and old
+ * and new values as free text in the row_key, field_name, old_value and new_value columns. With
+ * ddl-auto: update the typed columns are added next to them; at startup, before requests are
+ * served, this parses every row that has no entity_id yet into the typed columns, in batches of one
+ * transaction each. Snapshots of inserted and deleted rows keep their old text, wrapped by
+ * AuditSnapshot.ofText.
+ *
+ * <p>Once every row is converted the legacy columns are dropped. A row that cannot be parsed, e.g.
+ * one with a row key of an unknown form, is logged and left as it is, and the legacy columns stay
+ * until it is fixed by hand and the application restarted.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class AuditMigration {
+
+  private static final Logger log = LoggerFactory.getLogger(AuditMigration.class);
+
+  private static final Pattern AVAILABILITY_KEY =
+      Pattern.compile("itemId: (\\d+), ?siteId: (\\d+)");
+  private static final Pattern SHIP_KEY = Pattern.compile("shipmentId: (\\d+), ?itemId: (\\d+)");
+  private static final Pattern ID_KEY = Pattern.compile("\\d+");
+
+  private static final String[] LEGACY_COLUMNS = {
+    "row_key", "field_name", "old_value", "new_value"
+  };
+
+  private static final String SELECT_LEGACY =
+      "select PK_audits, table_name, field_name, row_key, old_value, new_value, action"
+          + " from audits"
+          + " where entity_id is null and PK_audits > ? order by PK_audits limit ?";
+
+  private static final String UPDATE_TYPED =
+      "update audits set table_name = ?, field_code = ?, entity_id = ?, item_id = ?,"
+          + " old_number = ?, new_number = ?, old_text = ?, new_text = ?, snapshot = ?"
+          + " where PK_audits = ?";
+
+  private static final AuditField.Converter FIELD_CODES = new AuditField.Converter();
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final int batchSize;
+
+  /**
+   * Constructor for AuditMigration.
+   *
+   * @param jdbcTemplate reads and converts the legacy rows
+   * @param transactionManager used to convert each batch in its own transaction
+   * @param batchSize the most rows converted in one transaction, ims.audit.batch-size
+   */
+  public AuditMigration(
+      JdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager,
+      @Value("${ims.audit.batch-size:200}") int batchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.batchSize = batchSize;
+  }
+
+  /** Convert the legacy audits, if the Audits table still has its legacy columns. */
+  @PostConstruct
+  public void migrate() {
+    ShardContext.on(
+        ShardContext.HOME,
+        () -> {
+          if (hasLegacyColumns()) {
+            migrateLegacyRows();
+          }
+          return null;
+        });
+  }
+
+  private boolean hasLegacyColumns() {
+    try {
+      jdbcTemplate.queryForList("select row_key from audits where 1 = 0");
+      return true;
+    } catch (BadSqlGrammarException e) {
+      return false;
+    }
+  }
+
+  private void migrateLegacyRows() {
+    // typed audits leave the legacy columns empty, so row_key can no longer be required
+    jdbcTemplate.execute(allowNullRowKey());
+    long afterId = 0;
+    int converted = 0;
+    int skipped = 0;
+    while (true) {
+      long from = afterId;
+      List<LegacyRow> rows =
+          jdbcTemplate.query(
+              SELECT_LEGACY,
+              (resultSet, i) ->
+                  new LegacyRow(
+                      resultSet.getLong(1),
+                      resultSet.getString(2),
+                      resultSet.getString(3),
+                      resultSet.getString(4),
+                      resultSet.getString(5),
+                      resultSet.getString(6),
+                      resultSet.getString(7)),
+              from,
+              batchSize);
+      if (rows.isEmpty()) {
+        break;
+      }
+      List<TypedRow> typed = new ArrayList<>(rows.size());
+      for (LegacyRow row : rows) {
+        TypedRow typedRow = convert(row);
+        if (typedRow == null) {
+          log.warn("Could not convert legacy audit {}: row key {}", row.auditId, row.rowKey);
+          skipped++;
+        } else {
+          typed.add(typedRow);
+        }
+      }
+      transactionTemplate.executeWithoutResult(status -> update(typed));
+      converted += typed.size();
+      afterId = rows.get(rows.size() - 1).auditId;
+    }
+    if (skipped > 0) {
+      log.warn(
+          "Converted {} legacy audits; {} could not be converted and keep the legacy columns",
+          converted,
+          skipped);
+      return;
+    }
+    for (String column : LEGACY_COLUMNS) {
+      jdbcTemplate.execute("alter table audits drop column " + column);
+    }
+    log.info("Converted {} legacy audits and dropped the legacy audit columns", converted);
+  }
+
+  private String allowNullRowKey() {
+    String database =
+        jdbcTemplate.execute(
+            (ConnectionCallback<String>)
+                connection -> connection.getMetaData().getDatabaseProductName());
+    return "MySQL".equals(database)
+        ? "alter table audits modify row_key varchar(255) null"
+        : "alter table audits alter column row_key drop not null";
+  }
+
+  private void update(List<TypedRow> rows) {
+    jdbcTemplate.batchUpdate(
+        UPDATE_TYPED,
+        rows,
+        batchSize,
+        (statement, row) -> {
+          statement.setString(1, row.tableName);
+          statement.setObject(2, FIELD_CODES.convertToDatabaseColumn(row.field), Types.SMALLINT);
+          statement.setLong(3, row.entityId);
+          statement.setObject(4, row.itemId, Types.BIGINT);
+          statement.setObject(5, row.oldNumber, Types.BIGINT);
+          statement.setObject(6, row.newNumber, Types.BIGINT);
+          statement.setString(7, row.oldText);
+          statement.setString(8, row.newText);
+          statement.setBytes(9, row.snapshot);
+          statement.setLong(10, row.auditId);
+        });
+  }
+
+  /**
+   * Parse one legacy audit.
+   *
+   * @param row the audit as the legacy columns hold it
+   * @return the typed audit, or null if the row key, field or a value cannot be parsed
+   */
+  static TypedRow convert(LegacyRow row) {
+    TypedRow typed = new TypedRow();
+    typed.auditId = row.auditId;
+    // deleteSite wrote its audits under "Sites", every other site audit under "sites"
+    typed.tableName = "Sites".equals(row.tableName) ? "sites" : row.tableName;
+    if (!parseRowKey(row.rowKey, typed)) {
+      return null;
+    }
+    if (row.fieldName == null) {
+      typed.snapshot =
+          AuditSnapshot.ofText("DELETE".equals(row.action) ? row.oldValue : row.newValue);
+      return typed;
+    }
+    AuditField field = AuditField.fromFieldName(row.fieldName);
+    // deleteSite recorded the closing of a site as a change of internalSite from open to closed
+    if (field == AuditField.INTERNAL_SITE && "closed".equals(row.newValue)) {
+      field = AuditField.SITE_STATUS;
+    }
+    if (field == null) {
+      return null;
+    }
+    typed.field = field;
+    if (!field.isNumeric()) {
+      typed.oldText = row.oldValue;
+      typed.newText = row.newValue;
+      return typed;
+    }
+    try {
+      typed.oldNumber = field.parse(row.oldValue);
+      typed.newNumber = field.parse(row.newValue);
+    } catch (RuntimeException e) {
+      return null;
+    }
+    return typed;
+  }
+
+  private static boolean parseRowKey(String rowKey, TypedRow typed) {
+    if (rowKey == null) {
+      return false;
+    }
+    String key = rowKey.trim();
+    Matcher availability = AVAILABILITY_KEY.matcher(key);
+    if (availability.matches()) {
+      typed.entityId = Long.parseLong(availability.group(2));
+      typed.itemId = Long.parseLong(availability.group(1));
+      return true;
+    }
+    Matcher ship = SHIP_KEY.matcher(key);
+    if (ship.matches()) {
+      typed.entityId = Long.parseLong(ship.group(1));
+      typed.itemId = Long.parseLong(ship.group(2));
+      return true;
+    }
+    if (ID_KEY.matcher(key).matches()) {
+      typed.entityId = Long.parseLong(key);
+      return true;
+    }
+    return false;
+  }
+
+  /** One audit as the legacy columns hold it. */
+  static final class LegacyRow {
+    final long auditId;
+    final String tableName;
+    final String fieldName;
+    final String rowKey;
+    final String oldValue;
+    final String newValue;
+    final String action;
+
+    LegacyRow(
+        long auditId,
+        String tableName,
+        String fieldName,
+        String rowKey,
+        String oldValue,
+        String newValue,
+        String action) {
+      this.auditId = auditId;
+      this.tableName = tableName;
+      this.fieldName = fieldName;
+      this.rowKey = rowKey;
+      this.oldValue = oldValue;
+      this.newValue = newValue;
+      this.action = action;
+    }
+  }
+
+  /** The typed columns of one converted audit. */
+  static final class TypedRow {
+    long auditId;
+    String tableName;
+    AuditField field;
+    long entityId;
+    Long itemId;
+    Long oldNumber;
+    Long newNumber;
+    String oldText;
+    String newText;
+    byte[] snapshot;
+  }
+}
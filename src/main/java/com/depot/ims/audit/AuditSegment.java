@@ -0,0 +1,441 @@
+package com.depot.ims.audit;
+
+import com.depot.ims.models.projections.AuditRow;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One month of archived audits in a segment file. The audits are stored in (actionTimestamp,
+ * auditId) order, in blocks of up to ROWS_PER_BLOCK rows that are each Deflate-compressed and carry
+ * a CRC32 of their uncompressed bytes. An index of the blocks, with the first and last timestamp of
+ * each, follows them, and a fixed-size footer points to the index and carries its CRC32, so a
+ * period query inflates only the blocks that overlap the period.
+ *
+ * <p>A segment is written to a temporary file, forced to disk and then moved into place, so that a
+ * segment file is either complete or absent. It is read through a memory-mapped buffer and never
+ * changes once written.
+ */
+final class AuditSegment {
+
+  static final int ROWS_PER_BLOCK = 1000;
+
+  private static final int MAGIC = 0x494d5341; // "IMSA"
+  private static final byte VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 1 + 4;
+  private static final int INDEX_ENTRY_BYTES = 8 + 4 + 4 + 4 + 4 + 8 + 8;
+  private static final int FOOTER_BYTES = 8 + 4 + 8 + 8 + 4 + 4;
+
+  private static final AuditField.Converter FIELD_CODES = new AuditField.Converter();
+
+  private final Path path;
+  private final YearMonth month;
+  private final MappedByteBuffer buffer;
+  private final Block[] blocks;
+  private final long rowCount;
+  private final long maxAuditId;
+
+  private AuditSegment(
+      Path path,
+      YearMonth month,
+      MappedByteBuffer buffer,
+      Block[] blocks,
+      long rowCount,
+      long maxAuditId) {
+    this.path = path;
+    this.month = month;
+    this.buffer = buffer;
+    this.blocks = blocks;
+    this.rowCount = rowCount;
+    this.maxAuditId = maxAuditId;
+  }
+
+  /** Where one block lies in the file, and what it holds. */
+  private static final class Block {
+    final long offset;
+    final int compressedLength;
+    final int rawLength;
+    final int rows;
+    final int crc;
+    final long firstMillis;
+    final long lastMillis;
+
+    Block(
+        long offset,
+        int compressedLength,
+        int rawLength,
+        int rows,
+        int crc,
+        long firstMillis,
+        long lastMillis) {
+      this.offset = offset;
+      this.compressedLength = compressedLength;
+      this.rawLength = rawLength;
+      this.rows = rows;
+      this.crc = crc;
+      this.firstMillis = firstMillis;
+      this.lastMillis = lastMillis;
+    }
+  }
+
+  /**
+   * Write the audits of a month to a new segment file and open it.
+   *
+   * @param path the segment file; replaced if it exists
+   * @param month the month the audits belong to
+   * @param rows the audits, in (actionTimestamp, auditId) order
+   * @return the written segment
+   * @throws IOException if the file cannot be written
+   * @throws IllegalArgumentException if the audits are out of order
+   */
+  static AuditSegment write(Path path, YearMonth month, Iterator<AuditRow> rows)
+      throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      writeFile(temporary, month, rows);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+    Files.move(
+        temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return open(path);
+  }
+
+  private static void writeFile(Path temporary, YearMonth month, Iterator<AuditRow> rows)
+      throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeInt(month.getYear() * 12 + month.getMonthValue() - 1);
+
+      List<Block> blocks = new ArrayList<>();
+      long offset = HEADER_BYTES;
+      long rowCount = 0;
+      long maxAuditId = 0;
+      AuditRow previous = null;
+      Deflater deflater = new Deflater();
+      try {
+        while (rows.hasNext()) {
+          ByteArrayOutputStream raw = new ByteArrayOutputStream(64 * ROWS_PER_BLOCK);
+          DataOutputStream rawOut = new DataOutputStream(raw);
+          long firstMillis = 0;
+          int count = 0;
+          while (count < ROWS_PER_BLOCK && rows.hasNext()) {
+            AuditRow row = rows.next();
+            if (previous != null && compare(previous, row) >= 0) {
+              throw new IllegalArgumentException("audits must be in (timestamp, id) order");
+            }
+            if (count == 0) {
+              firstMillis = row.getActionTimestamp().getTime();
+            }
+            writeRow(rawOut, row);
+            maxAuditId = Math.max(maxAuditId, row.getAuditId());
+            previous = row;
+            count++;
+          }
+          byte[] bytes = raw.toByteArray();
+          CRC32 crc = new CRC32();
+          crc.update(bytes);
+          byte[] compressed = deflate(deflater, bytes);
+          out.write(compressed);
+          blocks.add(
+              new Block(
+                  offset,
+                  compressed.length,
+                  bytes.length,
+                  count,
+                  (int) crc.getValue(),
+                  firstMillis,
+                  previous.getActionTimestamp().getTime()));
+          offset += compressed.length;
+          rowCount += count;
+        }
+      } finally {
+        deflater.end();
+      }
+
+      ByteArrayOutputStream index = new ByteArrayOutputStream(blocks.size() * INDEX_ENTRY_BYTES);
+      DataOutputStream indexOut = new DataOutputStream(index);
+      for (Block block : blocks) {
+        indexOut.writeLong(block.offset);
+        indexOut.writeInt(block.compressedLength);
+        indexOut.writeInt(block.rawLength);
+        indexOut.writeInt(block.rows);
+        indexOut.writeInt(block.crc);
+        indexOut.writeLong(block.firstMillis);
+        indexOut.writeLong(block.lastMillis);
+      }
+      byte[] indexBytes = index.toByteArray();
+      CRC32 indexCrc = new CRC32();
+      indexCrc.update(indexBytes);
+      out.write(indexBytes);
+      out.writeLong(offset);
+      out.writeInt(blocks.size());
+      out.writeLong(rowCount);
+      out.writeLong(maxAuditId);
+      out.writeInt((int) indexCrc.getValue());
+      out.writeInt(MAGIC);
+      out.flush();
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Open a segment file and check its header, footer and index.
+   *
+   * @param path the segment file
+   * @return the segment
+   * @throws IOException if the file cannot be read
+   * @throws IllegalStateException if the file is not a complete segment
+   */
+  static AuditSegment open(Path path) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    int size = buffer.capacity();
+    if (size < HEADER_BYTES + FOOTER_BYTES
+        || buffer.getInt(0) != MAGIC
+        || buffer.getInt(size - 4) != MAGIC) {
+      throw new IllegalStateException(path + " is not a complete audit segment");
+    }
+    if (buffer.get(4) != VERSION) {
+      throw new IllegalStateException(path + " has unknown segment version " + buffer.get(4));
+    }
+    int epochMonth = buffer.getInt(5);
+    final YearMonth month = YearMonth.of(epochMonth / 12, epochMonth % 12 + 1);
+
+    int footer = size - FOOTER_BYTES;
+    long indexOffset = buffer.getLong(footer);
+    int blockCount = buffer.getInt(footer + 8);
+    final long rowCount = buffer.getLong(footer + 12);
+    final long maxAuditId = buffer.getLong(footer + 20);
+    int indexCrc = buffer.getInt(footer + 28);
+    if (indexOffset < HEADER_BYTES
+        || blockCount < 0
+        || indexOffset + (long) blockCount * INDEX_ENTRY_BYTES != footer) {
+      throw new IllegalStateException(path + " has a damaged footer");
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buffer.slice((int) indexOffset, blockCount * INDEX_ENTRY_BYTES));
+    if ((int) crc.getValue() != indexCrc) {
+      throw new IllegalStateException(path + " has a damaged block index");
+    }
+    Block[] blocks = new Block[blockCount];
+    for (int i = 0; i < blockCount; i++) {
+      int entry = (int) indexOffset + i * INDEX_ENTRY_BYTES;
+      blocks[i] =
+          new Block(
+              buffer.getLong(entry),
+              buffer.getInt(entry + 8),
+              buffer.getInt(entry + 12),
+              buffer.getInt(entry + 16),
+              buffer.getInt(entry + 20),
+              buffer.getLong(entry + 24),
+              buffer.getLong(entry + 32));
+    }
+    return new AuditSegment(path, month, buffer, blocks, rowCount, maxAuditId);
+  }
+
+  /**
+   * Read the audits recorded within a period, in (actionTimestamp, auditId) order. Only the blocks
+   * that overlap the period are inflated, each as the stream reaches it.
+   *
+   * @param start start of the period, inclusive
+   * @param end end of the period, inclusive
+   * @return a stream of AuditRows
+   * @throws IllegalStateException when consumed, if a block fails its checksum
+   */
+  Stream<AuditRow> rows(Timestamp start, Timestamp end) {
+    return Arrays.stream(blocks)
+        .filter(block -> block.lastMillis >= start.getTime() && block.firstMillis <= end.getTime())
+        .flatMap(block -> readBlock(block).stream())
+        .filter(
+            row -> !row.getActionTimestamp().before(start) && !row.getActionTimestamp().after(end));
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  YearMonth getMonth() {
+    return month;
+  }
+
+  long getRowCount() {
+    return rowCount;
+  }
+
+  long getMaxAuditId() {
+    return maxAuditId;
+  }
+
+  long getSizeBytes() {
+    return buffer.capacity();
+  }
+
+  private List<AuditRow> readBlock(Block block) {
+    ByteBuffer compressed = buffer.slice((int) block.offset, block.compressedLength);
+    byte[] bytes = new byte[block.rawLength];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      int inflated = inflater.inflate(bytes);
+      if (inflated != bytes.length || !inflater.finished()) {
+        throw new IllegalStateException(path + " has a truncated block at " + block.offset);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException(path + " has a damaged block at " + block.offset, e);
+    } finally {
+      inflater.end();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    if ((int) crc.getValue() != block.crc) {
+      throw new IllegalStateException(path + " fails the checksum of the block at " + block.offset);
+    }
+    List<AuditRow> rows = new ArrayList<>(block.rows);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    try {
+      for (int i = 0; i < block.rows; i++) {
+        rows.add(readRow(in));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return rows;
+  }
+
+  private static byte[] deflate(Deflater deflater, byte[] bytes) {
+    deflater.reset();
+    deflater.setInput(bytes);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    byte[] chunk = new byte[8192];
+    while (!deflater.finished()) {
+      int length = deflater.deflate(chunk);
+      out.write(chunk, 0, length);
+    }
+    return out.toByteArray();
+  }
+
+  static int compare(AuditRow a, AuditRow b) {
+    int byTime = a.getActionTimestamp().compareTo(b.getActionTimestamp());
+    return byTime != 0 ? byTime : Long.compare(a.getAuditId(), b.getAuditId());
+  }
+
+  // which of the nullable values follow the fixed part of a row
+  private static final int HAS_ENTITY_ID = 1;
+  private static final int HAS_ITEM_ID = 2;
+  private static final int HAS_OLD_NUMBER = 4;
+  private static final int HAS_NEW_NUMBER = 8;
+  private static final int HAS_OLD_TEXT = 16;
+  private static final int HAS_NEW_TEXT = 32;
+  private static final int HAS_SNAPSHOT = 64;
+
+  private static void writeRow(DataOutputStream out, AuditRow row) throws IOException {
+    out.writeLong(row.getAuditId());
+    out.writeUTF(row.getTableName());
+    Short code = FIELD_CODES.convertToDatabaseColumn(row.getField());
+    out.writeShort(code == null ? 0 : code);
+    int present =
+        (row.getEntityId() != null ? HAS_ENTITY_ID : 0)
+            | (row.getItemId() != null ? HAS_ITEM_ID : 0)
+            | (row.getOldNumber() != null ? HAS_OLD_NUMBER : 0)
+            | (row.getNewNumber() != null ? HAS_NEW_NUMBER : 0)
+            | (row.getOldText() != null ? HAS_OLD_TEXT : 0)
+            | (row.getNewText() != null ? HAS_NEW_TEXT : 0)
+            | (row.getSnapshot() != null ? HAS_SNAPSHOT : 0);
+    out.writeByte(present);
+    if (row.getEntityId() != null) {
+      out.writeLong(row.getEntityId());
+    }
+    if (row.getItemId() != null) {
+      out.writeLong(row.getItemId());
+    }
+    if (row.getOldNumber() != null) {
+      out.writeLong(row.getOldNumber());
+    }
+    if (row.getNewNumber() != null) {
+      out.writeLong(row.getNewNumber());
+    }
+    if (row.getOldText() != null) {
+      out.writeUTF(row.getOldText());
+    }
+    if (row.getNewText() != null) {
+      out.writeUTF(row.getNewText());
+    }
+    if (row.getSnapshot() != null) {
+      out.writeInt(row.getSnapshot().length);
+      out.write(row.getSnapshot());
+    }
+    out.writeUTF(row.getAction());
+    out.writeLong(row.getActionTimestamp().getTime());
+    out.writeInt(row.getActionTimestamp().getNanos());
+  }
+
+  private static AuditRow readRow(DataInputStream in) throws IOException {
+    long auditId = in.readLong();
+    String tableName = in.readUTF();
+    short code = in.readShort();
+    int present = in.readByte();
+    Long entityId = (present & HAS_ENTITY_ID) != 0 ? in.readLong() : null;
+    Long itemId = (present & HAS_ITEM_ID) != 0 ? in.readLong() : null;
+    Long oldNumber = (present & HAS_OLD_NUMBER) != 0 ? in.readLong() : null;
+    Long newNumber = (present & HAS_NEW_NUMBER) != 0 ? in.readLong() : null;
+    String oldText = (present & HAS_OLD_TEXT) != 0 ? in.readUTF() : null;
+    String newText = (present & HAS_NEW_TEXT) != 0 ? in.readUTF() : null;
+    byte[] snapshot = null;
+    if ((present & HAS_SNAPSHOT) != 0) {
+      snapshot = new byte[in.readInt()];
+      in.readFully(snapshot);
+    }
+    String action = in.readUTF();
+    Timestamp actionTimestamp = new Timestamp(in.readLong());
+    actionTimestamp.setNanos(in.readInt());
+    return new AuditRow(
+        auditId,
+        tableName,
+        code == 0 ? null : FIELD_CODES.convertToEntityAttribute(code),
+        entityId,
+        itemId,
+        oldNumber,
+        newNumber,
+        oldText,
+        newText,
+        snapshot,
+        action,
+        actionTimestamp);
+  }
+}
@@ -0,0 +1,322 @@
+package com.depot.ims.audit;
+
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Ship;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+/**
+ * Encodes the row an INSERT or DELETE audit records in a compact binary form, in place of the row's
+ * toString(). The first byte names the kind of row; its values follow in a fixed order, each a
+ * one-byte tag and, for numbers, a zigzag variable-length integer of 7 bits per byte, or for text a
+ * length and UTF-8 bytes. Prices are kept in cents, times in epoch milliseconds and dates in epoch
+ * days. An availability records only its site id, item id and quantity, not the whole site and
+ * item.
+ *
+ * <p>Snapshots of audits written before this format hold the old text, behind a kind byte of 0.
+ */
+public final class AuditSnapshot {
+
+  private static final byte TEXT = 0;
+  private static final byte SITE = 1;
+  private static final byte ITEM = 2;
+  private static final byte AVAILABILITY = 3;
+  private static final byte SHIP = 4;
+  private static final byte SHIPMENT = 5;
+
+  private static final byte NULL = 0;
+  private static final byte NUMBER = 1;
+  private static final byte STRING = 2;
+  private static final byte TRUE = 3;
+  private static final byte FALSE = 4;
+  private static final byte MONEY = 5;
+  private static final byte TIME = 6;
+  private static final byte DATE = 7;
+
+  private AuditSnapshot() {}
+
+  /**
+   * Snapshot a site.
+   *
+   * @param site the site
+   * @return the encoded site
+   */
+  public static byte[] of(Site site) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    out.write(SITE);
+    writeNumber(out, NUMBER, site.getSiteId());
+    writeText(out, site.getSiteName());
+    writeText(out, site.getSiteLocation());
+    writeText(out, site.getSiteStatus());
+    writeNumber(
+        out,
+        DATE,
+        site.getCeaseDate() == null ? null : site.getCeaseDate().toLocalDate().toEpochDay());
+    writeBoolean(out, site.getInternalSite());
+    return out.toByteArray();
+  }
+
+  /**
+   * Snapshot an item.
+   *
+   * @param item the item
+   * @return the encoded item
+   */
+  public static byte[] of(Item item) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+    out.write(ITEM);
+    writeNumber(out, NUMBER, item.getItemId());
+    writeText(out, item.getItemName());
+    writeNumber(
+        out, MONEY, item.getItemPrice() == null ? null : Math.round(item.getItemPrice() * 100));
+    return out.toByteArray();
+  }
+
+  /**
+   * Snapshot an availability, by the ids of its site and item.
+   *
+   * @param availability the availability
+   * @return the encoded availability
+   */
+  public static byte[] of(Availability availability) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+    out.write(AVAILABILITY);
+    writeNumber(out, NUMBER, availability.getSiteId().getSiteId());
+    writeNumber(out, NUMBER, availability.getItemId().getItemId());
+    writeNumber(
+        out, NUMBER, availability.getQuantity() == null ? null : (long) availability.getQuantity());
+    return out.toByteArray();
+  }
+
+  /**
+   * Snapshot a ship, by the ids of its shipment and item.
+   *
+   * @param ship the ship
+   * @return the encoded ship
+   */
+  public static byte[] of(Ship ship) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+    out.write(SHIP);
+    writeNumber(out, NUMBER, ship.getShipmentId().getShipmentId());
+    writeNumber(out, NUMBER, ship.getItemId().getItemId());
+    writeNumber(out, NUMBER, ship.getQuantity() == null ? null : (long) ship.getQuantity());
+    return out.toByteArray();
+  }
+
+  /**
+   * Snapshot a shipment.
+   *
+   * @param shipment the shipment
+   * @return the encoded shipment
+   */
+  public static byte[] of(Shipment shipment) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    out.write(SHIPMENT);
+    writeNumber(out, NUMBER, shipment.getShipmentId());
+    writeNumber(out, NUMBER, shipment.getSource());
+    writeNumber(out, NUMBER, shipment.getDestination());
+    writeText(out, shipment.getCurrentLocation());
+    writeTime(out, shipment.getDepartureTime());
+    writeTime(out, shipment.getEstimatedArrivalTime());
+    writeTime(out, shipment.getActualArrivalTime());
+    writeText(out, shipment.getShipmentStatus());
+    return out.toByteArray();
+  }
+
+  /**
+   * Wrap the text an audit recorded before snapshots were encoded.
+   *
+   * @param text the text, e.g. the toString() of the row
+   * @return the wrapped text, or null for null text
+   */
+  public static byte[] ofText(String text) {
+    if (text == null) {
+      return null;
+    }
+    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+    byte[] bytes = new byte[utf8.length + 1];
+    bytes[0] = TEXT;
+    System.arraycopy(utf8, 0, bytes, 1, utf8.length);
+    return bytes;
+  }
+
+  /**
+   * Render a snapshot as text, in the form audits recorded it before snapshots were encoded: e.g.
+   * Site(siteId=1, siteName=..., ...), or shipmentId: 1, itemId: 2 ,quantity: 3 for a ship.
+   *
+   * @param snapshot the encoded snapshot
+   * @return the text, or null for a null snapshot
+   * @throws IllegalArgumentException if the snapshot is malformed
+   */
+  public static String render(byte[] snapshot) {
+    if (snapshot == null) {
+      return null;
+    }
+    if (snapshot.length == 0) {
+      throw new IllegalArgumentException("snapshot is empty");
+    }
+    if (snapshot[0] == TEXT) {
+      return new String(snapshot, 1, snapshot.length - 1, StandardCharsets.UTF_8);
+    }
+    int[] position = {1};
+    String text;
+    switch (snapshot[0]) {
+      case SITE:
+        text =
+            render(
+                snapshot,
+                position,
+                "Site",
+                "siteId",
+                "siteName",
+                "siteLocation",
+                "siteStatus",
+                "ceaseDate",
+                "internalSite");
+        break;
+      case ITEM:
+        text = render(snapshot, position, "Item", "itemId", "itemName", "itemPrice");
+        break;
+      case AVAILABILITY:
+        text = render(snapshot, position, "Availability", "siteId", "itemId", "quantity");
+        break;
+      case SHIP:
+        text =
+            "shipmentId: "
+                + readValue(snapshot, position)
+                + ", itemId: "
+                + readValue(snapshot, position)
+                + " ,quantity: "
+                + readValue(snapshot, position);
+        break;
+      case SHIPMENT:
+        text =
+            render(
+                snapshot,
+                position,
+                "Shipment",
+                "shipmentId",
+                "source",
+                "destination",
+                "currentLocation",
+                "departureTime",
+                "estimatedArrivalTime",
+                "actualArrivalTime",
+                "shipmentStatus");
+        break;
+      default:
+        throw new IllegalArgumentException("unknown snapshot kind " + snapshot[0]);
+    }
+    if (position[0] != snapshot.length) {
+      throw new IllegalArgumentException(
+          "snapshot has " + (snapshot.length - position[0]) + " trailing bytes");
+    }
+    return text;
+  }
+
+  private static String render(byte[] snapshot, int[] position, String name, String... fields) {
+    StringBuilder text = new StringBuilder(name).append('(');
+    for (int i = 0; i < fields.length; i++) {
+      if (i > 0) {
+        text.append(", ");
+      }
+      text.append(fields[i]).append('=').append(readValue(snapshot, position));
+    }
+    return text.append(')').toString();
+  }
+
+  private static String readValue(byte[] snapshot, int[] position) {
+    if (position[0] >= snapshot.length) {
+      throw new IllegalArgumentException("snapshot ends before its last value");
+    }
+    byte tag = snapshot[position[0]++];
+    switch (tag) {
+      case NULL:
+        return "null";
+      case TRUE:
+        return "true";
+      case FALSE:
+        return "false";
+      case STRING:
+        int length = Math.toIntExact(readVarLong(snapshot, position));
+        if (length > snapshot.length - position[0]) {
+          throw new IllegalArgumentException("snapshot ends inside a text");
+        }
+        String text = new String(snapshot, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        return text;
+      case NUMBER:
+        return Long.toString(readZigzag(snapshot, position));
+      case MONEY:
+        return Double.toString(readZigzag(snapshot, position) / 100.0);
+      case TIME:
+        return new Timestamp(readZigzag(snapshot, position)).toString();
+      case DATE:
+        return LocalDate.ofEpochDay(readZigzag(snapshot, position)).toString();
+      default:
+        throw new IllegalArgumentException("unknown snapshot value tag " + tag);
+    }
+  }
+
+  private static void writeNumber(ByteArrayOutputStream out, byte tag, Long value) {
+    if (value == null) {
+      out.write(NULL);
+      return;
+    }
+    out.write(tag);
+    writeVarLong(out, (value << 1) ^ (value >> 63));
+  }
+
+  private static void writeTime(ByteArrayOutputStream out, Timestamp time) {
+    writeNumber(out, TIME, time == null ? null : time.getTime());
+  }
+
+  private static void writeBoolean(ByteArrayOutputStream out, Boolean value) {
+    out.write(value == null ? NULL : value ? TRUE : FALSE);
+  }
+
+  private static void writeText(ByteArrayOutputStream out, String text) {
+    if (text == null) {
+      out.write(NULL);
+      return;
+    }
+    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+    out.write(STRING);
+    writeVarLong(out, utf8.length);
+    out.write(utf8, 0, utf8.length);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    long rest = value;
+    while ((rest & ~0x7FL) != 0) {
+      out.write((int) ((rest & 0x7F) | 0x80));
+      rest >>>= 7;
+    }
+    out.write((int) rest);
+  }
+
+  private static long readZigzag(byte[] bytes, int[] position) {
+    long zigzag = readVarLong(bytes, position);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  private static long readVarLong(byte[] bytes, int[] position) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (position[0] >= bytes.length) {
+        throw new IllegalArgumentException("snapshot ends inside a number");
+      }
+      byte b = bytes[position[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("snapshot holds a number longer than 64 bits");
+  }
+}
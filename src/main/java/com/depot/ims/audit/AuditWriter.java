@@ -0,0 +1,411 @@
+package com.depot.ims.audit;
+
+import com.depot.ims.models.Audit;
+import com.depot.ims.models.AuditOutbox;
+import com.depot.ims.repositories.AuditOutboxRepository;
+import com.depot.ims.sharding.ShardContext;
+import com.depot.ims.threads.BackgroundThreads;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Takes audits off the request path. Audits recorded inside a transaction are buffered for that
+ * transaction and handed over according to the configured AuditDurability; the background writer
+ * thread drains a bounded queue and writes it as multi-row INSERTs, once batch-size audits are
+ * waiting or flush-interval-ms has passed.
+ *
+ * <p>The queue is a lock-free linked queue bounded by an atomic counter. When it is full the
+ * request thread writes its own audits instead of waiting, so backpressure shows up as callerRuns
+ * in the stats rather than as blocked requests or lost audits.
+ */
+@Component
+public class AuditWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(AuditWriter.class);
+
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  private static final TypeReference<List<Audit>> AUDIT_LIST = new TypeReference<>() {};
+
+  private static final AuditField.Converter FIELD_CODES = new AuditField.Converter();
+
+  private static final String INSERT_AUDIT =
+      "insert into audits (table_name, field_code, entity_id, item_id, old_number, new_number,"
+          + " old_text, new_text, snapshot, action, action_timestamp)"
+          + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AuditOutboxRepository auditOutboxRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final TransactionTemplate callerTransactionTemplate;
+  private final AuditDurability mode;
+  private final int capacity;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final BackgroundThreads backgroundThreads;
+
+  private final ConcurrentLinkedQueue<Audit> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger depth = new AtomicInteger();
+  private final AtomicInteger maxDepth = new AtomicInteger();
+  // outbox rows may be waiting, e.g. left over from before a restart
+  private final AtomicBoolean outboxPending = new AtomicBoolean(true);
+  private final ReentrantLock relayLock = new ReentrantLock();
+
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder callerRuns = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder flushNanos = new LongAdder();
+
+  private volatile Thread writerThread;
+  private volatile boolean running;
+
+  /**
+   * Constructor for AuditWriter.
+   *
+   * @param jdbcTemplate used for the multi-row audit inserts
+   * @param auditOutboxRepository The AuditOutboxRepository instance.
+   * @param transactionManager used to relay each outbox batch in its own transaction
+   * @param mode the AuditDurability, e.g. fire-and-forget
+   * @param capacity the most audits the queue holds before callers write their own
+   * @param batchSize the most audits written by one INSERT
+   * @param flushIntervalMillis the longest a queued audit waits for its batch to fill
+   * @param backgroundThreads creates the writer thread, virtual in virtual-thread mode
+   */
+  public AuditWriter(
+      JdbcTemplate jdbcTemplate,
+      AuditOutboxRepository auditOutboxRepository,
+      PlatformTransactionManager transactionManager,
+      @Value("${ims.audit.mode:fire-and-forget}") String mode,
+      @Value("${ims.audit.queue-capacity:10000}") int capacity,
+      @Value("${ims.audit.batch-size:200}") int batchSize,
+      @Value("${ims.audit.flush-interval-ms:50}") long flushIntervalMillis,
+      BackgroundThreads backgroundThreads) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.auditOutboxRepository = auditOutboxRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.callerTransactionTemplate = new TransactionTemplate(transactionManager);
+    // audits that overflow the queue after a commit must not join the finished transaction
+    this.callerTransactionTemplate.setPropagationBehavior(
+        TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.mode = AuditDurability.parse(mode);
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    this.backgroundThreads = backgroundThreads;
+  }
+
+  /** Start the background writer thread. */
+  @PostConstruct
+  public void start() {
+    running = true;
+    writerThread = backgroundThreads.newThread("audit-writer", this::run);
+    writerThread.start();
+  }
+
+  /** Stop the background writer thread once it has written everything still queued. */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    Thread thread = writerThread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+  }
+
+  /**
+   * Record audits. Inside a transaction they are handed over when it completes, and dropped if it
+   * rolls back; outside one they are handed over at once.
+   *
+   * @param audits the audits, with their actionTimestamp set
+   */
+  public void submit(List<Audit> audits) {
+    if (audits.isEmpty()) {
+      return;
+    }
+    submitted.add(audits.size());
+    if (TransactionSynchronizationManager.isSynchronizationActive()
+        && TransactionSynchronizationManager.isActualTransactionActive()) {
+      transactionBuffer().addAll(audits);
+      return;
+    }
+    if (mode == AuditDurability.FIRE_AND_FORGET) {
+      enqueue(audits);
+    } else if (mode == AuditDurability.FLUSH_BEFORE_COMMIT) {
+      insertAudits(audits);
+    } else {
+      insertOutbox(audits);
+      wakeRelay();
+    }
+  }
+
+  /**
+   * Write everything queued or waiting in the outbox on the calling thread, e.g. before reading
+   * audits back in a test.
+   */
+  public void flush() {
+    drainQueue();
+    if (mode == AuditDurability.OUTBOX) {
+      relayOutbox();
+    }
+  }
+
+  /**
+   * Snapshot the writer's counters.
+   *
+   * @return the current AuditWriterStats
+   */
+  public AuditWriterStats stats() {
+    long batchCount = batches.sum();
+    return new AuditWriterStats(
+        mode,
+        depth.get(),
+        capacity,
+        maxDepth.get(),
+        submitted.sum(),
+        written.sum(),
+        batchCount,
+        callerRuns.sum(),
+        failed.sum(),
+        batchCount == 0 ? 0 : flushNanos.sum() / 1_000_000.0 / batchCount);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Audit> transactionBuffer() {
+    List<Audit> buffer = (List<Audit>) TransactionSynchronizationManager.getResource(this);
+    if (buffer != null) {
+      return buffer;
+    }
+    List<Audit> newBuffer = new ArrayList<>();
+    TransactionSynchronizationManager.bindResource(this, newBuffer);
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void beforeCommit(boolean readOnly) {
+            if (mode == AuditDurability.FLUSH_BEFORE_COMMIT) {
+              insertAudits(newBuffer);
+            } else if (mode == AuditDurability.OUTBOX) {
+              insertOutbox(newBuffer);
+            }
+          }
+
+          @Override
+          public void afterCommit() {
+            if (mode == AuditDurability.FIRE_AND_FORGET) {
+              enqueue(newBuffer);
+            } else if (mode == AuditDurability.OUTBOX) {
+              wakeRelay();
+            }
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(AuditWriter.this);
+          }
+        });
+    return newBuffer;
+  }
+
+  private void enqueue(List<Audit> audits) {
+    List<Audit> overflow = null;
+    for (Audit audit : audits) {
+      int queued = depth.incrementAndGet();
+      if (queued > capacity || !running) {
+        depth.decrementAndGet();
+        if (overflow == null) {
+          overflow = new ArrayList<>();
+        }
+        overflow.add(audit);
+      } else {
+        queue.offer(audit);
+        maxDepth.accumulateAndGet(queued, Math::max);
+      }
+    }
+    if (overflow != null) {
+      callerRuns.add(overflow.size());
+      writeOnCaller(overflow);
+    }
+    if (depth.get() >= batchSize) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  /**
+   * Write audits the queue has no room for on the calling thread, in a transaction of their own.
+   * After a commit the thread still holds the connection of the finished transaction, which would
+   * never commit them. A failure is logged and counted, not thrown at a caller whose own work has
+   * already committed.
+   */
+  private void writeOnCaller(List<Audit> audits) {
+    try {
+      ShardContext.on(
+          ShardContext.HOME,
+          () -> {
+            callerTransactionTemplate.executeWithoutResult(status -> insertAudits(audits));
+            return null;
+          });
+    } catch (RuntimeException e) {
+      log.error("Could not write {} audits on the caller", audits.size(), e);
+    }
+  }
+
+  private void wakeRelay() {
+    outboxPending.set(true);
+    LockSupport.unpark(writerThread);
+  }
+
+  private void run() {
+    while (running) {
+      if (depth.get() < batchSize) {
+        LockSupport.parkNanos(this, flushIntervalNanos);
+      }
+      try {
+        drainQueue();
+        if (mode == AuditDurability.OUTBOX && outboxPending.getAndSet(false)) {
+          relayOutbox();
+        }
+      } catch (RuntimeException e) {
+        log.error("Audit writer failed", e);
+      }
+    }
+    flush();
+  }
+
+  private void drainQueue() {
+    List<Audit> batch = new ArrayList<>(batchSize);
+    Audit audit;
+    while ((audit = queue.poll()) != null) {
+      depth.decrementAndGet();
+      batch.add(audit);
+      if (batch.size() == batchSize) {
+        insertAudits(batch);
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (!batch.isEmpty()) {
+      insertAudits(batch);
+    }
+  }
+
+  /** Move the outbox into the Audits table, one transaction per batch of outbox rows. */
+  private void relayOutbox() {
+    relayLock.lock();
+    try {
+      int relayed;
+      do {
+        relayed =
+            transactionTemplate.execute(
+                status -> {
+                  List<AuditOutbox> rows =
+                      auditOutboxRepository.findOldest(PageRequest.of(0, batchSize));
+                  List<Audit> audits = new ArrayList<>();
+                  for (AuditOutbox row : rows) {
+                    audits.addAll(readPayload(row.getPayload()));
+                  }
+                  insertAudits(audits);
+                  auditOutboxRepository.deleteAllInBatch(rows);
+                  return rows.size();
+                });
+      } while (relayed == batchSize);
+    } catch (RuntimeException e) {
+      // the rows stay in the outbox and are retried on the next wake-up
+      outboxPending.set(true);
+      log.error("Could not relay the audit outbox", e);
+    } finally {
+      relayLock.unlock();
+    }
+  }
+
+  private void insertOutbox(List<Audit> audits) {
+    auditOutboxRepository.save(
+        AuditOutbox.builder()
+            .payload(writePayload(audits))
+            .createdAt(Timestamp.from(Instant.now()))
+            .build());
+  }
+
+  /**
+   * Write audits with one batched INSERT per batch-size audits. With the MySQL driver's
+   * rewriteBatchedStatements each batch is sent as a single multi-row INSERT. Audits always go to
+   * the home shard, whichever shard the caller works on.
+   */
+  private void insertAudits(List<Audit> audits) {
+    if (audits.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      ShardContext.on(
+          ShardContext.HOME,
+          () ->
+              jdbcTemplate.batchUpdate(
+                  INSERT_AUDIT,
+                  audits,
+                  batchSize,
+                  (statement, audit) -> {
+                    statement.setString(1, audit.getTableName());
+                    statement.setObject(
+                        2, FIELD_CODES.convertToDatabaseColumn(audit.getField()), Types.SMALLINT);
+                    statement.setObject(3, audit.getEntityId(), Types.BIGINT);
+                    statement.setObject(4, audit.getItemId(), Types.BIGINT);
+                    statement.setObject(5, audit.getOldNumber(), Types.BIGINT);
+                    statement.setObject(6, audit.getNewNumber(), Types.BIGINT);
+                    statement.setString(7, audit.getOldText());
+                    statement.setString(8, audit.getNewText());
+                    statement.setBytes(9, audit.getSnapshot());
+                    statement.setString(10, audit.getAction());
+                    statement.setTimestamp(11, audit.getActionTimestamp());
+                  }));
+      written.add(audits.size());
+      batches.add((audits.size() + batchSize - 1) / batchSize);
+      flushNanos.add(System.nanoTime() - start);
+    } catch (RuntimeException e) {
+      failed.add(audits.size());
+      throw e;
+    }
+  }
+
+  private static String writePayload(List<Audit> audits) {
+    try {
+      return JSON.writeValueAsString(audits);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize audits", e);
+    }
+  }
+
+  private static List<Audit> readPayload(String payload) {
+    try {
+      return JSON.readValue(payload, AUDIT_LIST);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not read audit outbox payload", e);
+    }
+  }
+}
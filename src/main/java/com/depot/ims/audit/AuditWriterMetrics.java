@@ -0,0 +1,111 @@
+package com.depot.ims.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.function.ToDoubleFunction;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the AuditWriter counters as meters, tagged with the durability mode. A queue depth
+ * close to its capacity, or a rising caller-runs count, means audits are written slower than
+ * requests produce them.
+ */
+@Component
+public class AuditWriterMetrics implements MeterBinder {
+
+  private final AuditWriter auditWriter;
+
+  /**
+   * Constructor for AuditWriterMetrics.
+   *
+   * @param auditWriter the writer to observe
+   */
+  public AuditWriterMetrics(AuditWriter auditWriter) {
+    this.auditWriter = auditWriter;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    String mode = auditWriter.stats().getMode().name().toLowerCase().replace('_', '-');
+    gauge(
+        registry,
+        "ims.audit.queue.depth",
+        "Audits queued for the writer thread",
+        mode,
+        writer -> writer.stats().getQueueDepth());
+    gauge(
+        registry,
+        "ims.audit.queue.capacity",
+        "Audits the queue holds before callers write",
+        mode,
+        writer -> writer.stats().getQueueCapacity());
+    gauge(
+        registry,
+        "ims.audit.queue.max.depth",
+        "Deepest the queue has been since startup",
+        mode,
+        writer -> writer.stats().getMaxQueueDepth());
+    gauge(
+        registry,
+        "ims.audit.flush.average",
+        "Average milliseconds per written batch",
+        mode,
+        writer -> writer.stats().getAverageFlushMillis());
+    counter(
+        registry,
+        "ims.audit.submitted",
+        "Audits submitted by services",
+        mode,
+        writer -> writer.stats().getSubmitted());
+    counter(
+        registry,
+        "ims.audit.written",
+        "Audits inserted into the audits table",
+        mode,
+        writer -> writer.stats().getWritten());
+    counter(
+        registry,
+        "ims.audit.batches",
+        "Multi-row inserts of audits",
+        mode,
+        writer -> writer.stats().getBatches());
+    counter(
+        registry,
+        "ims.audit.caller.runs",
+        "Audits a request thread wrote itself because the queue was full",
+        mode,
+        writer -> writer.stats().getCallerRuns());
+    counter(
+        registry,
+        "ims.audit.failed",
+        "Audits that could not be written",
+        mode,
+        writer -> writer.stats().getFailed());
+  }
+
+  private void gauge(
+      MeterRegistry registry,
+      String name,
+      String description,
+      String mode,
+      ToDoubleFunction<AuditWriter> value) {
+    Gauge.builder(name, auditWriter, value)
+        .tag("mode", mode)
+        .description(description)
+        .register(registry);
+  }
+
+  private void counter(
+      MeterRegistry registry,
+      String name,
+      String description,
+      String mode,
+      ToDoubleFunction<AuditWriter> value) {
+    FunctionCounter.builder(name, auditWriter, value)
+        .tag("mode", mode)
+        .description(description)
+        .register(registry);
+  }
+}
@@ -0,0 +1,23 @@
+package com.depot.ims.audit;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Point-in-time counters of the AuditWriter. callerRuns counts the audits the request thread had to
+ * write itself because the queue was full, i.e. how often backpressure reached the request path.
+ */
+@Data
+@AllArgsConstructor
+public class AuditWriterStats {
+  private final AuditDurability mode;
+  private final int queueDepth;
+  private final int queueCapacity;
+  private final int maxQueueDepth;
+  private final long submitted;
+  private final long written;
+  private final long batches;
+  private final long callerRuns;
+  private final long failed;
+  private final double averageFlushMillis;
+}
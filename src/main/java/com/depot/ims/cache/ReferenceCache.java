@@ -0,0 +1,130 @@
+package com.depot.ims.cache;
+
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.cache.CacheManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The second-level cache of sites and items, as seen by the services: evicts what they changed and
+ * reports how well the cache serves the lookups. Hibernate fills the regions itself, from the
+ * entities it loads and the results of the cacheable queries of SiteRepository and ItemRepository.
+ * Without ReferenceCacheConfiguration nothing is cached, evicting does nothing and the stats are
+ * empty.
+ */
+@Component
+public class ReferenceCache {
+
+  /** The region of the Site entities. */
+  public static final String SITES = "sites";
+
+  /** The region of the Item entities. */
+  public static final String ITEMS = "items";
+
+  /** The region of the query results, which hold the ids of the entities they found. */
+  public static final String QUERIES = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME;
+
+  private final SessionFactory sessionFactory;
+  private final ObjectProvider<CacheManager> cacheManager;
+
+  /**
+   * Constructor for ReferenceCache.
+   *
+   * @param entityManagerFactory the application's EntityManagerFactory, whose cache this evicts
+   * @param cacheManager the cache manager of ReferenceCacheConfiguration, if the cache is enabled
+   */
+  public ReferenceCache(
+      EntityManagerFactory entityManagerFactory, ObjectProvider<CacheManager> cacheManager) {
+    this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    this.cacheManager = cacheManager;
+  }
+
+  /**
+   * Evict a site, and every cached query result, once the current transaction has committed.
+   *
+   * @param siteId the id of the site that was changed
+   */
+  public void evictSite(Long siteId) {
+    evictAfterCommit(Site.class, siteId);
+  }
+
+  /**
+   * Evict an item, and every cached query result, once the current transaction has committed.
+   *
+   * @param itemId the id of the item that was changed
+   */
+  public void evictItem(Long itemId) {
+    evictAfterCommit(Item.class, itemId);
+  }
+
+  /**
+   * Take a snapshot of the counters of each region.
+   *
+   * @return one entry per region, or none if the cache is disabled
+   */
+  public List<ReferenceCacheStats> stats() {
+    List<ReferenceCacheStats> stats = new ArrayList<>();
+    regions()
+        .forEach(
+            (name, region) -> {
+              CacheStats counters = region.stats();
+              stats.add(
+                  new ReferenceCacheStats(
+                      name,
+                      counters.hitCount(),
+                      counters.missCount(),
+                      counters.evictionCount(),
+                      region.estimatedSize()));
+            });
+    return stats;
+  }
+
+  /**
+   * The Caffeine cache behind each region, by region name.
+   *
+   * @return the regions, or none if the cache is disabled
+   */
+  Map<String, Cache<?, ?>> regions() {
+    Map<String, Cache<?, ?>> regions = new LinkedHashMap<>();
+    CacheManager manager = cacheManager.getIfAvailable();
+    if (manager != null && !manager.isClosed()) {
+      for (String name : List.of(SITES, ITEMS, QUERIES)) {
+        regions.put(name, manager.getCache(name).unwrap(Cache.class));
+      }
+    }
+    return regions;
+  }
+
+  private void evictAfterCommit(Class<?> entity, Long id) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      // evicting earlier would let a concurrent read cache the row as it was before the commit
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              evict(entity, id);
+            }
+          });
+    } else {
+      evict(entity, id);
+    }
+  }
+
+  private void evict(Class<?> entity, Long id) {
+    org.hibernate.Cache cache = sessionFactory.getCache();
+    cache.evictEntityData(entity, id);
+    cache.evictDefaultQueryRegion();
+  }
+}
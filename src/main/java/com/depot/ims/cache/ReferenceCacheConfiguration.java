@@ -0,0 +1,97 @@
+package com.depot.ims.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Turns on Hibernate's second-level and query cache for the reference data, sites and items. Each
+ * region is a Caffeine cache behind the JCache API: bounded by ims.reference-cache.max-entries and
+ * evicted by frequency and recency (W-TinyLFU), and expiring ims.reference-cache.ttl-seconds after
+ * it was written. Hibernate keeps the regions current on writes through this instance; the TTL
+ * bounds how long the writes of other instances go unseen.
+ *
+ * <p>Set ims.reference-cache.enabled=false to read sites and items from the database every time.
+ */
+@Configuration
+@ConditionalOnProperty(
+    name = "ims.reference-cache.enabled",
+    havingValue = "true",
+    matchIfMissing = true)
+public class ReferenceCacheConfiguration {
+
+  private static final AtomicInteger MANAGERS = new AtomicInteger();
+
+  /**
+   * The cache manager holding the regions, created up front with their bounds.
+   *
+   * @param maxEntries the most sites, and the most items, held at once
+   * @param queryMaxEntries the most query results held at once
+   * @param ttlSeconds how long an entry is kept after it was written
+   * @return the cache manager, closed with the application context
+   */
+  @Bean(destroyMethod = "close")
+  public CacheManager referenceCacheManager(
+      @Value("${ims.reference-cache.max-entries:10000}") long maxEntries,
+      @Value("${ims.reference-cache.query-max-entries:10000}") long queryMaxEntries,
+      @Value("${ims.reference-cache.ttl-seconds:300}") long ttlSeconds) {
+    // one manager per application context, so that contexts sharing a JVM share no regions
+    CacheManager cacheManager =
+        Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+            .getCacheManager(
+                URI.create("ims-reference-cache-" + MANAGERS.incrementAndGet()),
+                ReferenceCacheConfiguration.class.getClassLoader());
+    OptionalLong ttl = OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds));
+    cacheManager.createCache(ReferenceCache.SITES, region(OptionalLong.of(maxEntries), ttl));
+    cacheManager.createCache(ReferenceCache.ITEMS, region(OptionalLong.of(maxEntries), ttl));
+    cacheManager.createCache(ReferenceCache.QUERIES, region(OptionalLong.of(queryMaxEntries), ttl));
+    // tells cached query results from ones a later write made stale, so it must never lose entries
+    cacheManager.createCache(
+        RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+        region(OptionalLong.empty(), OptionalLong.empty()));
+    return cacheManager;
+  }
+
+  /**
+   * Point Hibernate's JCache region factory at the regions.
+   *
+   * @param referenceCacheManager the cache manager holding the regions
+   * @return the customizer Spring Boot applies before building the EntityManagerFactory
+   */
+  @Bean
+  public HibernatePropertiesCustomizer referenceCacheCustomizer(
+      CacheManager referenceCacheManager) {
+    return properties -> {
+      properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+      properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+      properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+      properties.put(ConfigSettings.CACHE_MANAGER, referenceCacheManager);
+      // a region missing from referenceCacheManager is a mapping mistake, not a reason to go
+      // unbounded
+      properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+    };
+  }
+
+  private static CaffeineConfiguration<Object, Object> region(
+      OptionalLong maximumSize, OptionalLong expireAfterWrite) {
+    return new CaffeineConfiguration<>()
+        .setMaximumSize(maximumSize)
+        .setExpireAfterWrite(expireAfterWrite)
+        // Hibernate already stores disassembled copies of the entities, so keep them by reference
+        .setStoreByValue(false)
+        .setNativeStatisticsEnabled(true);
+  }
+}
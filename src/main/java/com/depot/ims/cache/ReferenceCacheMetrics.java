@@ -0,0 +1,32 @@
+package com.depot.ims.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the counters of each ReferenceCache region as the standard cache meters: cache.gets
+ * tagged hit or miss, cache.puts, cache.evictions and cache.size, each tagged with the region.
+ */
+@Component
+public class ReferenceCacheMetrics implements MeterBinder {
+
+  private final ReferenceCache referenceCache;
+
+  /**
+   * Constructor for ReferenceCacheMetrics.
+   *
+   * @param referenceCache the cache to observe
+   */
+  public ReferenceCacheMetrics(ReferenceCache referenceCache) {
+    this.referenceCache = referenceCache;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    referenceCache
+        .regions()
+        .forEach((name, region) -> CaffeineCacheMetrics.monitor(registry, region, name));
+  }
+}
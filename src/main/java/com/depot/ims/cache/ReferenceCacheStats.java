@@ -0,0 +1,20 @@
+package com.depot.ims.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** A point-in-time snapshot of the counters of one ReferenceCache region. */
+@Data
+@AllArgsConstructor
+public class ReferenceCacheStats {
+  // name of the region: sites, items or the query results
+  private final String region;
+  // number of lookups answered from the region
+  private final long hits;
+  // number of lookups that had to go to the database
+  private final long misses;
+  // number of entries dropped for size or for their TTL
+  private final long evictions;
+  // approximate number of entries held
+  private final long size;
+}
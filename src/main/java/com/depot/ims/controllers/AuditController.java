@@ -2,12 +2,14 @@ package com.depot.ims.controllers;
 
 import com.depot.ims.repositories.AuditRepository;
 import com.depot.ims.services.AuditService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * AuditController class provides API endpoints for managing Audits within the Inventory Management
@@ -27,14 +29,34 @@ public class AuditController {
     this.auditService = auditService;
   }
 
+  // page size used when the client pages without giving a limit
+  private static final int DEFAULT_PAGE_SIZE = 100;
+
   /**
-   * Get all audits by using the corresponding method in auditService.
+   * Get all audits by using the corresponding method in auditService. When limit or after is given,
+   * a single keyset page is returned instead of the whole table.
    *
+   * @param limit the page size, from 1 to 1000
+   * @param after the nextCursor of the previous page
    * @return ResponseEntity that contains the result of this operation
    */
   @GetMapping
-  public ResponseEntity<?> getAllAudits() {
-    return auditService.findAll();
+  public ResponseEntity<?> getAllAudits(
+      @RequestParam(required = false) Integer limit, @RequestParam(required = false) String after) {
+    if (limit == null && after == null) {
+      return auditService.findAll();
+    }
+    return auditService.findAuditsPage(after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+  }
+
+  /**
+   * Stream all audits as newline-delimited JSON.
+   *
+   * @return ResponseEntity whose body writes one audit per line
+   */
+  @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAllAudits() {
+    return auditService.streamAudits();
   }
 
   /**
@@ -42,11 +64,51 @@ public class AuditController {
    * auditService class.
    *
    * @param tableName the name of the table that the user want to search by for audits
+   * @param limit the page size, from 1 to 1000
+   * @param after the nextCursor of the previous page
    * @return ResponseEntity that contains the result of this operation
    */
   @GetMapping("/onTable")
-  public ResponseEntity<?> getAuditOnTable(@RequestParam String tableName) {
-    return auditService.findAuditsOnTable(tableName);
+  public ResponseEntity<?> getAuditOnTable(
+      @RequestParam String tableName,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String after) {
+    if (limit == null && after == null) {
+      return auditService.findAuditsOnTable(tableName);
+    }
+    return auditService.findAuditsOnTablePage(
+        tableName, after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+  }
+
+  /**
+   * Stream the audits that relate to a specific table as newline-delimited JSON.
+   *
+   * @param tableName the name of the table that the user want to search by for audits
+   * @return ResponseEntity whose body writes one audit per line
+   */
+  @GetMapping(value = "/onTable/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAuditsOnTable(@RequestParam String tableName) {
+    return auditService.streamAuditsOnTable(tableName);
+  }
+
+  /**
+   * Get one page of the audits of one row, e.g. every change of one site, by using the
+   * corresponding method in auditService class.
+   *
+   * @param tableName the table of the row
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param limit the page size, from 1 to 1000
+   * @param after the nextCursor of the previous page
+   * @return ResponseEntity that contains the result of this operation
+   */
+  @GetMapping("/onEntity")
+  public ResponseEntity<?> getAuditsOnEntity(
+      @RequestParam String tableName,
+      @RequestParam Long entityId,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String after) {
+    return auditService.findAuditsOnEntityPage(
+        tableName, entityId, after, limit == null ? DEFAULT_PAGE_SIZE : limit);
   }
 
   /**
@@ -55,11 +117,43 @@ public class AuditController {
    *
    * @param start the start of the time period. Format: YYYY-MM-DD
    * @param end the end of the time period. Format: YYYY-MM-DD
+   * @param limit the page size, from 1 to 1000
+   * @param after the nextCursor of the previous page
    * @return ResponseEntity that contains the result of this operation
    */
   @GetMapping("/betweenPeriod")
   public ResponseEntity<?> getAuditsBetweenPeriod(
+      @RequestParam String start,
+      @RequestParam String end,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String after) {
+    if (limit == null && after == null) {
+      return auditService.findAuditsBetweenPeriod(start, end);
+    }
+    return auditService.findAuditsBetweenPeriodPage(
+        start, end, after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+  }
+
+  /**
+   * Stream the audits recorded between a specific time period as newline-delimited JSON.
+   *
+   * @param start the start of the time period. Format: YYYY-MM-DD
+   * @param end the end of the time period. Format: YYYY-MM-DD
+   * @return ResponseEntity whose body writes one audit per line
+   */
+  @GetMapping(value = "/betweenPeriod/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAuditsBetweenPeriod(
       @RequestParam String start, @RequestParam String end) {
-    return auditService.findAuditsBetweenPeriod(start, end);
+    return auditService.streamAuditsBetweenPeriod(start, end);
+  }
+
+  /**
+   * Get the queue depth, throughput and backpressure counters of the audit writer.
+   *
+   * @return ResponseEntity that contains the current audit writer statistics
+   */
+  @GetMapping("/writerStats")
+  public ResponseEntity<?> getWriterStats() {
+    return auditService.getWriterStats();
   }
 }
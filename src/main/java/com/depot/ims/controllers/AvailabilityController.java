@@ -1,10 +1,14 @@
 package com.depot.ims.controllers;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.Availability;
 import com.depot.ims.repositories.AvailabilityRepository;
 import com.depot.ims.repositories.ItemRepository;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ListingRequest;
 import com.depot.ims.services.AvailabilityService;
+import com.depot.ims.services.ListingService;
+import com.depot.ims.sharding.ShardRouter;
 import java.util.Map;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -17,13 +21,12 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * AvailabilityController class provides API endpoints for managing availability within the
  * Inventory Management System. This controller supports operations such as creating, updating, and
- * fetching availability details, or using availabilities table to fetch sites or items
- * details.
+ * fetching availability details, or using availabilities table to fetch sites or items details.
  */
 @RestController
 @RequestMapping(value = "/availabilities", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -35,6 +38,8 @@ public class AvailabilityController {
   private final SiteRepository siteRepository;
   private final ItemRepository itemRepository;
   private final AvailabilityService availabilityService;
+  private final ListingService listingService;
+  private final ShardRouter shardRouter;
 
   /**
    * Constructor for Availability Controller.
@@ -43,26 +48,50 @@ public class AvailabilityController {
    * @param availabilityRepository Repository for item data access.
    * @param siteRepository Repository for site data access.
    * @param itemRepository Repository for item data access.
+   * @param listingService Service for paged, projected listings.
+   * @param shardRouter gathers availabilities from every shard.
    */
   public AvailabilityController(
       AvailabilityService availabilityService,
       AvailabilityRepository availabilityRepository,
       SiteRepository siteRepository,
-      ItemRepository itemRepository) {
+      ItemRepository itemRepository,
+      ListingService listingService,
+      ShardRouter shardRouter) {
     this.availabilityRepository = availabilityRepository;
     this.siteRepository = siteRepository;
     this.itemRepository = itemRepository;
     this.availabilityService = availabilityService;
+    this.listingService = listingService;
+    this.shardRouter = shardRouter;
   }
 
   /**
-   * Endpoint to retrieve all availabilities.
+   * Endpoint to retrieve all availabilities. When any listing parameter is given, returns one
+   * ListingPage instead, holding only the requested fields.
    *
+   * @param listing page, size, after, sort and fields
    * @return ResponseEntity with the list of all availabilities.
    */
   @GetMapping
-  public ResponseEntity<?> getAllAvailabilities() {
-    return ResponseEntity.ok(this.availabilityRepository.findAll());
+  public ResponseEntity<?> getAllAvailabilities(ListingRequest listing) {
+    if (listing.isRequested()) {
+      return listingService.list(Listings.AVAILABILITIES, listing);
+    }
+    return ResponseEntity.ok(shardRouter.gather(this.availabilityRepository::findAll));
+  }
+
+  /**
+   * Endpoint to stream all availabilities, or those of the sites at one location, as
+   * newline-delimited JSON, for exports too large to build in memory.
+   *
+   * @param siteLocation location of the sites to export; every site if absent
+   * @return ResponseEntity whose body writes one availability per line
+   */
+  @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamAvailabilities(
+      @RequestParam(value = "siteLocation", required = false) String siteLocation) {
+    return this.availabilityService.streamAvailabilities(siteLocation);
   }
 
   /**
@@ -97,17 +126,37 @@ public class AvailabilityController {
   }
 
   /**
-   * Endpoint to fetch a list of availability specific by site id.
+   * Endpoint to fetch a list of availability specific by site id. With view=ids, returns only the
+   * siteId, itemId and quantity of each availability instead of its whole site and item.
    *
    * @param siteId The ID of the site
+   * @param view "ids" for the narrow form, or absent for the availabilities
    * @return ResponseEntity with the details of the list of availabilities.
    */
   @GetMapping("/site")
   public ResponseEntity<?> getAvailability(
-      @RequestParam(value = "siteId", required = false) Long siteId) {
+      @RequestParam(value = "siteId", required = false) Long siteId,
+      @RequestParam(value = "view", required = false) String view) {
+    if ("ids".equals(view)) {
+      return this.availabilityService.getStockLevels(siteId);
+    }
     return this.availabilityService.getAvailability((siteId));
   }
 
+  /**
+   * Endpoint to fetch the stock levels of a site as they were at a past moment.
+   *
+   * @param siteId The ID of the site
+   * @param at the moment, e.g. 2024-05-07T10:00:00, or 2024-05-07 for the end of that day
+   * @return ResponseEntity with the siteId, itemId and quantity of each item the site held then.
+   */
+  @GetMapping("/history")
+  public ResponseEntity<?> getStockHistory(
+      @RequestParam(value = "siteId", required = false) Long siteId,
+      @RequestParam(value = "at") String at) {
+    return this.availabilityService.getStockHistory(siteId, at);
+  }
+
   /**
    * Endpoint to fetch a list of sites that contains the items with the given item id.
    *
@@ -120,6 +169,18 @@ public class AvailabilityController {
     return this.availabilityService.getSitesByItems(items);
   }
 
+  /**
+   * Endpoint to fetch a list of sites that can fulfil a whole order. Accepts a JSON object mapping
+   * each item id to the quantity needed.
+   *
+   * @param order the quantity needed, keyed by item id
+   * @return ResponseEntity with the list of sites holding enough of every item.
+   */
+  @PostMapping(value = "/searchByOrder", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> getSitesByOrder(@RequestBody Map<Long, Integer> order) {
+    return this.availabilityService.getSitesByOrder(order);
+  }
+
   /**
    * Endpoint to fetch a list of availability specific by item id.
    *
@@ -145,4 +206,14 @@ public class AvailabilityController {
 
     return this.availabilityService.getAvailabilityBySiteIdAndItemId(siteId, itemId);
   }
+
+  /**
+   * Endpoint to fetch the hit/miss counters and size of the in-memory inventory ledger.
+   *
+   * @return ResponseEntity with the current ledger statistics.
+   */
+  @GetMapping("/ledgerStats")
+  public ResponseEntity<?> getLedgerStats() {
+    return this.availabilityService.getLedgerStats();
+  }
 }
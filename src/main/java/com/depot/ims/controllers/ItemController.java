@@ -1,8 +1,11 @@
 package com.depot.ims.controllers;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.Item;
 import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.requests.ListingRequest;
 import com.depot.ims.services.ItemService;
+import com.depot.ims.services.ListingService;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * ItemController class provides API endpoints for managing items within the Inventory Management
@@ -27,28 +31,48 @@ public class ItemController {
   // Fields for the item repository and item service
   private final ItemRepository itemRepository;
   private final ItemService itemService;
+  private final ListingService listingService;
 
   /**
    * Constructor for ShipmentController.
    *
    * @param itemRepository Repository for item data access.
    * @param itemService Service for item related operations.
+   * @param listingService Service for paged, projected listings.
    */
-  public ItemController(ItemRepository itemRepository, ItemService itemService) {
+  public ItemController(
+      ItemRepository itemRepository, ItemService itemService, ListingService listingService) {
     this.itemRepository = itemRepository;
     this.itemService = itemService;
+    this.listingService = listingService;
   }
 
   /**
-   * Endpoint to retrieve all items.
+   * Endpoint to retrieve all items. When any listing parameter is given, returns one ListingPage
+   * instead, holding only the requested fields.
    *
+   * @param listing page, size, after, sort and fields
    * @return ResponseEntity with the list of all items.
    */
   @GetMapping
-  public ResponseEntity<?> getItems() {
+  public ResponseEntity<?> getItems(ListingRequest listing) {
+    if (listing.isRequested()) {
+      return listingService.list(Listings.ITEMS, listing);
+    }
     return ResponseEntity.ok(this.itemRepository.findAll());
   }
 
+  /**
+   * Endpoint to stream all items as newline-delimited JSON, for exports too large to build in
+   * memory.
+   *
+   * @return ResponseEntity whose body writes one item per line
+   */
+  @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamItems() {
+    return this.itemService.streamItems();
+  }
+
   /**
    * Endpoint to add a new item. Accepts item details in the form of a JSON object.
    *
@@ -0,0 +1,90 @@
+package com.depot.ims.controllers;
+
+import com.depot.ims.requests.HoldRequest;
+import com.depot.ims.services.ReservationService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * ReservationController class provides API endpoints for holding stock during a checkout within the
+ * Inventory Management System: a hold reserves a quantity of an item in a site for a TTL, and is
+ * then confirmed, which debits the stock, or released.
+ */
+@RestController
+@RequestMapping(value = "/reservations", produces = MediaType.APPLICATION_JSON_VALUE)
+@CrossOrigin(origins = {"http://cs506-team-35.cs.wisc.edu", "http://localhost:5173/"})
+public class ReservationController {
+
+  private final ReservationService reservationService;
+
+  /**
+   * Constructor for ReservationController.
+   *
+   * @param reservationService Service for reservation related operations.
+   */
+  public ReservationController(ReservationService reservationService) {
+    this.reservationService = reservationService;
+  }
+
+  /**
+   * Endpoint to hold stock for a checkout.
+   *
+   * @param holdRequest the site, item, quantity and optional TTL in seconds
+   * @return ResponseEntity with the reservation, or badRequest if not enough is available.
+   */
+  @PostMapping(value = "/hold", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> hold(@RequestBody HoldRequest holdRequest) {
+    return this.reservationService.hold(holdRequest);
+  }
+
+  /**
+   * Endpoint to confirm a hold, debiting its quantity from the site.
+   *
+   * @param reservationId the id of the reservation
+   * @return ResponseEntity with the quantity change, or badRequest.
+   */
+  @PostMapping("/confirm")
+  public ResponseEntity<?> confirm(@RequestParam(value = "reservationId") Long reservationId) {
+    return this.reservationService.confirm(reservationId);
+  }
+
+  /**
+   * Endpoint to release a hold.
+   *
+   * @param reservationId the id of the reservation
+   * @return ResponseEntity ok, or badRequest if the reservation is not held.
+   */
+  @PostMapping("/release")
+  public ResponseEntity<?> release(@RequestParam(value = "reservationId") Long reservationId) {
+    return this.reservationService.release(reservationId);
+  }
+
+  /**
+   * Endpoint to fetch an open reservation.
+   *
+   * @param reservationId the id of the reservation
+   * @return ResponseEntity with the reservation, or badRequest if it is not open.
+   */
+  @GetMapping("/reservation")
+  public ResponseEntity<?> getReservation(
+      @RequestParam(value = "reservationId") Long reservationId) {
+    return this.reservationService.getReservation(reservationId);
+  }
+
+  /**
+   * Endpoint to fetch the counters of the reservation engine.
+   *
+   * @return ResponseEntity with the current reservation statistics.
+   */
+  @GetMapping("/stats")
+  public ResponseEntity<?> getReservationStats() {
+    return this.reservationService.getReservationStats();
+  }
+}
@@ -1,9 +1,14 @@
 package com.depot.ims.controllers;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.Ship;
 import com.depot.ims.repositories.ShipRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.requests.ShipBatchRequest;
 import com.depot.ims.requests.ShipRequest;
+import com.depot.ims.services.ListingService;
 import com.depot.ims.services.ShipService;
+import com.depot.ims.sharding.ShardRouter;
 import java.util.List;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,6 +18,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -28,26 +34,41 @@ public class ShipController {
   // Fields for the ship repository and ship service
   private final ShipRepository shipRepository;
   private final ShipService shipService;
+  private final ListingService listingService;
+  private final ShardRouter shardRouter;
 
   /**
    * Constructor for ShipController.
    *
    * @param shipRepository Repository for ship data access.
    * @param shipService Service for ship related operations.
+   * @param listingService Service for paged, projected listings.
+   * @param shardRouter routes ships to the shard of their shipment.
    */
-  public ShipController(ShipRepository shipRepository, ShipService shipService) {
+  public ShipController(
+      ShipRepository shipRepository,
+      ShipService shipService,
+      ListingService listingService,
+      ShardRouter shardRouter) {
     this.shipRepository = shipRepository;
     this.shipService = shipService;
+    this.listingService = listingService;
+    this.shardRouter = shardRouter;
   }
 
   /**
-   * Endpoint to retrieve all ships.
+   * Endpoint to retrieve all ships. When any listing parameter is given, returns one ListingPage
+   * instead, holding only the requested fields.
    *
+   * @param listing page, size, after, sort and fields
    * @return List of all ships.
    */
   @GetMapping
-  public List<Ship> getAllShips() {
-    return shipRepository.findAll();
+  public ResponseEntity<?> getAllShips(ListingRequest listing) {
+    if (listing.isRequested()) {
+      return listingService.list(Listings.SHIPS, listing);
+    }
+    return ResponseEntity.ok(shardRouter.gather(shipRepository::findAll));
   }
 
   /**
@@ -58,18 +79,25 @@ public class ShipController {
    */
   @GetMapping("/item={itemId}")
   public List<Ship> getShipsByItemId(@PathVariable Long itemId) {
-    return shipRepository.findByItemId(itemId);
+    return shardRouter.gather(() -> shipRepository.findByItemId(itemId));
   }
 
   /**
-   * Endpoint to retrieve all ships by shipment ID.
+   * Endpoint to retrieve all ships by shipment ID. With view=ids, returns only the shipmentId,
+   * itemId and quantity of each ship instead of its whole item and shipment.
    *
    * @param shipmentId The ID of the shipment.
+   * @param view "ids" for the narrow form, or absent for the ships
    * @return List of all ships with the specified shipment ID.
    */
   @GetMapping("/shipment={shipmentId}")
-  public List<Ship> getShipsByShipmentId(@PathVariable Long shipmentId) {
-    return shipRepository.findByShipmentId(shipmentId);
+  public List<?> getShipsByShipmentId(
+      @PathVariable Long shipmentId, @RequestParam(value = "view", required = false) String view) {
+    if ("ids".equals(view)) {
+      return shardRouter.onShipment(
+          shipmentId, () -> shipRepository.findShippedQuantitiesByShipmentId(shipmentId));
+    }
+    return shardRouter.onShipment(shipmentId, () -> shipRepository.findByShipmentId(shipmentId));
   }
 
   /**
@@ -82,7 +110,8 @@ public class ShipController {
   @GetMapping("/item={itemId}/shipment={shipmentId}")
   public List<Ship> getShipsByItemIdAndShipmentId(
       @PathVariable Long itemId, @PathVariable Long shipmentId) {
-    return shipRepository.findByItemIdAndShipmentId(itemId, shipmentId);
+    return shardRouter.onShipment(
+        shipmentId, () -> shipRepository.findByItemIdAndShipmentId(itemId, shipmentId));
   }
 
   /**
@@ -95,4 +124,16 @@ public class ShipController {
   public ResponseEntity<?> addShip(@RequestBody ShipRequest shipRequest) {
     return shipService.addShip(shipRequest);
   }
+
+  /**
+   * Endpoint to ship a whole manifest at once. Accepts a shipmentId and the list of items and
+   * quantities to ship on it, in the form of a JSON object.
+   *
+   * @param shipBatchRequest the shipment and the lines to ship on it.
+   * @return ResponseEntity with the saved ships, or the errors of every rejected line.
+   */
+  @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> addShips(@RequestBody ShipBatchRequest shipBatchRequest) {
+    return shipService.addShips(shipBatchRequest);
+  }
 }
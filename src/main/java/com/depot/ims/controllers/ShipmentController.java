@@ -1,8 +1,12 @@
 package com.depot.ims.controllers;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.Shipment;
 import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.services.ListingService;
 import com.depot.ims.services.ShipmentService;
+import com.depot.ims.sharding.ShardRouter;
 import java.sql.Timestamp;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.http.MediaType;
@@ -30,28 +34,41 @@ public class ShipmentController {
   // Fields for the shipment repository and shipment service
   private final ShipmentRepository shipmentRepository;
   private final ShipmentService shipmentService;
+  private final ListingService listingService;
+  private final ShardRouter shardRouter;
 
   /**
    * Constructor for ShipmentController.
    *
    * @param shipmentsRepository Repository for shipment data access.
    * @param shipmentService Service for shipment related operations.
+   * @param listingService Service for paged, projected listings.
+   * @param shardRouter routes shipments to the shard of their source.
    */
   public ShipmentController(
-      ShipmentRepository shipmentsRepository, ShipmentService shipmentService) {
+      ShipmentRepository shipmentsRepository,
+      ShipmentService shipmentService,
+      ListingService listingService,
+      ShardRouter shardRouter) {
     this.shipmentRepository = shipmentsRepository;
     this.shipmentService = shipmentService;
+    this.listingService = listingService;
+    this.shardRouter = shardRouter;
   }
 
   /**
-   * Endpoint to retrieve all shipments.
+   * Endpoint to retrieve all shipments. When any listing parameter is given, returns one
+   * ListingPage instead, holding only the requested fields.
    *
+   * @param listing page, size, after, sort and fields
    * @return ResponseEntity with the list of all shipments.
    */
   @GetMapping
-  public ResponseEntity<?> getAllShipments() {
-
-    return ResponseEntity.ok(this.shipmentRepository.findAll());
+  public ResponseEntity<?> getAllShipments(ListingRequest listing) {
+    if (listing.isRequested()) {
+      return listingService.list(Listings.SHIPMENTS, listing);
+    }
+    return ResponseEntity.ok(shardRouter.gather(this.shipmentRepository::findAll));
   }
 
   /**
@@ -104,15 +121,15 @@ public class ShipmentController {
   }
 
   /**
-   * Endpoint to add a new shipment. Accepts shipment details in the form of a JSON object.
+   * Endpoint to add a new shipment. Accepts shipment details in the form of a JSON object. The
+   * shipment is saved on the shard of its source, which issues its id.
    *
    * @param shipment Shipment object containing details of the new shipment.
    * @return The saved Shipment entity.
    */
   @PostMapping(value = "/add", consumes = MediaType.APPLICATION_JSON_VALUE)
   public Shipment addShipment(@RequestBody Shipment shipment) {
-
-    return this.shipmentRepository.save(shipment);
+    return shardRouter.onSite(shipment.getSource(), () -> this.shipmentRepository.save(shipment));
   }
 
   /**
@@ -1,9 +1,13 @@
 package com.depot.ims.controllers;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.Site;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ListingRequest;
 import com.depot.ims.services.AuditService;
+import com.depot.ims.services.ListingService;
 import com.depot.ims.services.SiteService;
+import com.depot.ims.services.ValuationService;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
@@ -29,20 +33,33 @@ public class SiteController {
 
   private final SiteRepository siteRepository;
   private final SiteService siteService;
+  private final ListingService listingService;
+  private final ValuationService valuationService;
 
   public SiteController(
-      SiteRepository siteRepository, SiteService siteService, AuditService auditService) {
+      SiteRepository siteRepository,
+      SiteService siteService,
+      AuditService auditService,
+      ListingService listingService,
+      ValuationService valuationService) {
     this.siteRepository = siteRepository;
     this.siteService = siteService;
+    this.listingService = listingService;
+    this.valuationService = valuationService;
   }
 
   /**
-   * Get all sites in table Sites.
+   * Get all sites in table Sites. When any listing parameter is given, returns one ListingPage
+   * instead, holding only the requested fields.
    *
+   * @param listing page, size, after, sort and fields
    * @return ResponseEntity that contains a list of sites in its body
    */
   @GetMapping
-  public ResponseEntity<?> getSites() {
+  public ResponseEntity<?> getSites(ListingRequest listing) {
+    if (listing.isRequested()) {
+      return listingService.list(Listings.SITES, listing);
+    }
     return ResponseEntity.ok(this.siteRepository.findAll());
   }
 
@@ -121,4 +138,39 @@ public class SiteController {
       @RequestParam(value = "ceaseDate", required = false) String ceaseDate) {
     return siteService.deleteSite(siteId, ceaseDate);
   }
+
+  /**
+   * Endpoint to fetch the hit/miss counters and size of each region of the site and item cache.
+   *
+   * @return result of SiteService.getReferenceCacheStats()
+   */
+  @GetMapping("/cacheStats")
+  public ResponseEntity<?> getReferenceCacheStats() {
+    return siteService.getReferenceCacheStats();
+  }
+
+  /**
+   * Get the stock value of every site and their total, or of one site if siteId is given.
+   *
+   * @param siteId siteId, optional
+   * @return result of ValuationService.getSiteValuation() or ValuationService.getValuation()
+   */
+  @GetMapping("/valuation")
+  public ResponseEntity<?> getValuation(
+      @RequestParam(value = "siteId", required = false) Long siteId) {
+    if (siteId != null) {
+      return valuationService.getSiteValuation(siteId);
+    }
+    return valuationService.getValuation();
+  }
+
+  /**
+   * Get the stock value of all sites together.
+   *
+   * @return result of ValuationService.getTotalValuation()
+   */
+  @GetMapping("/valuation/total")
+  public ResponseEntity<?> getTotalValuation() {
+    return valuationService.getTotalValuation();
+  }
 }
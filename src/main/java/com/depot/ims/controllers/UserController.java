@@ -1,7 +1,10 @@
 package com.depot.ims.controllers;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.User;
 import com.depot.ims.repositories.UserRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.services.ListingService;
 import com.depot.ims.services.UserService;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.http.MediaType;
@@ -28,25 +31,34 @@ public class UserController {
   // Fields for the user repository and user service
   private final UserRepository usersRepository;
   private final UserService userService;
+  private final ListingService listingService;
 
   /**
    * Constructor for UserController.
    *
    * @param usersRepository Repository for user data access.
    * @param userService Service for user-related operations.
+   * @param listingService Service for paged, projected listings.
    */
-  public UserController(UserRepository usersRepository, UserService userService) {
+  public UserController(
+      UserRepository usersRepository, UserService userService, ListingService listingService) {
     this.usersRepository = usersRepository;
     this.userService = userService;
+    this.listingService = listingService;
   }
 
   /**
-   * Endpoint to retrieve all users.
+   * Endpoint to retrieve all users. When any listing parameter is given, returns one ListingPage
+   * instead, holding only the requested fields.
    *
+   * @param listing page, size, after, sort and fields
    * @return ResponseEntity with the list of all users.
    */
   @GetMapping
-  public ResponseEntity<?> getUsers() {
+  public ResponseEntity<?> getUsers(ListingRequest listing) {
+    if (listing.isRequested()) {
+      return listingService.list(Listings.USERS, listing);
+    }
     return ResponseEntity.ok(this.usersRepository.findAll());
   }
 
@@ -0,0 +1,81 @@
+package com.depot.ims.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Lets a client read its own writes while replication catches up. When a request commits a write,
+ * the response sets the ims-primary-until cookie to the time after which every replica that serves
+ * reads is known to hold that write; until then the read-only transactions of requests carrying the
+ * cookie stay on the primary. Later reads of the writing request stay on the primary as well.
+ *
+ * <p>The cookie only ever moves a client's reads to the primary, and no further ahead than one
+ * window, so a forged value cannot do more than an honest one.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+  static final String COOKIE = "ims-primary-until";
+
+  private final long windowMillis;
+
+  /**
+   * Constructor for ReadYourWritesFilter.
+   *
+   * @param windowMillis how long after a write its client reads from the primary
+   */
+  public ReadYourWritesFilter(long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    long now = System.currentTimeMillis();
+    long primaryUntil = Math.min(cookieValue(request), now + windowMillis);
+    ReplicaRoutingContext.begin(primaryUntil, committedAt -> stick(response, committedAt));
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      ReplicaRoutingContext.end();
+    }
+  }
+
+  private static long cookieValue(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies != null) {
+      for (Cookie cookie : cookies) {
+        if (COOKIE.equals(cookie.getName())) {
+          try {
+            return Long.parseLong(cookie.getValue());
+          } catch (NumberFormatException e) {
+            return 0;
+          }
+        }
+      }
+    }
+    return 0;
+  }
+
+  private void stick(HttpServletResponse response, long committedAt) {
+    if (response.isCommitted()) {
+      return;
+    }
+    ResponseCookie cookie =
+        ResponseCookie.from(COOKIE, Long.toString(committedAt + windowMillis))
+            .path("/")
+            .httpOnly(true)
+            .maxAge(Duration.ofMillis(windowMillis).plusSeconds(1).toSeconds())
+            .build();
+    // a later write of the same request replaces the cookie of an earlier one
+    response.setHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+  }
+}
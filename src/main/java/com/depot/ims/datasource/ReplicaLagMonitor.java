@@ -0,0 +1,199 @@
+package com.depot.ims.datasource;
+
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures how far every replica lags behind the primary, and keeps the list of replicas that are
+ * close enough to serve reads. Every interval the current time is written to the one row of the
+ * replica_heartbeat table on the primary and read back from each replica: a replica holding the
+ * beat written at time b has applied every write committed before b, so now - b bounds how stale it
+ * can be. A replica that lags more than the tolerance, has not received a beat yet, or cannot be
+ * reached is left out until it catches up.
+ */
+public class ReplicaLagMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+  static final String CREATE_TABLE =
+      "create table if not exists replica_heartbeat"
+          + " (id int not null primary key, beat_millis bigint not null)";
+  private static final String SELECT_BEAT =
+      "select beat_millis from replica_heartbeat where id = 1";
+  private static final String UPDATE_BEAT =
+      "update replica_heartbeat set beat_millis = ? where id = 1";
+  private static final String INSERT_BEAT =
+      "insert into replica_heartbeat (id, beat_millis) values (1, ?)";
+
+  // lag reported for a replica that cannot be measured
+  static final long UNKNOWN_LAG = -1;
+
+  private final JdbcTemplate primary;
+  private final Map<String, DataSource> replicas;
+  private final Map<String, JdbcTemplate> replicaJdbc = new LinkedHashMap<>();
+  private final Map<String, Long> lags = new ConcurrentHashMap<>();
+  private final long maxLagMillis;
+  private final long intervalMillis;
+  private final BackgroundThreads backgroundThreads;
+  private volatile List<String> healthy = List.of();
+  private volatile boolean running;
+  private Thread monitorThread;
+
+  /**
+   * Constructor for ReplicaLagMonitor.
+   *
+   * @param primary the DataSource of the primary, where the heartbeat is written
+   * @param replicas the replica DataSources by name, in routing order
+   * @param maxLagMillis the most a replica may lag and still serve reads
+   * @param intervalMillis how often the heartbeat is written and read back
+   * @param backgroundThreads creates the monitor thread
+   */
+  public ReplicaLagMonitor(
+      DataSource primary,
+      Map<String, DataSource> replicas,
+      long maxLagMillis,
+      long intervalMillis,
+      BackgroundThreads backgroundThreads) {
+    this.primary = new JdbcTemplate(primary);
+    this.replicas = Collections.unmodifiableMap(new LinkedHashMap<>(replicas));
+    this.maxLagMillis = maxLagMillis;
+    this.intervalMillis = intervalMillis;
+    this.backgroundThreads = backgroundThreads;
+    replicas.forEach(
+        (name, dataSource) -> {
+          JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+          jdbc.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(intervalMillis)));
+          replicaJdbc.put(name, jdbc);
+          lags.put(name, UNKNOWN_LAG);
+        });
+  }
+
+  /** Create the heartbeat table, measure the replicas once and start measuring them regularly. */
+  @PostConstruct
+  public void start() {
+    primary.execute(CREATE_TABLE);
+    check();
+    running = true;
+    monitorThread = backgroundThreads.newThread("replica-lag-monitor", this::run);
+    monitorThread.start();
+    log.info(
+        "Routing read-only transactions to {} of {} replicas, tolerating {} ms of lag",
+        healthy.size(),
+        replicas.size(),
+        maxLagMillis);
+  }
+
+  /** Stop measuring and close the replica pools. */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    if (monitorThread != null) {
+      LockSupport.unpark(monitorThread);
+      monitorThread.join(intervalMillis * 2);
+    }
+    for (DataSource dataSource : replicas.values()) {
+      if (dataSource instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) dataSource).close();
+        } catch (Exception e) {
+          log.warn("Could not close a replica pool", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * The replicas this monitor measures.
+   *
+   * @return the replica DataSources by name
+   */
+  public Map<String, DataSource> getReplicas() {
+    return replicas;
+  }
+
+  /**
+   * The replicas that may serve reads, as of the last check.
+   *
+   * @return the names of the replicas lagging no more than the tolerance
+   */
+  public List<String> healthyReplicas() {
+    return healthy;
+  }
+
+  /**
+   * How far a replica lagged at the last check.
+   *
+   * @param name the name of the replica
+   * @return the lag in milliseconds, or UNKNOWN_LAG if it could not be measured
+   */
+  public long lagMillis(String name) {
+    return lags.getOrDefault(name, UNKNOWN_LAG);
+  }
+
+  /** Write a heartbeat to the primary, then measure every replica against it. */
+  void check() {
+    long now = System.currentTimeMillis();
+    try {
+      if (primary.update(UPDATE_BEAT, now) == 0) {
+        primary.update(INSERT_BEAT, now);
+      }
+    } catch (DataAccessException e) {
+      log.warn("Could not write the replica heartbeat to the primary: {}", e.getMessage());
+    }
+
+    List<String> within = new ArrayList<>();
+    for (Map.Entry<String, JdbcTemplate> replica : replicaJdbc.entrySet()) {
+      long lag = measure(replica.getKey(), replica.getValue(), now);
+      lags.put(replica.getKey(), lag);
+      if (lag != UNKNOWN_LAG && lag <= maxLagMillis) {
+        within.add(replica.getKey());
+      }
+    }
+    if (!within.equals(healthy)) {
+      log.info("Replicas serving reads changed from {} to {}", healthy, within);
+    }
+    healthy = List.copyOf(within);
+  }
+
+  private long measure(String name, JdbcTemplate replica, long now) {
+    try {
+      Long beat = replica.queryForObject(SELECT_BEAT, Long.class);
+      return beat == null ? UNKNOWN_LAG : Math.max(0, now - beat);
+    } catch (EmptyResultDataAccessException e) {
+      // the first beat has not reached the replica yet
+      return UNKNOWN_LAG;
+    } catch (DataAccessException e) {
+      log.debug("Could not read the heartbeat of {}: {}", name, e.getMessage());
+      return UNKNOWN_LAG;
+    }
+  }
+
+  private void run() {
+    while (running) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+      if (!running) {
+        return;
+      }
+      try {
+        check();
+      } catch (RuntimeException e) {
+        log.warn("Replica lag check failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package com.depot.ims.datasource;
+
+import com.depot.ims.threads.BackgroundThreads;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+/**
+ * Replaces Boot's single DataSource with one that routes read-only transactions to replicas, as
+ * soon as ims.datasource.replicas lists one. The primary keeps the spring.datasource settings and
+ * its Hikari pool; each replica gets a read-only pool of its own, named replica-1, replica-2 and so
+ * on, with the credentials of the primary unless the replica lists its own. Without replicas
+ * nothing here is created and every connection comes from the primary, as before.
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaRoutingProperties.class)
+@ConditionalOnProperty("ims.datasource.replicas[0].url")
+public class ReplicaRoutingConfiguration {
+
+  /**
+   * The pool of the primary, configured by spring.datasource and spring.datasource.hikari.
+   *
+   * @param dataSourceProperties the spring.datasource settings
+   * @return the pool
+   */
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+    HikariDataSource pool =
+        dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    pool.setPoolName("primary");
+    return pool;
+  }
+
+  /**
+   * The monitor that measures the replicas, which also owns their pools.
+   *
+   * @param primaryDataSource the pool of the primary
+   * @param properties the routing settings
+   * @param dataSourceProperties the spring.datasource settings, for the default credentials
+   * @param backgroundThreads creates the monitor thread
+   * @param meterRegistry records the hikaricp.* meters of the replica pools, if present
+   * @return the monitor
+   */
+  @Bean
+  public ReplicaLagMonitor replicaLagMonitor(
+      HikariDataSource primaryDataSource,
+      ReplicaRoutingProperties properties,
+      DataSourceProperties dataSourceProperties,
+      BackgroundThreads backgroundThreads,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    Map<String, DataSource> replicas = new LinkedHashMap<>();
+    List<ReplicaRoutingProperties.Replica> configured = properties.getReplicas();
+    for (int i = 0; i < configured.size(); i++) {
+      ReplicaRoutingProperties.Replica replica = configured.get(i);
+      HikariDataSource pool = new HikariDataSource();
+      pool.setPoolName("replica-" + (i + 1));
+      pool.setJdbcUrl(replica.getUrl());
+      pool.setUsername(
+          StringUtils.hasText(replica.getUsername())
+              ? replica.getUsername()
+              : dataSourceProperties.determineUsername());
+      pool.setPassword(
+          replica.getPassword() != null
+              ? replica.getPassword()
+              : dataSourceProperties.determinePassword());
+      pool.setMaximumPoolSize(properties.getReplicaPoolSize());
+      pool.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+      pool.setDataSourceProperties(primaryDataSource.getDataSourceProperties());
+      pool.setReadOnly(true);
+      meterRegistry.ifAvailable(
+          registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+      replicas.put(pool.getPoolName(), pool);
+    }
+    return new ReplicaLagMonitor(
+        primaryDataSource,
+        replicas,
+        properties.getMaxLagMs(),
+        properties.getHeartbeatIntervalMs(),
+        backgroundThreads);
+  }
+
+  /**
+   * The DataSource that picks the primary or a replica per connection.
+   *
+   * @param primaryDataSource the pool of the primary
+   * @param replicaLagMonitor the monitor of the replicas
+   * @return the routing DataSource
+   */
+  @Bean
+  public ReplicaRoutingDataSource replicaRoutingDataSource(
+      HikariDataSource primaryDataSource, ReplicaLagMonitor replicaLagMonitor) {
+    return new ReplicaRoutingDataSource(primaryDataSource, replicaLagMonitor);
+  }
+
+  /**
+   * The DataSource of the application. Connections are fetched at the first statement, once the
+   * transaction has marked itself read-only or not.
+   *
+   * @param replicaRoutingDataSource the routing DataSource
+   * @return the DataSource JPA and JDBC use
+   */
+  @Bean
+  @Primary
+  public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+    return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+  }
+
+  /**
+   * Keep each client's reads on the primary for a while after it writes.
+   *
+   * @param properties the routing settings
+   * @return the filter
+   */
+  @Bean
+  public ReadYourWritesFilter readYourWritesFilter(ReplicaRoutingProperties properties) {
+    return new ReadYourWritesFilter(properties.stickyWindowMillis());
+  }
+
+  /**
+   * Publish the routing counters and replica lags.
+   *
+   * @param replicaRoutingDataSource the routing DataSource
+   * @return the binder
+   */
+  @Bean
+  public ReplicaRoutingMetrics replicaRoutingMetrics(
+      ReplicaRoutingDataSource replicaRoutingDataSource) {
+    return new ReplicaRoutingMetrics(replicaRoutingDataSource);
+  }
+}
@@ -0,0 +1,130 @@
+package com.depot.ims.datasource;
+
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds what the current thread knows about where its reads may go. A thread keeps its reads on the
+ * primary while it runs inside onPrimary(), and while the client it serves is sticky to the primary
+ * because of a recent write, as set by ReadYourWritesFilter. Threads that never call begin() are
+ * not sticky, and cost one ThreadLocal read per routed connection.
+ */
+public final class ReplicaRoutingContext {
+
+  private static final ThreadLocal<State> CURRENT = new ThreadLocal<>();
+
+  private ReplicaRoutingContext() {}
+
+  private static final class State {
+    private long primaryUntil;
+    private int primaryDepth;
+    private LongConsumer onCommittedWrite;
+    private boolean writeRegistered;
+  }
+
+  /**
+   * Start serving a client on the current thread.
+   *
+   * @param primaryUntil epoch milliseconds until which the client reads from the primary
+   * @param onCommittedWrite called with the commit time of every transaction that wrote
+   */
+  public static void begin(long primaryUntil, LongConsumer onCommittedWrite) {
+    State state = state();
+    state.primaryUntil = primaryUntil;
+    state.onCommittedWrite = onCommittedWrite;
+    state.writeRegistered = false;
+  }
+
+  /** Stop serving the client begun on the current thread. */
+  public static void end() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Run work that must see every committed write, such as loading a cache that is kept in step with
+   * the primary, with all its reads on the primary.
+   *
+   * @param work the work to run
+   * @param <T> the type of the result
+   * @return the result of the work
+   */
+  public static <T> T onPrimary(Supplier<T> work) {
+    State state = state();
+    state.primaryDepth++;
+    try {
+      return work.get();
+    } finally {
+      if (--state.primaryDepth == 0 && state.onCommittedWrite == null) {
+        CURRENT.remove();
+      }
+    }
+  }
+
+  /**
+   * Run work with all its reads on the primary; see onPrimary(Supplier).
+   *
+   * @param work the work to run
+   */
+  public static void runOnPrimary(Runnable work) {
+    onPrimary(
+        () -> {
+          work.run();
+          return null;
+        });
+  }
+
+  /**
+   * Whether reads of the current thread must go to the primary.
+   *
+   * @param now the current time in epoch milliseconds
+   * @return true inside onPrimary() and while the client is sticky
+   */
+  static boolean isPinnedToPrimary(long now) {
+    State state = CURRENT.get();
+    return state != null && (state.primaryDepth > 0 || now < state.primaryUntil);
+  }
+
+  /**
+   * Note that the current transaction may write. Once it commits, the client reads from the primary
+   * for the rest of the request, and the filter is told when the write committed.
+   */
+  static void markWrite() {
+    State state = CURRENT.get();
+    if (state == null || state.onCommittedWrite == null || state.writeRegistered) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      committed(state);
+      return;
+    }
+    state.writeRegistered = true;
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            state.writeRegistered = false;
+            if (status == STATUS_COMMITTED) {
+              committed(state);
+            }
+          }
+        });
+  }
+
+  private static State state() {
+    State state = CURRENT.get();
+    if (state == null) {
+      state = new State();
+      CURRENT.set(state);
+    }
+    return state;
+  }
+
+  private static void committed(State state) {
+    long now = System.currentTimeMillis();
+    // later reads of this request see the write only on the primary
+    state.primaryUntil = Long.MAX_VALUE;
+    state.onCommittedWrite.accept(now);
+  }
+}
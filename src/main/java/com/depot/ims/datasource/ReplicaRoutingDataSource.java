@@ -0,0 +1,91 @@
+package com.depot.ims.datasource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections of read-only transactions to the replicas and every other connection to the
+ * primary. A read-only transaction goes to the next replica, round robin, among those the
+ * ReplicaLagMonitor currently finds within the lag tolerance, unless the thread is pinned to the
+ * primary by ReplicaRoutingContext; with no replica available it reads from the primary. Work
+ * outside a transaction also goes to the primary, as it may write.
+ *
+ * <p>The decision reads the transaction's read-only flag, which Spring sets only after the
+ * transaction has begun, so this DataSource must sit behind a LazyConnectionDataSourceProxy that
+ * fetches the connection at the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  static final String PRIMARY = "primary";
+
+  private final ReplicaLagMonitor monitor;
+  private final AtomicInteger next = new AtomicInteger();
+  private final LongAdder primaryRoutes = new LongAdder();
+  private final LongAdder replicaRoutes = new LongAdder();
+
+  /**
+   * Constructor for ReplicaRoutingDataSource.
+   *
+   * @param primary the DataSource of the primary
+   * @param monitor measures the replicas and knows their DataSources
+   */
+  public ReplicaRoutingDataSource(DataSource primary, ReplicaLagMonitor monitor) {
+    this.monitor = monitor;
+    Map<Object, Object> targets = new HashMap<>(monitor.getReplicas());
+    targets.put(PRIMARY, primary);
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      if (!ReplicaRoutingContext.isPinnedToPrimary(System.currentTimeMillis())) {
+        List<String> healthy = monitor.healthyReplicas();
+        if (!healthy.isEmpty()) {
+          replicaRoutes.increment();
+          return healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size()));
+        }
+      }
+    } else if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      ReplicaRoutingContext.markWrite();
+    }
+    primaryRoutes.increment();
+    return PRIMARY;
+  }
+
+  /**
+   * Connections routed to the primary since startup.
+   *
+   * @return the count
+   */
+  public long getPrimaryRoutes() {
+    return primaryRoutes.sum();
+  }
+
+  /**
+   * Connections routed to a replica since startup.
+   *
+   * @return the count
+   */
+  public long getReplicaRoutes() {
+    return replicaRoutes.sum();
+  }
+
+  /**
+   * The monitor that decides which replicas may serve reads.
+   *
+   * @return the monitor
+   */
+  public ReplicaLagMonitor getMonitor() {
+    return monitor;
+  }
+}
@@ -0,0 +1,60 @@
+package com.depot.ims.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes where connections are routed (ims.datasource.routed, tagged primary or replica) and,
+ * per replica, its last measured lag and whether it serves reads. A replica whose lag sits near the
+ * tolerance flaps in and out of routing; raise the tolerance or fix the replication.
+ */
+public class ReplicaRoutingMetrics implements MeterBinder {
+
+  private final ReplicaRoutingDataSource routingDataSource;
+
+  /**
+   * Constructor for ReplicaRoutingMetrics.
+   *
+   * @param routingDataSource the routing DataSource to observe
+   */
+  public ReplicaRoutingMetrics(ReplicaRoutingDataSource routingDataSource) {
+    this.routingDataSource = routingDataSource;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder(
+            "ims.datasource.routed", routingDataSource, ReplicaRoutingDataSource::getPrimaryRoutes)
+        .tag("target", "primary")
+        .description("Connections routed to the primary or to a replica")
+        .register(registry);
+    FunctionCounter.builder(
+            "ims.datasource.routed", routingDataSource, ReplicaRoutingDataSource::getReplicaRoutes)
+        .tag("target", "replica")
+        .description("Connections routed to the primary or to a replica")
+        .register(registry);
+
+    ReplicaLagMonitor monitor = routingDataSource.getMonitor();
+    for (String replica : monitor.getReplicas().keySet()) {
+      Gauge.builder("ims.datasource.replica.lag", monitor, m -> lag(m, replica))
+          .tag("replica", replica)
+          .baseUnit("milliseconds")
+          .description("Replication lag of a replica at the last check; NaN if unreachable")
+          .register(registry);
+      Gauge.builder(
+              "ims.datasource.replica.serving",
+              monitor,
+              m -> m.healthyReplicas().contains(replica) ? 1 : 0)
+          .tag("replica", replica)
+          .description("1 while the replica serves reads, 0 while it is left out")
+          .register(registry);
+    }
+  }
+
+  private static double lag(ReplicaLagMonitor monitor, String replica) {
+    long lag = monitor.lagMillis(replica);
+    return lag == ReplicaLagMonitor.UNKNOWN_LAG ? Double.NaN : lag;
+  }
+}
@@ -0,0 +1,46 @@
+package com.depot.ims.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of read-replica routing, bound from ims.datasource. Routing is on as soon as one replica
+ * is listed; the primary stays the pool configured under spring.datasource.
+ */
+@Data
+@ConfigurationProperties("ims.datasource")
+public class ReplicaRoutingProperties {
+
+  /** The replicas read-only transactions are spread across. */
+  private List<Replica> replicas = new ArrayList<>();
+
+  /** How stale a replica may be, in milliseconds, before reads go back to the primary. */
+  private long maxLagMs = 1000;
+
+  /** How often the heartbeat is written to the primary and read back from every replica. */
+  private long heartbeatIntervalMs = 250;
+
+  /** Connections in each replica pool; the pool of the primary keeps spring.datasource.hikari. */
+  private int replicaPoolSize = 10;
+
+  /**
+   * How long a client keeps reading from the primary after a write it made, in milliseconds: the
+   * lag a replica may have plus the time until its lag is checked again.
+   *
+   * @return the read-your-writes window
+   */
+  public long stickyWindowMillis() {
+    return maxLagMs + heartbeatIntervalMs;
+  }
+
+  /** Connection settings of one replica. */
+  @Data
+  public static class Replica {
+
+    private String url;
+    private String username;
+    private String password;
+  }
+}
@@ -0,0 +1,320 @@
+package com.depot.ims.inventory;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative int values in the style of a Roaring bitmap. Values are split by
+ * their high 16 bits into chunks of 65536; each chunk is stored as a sorted array of the low 16
+ * bits while it holds at most 4096 values, and as a plain 8 KB bitset once it holds more. Sparse
+ * sets stay small and dense sets intersect a machine word at a time.
+ *
+ * <p>The bitmap is not thread-safe; callers guard it with their own lock.
+ */
+public class CompressedBitmap {
+
+  // a chunk switches from a sorted array to a bitset above this many values
+  private static final int ARRAY_MAX = 4096;
+
+  private char[] keys;
+  private Container[] containers;
+  private int size;
+
+  public CompressedBitmap() {
+    this(new char[4], new Container[4], 0);
+  }
+
+  private CompressedBitmap(char[] keys, Container[] containers, int size) {
+    this.keys = keys;
+    this.containers = containers;
+    this.size = size;
+  }
+
+  /**
+   * Add a value to the set.
+   *
+   * @param value a non-negative value
+   */
+  public void add(int value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("CompressedBitmap only holds non-negative values");
+    }
+    char high = (char) (value >>> 16);
+    int index = Arrays.binarySearch(keys, 0, size, high);
+    if (index >= 0) {
+      containers[index] = containers[index].add((char) value);
+      return;
+    }
+    index = -index - 1;
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      containers = Arrays.copyOf(containers, size * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(containers, index, containers, index + 1, size - index);
+    keys[index] = high;
+    containers[index] = new ArrayContainer().add((char) value);
+    size++;
+  }
+
+  /**
+   * Check whether a value is in the set.
+   *
+   * @param value value
+   * @return true if the value is in the set
+   */
+  public boolean contains(int value) {
+    if (value < 0) {
+      return false;
+    }
+    int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+    return index >= 0 && containers[index].contains((char) value);
+  }
+
+  /**
+   * Intersect this set with another one.
+   *
+   * @param other the other set
+   * @return a new bitmap holding the values present in both sets
+   */
+  public CompressedBitmap and(CompressedBitmap other) {
+    char[] resultKeys = new char[Math.max(1, Math.min(size, other.size))];
+    Container[] resultContainers = new Container[resultKeys.length];
+    int resultSize = 0;
+    int i = 0;
+    int j = 0;
+    while (i < size && j < other.size) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        Container common = containers[i].and(other.containers[j]);
+        if (common.cardinality() > 0) {
+          resultKeys[resultSize] = keys[i];
+          resultContainers[resultSize++] = common;
+        }
+        i++;
+        j++;
+      }
+    }
+    return new CompressedBitmap(resultKeys, resultContainers, resultSize);
+  }
+
+  /**
+   * Count the values in the set.
+   *
+   * @return the number of values
+   */
+  public int cardinality() {
+    int cardinality = 0;
+    for (int i = 0; i < size; i++) {
+      cardinality += containers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Visit every value of the set in ascending order.
+   *
+   * @param consumer callback receiving each value
+   */
+  public void forEach(IntConsumer consumer) {
+    for (int i = 0; i < size; i++) {
+      containers[i].forEach(keys[i] << 16, consumer);
+    }
+  }
+
+  /**
+   * Copy the values of the set into an array.
+   *
+   * @return the values in ascending order
+   */
+  public int[] toArray() {
+    int[] values = new int[cardinality()];
+    int[] next = {0};
+    forEach(value -> values[next[0]++] = value);
+    return values;
+  }
+
+  /** The low 16 bits of the values sharing one high 16-bit key. */
+  private abstract static class Container {
+
+    /** Add a value, returning the container that now holds the chunk (it may change form). */
+    abstract Container add(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Container and(Container other);
+
+    abstract void forEach(int base, IntConsumer consumer);
+  }
+
+  /** A sparse chunk: the low bits of its values in a sorted array. */
+  private static final class ArrayContainer extends Container {
+    private char[] content;
+    private int cardinality;
+
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    ArrayContainer(char[] content, int cardinality) {
+      this.content = content;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      int index = Arrays.binarySearch(content, 0, cardinality, value);
+      if (index >= 0) {
+        return this;
+      }
+      if (cardinality == ARRAY_MAX) {
+        return toBitmap().add(value);
+      }
+      index = -index - 1;
+      if (cardinality == content.length) {
+        content = Arrays.copyOf(content, Math.min(ARRAY_MAX, cardinality * 2));
+      }
+      System.arraycopy(content, index, content, index + 1, cardinality - index);
+      content[index] = value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+      char[] common = new char[cardinality];
+      int count = 0;
+      if (other instanceof ArrayContainer) {
+        ArrayContainer array = (ArrayContainer) other;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < array.cardinality) {
+          if (content[i] < array.content[j]) {
+            i++;
+          } else if (content[i] > array.content[j]) {
+            j++;
+          } else {
+            common[count++] = content[i];
+            i++;
+            j++;
+          }
+        }
+      } else {
+        for (int i = 0; i < cardinality; i++) {
+          if (other.contains(content[i])) {
+            common[count++] = content[i];
+          }
+        }
+      }
+      return new ArrayContainer(common, count);
+    }
+
+    @Override
+    void forEach(int base, IntConsumer consumer) {
+      for (int i = 0; i < cardinality; i++) {
+        consumer.accept(base | content[i]);
+      }
+    }
+
+    private BitmapContainer toBitmap() {
+      BitmapContainer bitmap = new BitmapContainer();
+      for (int i = 0; i < cardinality; i++) {
+        bitmap.add(content[i]);
+      }
+      return bitmap;
+    }
+  }
+
+  /** A dense chunk: one bit for each of the 65536 possible low values. */
+  private static final class BitmapContainer extends Container {
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer() {
+      this(new long[1024], 0);
+    }
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      long bit = 1L << value;
+      int index = value >>> 6;
+      if ((words[index] & bit) == 0) {
+        words[index] |= bit;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.and(this);
+      }
+      BitmapContainer bitmap = (BitmapContainer) other;
+      long[] common = new long[words.length];
+      int count = 0;
+      for (int i = 0; i < words.length; i++) {
+        common[i] = words[i] & bitmap.words[i];
+        count += Long.bitCount(common[i]);
+      }
+      if (count > ARRAY_MAX) {
+        return new BitmapContainer(common, count);
+      }
+      char[] content = new char[count];
+      int next = 0;
+      for (int i = 0; i < common.length; i++) {
+        long word = common[i];
+        while (word != 0) {
+          content[next++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(content, count);
+    }
+
+    @Override
+    void forEach(int base, IntConsumer consumer) {
+      for (int i = 0; i < words.length; i++) {
+        long word = words[i];
+        while (word != 0) {
+          consumer.accept(base | ((i << 6) + Long.numberOfTrailingZeros(word)));
+          word &= word - 1;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,930 @@
+package com.depot.ims.inventory;
+
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.models.projections.StockLevel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory copy of the Availabilities table keyed by (siteId, itemId), used to answer the read
+ * endpoints of availabilities without a round trip to the database.
+ *
+ * <p>Stock is sharded by siteId. Each shard has its own read-write lock and maps a site id to the
+ * quantities of the items it holds, all in primitive-keyed maps. The Site and Item rows needed to
+ * render an Availability are kept alongside as reference data, together with an ItemSiteIndex of
+ * which sites hold which items for multi-item searches.
+ *
+ * <p>The database stays the source of truth: services write to it first and then report the change
+ * here. Changes are applied once the surrounding transaction commits, or immediately when there is
+ * none, and quantity changes are applied as deltas so commits landing in any order still add up.
+ *
+ * <p>A site is only answered from memory once its rows have been loaded, either by the startup scan
+ * of InventoryLedgerLoader or by filling a miss. Every write stamps the site with a logical clock,
+ * and a load started before the latest write of a site is discarded for that site, so a load can
+ * never overwrite a newer change with older data.
+ *
+ * <p>Each loaded site also carries its stock value, the sum of quantity times unit price over its
+ * items, and the ledger keeps the total over all loaded sites. Both are kept in whole cents, with
+ * each unit price rounded to the cent, so that incremental updates never drift. A quantity change
+ * moves them by delta times the unit price; a price change walks the sites holding the item through
+ * the ItemSiteIndex while every shard is locked, so no quantity is valued at a half-applied price.
+ */
+@Component
+public class InventoryLedger {
+
+  // unitPrices value of an item whose price is not known
+  private static final long UNPRICED = Long.MIN_VALUE;
+
+  /** The quantities held by one site, plus the bookkeeping needed to load it safely. */
+  private static final class SiteStock {
+    private LongIntHashMap items = new LongIntHashMap();
+    private boolean loaded;
+    private long lastWrite;
+    // changes made by transactions that have not completed yet; no load is taken up meanwhile
+    private int pendingWrites;
+    // sum of quantity * unit price over items, in cents; kept while loaded
+    private long valueCents;
+  }
+
+  /** A group of sites guarded by one lock. */
+  private static final class Shard {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongObjectHashMap<SiteStock> sites = new LongObjectHashMap<>();
+  }
+
+  private final Shard[] shards;
+  private final int shardMask;
+
+  // reference rows used to render availabilities and sites
+  private final ReentrantReadWriteLock referenceLock = new ReentrantReadWriteLock();
+  private final LongObjectHashMap<Site> siteRows = new LongObjectHashMap<>();
+  private final LongObjectHashMap<Item> itemRows = new LongObjectHashMap<>();
+
+  private final ItemSiteIndex itemSiteIndex = new ItemSiteIndex();
+
+  // unit prices in cents the site values are computed with; read under the lock of any shard and
+  // only changed with every shard write-locked
+  private final LongLongHashMap unitPrices = new LongLongHashMap();
+  private final LongAdder totalCents = new LongAdder();
+  private final AtomicInteger knownSites = new AtomicInteger();
+  private final AtomicInteger loadedSites = new AtomicInteger();
+  private final LongAdder valuationDrifts = new LongAdder();
+
+  private final AtomicLong clock = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private volatile boolean warmed;
+
+  /**
+   * Constructor for InventoryLedger.
+   *
+   * @param shardCount number of shards, rounded up to a power of two
+   */
+  public InventoryLedger(@Value("${ims.ledger.shards:16}") int shardCount) {
+    int size = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+    this.shards = new Shard[size];
+    for (int i = 0; i < size; i++) {
+      this.shards[i] = new Shard();
+    }
+    this.shardMask = size - 1;
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Reads
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * Find all the availabilities of a site.
+   *
+   * @param siteId the id of the site
+   * @return a hit with the availabilities of the site ordered by itemId, or a miss
+   */
+  public LedgerLookup<List<Availability>> findBySiteId(long siteId) {
+    long[] itemIds;
+    int[] quantities;
+    Shard shard = shardOf(siteId);
+    shard.lock.readLock().lock();
+    try {
+      SiteStock stock = shard.sites.get(siteId);
+      if (stock == null || !stock.loaded) {
+        return miss();
+      }
+      long[] ids = new long[stock.items.size()];
+      int[] values = new int[ids.length];
+      int[] next = {0};
+      stock.items.forEach(
+          (itemId, quantity) -> {
+            ids[next[0]] = itemId;
+            values[next[0]++] = quantity;
+          });
+      itemIds = ids;
+      quantities = values;
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+
+    List<Availability> result = new ArrayList<>(itemIds.length);
+    referenceLock.readLock().lock();
+    try {
+      Site site = siteRows.get(siteId);
+      if (site == null) {
+        return miss();
+      }
+      for (int i = 0; i < itemIds.length; i++) {
+        Item item = itemRows.get(itemIds[i]);
+        if (item == null) {
+          return miss();
+        }
+        result.add(new Availability(site, item, quantities[i]));
+      }
+    } finally {
+      referenceLock.readLock().unlock();
+    }
+    result.sort(Comparator.comparing(a -> a.getItemId().getItemId()));
+    return hit(result);
+  }
+
+  /**
+   * Find the ids and quantity of every availability of a site, without the Site and Item rows.
+   *
+   * @param siteId the id of the site
+   * @return a hit with the stock levels of the site ordered by itemId, or a miss
+   */
+  public LedgerLookup<List<StockLevel>> findStockLevelsBySiteId(long siteId) {
+    List<StockLevel> result;
+    Shard shard = shardOf(siteId);
+    shard.lock.readLock().lock();
+    try {
+      SiteStock stock = shard.sites.get(siteId);
+      if (stock == null || !stock.loaded) {
+        return miss();
+      }
+      List<StockLevel> levels = new ArrayList<>(stock.items.size());
+      stock.items.forEach(
+          (itemId, quantity) -> levels.add(new StockLevel(siteId, itemId, quantity)));
+      result = levels;
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+    result.sort(Comparator.comparingLong(StockLevel::getItemId));
+    return hit(result);
+  }
+
+  /**
+   * Find the availability of an item in a site.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @return a hit with the availability, or with null if the site does not hold the item; or a miss
+   */
+  public LedgerLookup<Availability> findBySiteIdAndItemId(long siteId, long itemId) {
+    int quantity;
+    Shard shard = shardOf(siteId);
+    shard.lock.readLock().lock();
+    try {
+      SiteStock stock = shard.sites.get(siteId);
+      if (stock == null || !stock.loaded) {
+        return miss();
+      }
+      quantity = stock.items.get(itemId, -1);
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+
+    referenceLock.readLock().lock();
+    try {
+      Site site = siteRows.get(siteId);
+      Item item = itemRows.get(itemId);
+      if (site == null || item == null) {
+        return miss();
+      }
+      return hit(quantity < 0 ? null : new Availability(site, item, quantity));
+    } finally {
+      referenceLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the quantity of an item in a site, without building an Availability.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @return a hit with the quantity, or with null if the site does not hold the item; or a miss
+   */
+  public LedgerLookup<Integer> findQuantity(long siteId, long itemId) {
+    Shard shard = shardOf(siteId);
+    shard.lock.readLock().lock();
+    try {
+      SiteStock stock = shard.sites.get(siteId);
+      if (stock == null || !stock.loaded) {
+        return miss();
+      }
+      int quantity = stock.items.get(itemId, -1);
+      return hit(quantity < 0 ? null : quantity);
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find all the sites that hold an item. Answered from the item-to-sites index once the startup
+   * scan has completed, unless the index had to leave out a site id beyond the int range.
+   *
+   * @param itemId the id of the item
+   * @return a hit with the sites ordered by siteId, or a miss
+   */
+  public LedgerLookup<List<Site>> findSitesByItemId(long itemId) {
+    if (!warmed || !itemSiteIndex.isComplete() || !hasItemRow(itemId)) {
+      return miss();
+    }
+    return renderSites(itemSiteIndex.sitesHoldingAll(new long[] {itemId}));
+  }
+
+  /**
+   * Find all the sites that hold every one of the given items, by intersecting the item-to-sites
+   * bitmaps. Answered once the startup scan has completed, unless the index is incomplete.
+   *
+   * @param itemIds ids of the items, at least one
+   * @return a hit with the sites ordered by siteId, or a miss
+   */
+  public LedgerLookup<List<Site>> findSitesHoldingAll(long[] itemIds) {
+    if (!warmed || !itemSiteIndex.isComplete()) {
+      return miss();
+    }
+    return renderSites(itemSiteIndex.sitesHoldingAll(itemIds));
+  }
+
+  /**
+   * Find all the sites that can fulfil a whole order, i.e. hold at least minQuantities[i] of every
+   * itemIds[i]. The bitmaps narrow the candidates down to the sites holding every item, and only
+   * those candidates have their quantities checked. Misses if a candidate site is not loaded, or if
+   * the index is incomplete.
+   *
+   * @param itemIds ids of the items, at least one
+   * @param minQuantities the quantity needed of each item
+   * @return a hit with the sites ordered by siteId, or a miss
+   */
+  public LedgerLookup<List<Site>> findSitesHoldingAtLeast(long[] itemIds, int[] minQuantities) {
+    if (!warmed || !itemSiteIndex.isComplete()) {
+      return miss();
+    }
+    int[] candidates = itemSiteIndex.sitesHoldingAll(itemIds);
+    int[] fulfilling = new int[candidates.length];
+    int count = 0;
+    for (int siteId : candidates) {
+      Shard shard = shardOf(siteId);
+      shard.lock.readLock().lock();
+      try {
+        SiteStock stock = shard.sites.get(siteId);
+        if (stock == null || !stock.loaded) {
+          return miss();
+        }
+        boolean enough = true;
+        for (int i = 0; i < itemIds.length && enough; i++) {
+          enough = stock.items.get(itemIds[i], 0) >= minQuantities[i];
+        }
+        if (enough) {
+          fulfilling[count++] = siteId;
+        }
+      } finally {
+        shard.lock.readLock().unlock();
+      }
+    }
+    return renderSites(Arrays.copyOf(fulfilling, count));
+  }
+
+  /**
+   * Find the stock value of a site.
+   *
+   * @param siteId the id of the site
+   * @return a hit with the value of the site in cents, or a miss
+   */
+  public LedgerLookup<Long> findValueCents(long siteId) {
+    Shard shard = shardOf(siteId);
+    shard.lock.readLock().lock();
+    try {
+      SiteStock stock = shard.sites.get(siteId);
+      if (stock == null || !stock.loaded) {
+        return miss();
+      }
+      return hit(stock.valueCents);
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Find the stock value of every site. Answered once the startup scan has completed, and only
+   * while every site is loaded.
+   *
+   * @return a hit with the value of each site in cents ordered by siteId, or a miss
+   */
+  public LedgerLookup<List<SiteValue>> findSiteValues() {
+    if (!isFullyValued()) {
+      return miss();
+    }
+    List<SiteValue> result = new ArrayList<>(knownSites.get());
+    boolean[] complete = {true};
+    for (Shard shard : shards) {
+      shard.lock.readLock().lock();
+      try {
+        shard.sites.forEach(
+            (siteId, stock) -> {
+              complete[0] &= stock.loaded;
+              result.add(new SiteValue(siteId, stock.valueCents));
+            });
+      } finally {
+        shard.lock.readLock().unlock();
+      }
+      if (!complete[0]) {
+        return miss();
+      }
+    }
+    result.sort(Comparator.comparingLong(SiteValue::getSiteId));
+    return hit(result);
+  }
+
+  /**
+   * Find the stock value of all sites together, in constant time.
+   *
+   * @return a hit with the total value in cents, or a miss while a site is not loaded
+   */
+  public LedgerLookup<Long> findTotalValueCents() {
+    return isFullyValued() ? hit(totalCents.sum()) : miss();
+  }
+
+  /**
+   * Snapshot the hit/miss counters and the size of the ledger.
+   *
+   * @return current LedgerStats
+   */
+  public LedgerStats stats() {
+    int sites = 0;
+    long rows = 0;
+    for (Shard shard : shards) {
+      shard.lock.readLock().lock();
+      try {
+        int[] loadedSites = {0};
+        long[] loadedRows = {0};
+        shard.sites.forEach(
+            (siteId, stock) -> {
+              if (stock.loaded) {
+                loadedSites[0]++;
+                loadedRows[0] += stock.items.size();
+              }
+            });
+        sites += loadedSites[0];
+        rows += loadedRows[0];
+      } finally {
+        shard.lock.readLock().unlock();
+      }
+    }
+    return new LedgerStats(hits.sum(), misses.sum(), sites, rows, warmed);
+  }
+
+  // read by LedgerMetrics on every scrape, without the shard scan of stats()
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  boolean isWarmed() {
+    return warmed;
+  }
+
+  long valuationDriftCount() {
+    return valuationDrifts.sum();
+  }
+
+  double totalValue() {
+    return isFullyValued() ? totalCents.sum() / 100.0 : Double.NaN;
+  }
+
+  private boolean isFullyValued() {
+    return warmed && loadedSites.get() == knownSites.get();
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Writes, reported by the services after they have written to the database
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * Record that the quantity of an item in a site changed by delta.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @param delta the signed change of the quantity
+   */
+  public void adjust(long siteId, long itemId, int delta) {
+    afterSiteCommit(
+        siteId,
+        () ->
+            write(
+                siteId,
+                stock -> {
+                  // a site that does not know the row is out of step, so reload it on next read
+                  if (!stock.items.addTo(itemId, delta)) {
+                    unload(stock);
+                    itemSiteIndex.add(siteId, itemId);
+                  } else {
+                    revalue(stock, itemId, delta);
+                  }
+                }));
+  }
+
+  /**
+   * Record that an availability was inserted or overwritten with the given quantity.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @param quantity the quantity now stored in the database
+   */
+  public void put(long siteId, long itemId, int quantity) {
+    afterSiteCommit(
+        siteId,
+        () -> {
+          itemSiteIndex.add(siteId, itemId);
+          write(
+              siteId,
+              stock -> {
+                int previous = stock.items.get(itemId, 0);
+                stock.items.put(itemId, quantity);
+                revalue(stock, itemId, quantity - previous);
+              });
+        });
+  }
+
+  /**
+   * Record the current state of a site row, e.g. after it was added or updated. A site the warm
+   * ledger has never seen is new, so it starts out loaded with no stock.
+   *
+   * @param site the site as stored in the database
+   */
+  public void putSite(Site site) {
+    if (site != null && site.getSiteId() != null) {
+      afterCommit(
+          () -> {
+            putSiteRow(site);
+            if (warmed) {
+              Shard shard = shardOf(site.getSiteId());
+              shard.lock.writeLock().lock();
+              try {
+                if (shard.sites.get(site.getSiteId()) == null) {
+                  markLoaded(stockOf(shard, site.getSiteId()), 0);
+                }
+              } finally {
+                shard.lock.writeLock().unlock();
+              }
+            }
+          });
+    }
+  }
+
+  /**
+   * Record the current state of an item row, e.g. after it was added or updated.
+   *
+   * @param item the item as stored in the database
+   */
+  public void putItem(Item item) {
+    if (item != null && item.getItemId() != null) {
+      afterCommit(() -> putItemRow(item));
+    }
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Loading
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * Start a load. Must be called before the database is read.
+   *
+   * @return the epoch to pass to the load methods
+   */
+  public long beginLoad() {
+    return clock.get();
+  }
+
+  /**
+   * Fill a miss with the availabilities of a site just read from the database. Ignored if the site
+   * was written to after epoch.
+   *
+   * @param siteId the id of the site
+   * @param rows all the availabilities of the site
+   * @param epoch value returned by beginLoad() before the rows were read
+   */
+  public void loadSite(long siteId, List<Availability> rows, long epoch) {
+    LongIntHashMap items = new LongIntHashMap(rows.size());
+    for (Availability row : rows) {
+      putSiteRow(row.getSiteId());
+      putItemRow(row.getItemId());
+      itemSiteIndex.add(siteId, row.getItemId().getItemId());
+      items.put(row.getItemId().getItemId(), row.getQuantity());
+    }
+    Shard shard = shardOf(siteId);
+    shard.lock.writeLock().lock();
+    try {
+      SiteStock stock = stockOf(shard, siteId);
+      if (stock.lastWrite <= epoch && stock.pendingWrites == 0) {
+        Long value = valueOf(items);
+        stock.items = items;
+        if (value == null) {
+          unload(stock);
+        } else {
+          markLoaded(stock, value);
+        }
+      }
+    } finally {
+      shard.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stage one row of the startup scan. The site is only served once finishWarm() marks it loaded.
+   *
+   * @param row the row read from the database
+   * @param epoch value returned by beginLoad() before the scan started
+   */
+  void loadRow(StockLevel row, long epoch) {
+    itemSiteIndex.add(row.getSiteId(), row.getItemId());
+    Shard shard = shardOf(row.getSiteId());
+    shard.lock.writeLock().lock();
+    try {
+      SiteStock stock = stockOf(shard, row.getSiteId());
+      if (stock.lastWrite <= epoch && stock.pendingWrites == 0 && !stock.loaded) {
+        stock.items.put(row.getItemId(), row.getQuantity());
+      }
+    } finally {
+      shard.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Register a site row during the startup scan, so that sites holding nothing are known too.
+   *
+   * @param site the site read from the database
+   */
+  void loadSiteRow(Site site) {
+    putSiteRow(site);
+    Shard shard = shardOf(site.getSiteId());
+    shard.lock.writeLock().lock();
+    try {
+      stockOf(shard, site.getSiteId());
+    } finally {
+      shard.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Register an item row during the startup scan.
+   *
+   * @param item the item read from the database
+   */
+  void loadItemRow(Item item) {
+    putItemRow(item);
+  }
+
+  /**
+   * Complete the startup scan: every site staged and not written to since epoch becomes loaded.
+   *
+   * @param epoch value returned by beginLoad() before the scan started
+   */
+  void finishWarm(long epoch) {
+    for (Shard shard : shards) {
+      shard.lock.writeLock().lock();
+      try {
+        shard.sites.forEach(
+            (siteId, stock) -> {
+              Long value = stock.loaded ? null : valueOf(stock.items);
+              if (stock.lastWrite <= epoch && stock.pendingWrites == 0 && value != null) {
+                markLoaded(stock, value);
+              } else if (!stock.loaded) {
+                // drop what was staged, the next read reloads the site
+                stock.items = new LongIntHashMap();
+              }
+            });
+      } finally {
+        shard.lock.writeLock().unlock();
+      }
+    }
+    warmed = true;
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Valuation
+  // ---------------------------------------------------------------------------------------------
+
+  /**
+   * Check the value of every loaded site against a recompute from the database, and unload the
+   * sites whose value differs, so that they are reloaded from the database. Sites written to after
+   * epoch are skipped, as the recompute may predate their latest write.
+   *
+   * @param recomputed the value in cents of every site holding stock, read from the database
+   * @param epoch value returned by beginLoad() before the database was read
+   * @return the ids of the sites that were unloaded
+   */
+  public List<Long> reconcileValues(List<SiteValue> recomputed, long epoch) {
+    LongObjectHashMap<SiteValue> expected = new LongObjectHashMap<>(recomputed.size());
+    recomputed.forEach(value -> expected.put(value.getSiteId(), value));
+    List<Long> drifted = new ArrayList<>();
+    for (Shard shard : shards) {
+      shard.lock.writeLock().lock();
+      try {
+        shard.sites.forEach(
+            (siteId, stock) -> {
+              SiteValue value = expected.get(siteId);
+              long valueCents = value == null ? 0 : value.getValueCents();
+              if (stock.loaded && stock.lastWrite <= epoch && stock.valueCents != valueCents) {
+                unload(stock);
+                drifted.add(siteId);
+              }
+            });
+      } finally {
+        shard.lock.writeLock().unlock();
+      }
+    }
+    valuationDrifts.add(drifted.size());
+    return drifted;
+  }
+
+  /**
+   * The unit price of an item in cents, as the valuation counts it.
+   *
+   * @param item the item
+   * @return the price rounded to the cent
+   */
+  public static long unitCents(Item item) {
+    return item.getItemPrice() == null ? 0 : Math.round(item.getItemPrice() * 100);
+  }
+
+  // the callers of the following hold the write lock of the site's shard
+
+  private SiteStock stockOf(Shard shard, long siteId) {
+    SiteStock stock = shard.sites.get(siteId);
+    if (stock == null) {
+      stock = new SiteStock();
+      shard.sites.put(siteId, stock);
+      knownSites.incrementAndGet();
+    }
+    return stock;
+  }
+
+  private void markLoaded(SiteStock stock, long valueCents) {
+    if (!stock.loaded) {
+      loadedSites.incrementAndGet();
+      stock.valueCents = 0;
+    }
+    totalCents.add(valueCents - stock.valueCents);
+    stock.valueCents = valueCents;
+    stock.loaded = true;
+  }
+
+  private void unload(SiteStock stock) {
+    if (stock.loaded) {
+      loadedSites.decrementAndGet();
+      totalCents.add(-stock.valueCents);
+    }
+    stock.valueCents = 0;
+    stock.loaded = false;
+  }
+
+  private void revalue(SiteStock stock, long itemId, int delta) {
+    long price = unitPrices.get(itemId, UNPRICED);
+    if (price == UNPRICED) {
+      // the item was never seen, so the site cannot be valued until it is reloaded
+      unload(stock);
+    } else {
+      stock.valueCents += delta * price;
+      totalCents.add(delta * price);
+    }
+  }
+
+  private Long valueOf(LongIntHashMap items) {
+    long[] value = {0};
+    boolean[] priced = {true};
+    items.forEach(
+        (itemId, quantity) -> {
+          long price = unitPrices.get(itemId, UNPRICED);
+          if (price == UNPRICED) {
+            priced[0] = false;
+          } else {
+            value[0] += quantity * price;
+          }
+        });
+    return priced[0] ? value[0] : null;
+  }
+
+  private void priceItem(Item item) {
+    long itemId = item.getItemId();
+    long price = unitCents(item);
+    // any one shard's lock keeps the prices from changing, so most calls, which change nothing,
+    // stay off the other shards
+    Shard shard = shardOf(itemId);
+    shard.lock.readLock().lock();
+    long known;
+    try {
+      known = unitPrices.get(itemId, UNPRICED);
+    } finally {
+      shard.lock.readLock().unlock();
+    }
+    if (known != price) {
+      reprice(itemId, price);
+    }
+  }
+
+  /**
+   * Record the price of an item and apply a change of it to the value of every loaded site holding
+   * the item. Every shard is locked, in order, so that no quantity change is valued while the price
+   * and the values disagree.
+   */
+  private void reprice(long itemId, long price) {
+    for (Shard shard : shards) {
+      shard.lock.writeLock().lock();
+    }
+    try {
+      long previous = unitPrices.get(itemId, UNPRICED);
+      unitPrices.put(itemId, price);
+      long change = previous == UNPRICED ? 0 : price - previous;
+      if (change != 0 && itemSiteIndex.isComplete()) {
+        for (int siteId : itemSiteIndex.sitesHoldingAll(new long[] {itemId})) {
+          revalueAt(shardOf(siteId).sites.get(siteId), itemId, change);
+        }
+      } else if (change != 0) {
+        // the index misses some sites, so look at every one
+        for (Shard shard : shards) {
+          shard.sites.forEach((siteId, stock) -> revalueAt(stock, itemId, change));
+        }
+      }
+    } finally {
+      for (Shard shard : shards) {
+        shard.lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private void revalueAt(SiteStock stock, long itemId, long change) {
+    if (stock != null && stock.loaded) {
+      long delta = change * stock.items.get(itemId, 0);
+      stock.valueCents += delta;
+      totalCents.add(delta);
+    }
+  }
+
+  // ---------------------------------------------------------------------------------------------
+  // Helpers
+  // ---------------------------------------------------------------------------------------------
+
+  private interface StockChange {
+    void apply(SiteStock stock);
+  }
+
+  private void write(long siteId, StockChange change) {
+    Shard shard = shardOf(siteId);
+    shard.lock.writeLock().lock();
+    try {
+      SiteStock stock = stockOf(shard, siteId);
+      stock.lastWrite = clock.incrementAndGet();
+      if (stock.loaded) {
+        change.apply(stock);
+      }
+    } finally {
+      shard.lock.writeLock().unlock();
+    }
+  }
+
+  private boolean hasItemRow(long itemId) {
+    referenceLock.readLock().lock();
+    try {
+      return itemRows.get(itemId) != null;
+    } finally {
+      referenceLock.readLock().unlock();
+    }
+  }
+
+  private LedgerLookup<List<Site>> renderSites(int[] siteIds) {
+    List<Site> result = new ArrayList<>(siteIds.length);
+    referenceLock.readLock().lock();
+    try {
+      for (int siteId : siteIds) {
+        Site site = siteRows.get(siteId);
+        if (site == null) {
+          return miss();
+        }
+        result.add(site);
+      }
+    } finally {
+      referenceLock.readLock().unlock();
+    }
+    return hit(result);
+  }
+
+  private void putSiteRow(Site site) {
+    referenceLock.writeLock().lock();
+    try {
+      siteRows.put(site.getSiteId(), site);
+    } finally {
+      referenceLock.writeLock().unlock();
+    }
+  }
+
+  private void putItemRow(Item item) {
+    referenceLock.writeLock().lock();
+    try {
+      itemRows.put(item.getItemId(), item);
+    } finally {
+      referenceLock.writeLock().unlock();
+    }
+    priceItem(item);
+  }
+
+  private Shard shardOf(long siteId) {
+    return shards[LongIntHashMap.mix(siteId) & shardMask];
+  }
+
+  private <T> LedgerLookup<T> hit(T value) {
+    hits.increment();
+    return LedgerLookup.hit(value);
+  }
+
+  private <T> LedgerLookup<T> miss() {
+    misses.increment();
+    return LedgerLookup.miss();
+  }
+
+  /**
+   * Run a change of a site's stock once the current transaction has committed, as afterCommit()
+   * does. From now until the transaction completes the site counts a pending write, and no load of
+   * it is taken up: a load run between the commit and the change would already hold the change, and
+   * the change would then be counted twice.
+   *
+   * @param siteId the id of the site
+   * @param change the change to apply
+   */
+  private void afterSiteCommit(long siteId, Runnable change) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      change.run();
+      return;
+    }
+    countPending(siteId, 1);
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            change.run();
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            countPending(siteId, -1);
+          }
+        });
+  }
+
+  private void countPending(long siteId, int change) {
+    Shard shard = shardOf(siteId);
+    shard.lock.writeLock().lock();
+    try {
+      SiteStock stock = stockOf(shard, siteId);
+      stock.pendingWrites += change;
+      // a load overlapping the transaction may or may not have read its rows, so discard it
+      stock.lastWrite = clock.incrementAndGet();
+    } finally {
+      shard.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Run a change once the current transaction has committed, so the ledger never shows data that is
+   * rolled back. Without an active transaction the change runs immediately.
+   *
+   * @param change the change to apply
+   */
+  private static void afterCommit(Runnable change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              change.run();
+            }
+          });
+    } else {
+      change.run();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.depot.ims.inventory;
+
+import com.depot.ims.datasource.ReplicaRoutingContext;
+import com.depot.ims.models.projections.StockLevel;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.sharding.ShardRouter;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Warms the InventoryLedger once the application has started. Sites and items are read as reference
+ * rows, then the Availabilities table is read as a stream of StockLevel rows, so the scan never
+ * holds the whole table as entities. When sharded, each shard's availabilities are read in turn.
+ */
+@Component
+public class InventoryLedgerLoader {
+
+  private static final Logger log = LoggerFactory.getLogger(InventoryLedgerLoader.class);
+
+  private final InventoryLedger inventoryLedger;
+  private final AvailabilityRepository availabilityRepository;
+  private final SiteRepository siteRepository;
+  private final ItemRepository itemRepository;
+  private final ShardRouter shardRouter;
+
+  /**
+   * Constructor for InventoryLedgerLoader.
+   *
+   * @param inventoryLedger the ledger to warm
+   * @param availabilityRepository The AvailabilityRepository instance.
+   * @param siteRepository The SiteRepository instance.
+   * @param itemRepository The ItemRepository instance.
+   * @param shardRouter reads the availabilities of every shard
+   */
+  public InventoryLedgerLoader(
+      InventoryLedger inventoryLedger,
+      AvailabilityRepository availabilityRepository,
+      SiteRepository siteRepository,
+      ItemRepository itemRepository,
+      ShardRouter shardRouter) {
+    this.inventoryLedger = inventoryLedger;
+    this.availabilityRepository = availabilityRepository;
+    this.siteRepository = siteRepository;
+    this.itemRepository = itemRepository;
+    this.shardRouter = shardRouter;
+  }
+
+  /** Load every site, item and availability into the ledger. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warm() {
+    long start = System.nanoTime();
+    long epoch = inventoryLedger.beginLoad();
+
+    // the ledger is kept in step with the primary, so it must not be filled from a lagging replica
+    ReplicaRoutingContext.runOnPrimary(
+        () -> {
+          itemRepository.findAll().forEach(inventoryLedger::loadItemRow);
+          siteRepository.findAll().forEach(inventoryLedger::loadSiteRow);
+          shardRouter.readEachShard(
+              () -> {
+                try (Stream<StockLevel> rows = availabilityRepository.streamAllStockLevels()) {
+                  rows.forEach(row -> inventoryLedger.loadRow(row, epoch));
+                }
+              });
+        });
+    inventoryLedger.finishWarm(epoch);
+
+    LedgerStats stats = inventoryLedger.stats();
+    log.info(
+        "Inventory ledger warmed with {} rows across {} sites in {} ms",
+        stats.getRows(),
+        stats.getSites(),
+        (System.nanoTime() - start) / 1_000_000);
+  }
+}
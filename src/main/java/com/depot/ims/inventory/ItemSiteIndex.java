@@ -0,0 +1,84 @@
+package com.depot.ims.inventory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index from an item id to the set of sites that hold an availability row for that item, stored as
+ * one CompressedBitmap of site ids per item. Finding the sites that hold several items is then one
+ * bitmap intersection per item.
+ *
+ * <p>Availability rows are never deleted, so the index only ever grows and adding a pair twice is
+ * harmless. That lets commits and the startup scan add pairs in any order without coordination.
+ *
+ * <p>The bitmaps hold site ids as non-negative ints. A site whose id does not fit is left out and
+ * marks the index incomplete, after which its callers answer from the database instead.
+ */
+class ItemSiteIndex {
+
+  private static final int[] NONE = new int[0];
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final LongObjectHashMap<CompressedBitmap> sitesByItem = new LongObjectHashMap<>();
+  // cleared for good once a site id that does not fit an int was added
+  private volatile boolean complete = true;
+
+  /**
+   * Record that a site holds an item. A site id outside the non-negative int range is not recorded
+   * and marks the index incomplete.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   */
+  void add(long siteId, long itemId) {
+    if (siteId < 0 || siteId > Integer.MAX_VALUE) {
+      complete = false;
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      sitesByItem.computeIfAbsent(itemId, id -> new CompressedBitmap()).add((int) siteId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Whether every site added so far is in the index.
+   *
+   * @return false once a site id outside the non-negative int range was added, since
+   *     sitesHoldingAll() leaves such sites out
+   */
+  boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Find the sites that hold every one of the given items. The bitmaps are intersected from the
+   * smallest up, so the running result shrinks as fast as possible.
+   *
+   * @param itemIds ids of the items, at least one
+   * @return ids of the sites holding all the items, in ascending order
+   */
+  int[] sitesHoldingAll(long[] itemIds) {
+    lock.readLock().lock();
+    try {
+      CompressedBitmap[] bitmaps = new CompressedBitmap[itemIds.length];
+      for (int i = 0; i < itemIds.length; i++) {
+        bitmaps[i] = sitesByItem.get(itemIds[i]);
+        if (bitmaps[i] == null) {
+          return NONE;
+        }
+      }
+      Arrays.sort(bitmaps, Comparator.comparingInt(CompressedBitmap::cardinality));
+      CompressedBitmap result = bitmaps[0];
+      for (int i = 1; i < bitmaps.length && !result.isEmpty(); i++) {
+        result = result.and(bitmaps[i]);
+      }
+      return result.toArray();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.depot.ims.inventory;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The outcome of a read from the InventoryLedger. A hit carries the answer, which may itself be
+ * null (e.g. the site holds no such item); a miss means the ledger cannot answer and the caller has
+ * to read from the database.
+ *
+ * @param <T> type of the answer
+ */
+@Data
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class LedgerLookup<T> {
+  private final boolean hit;
+  private final T value;
+
+  public static <T> LedgerLookup<T> hit(T value) {
+    return new LedgerLookup<>(true, value);
+  }
+
+  public static <T> LedgerLookup<T> miss() {
+    return new LedgerLookup<>(false, null);
+  }
+}
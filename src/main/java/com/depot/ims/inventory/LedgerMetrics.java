@@ -0,0 +1,64 @@
+package com.depot.ims.inventory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the InventoryLedger counters as meters: reads answered from memory and from the
+ * database, their hit ratio, how much of the Availabilities table is held in memory, and the stock
+ * value it adds up to.
+ */
+@Component
+public class LedgerMetrics implements MeterBinder {
+
+  private final InventoryLedger inventoryLedger;
+
+  /**
+   * Constructor for LedgerMetrics.
+   *
+   * @param inventoryLedger the ledger to observe
+   */
+  public LedgerMetrics(InventoryLedger inventoryLedger) {
+    this.inventoryLedger = inventoryLedger;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("ims.ledger.reads", inventoryLedger, InventoryLedger::hitCount)
+        .tag("result", "hit")
+        .description("Availability reads answered from the in-memory ledger")
+        .register(registry);
+    FunctionCounter.builder("ims.ledger.reads", inventoryLedger, InventoryLedger::missCount)
+        .tag("result", "miss")
+        .description("Availability reads that fell back to the database")
+        .register(registry);
+    Gauge.builder("ims.ledger.hit.ratio", inventoryLedger, LedgerMetrics::hitRatio)
+        .description("Share of availability reads answered from memory since startup")
+        .register(registry);
+    Gauge.builder("ims.ledger.sites", inventoryLedger, ledger -> ledger.stats().getSites())
+        .description("Sites whose stock is held in memory")
+        .register(registry);
+    Gauge.builder("ims.ledger.rows", inventoryLedger, ledger -> ledger.stats().getRows())
+        .description("Availabilities held in memory")
+        .register(registry);
+    Gauge.builder("ims.ledger.warmed", inventoryLedger, ledger -> ledger.isWarmed() ? 1 : 0)
+        .description("1 once the startup scan has completed")
+        .register(registry);
+    Gauge.builder("ims.ledger.value", inventoryLedger, InventoryLedger::totalValue)
+        .description("Stock value of all sites, NaN while a site is not loaded")
+        .register(registry);
+    FunctionCounter.builder(
+            "ims.ledger.valuation.drifts", inventoryLedger, InventoryLedger::valuationDriftCount)
+        .description("Sites whose stock value differed from a recompute and were reloaded")
+        .register(registry);
+  }
+
+  private static double hitRatio(InventoryLedger ledger) {
+    long hits = ledger.hitCount();
+    long reads = hits + ledger.missCount();
+    return reads == 0 ? 0 : (double) hits / reads;
+  }
+}
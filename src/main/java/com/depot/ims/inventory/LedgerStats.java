@@ -0,0 +1,20 @@
+package com.depot.ims.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** A point-in-time snapshot of the InventoryLedger counters. */
+@Data
+@AllArgsConstructor
+public class LedgerStats {
+  // number of reads answered from memory
+  private final long hits;
+  // number of reads that had to fall back to the database
+  private final long misses;
+  // number of sites whose stock is held in memory
+  private final int sites;
+  // number of (siteId, itemId) quantities held in memory
+  private final long rows;
+  // whether the startup scan has completed
+  private final boolean warmed;
+}
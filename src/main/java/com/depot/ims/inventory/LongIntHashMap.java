@@ -0,0 +1,184 @@
+package com.depot.ims.inventory;
+
+/**
+ * An open-addressing hash map from primitive long keys to primitive int values. Keys and values are
+ * kept in parallel arrays, so no Long or Integer is ever boxed. The map is not thread-safe; callers
+ * guard it with their own lock.
+ */
+public class LongIntHashMap {
+
+  /** Callback used by forEach() to visit every entry without boxing. */
+  @FunctionalInterface
+  public interface EntryConsumer {
+    void accept(long key, int value);
+  }
+
+  private static final long FREE = 0L;
+  private static final float LOAD_FACTOR = 0.6f;
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+  private int resizeAt;
+
+  // key 0 is the free-slot marker, so its entry lives outside the arrays
+  private boolean hasZeroKey;
+  private int zeroValue;
+
+  public LongIntHashMap() {
+    this(8);
+  }
+
+  /**
+   * Constructor with an expected number of entries.
+   *
+   * @param expectedSize number of entries the map should hold before it has to grow
+   */
+  public LongIntHashMap(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  /**
+   * Get the value of a key.
+   *
+   * @param key key
+   * @param defaultValue value returned when the key is absent
+   * @return the value of the key, or defaultValue if the key is absent
+   */
+  public int get(long key, int defaultValue) {
+    if (key == FREE) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int slot = slotOf(key);
+    return slot < 0 ? defaultValue : values[slot];
+  }
+
+  public boolean containsKey(long key) {
+    return key == FREE ? hasZeroKey : slotOf(key) >= 0;
+  }
+
+  /**
+   * Set the value of a key, inserting the key if it is absent.
+   *
+   * @param key key
+   * @param value value
+   */
+  public void put(long key, int value) {
+    if (key == FREE) {
+      size += hasZeroKey ? 0 : 1;
+      hasZeroKey = true;
+      zeroValue = value;
+      return;
+    }
+    int slot = mix(key) & mask;
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    if (++size >= resizeAt) {
+      rehash(keys.length << 1);
+    }
+  }
+
+  /**
+   * Add delta to the value of a key that is already present.
+   *
+   * @param key key
+   * @param delta amount to add
+   * @return true if the key was present and has been updated, false if the key is absent
+   */
+  public boolean addTo(long key, int delta) {
+    if (key == FREE) {
+      if (hasZeroKey) {
+        zeroValue += delta;
+      }
+      return hasZeroKey;
+    }
+    int slot = slotOf(key);
+    if (slot < 0) {
+      return false;
+    }
+    values[slot] += delta;
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Visit every entry of the map in no particular order.
+   *
+   * @param consumer callback receiving each key and value
+   */
+  public void forEach(EntryConsumer consumer) {
+    if (hasZeroKey) {
+      consumer.accept(FREE, zeroValue);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != FREE) {
+        consumer.accept(keys[i], values[i]);
+      }
+    }
+  }
+
+  private int slotOf(long key) {
+    int slot = mix(key) & mask;
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void rehash(int newCapacity) {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(newCapacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != FREE) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+    resizeAt = Math.max(1, (int) (capacity * LOAD_FACTOR));
+  }
+
+  static int capacityFor(int expectedSize) {
+    int capacity = 8;
+    while (capacity * LOAD_FACTOR <= expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Spread the bits of a key so that sequential database ids do not cluster in neighbouring slots.
+   *
+   * @param key key
+   * @return the mixed hash of the key
+   */
+  static int mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -0,0 +1,121 @@
+package com.depot.ims.inventory;
+
+/**
+ * An open-addressing hash map from primitive long keys to primitive long values, laid out like
+ * LongIntHashMap for values that do not fit an int. The map is not thread-safe; callers guard it
+ * with their own lock.
+ */
+public class LongLongHashMap {
+
+  private static final long FREE = 0L;
+  private static final float LOAD_FACTOR = 0.6f;
+
+  private long[] keys;
+  private long[] values;
+  private int mask;
+  private int size;
+  private int resizeAt;
+
+  // key 0 is the free-slot marker, so its entry lives outside the arrays
+  private boolean hasZeroKey;
+  private long zeroValue;
+
+  public LongLongHashMap() {
+    this(8);
+  }
+
+  /**
+   * Constructor with an expected number of entries.
+   *
+   * @param expectedSize number of entries the map should hold before it has to grow
+   */
+  public LongLongHashMap(int expectedSize) {
+    allocate(LongIntHashMap.capacityFor(expectedSize));
+  }
+
+  /**
+   * Get the value of a key.
+   *
+   * @param key key
+   * @param defaultValue value returned when the key is absent
+   * @return the value of the key, or defaultValue if the key is absent
+   */
+  public long get(long key, long defaultValue) {
+    if (key == FREE) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int slot = slotOf(key);
+    return slot < 0 ? defaultValue : values[slot];
+  }
+
+  public boolean containsKey(long key) {
+    return key == FREE ? hasZeroKey : slotOf(key) >= 0;
+  }
+
+  /**
+   * Set the value of a key, inserting the key if it is absent.
+   *
+   * @param key key
+   * @param value value
+   */
+  public void put(long key, long value) {
+    if (key == FREE) {
+      size += hasZeroKey ? 0 : 1;
+      hasZeroKey = true;
+      zeroValue = value;
+      return;
+    }
+    int slot = LongIntHashMap.mix(key) & mask;
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    if (++size >= resizeAt) {
+      rehash(keys.length << 1);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int slotOf(long key) {
+    int slot = LongIntHashMap.mix(key) & mask;
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void rehash(int newCapacity) {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(newCapacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != FREE) {
+        int slot = LongIntHashMap.mix(key) & mask;
+        while (keys[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    mask = capacity - 1;
+    resizeAt = Math.max(1, (int) (capacity * LOAD_FACTOR));
+  }
+}
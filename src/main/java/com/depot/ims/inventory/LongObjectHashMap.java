@@ -0,0 +1,159 @@
+package com.depot.ims.inventory;
+
+import java.util.function.LongFunction;
+
+/**
+ * An open-addressing hash map from primitive long keys to object values, so entity ids are used as
+ * keys without boxing them into Long. The map is not thread-safe; callers guard it with their own
+ * lock.
+ *
+ * @param <V> type of the values
+ */
+public class LongObjectHashMap<V> {
+
+  /**
+   * Callback used by forEach() to visit every entry without boxing its key.
+   *
+   * @param <V> type of the values
+   */
+  @FunctionalInterface
+  public interface EntryConsumer<V> {
+    void accept(long key, V value);
+  }
+
+  private static final long FREE = 0L;
+  private static final float LOAD_FACTOR = 0.6f;
+
+  private long[] keys;
+  private Object[] values;
+  private int mask;
+  private int size;
+  private int resizeAt;
+
+  // key 0 is the free-slot marker, so its entry lives outside the arrays
+  private boolean hasZeroKey;
+  private V zeroValue;
+
+  public LongObjectHashMap() {
+    this(8);
+  }
+
+  /**
+   * Constructor with an expected number of entries.
+   *
+   * @param expectedSize number of entries the map should hold before it has to grow
+   */
+  public LongObjectHashMap(int expectedSize) {
+    allocate(LongIntHashMap.capacityFor(expectedSize));
+  }
+
+  /**
+   * Get the value of a key.
+   *
+   * @param key key
+   * @return the value of the key, or null if the key is absent
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    if (key == FREE) {
+      return hasZeroKey ? zeroValue : null;
+    }
+    int slot = LongIntHashMap.mix(key) & mask;
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        return (V) values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return null;
+  }
+
+  /**
+   * Set the value of a key, inserting the key if it is absent.
+   *
+   * @param key key
+   * @param value value, must not be null
+   */
+  public void put(long key, V value) {
+    if (key == FREE) {
+      size += hasZeroKey ? 0 : 1;
+      hasZeroKey = true;
+      zeroValue = value;
+      return;
+    }
+    int slot = LongIntHashMap.mix(key) & mask;
+    while (keys[slot] != FREE) {
+      if (keys[slot] == key) {
+        values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    if (++size >= resizeAt) {
+      rehash(keys.length << 1);
+    }
+  }
+
+  /**
+   * Get the value of a key, creating and inserting it first if the key is absent.
+   *
+   * @param key key
+   * @param factory creates the value for an absent key
+   * @return the existing or newly created value
+   */
+  public V computeIfAbsent(long key, LongFunction<V> factory) {
+    V value = get(key);
+    if (value == null) {
+      value = factory.apply(key);
+      put(key, value);
+    }
+    return value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Visit every entry of the map in no particular order.
+   *
+   * @param consumer callback receiving each key and value
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(EntryConsumer<V> consumer) {
+    if (hasZeroKey) {
+      consumer.accept(FREE, zeroValue);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != FREE) {
+        consumer.accept(keys[i], (V) values[i]);
+      }
+    }
+  }
+
+  private void rehash(int newCapacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(newCapacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != FREE) {
+        int slot = LongIntHashMap.mix(key) & mask;
+        while (keys[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    resizeAt = Math.max(1, (int) (capacity * LOAD_FACTOR));
+  }
+}
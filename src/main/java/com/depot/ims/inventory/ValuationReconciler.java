@@ -0,0 +1,134 @@
+package com.depot.ims.inventory;
+
+import com.depot.ims.datasource.ReplicaRoutingContext;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks the stock values the InventoryLedger maintains against a full recompute from the database,
+ * every ims.ledger.reconcile-interval-ms. A site whose value differs, e.g. because a write reached
+ * the database without being reported to the ledger, is logged, unloaded from the ledger and
+ * reloaded from the database straight away.
+ */
+@Component
+public class ValuationReconciler {
+
+  private static final Logger log = LoggerFactory.getLogger(ValuationReconciler.class);
+
+  private final InventoryLedger inventoryLedger;
+  private final AvailabilityRepository availabilityRepository;
+  private final ShardRouter shardRouter;
+  private final BackgroundThreads backgroundThreads;
+  private final long intervalMillis;
+
+  private volatile Thread reconcileThread;
+  private volatile boolean running;
+
+  /**
+   * Constructor for ValuationReconciler.
+   *
+   * @param inventoryLedger the ledger whose values are checked
+   * @param availabilityRepository recomputes the values and reloads the sites that drifted
+   * @param shardRouter reads the availabilities of every shard
+   * @param backgroundThreads creates the reconcile thread
+   * @param intervalMillis how often to reconcile, ims.ledger.reconcile-interval-ms; 0 never does
+   */
+  public ValuationReconciler(
+      InventoryLedger inventoryLedger,
+      AvailabilityRepository availabilityRepository,
+      ShardRouter shardRouter,
+      BackgroundThreads backgroundThreads,
+      @Value("${ims.ledger.reconcile-interval-ms:300000}") long intervalMillis) {
+    this.inventoryLedger = inventoryLedger;
+    this.availabilityRepository = availabilityRepository;
+    this.shardRouter = shardRouter;
+    this.backgroundThreads = backgroundThreads;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /** Start the reconcile thread, unless the interval is 0. */
+  @PostConstruct
+  public void start() {
+    if (intervalMillis > 0) {
+      running = true;
+      reconcileThread = backgroundThreads.newThread("valuation-reconciler", this::run);
+      reconcileThread.start();
+    }
+  }
+
+  /**
+   * Stop the reconcile thread.
+   *
+   * @throws InterruptedException if interrupted while waiting for the thread to finish
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    Thread thread = reconcileThread;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(5_000);
+    }
+  }
+
+  /**
+   * Recompute the value of every site from the database and correct the ledger where it differs.
+   * Does nothing before the startup scan of the ledger has completed.
+   *
+   * @return the ids of the sites whose value had drifted
+   */
+  public List<Long> reconcile() {
+    if (!inventoryLedger.isWarmed()) {
+      return List.of();
+    }
+    long epoch = inventoryLedger.beginLoad();
+    // the ledger is kept in step with the primary, so it must not be checked against a replica
+    List<SiteValue> recomputed =
+        ReplicaRoutingContext.onPrimary(
+            () -> shardRouter.gather(availabilityRepository::sumValueCentsBySite));
+    List<Long> drifted = inventoryLedger.reconcileValues(recomputed, epoch);
+    if (!drifted.isEmpty()) {
+      log.warn("Stock value of sites {} differed from the database, reloading them", drifted);
+      for (Long siteId : drifted) {
+        reload(siteId);
+      }
+    }
+    return drifted;
+  }
+
+  private void reload(Long siteId) {
+    ReplicaRoutingContext.runOnPrimary(
+        () ->
+            shardRouter.onSite(
+                siteId,
+                () -> {
+                  long epoch = inventoryLedger.beginLoad();
+                  List<Availability> rows = availabilityRepository.findBySiteId(siteId);
+                  inventoryLedger.loadSite(siteId, rows, epoch);
+                  return null;
+                }));
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(intervalMillis);
+        reconcile();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Stock valuation reconciliation failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.depot.ims.listing;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One field a collection endpoint can return and sort by: its name in the JSON rows, the JPQL path
+ * it is selected from, its Java type, and whether the column can be null.
+ */
+@Getter
+@AllArgsConstructor
+public class ListingField {
+  private final String name;
+  private final String path;
+  private final Class<?> type;
+  private final boolean nullable;
+}
@@ -0,0 +1,107 @@
+package com.depot.ims.listing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a collection endpoint may expose: the entity it lists, the fields a client can select and
+ * sort by, and the key fields that order rows uniquely. The key is appended to every sort so that
+ * pages never overlap and a keyset cursor always points at exactly one row.
+ *
+ * <p>Only listed fields can be selected, so columns such as a user's password are never reachable.
+ * A sharded spec lists an entity whose rows are spread across the shards.
+ */
+public class ListingSpec {
+
+  private final String entity;
+  private final String alias;
+  private final Map<String, ListingField> fields = new LinkedHashMap<>();
+  private final List<String> key = new ArrayList<>();
+  private boolean sharded;
+
+  /**
+   * Start a spec.
+   *
+   * @param entity the JPQL entity name
+   * @param alias the alias the field paths start with
+   */
+  public ListingSpec(String entity, String alias) {
+    this.entity = entity;
+    this.alias = alias;
+  }
+
+  /**
+   * Add a field that is never null.
+   *
+   * @param name the name in the JSON rows
+   * @param path the JPQL path, e.g. a.siteId.siteName
+   * @param type the Java type of the column
+   * @return this spec
+   */
+  public ListingSpec field(String name, String path, Class<?> type) {
+    fields.put(name, new ListingField(name, path, type, false));
+    return this;
+  }
+
+  /**
+   * Add a field that may be null. Keyset cursors cannot continue a sort on it.
+   *
+   * @param name the name in the JSON rows
+   * @param path the JPQL path
+   * @param type the Java type of the column
+   * @return this spec
+   */
+  public ListingSpec nullableField(String name, String path, Class<?> type) {
+    fields.put(name, new ListingField(name, path, type, true));
+    return this;
+  }
+
+  /**
+   * Declare the fields that identify a row, in index order.
+   *
+   * @param names names of fields added before
+   * @return this spec
+   */
+  public ListingSpec key(String... names) {
+    for (String name : names) {
+      if (!fields.containsKey(name)) {
+        throw new IllegalArgumentException("Key field " + name + " is not a field of " + entity);
+      }
+      key.add(name);
+    }
+    return this;
+  }
+
+  /**
+   * Declare that the rows are spread across the shards, so every page is gathered from all of them.
+   *
+   * @return this spec
+   */
+  public ListingSpec sharded() {
+    this.sharded = true;
+    return this;
+  }
+
+  public String getEntity() {
+    return entity;
+  }
+
+  public String getAlias() {
+    return alias;
+  }
+
+  public Map<String, ListingField> getFields() {
+    return Collections.unmodifiableMap(fields);
+  }
+
+  public List<String> getKey() {
+    return Collections.unmodifiableList(key);
+  }
+
+  public boolean isSharded() {
+    return sharded;
+  }
+}
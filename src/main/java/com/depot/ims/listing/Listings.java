@@ -0,0 +1,72 @@
+package com.depot.ims.listing;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+
+/**
+ * The ListingSpec of every collection endpoint. Availabilities and ships select the names of their
+ * site, item and shipment through joins in the same query, instead of loading those entities.
+ * Shipments, ships and availabilities live on the shards.
+ */
+public final class Listings {
+
+  public static final ListingSpec ITEMS =
+      new ListingSpec("Item", "i")
+          .field("itemId", "i.itemId", Long.class)
+          .field("itemName", "i.itemName", String.class)
+          .field("itemPrice", "i.itemPrice", Double.class)
+          .key("itemId");
+
+  public static final ListingSpec SITES =
+      new ListingSpec("Site", "s")
+          .field("siteId", "s.siteId", Long.class)
+          .field("siteName", "s.siteName", String.class)
+          .field("siteLocation", "s.siteLocation", String.class)
+          .field("siteStatus", "s.siteStatus", String.class)
+          .nullableField("ceaseDate", "s.ceaseDate", Date.class)
+          .nullableField("internalSite", "s.internalSite", Boolean.class)
+          .key("siteId");
+
+  // no password: it is not listable
+  public static final ListingSpec USERS =
+      new ListingSpec("User", "u")
+          .field("userId", "u.userId", Long.class)
+          .field("username", "u.username", String.class)
+          .field("position", "u.position", String.class)
+          .key("userId");
+
+  public static final ListingSpec SHIPMENTS =
+      new ListingSpec("Shipment", "s")
+          .field("shipmentId", "s.shipmentId", Long.class)
+          .field("source", "s.source", Long.class)
+          .field("destination", "s.destination", Long.class)
+          .nullableField("currentLocation", "s.currentLocation", String.class)
+          .nullableField("departureTime", "s.departureTime", Timestamp.class)
+          .nullableField("estimatedArrivalTime", "s.estimatedArrivalTime", Timestamp.class)
+          .nullableField("actualArrivalTime", "s.actualArrivalTime", Timestamp.class)
+          .field("shipmentStatus", "s.shipmentStatus", String.class)
+          .key("shipmentId")
+          .sharded();
+
+  public static final ListingSpec SHIPS =
+      new ListingSpec("Ship", "s")
+          .field("itemId", "s.itemId.itemId", Long.class)
+          .field("itemName", "s.itemId.itemName", String.class)
+          .field("shipmentId", "s.shipmentId.shipmentId", Long.class)
+          .field("shipmentStatus", "s.shipmentId.shipmentStatus", String.class)
+          .field("quantity", "s.quantity", Integer.class)
+          .key("itemId", "shipmentId")
+          .sharded();
+
+  public static final ListingSpec AVAILABILITIES =
+      new ListingSpec("Availability", "a")
+          .field("siteId", "a.siteId.siteId", Long.class)
+          .field("siteName", "a.siteId.siteName", String.class)
+          .field("itemId", "a.itemId.itemId", Long.class)
+          .field("itemName", "a.itemId.itemName", String.class)
+          .field("quantity", "a.quantity", Integer.class)
+          .key("siteId", "itemId")
+          .sharded();
+
+  private Listings() {}
+}
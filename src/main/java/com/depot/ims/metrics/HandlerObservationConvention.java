@@ -0,0 +1,48 @@
+package com.depot.ims.metrics;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Adds the controller and handler method to the default http.server.requests tags, so the latency
+ * of e.g. AvailabilityController.changeQuantity can be read without mapping URIs back to code.
+ * Requests no handler matched, such as 404s, are tagged "none".
+ */
+public class HandlerObservationConvention extends DefaultServerRequestObservationConvention {
+
+  static final String CONTROLLER = "controller";
+  static final String CONTROLLER_METHOD = "controller.method";
+  private static final String NONE = "none";
+
+  @Override
+  public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+    String[] handler = handlerOf(context.getCarrier());
+    return super.getLowCardinalityKeyValues(context)
+        .and(KeyValue.of(CONTROLLER, handler[0]), KeyValue.of(CONTROLLER_METHOD, handler[1]));
+  }
+
+  /**
+   * The controller and method that handled a request.
+   *
+   * @param request the request, once a handler has been picked for it
+   * @return the simple name of the controller class and the method name, or "none" for both
+   */
+  static String[] handlerOf(HttpServletRequest request) {
+    Object handler =
+        request == null
+            ? null
+            : request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+    if (handler instanceof HandlerMethod) {
+      HandlerMethod handlerMethod = (HandlerMethod) handler;
+      return new String[] {
+        handlerMethod.getBeanType().getSimpleName(), handlerMethod.getMethod().getName()
+      };
+    }
+    return new String[] {NONE, NONE};
+  }
+}
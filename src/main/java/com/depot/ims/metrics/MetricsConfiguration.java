@@ -0,0 +1,38 @@
+package com.depot.ims.metrics;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.ServerRequestObservationConvention;
+
+/**
+ * Meters beyond the ones Spring Boot registers on its own. Boot already times every HTTP request
+ * (http.server.requests), every repository method (spring.data.repository.invocations) and the
+ * Hikari pool (hikaricp.connections.*); this adds the controller and handler method to the HTTP
+ * timer, and times the methods of every service annotated with {@code @Timed}.
+ */
+@Configuration
+public class MetricsConfiguration {
+
+  /**
+   * Time the public methods of {@code @Timed} beans, tagged with their class and method.
+   *
+   * @param registry the application's MeterRegistry
+   * @return the aspect
+   */
+  @Bean
+  public TimedAspect timedAspect(MeterRegistry registry) {
+    return new TimedAspect(registry);
+  }
+
+  /**
+   * Tag http.server.requests with the controller and handler method that served the request.
+   *
+   * @return the convention Boot's observation filter uses instead of the default one
+   */
+  @Bean
+  public ServerRequestObservationConvention handlerObservationConvention() {
+    return new HandlerObservationConvention();
+  }
+}
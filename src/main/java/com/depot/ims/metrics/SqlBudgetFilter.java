@@ -0,0 +1,119 @@
+package com.depot.ims.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Tracks the SQL of every HTTP request. Per controller method it records the statements issued, the
+ * entities loaded and the time spent executing them (ims.request.sql.*), and it logs a warning for
+ * a request that issues more statements than the budget, listing any statement it repeated often
+ * enough to look like an N+1 fetch.
+ *
+ * <p>Only the request thread is tracked: the body of a streamed response is written after this
+ * filter returns and is not counted.
+ */
+@Component
+public class SqlBudgetFilter extends OncePerRequestFilter {
+
+  private static final Logger log = LoggerFactory.getLogger(SqlBudgetFilter.class);
+
+  private final MeterRegistry meterRegistry;
+  private final int statementBudget;
+  private final int repeatThreshold;
+
+  /**
+   * Constructor for SqlBudgetFilter.
+   *
+   * @param meterRegistry the registry the per-request meters are recorded in
+   * @param statementBudget most statements a request may issue before it is logged
+   * @param repeatThreshold repetitions of one statement reported as a possible N+1 fetch
+   */
+  public SqlBudgetFilter(
+      MeterRegistry meterRegistry,
+      @Value("${ims.sql.budget.statements:20}") int statementBudget,
+      @Value("${ims.sql.budget.repeated:5}") int repeatThreshold) {
+    this.meterRegistry = meterRegistry;
+    this.statementBudget = statementBudget;
+    this.repeatThreshold = repeatThreshold;
+  }
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    SqlStatementTracker.start();
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      record(request, SqlStatementTracker.stop());
+    }
+  }
+
+  private void record(HttpServletRequest request, SqlStatementStats stats) {
+    if (stats == null) {
+      return;
+    }
+    String[] handler = HandlerObservationConvention.handlerOf(request);
+    Tags tags =
+        Tags.of(
+            HandlerObservationConvention.CONTROLLER,
+            handler[0],
+            HandlerObservationConvention.CONTROLLER_METHOD,
+            handler[1]);
+    DistributionSummary.builder("ims.request.sql.statements")
+        .description("SQL statements issued per HTTP request")
+        .tags(tags)
+        .register(meterRegistry)
+        .record(stats.getStatements());
+    DistributionSummary.builder("ims.request.sql.entities")
+        .description("Entities loaded from query results per HTTP request")
+        .tags(tags)
+        .register(meterRegistry)
+        .record(stats.getEntitiesLoaded());
+    Timer.builder("ims.request.sql.time")
+        .description("Time spent executing SQL per HTTP request")
+        .tags(tags)
+        .register(meterRegistry)
+        .record(stats.getExecutionNanos(), TimeUnit.NANOSECONDS);
+
+    if (stats.getStatements() > statementBudget) {
+      meterRegistry.counter("ims.request.sql.over.budget", tags).increment();
+      StringBuilder message =
+          new StringBuilder()
+              .append(request.getMethod())
+              .append(' ')
+              .append(request.getRequestURI())
+              .append(" (")
+              .append(handler[0])
+              .append('.')
+              .append(handler[1])
+              .append(") issued ")
+              .append(stats)
+              .append(", over the budget of ")
+              .append(statementBudget)
+              .append(" statements");
+      for (Map.Entry<String, Integer> repeated : stats.repeated(repeatThreshold).entrySet()) {
+        message
+            .append("\n  possible N+1, ")
+            .append(repeated.getValue())
+            .append("x: ")
+            .append(repeated.getKey());
+      }
+      log.warn(message.toString());
+    }
+  }
+}
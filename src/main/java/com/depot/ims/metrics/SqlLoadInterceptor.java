@@ -0,0 +1,21 @@
+package com.depot.ims.metrics;
+
+import org.hibernate.Interceptor;
+import org.hibernate.type.Type;
+
+/**
+ * Counts the entities Hibernate builds from query results, the rows a request actually pulled into
+ * the persistence context, against the SqlStatementTracker of its thread.
+ */
+public class SqlLoadInterceptor implements Interceptor {
+
+  @Override
+  public boolean onLoad(
+      Object entity, Object id, Object[] state, String[] propertyNames, Type[] types) {
+    SqlStatementStats stats = SqlStatementTracker.current();
+    if (stats != null) {
+      stats.entityLoaded();
+    }
+    return false;
+  }
+}
@@ -0,0 +1,40 @@
+package com.depot.ims.metrics;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Adds each statement and batch JDBC executes, as one round trip, and the time it takes to the
+ * SqlStatementTracker of its thread. Hibernate creates one listener per session, which is only ever
+ * used by one thread.
+ */
+public class SqlSessionListener implements SessionEventListener {
+
+  private long executeStart;
+  private long batchStart;
+
+  @Override
+  public void jdbcExecuteStatementStart() {
+    executeStart = System.nanoTime();
+  }
+
+  @Override
+  public void jdbcExecuteStatementEnd() {
+    SqlStatementStats stats = SqlStatementTracker.current();
+    if (stats != null) {
+      stats.executed(System.nanoTime() - executeStart);
+    }
+  }
+
+  @Override
+  public void jdbcExecuteBatchStart() {
+    batchStart = System.nanoTime();
+  }
+
+  @Override
+  public void jdbcExecuteBatchEnd() {
+    SqlStatementStats stats = SqlStatementTracker.current();
+    if (stats != null) {
+      stats.executed(System.nanoTime() - batchStart);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package com.depot.ims.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/** Counts every statement Hibernate prepares against the SqlStatementTracker of its thread. */
+public class SqlStatementInspector implements StatementInspector {
+
+  @Override
+  public String inspect(String sql) {
+    SqlStatementStats stats = SqlStatementTracker.current();
+    if (stats != null) {
+      stats.statement(sql);
+    }
+    return sql;
+  }
+}
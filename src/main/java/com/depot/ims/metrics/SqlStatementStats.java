@@ -0,0 +1,86 @@
+package com.depot.ims.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SQL one unit of work issued on one thread: how many statements Hibernate prepared, how many
+ * round trips executing them took, how many entities it loaded from their results, how long the
+ * database spent executing them, and how often each distinct statement was prepared. A JDBC batch
+ * is one round trip however many rows it carries. A statement prepared over and over within one
+ * request, differing only in its parameters, is the signature of an N+1 fetch.
+ */
+public class SqlStatementStats {
+
+  // distinct statements remembered, so a request streaming thousands of them stays bounded
+  private static final int MAX_DISTINCT = 256;
+
+  private final Map<String, Integer> counts = new LinkedHashMap<>();
+  private int statements;
+  private int roundTrips;
+  private long entitiesLoaded;
+  private long executionNanos;
+
+  void statement(String sql) {
+    statements++;
+    if (counts.size() < MAX_DISTINCT || counts.containsKey(sql)) {
+      counts.merge(sql, 1, Integer::sum);
+    }
+  }
+
+  void entityLoaded() {
+    entitiesLoaded++;
+  }
+
+  void executed(long nanos) {
+    roundTrips++;
+    executionNanos += nanos;
+  }
+
+  public int getStatements() {
+    return statements;
+  }
+
+  public int getRoundTrips() {
+    return roundTrips;
+  }
+
+  public long getEntitiesLoaded() {
+    return entitiesLoaded;
+  }
+
+  public long getExecutionNanos() {
+    return executionNanos;
+  }
+
+  /**
+   * The statements prepared at least a number of times.
+   *
+   * @param threshold the fewest repetitions reported
+   * @return SQL to number of times prepared, most repeated first
+   */
+  public Map<String, Integer> repeated(int threshold) {
+    Map<String, Integer> repeated = new LinkedHashMap<>();
+    counts.entrySet().stream()
+        .filter(entry -> entry.getValue() >= threshold)
+        .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+        .forEach(entry -> repeated.put(entry.getKey(), entry.getValue()));
+    return repeated;
+  }
+
+  /**
+   * Every distinct statement with the number of times it was prepared.
+   *
+   * @return SQL to number of times prepared, in first-seen order
+   */
+  public Map<String, Integer> getCounts() {
+    return counts;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d statements, %d round trips, %d entities loaded, %.1f ms executing",
+        statements, roundTrips, entitiesLoaded, executionNanos / 1e6);
+  }
+}
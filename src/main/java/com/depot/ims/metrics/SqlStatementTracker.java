@@ -0,0 +1,42 @@
+package com.depot.ims.metrics;
+
+/**
+ * Attributes the SQL Hibernate issues to the unit of work running on the current thread, usually
+ * one HTTP request. Nothing is recorded on a thread until start() is called on it, so the hooks
+ * cost one ThreadLocal read per statement when no one is listening.
+ *
+ * <p>Statements are counted by SqlStatementInspector, entity loads by SqlLoadInterceptor and
+ * execution time by SqlSessionListener, which SqlTrackingConfiguration registers with Hibernate.
+ */
+public final class SqlStatementTracker {
+
+  private static final ThreadLocal<SqlStatementStats> CURRENT = new ThreadLocal<>();
+
+  private SqlStatementTracker() {}
+
+  /**
+   * Start recording the SQL of the current thread, discarding anything recorded before.
+   *
+   * @return the stats the thread records into until stop() is called
+   */
+  public static SqlStatementStats start() {
+    SqlStatementStats stats = new SqlStatementStats();
+    CURRENT.set(stats);
+    return stats;
+  }
+
+  /**
+   * Stop recording the SQL of the current thread.
+   *
+   * @return what was recorded since start(), or null if nothing was being recorded
+   */
+  public static SqlStatementStats stop() {
+    SqlStatementStats stats = CURRENT.get();
+    CURRENT.remove();
+    return stats;
+  }
+
+  static SqlStatementStats current() {
+    return CURRENT.get();
+  }
+}
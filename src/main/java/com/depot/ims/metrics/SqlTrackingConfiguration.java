@@ -0,0 +1,30 @@
+package com.depot.ims.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the SqlStatementTracker hooks with Hibernate. A statement inspector or interceptor
+ * configured through spring.jpa.properties takes precedence, and disables that part of the
+ * tracking.
+ */
+@Configuration
+public class SqlTrackingConfiguration {
+
+  /**
+   * Add the inspector, interceptor and session listener to the Hibernate properties.
+   *
+   * @return the customizer Spring Boot applies before building the EntityManagerFactory
+   */
+  @Bean
+  public HibernatePropertiesCustomizer sqlTrackingCustomizer() {
+    return properties -> {
+      properties.putIfAbsent(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementInspector());
+      properties.putIfAbsent(AvailableSettings.INTERCEPTOR, new SqlLoadInterceptor());
+      properties.putIfAbsent(
+          AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, SqlSessionListener.class.getName());
+    };
+  }
+}
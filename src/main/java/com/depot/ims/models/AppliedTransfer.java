@@ -0,0 +1,39 @@
+package com.depot.ims.models;
+
+import com.depot.ims.models.keys.AppliedTransferKey;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.sql.Timestamp;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents an applied transfer entity: the record, on the destination shard, that a
+ * ShardTransfer of a source shard has been credited. It is written in the same transaction as the
+ * credit, so a transfer that is delivered twice is only credited once.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@IdClass(AppliedTransferKey.class)
+@Table(name = "Applied_Transfers")
+public class AppliedTransfer {
+
+  @Id
+  @Column(name = "PK1_source_shard", updatable = false, nullable = false)
+  private Integer sourceShard;
+
+  @Id
+  @Column(name = "PK2_transfer_id", updatable = false, nullable = false)
+  private Long transferId;
+
+  @Column(name = "applied_at", nullable = false)
+  private Timestamp appliedAt;
+}
@@ -1,29 +1,56 @@
 package com.depot.ims.models;
 
+import com.depot.ims.audit.AuditField;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
 import jakarta.persistence.Table;
 import java.sql.Timestamp;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 /**
  * This class represents an audit entity Encapsulates user details and credentials for access
  * control and identification. Annotations from JPA are used for ORM (Object Relational Mapping) to
  * a database table, while Lombok annotations reduce boilerplate code for standard Java
  * functionalities.
+ *
+ * <p>Audits are typed rather than free text. The changed row is identified by entityId, the id of
+ * the row, and for availabilities and ships by itemId as well: an availability by its site and
+ * item, a ship by its shipment and item. An UPDATE records its field as an AuditField code and its
+ * old and new values as numbers when the field is numeric, as text otherwise. An INSERT or DELETE
+ * records the whole row as an AuditSnapshot. AuditFormat renders an audit back into the text form
+ * of AuditResponse.
  */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "Audits")
+@Table(
+    name = "Audits",
+    indexes = {
+      // findByTableName and the per-table keyset pages and streams, which seek and sort on the id
+      @Index(name = "idx_audits_table_name_id", columnList = "table_name, PK_audits"),
+      // audits of one table within a time period
+      @Index(
+          name = "idx_audits_table_name_action_timestamp",
+          columnList = "table_name, action_timestamp"),
+      // findBetweenPeriod and the period keyset pages and streams, ordered by (timestamp, id)
+      @Index(name = "idx_audits_action_timestamp_id", columnList = "action_timestamp, PK_audits"),
+      // the history of one row, paged by id
+      @Index(
+          name = "idx_audits_table_name_entity_id_id",
+          columnList = "table_name, entity_id, PK_audits")
+    })
 public class Audit {
 
   @Id
@@ -34,17 +61,33 @@ public class Audit {
   @Column(name = "table_name", nullable = false)
   private String tableName;
 
-  @Column(name = "field_name")
-  private String fieldName;
+  @Convert(converter = AuditField.Converter.class)
+  @Column(name = "field_code")
+  private AuditField field;
 
-  @Column(name = "row_key", nullable = false)
-  private String rowKey;
+  // null only on rows written before audits were typed and not yet migrated by AuditMigration
+  @Column(name = "entity_id")
+  private Long entityId;
 
-  @Column(name = "old_value")
-  private String oldValue;
+  @Column(name = "item_id")
+  private Long itemId;
 
-  @Column(name = "new_value")
-  private String newValue;
+  @Column(name = "old_number")
+  private Long oldNumber;
+
+  @Column(name = "new_number")
+  private Long newNumber;
+
+  @Column(name = "old_text")
+  private String oldText;
+
+  @Column(name = "new_text")
+  private String newText;
+
+  @Lob
+  @ToString.Exclude
+  @Column(name = "snapshot")
+  private byte[] snapshot;
 
   @Column(name = "action", nullable = false)
   private String action;
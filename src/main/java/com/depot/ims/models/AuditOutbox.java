@@ -0,0 +1,44 @@
+package com.depot.ims.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import java.sql.Timestamp;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class represents an audit outbox entity: the audits recorded by one committed transaction,
+ * serialized together, waiting to be relayed into the Audits table by the AuditWriter.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "Audit_Outbox")
+public class AuditOutbox {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_outbox_seq")
+  @SequenceGenerator(
+      name = "audit_outbox_seq",
+      sequenceName = "audit_outbox_seq",
+      allocationSize = 50)
+  @Column(name = "PK_audit_outbox", updatable = false, nullable = false)
+  private Long outboxId;
+
+  @Lob
+  @Column(name = "payload", nullable = false)
+  private String payload;
+
+  @Column(name = "created_at", nullable = false)
+  private Timestamp createdAt;
+}
@@ -3,10 +3,14 @@ package com.depot.ims.models;
 import com.depot.ims.models.keys.AvailabilityKey;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
 import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -27,16 +31,32 @@ import lombok.ToString;
 @Builder
 @Entity // Indicates that this class is a JPA entity.
 @IdClass(AvailabilityKey.class)
-@Table(name = "Availabilities") // Maps this entity to the "Availabilities" table in the database.
+// The site and item are loaded only when a read asks for them through this graph; the stock moves
+// only need the ids, which the row carries anyway.
+@NamedEntityGraph(
+    name = Availability.WITH_SITE_AND_ITEM,
+    attributeNodes = {@NamedAttributeNode("siteId"), @NamedAttributeNode("itemId")})
+// Maps this entity to the "Availabilities" table in the database. The primary key leads with the
+// site, so lookups by item use their own index, which also answers minimum-quantity searches.
+@Table(
+    name = "Availabilities",
+    indexes = {
+      @Index(
+          name = "idx_availabilities_item_quantity",
+          columnList = "PK2_FK_availabilities_items, quantity")
+    })
 public class Availability {
 
+  /** The entity graph of the reads that return availabilities with their site and item. */
+  public static final String WITH_SITE_AND_ITEM = "Availability.withSiteAndItem";
+
   @Id // Marks this field as the foreign key.
-  @ManyToOne
+  @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "PK1_FK_availabilities_sites")
   private Site siteId;
 
   @Id // Marks this field as the foreign key.
-  @ManyToOne
+  @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "PK2_FK_availabilities_items")
   private Item itemId;
 
@@ -0,0 +1,68 @@
+package com.depot.ims.models;
+
+import com.depot.ims.sharding.ShardedIdGenerator;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.sql.Timestamp;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * This class represents a shard transfer entity: the credit a ship owes the destination site when
+ * the destination lives on another shard than the source. It is written on the source shard in the
+ * transaction that debits the source, and stays PENDING until the destination shard has applied it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(
+    name = "Shard_Transfers",
+    indexes = {
+      // the relay looks for pending transfers older than the retry delay
+      @Index(
+          name = "idx_shard_transfers_status_created_at",
+          columnList = "transfer_status, created_at")
+    })
+public class ShardTransfer {
+
+  public static final String PENDING = "PENDING";
+  public static final String APPLIED = "APPLIED";
+
+  @Id
+  // pooled on the home shard, so cross-shard manifests batch their transfers
+  @GeneratedValue(generator = "shard_transfers_seq")
+  @GenericGenerator(
+      name = "shard_transfers_seq",
+      type = ShardedIdGenerator.class,
+      parameters = @Parameter(name = "sequence_name", value = "shard_transfers_seq"))
+  @Column(name = "PK_shard_transfers", updatable = false, nullable = false)
+  private Long transferId;
+
+  @Column(name = "shipment_id", nullable = false)
+  private Long shipmentId;
+
+  @Column(name = "item_id", nullable = false)
+  private Long itemId;
+
+  @Column(name = "destination_id", nullable = false)
+  private Long destinationId;
+
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+
+  @Column(name = "transfer_status", nullable = false)
+  private String transferStatus;
+
+  @Column(name = "created_at", nullable = false)
+  private Timestamp createdAt;
+}
@@ -3,10 +3,14 @@ package com.depot.ims.models;
 import com.depot.ims.models.keys.ShipKey;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
 import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -24,17 +28,29 @@ import lombok.NoArgsConstructor;
 @Entity
 @Builder
 @IdClass(ShipKey.class)
-@Table(name = "Ships")
+// The item and shipment are loaded only when a read asks for them through this graph.
+@NamedEntityGraph(
+    name = Ship.WITH_ITEM_AND_SHIPMENT,
+    attributeNodes = {@NamedAttributeNode("itemId"), @NamedAttributeNode("shipmentId")})
+// the primary key leads with the item, so lookups by shipment use their own index
+@Table(
+    name = "Ships",
+    indexes = {
+      @Index(name = "idx_ships_shipment", columnList = "PK2_FK_ships_shipments, PK1_FK_ships_items")
+    })
 public class Ship {
 
+  /** The entity graph of the reads that return ships with their item and shipment. */
+  public static final String WITH_ITEM_AND_SHIPMENT = "Ship.withItemAndShipment";
+
   @Id
-  @ManyToOne
+  @ManyToOne(fetch = FetchType.LAZY)
   // @JoinColumn(name = "PK1_FK_ships_items", referencedColumnName = "PK_items")
   @JoinColumn(name = "PK1_FK_ships_items")
   private Item itemId;
 
   @Id
-  @ManyToOne
+  @ManyToOne(fetch = FetchType.LAZY)
   // @JoinColumn(name = "PK2_FK_ships_shipments", referencedColumnName = "PK_shipments")
   @JoinColumn(name = "PK2_FK_ships_shipments")
   private Shipment shipmentId;
@@ -1,10 +1,11 @@
 package com.depot.ims.models;
 
+import com.depot.ims.sharding.ShardedIdGenerator;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import java.sql.Timestamp;
 import lombok.AllArgsConstructor;
@@ -12,6 +13,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 /**
  * Represents a shipment entity in the inventory management system. Includes details such as source,
@@ -24,11 +27,32 @@ import lombok.ToString;
 @ToString
 @Entity // Specifies that this class is an entity and is mapped to a database table.
 @Builder // Provides a builder pattern for object creation.
-@Table(name = "Shipments")
+@Table(
+    name = "Shipments",
+    indexes = {
+      @Index(name = "idx_shipments_source", columnList = "FK_source"),
+      @Index(name = "idx_shipments_destination", columnList = "FK_destination"),
+      @Index(name = "idx_shipments_current_location", columnList = "current_location"),
+      @Index(name = "idx_shipments_departure_time", columnList = "departure_time"),
+      @Index(name = "idx_shipments_estimated_arrival_time", columnList = "estimated_arrival_time"),
+      @Index(name = "idx_shipments_actual_arrival_time", columnList = "actual_arrival_time"),
+      // findByShipmentStatus, and shipments of one status by arrival time
+      @Index(
+          name = "idx_shipments_status_estimated_arrival_time",
+          columnList = "shipment_status, estimated_arrival_time")
+    })
 public class Shipment {
 
   @Id // Marks the field as a primary key.
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // pooled on the home shard, offset by the shard of the source site; see ShardedIdGenerator
+  @GeneratedValue(generator = "shipments_seq")
+  @GenericGenerator(
+      name = "shipments_seq",
+      type = ShardedIdGenerator.class,
+      parameters = {
+        @Parameter(name = "sequence_name", value = "shipments_seq"),
+        @Parameter(name = ShardedIdGenerator.SHARD_SPAN, value = "true")
+      })
   @Column(name = "PK_shipments", updatable = false, nullable = false)
   private Long shipmentId;
 
@@ -1,10 +1,13 @@
 package com.depot.ims.models;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import java.sql.Date;
 import lombok.AllArgsConstructor;
@@ -12,6 +15,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.format.annotation.DateTimeFormat;
 
 /**
@@ -26,11 +31,19 @@ import org.springframework.format.annotation.DateTimeFormat;
 @Builder
 @ToString
 @Entity
-@Table(name = "Sites")
+// Sites are read far more often than written, so they are kept in the second-level cache.
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "sites")
+// Sites are exported by location, so it has its own index.
+@Table(
+    name = "Sites",
+    indexes = {@Index(name = "idx_sites_location", columnList = "site_location")})
 public class Site {
 
   @Id()
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // pooled: ids are fetched 50 at a time, so inserts can be batched
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sites_seq")
+  @SequenceGenerator(name = "sites_seq", sequenceName = "sites_seq", allocationSize = 50)
   @Column(name = "PK_sites", updatable = false, nullable = false)
   private Long siteId;
 
@@ -0,0 +1,60 @@
+package com.depot.ims.models;
+
+import com.depot.ims.sharding.ShardedIdGenerator;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.sql.Timestamp;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * This class represents a stock change entity: the quantity an availability was set to, written in
+ * the transaction that changed it, on the shard of its site. Together with the StockCheckpoints
+ * taken between them, stock changes let StockHistory rebuild the stock of a site at any moment.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(
+    name = "Stock_Changes",
+    indexes = {
+      // the changes of one site after its last checkpoint, in the order they were made
+      @Index(name = "idx_stock_changes_site_id_id", columnList = "site_id, PK_stock_changes"),
+      // the last change made before a checkpoint's cut-off time
+      @Index(name = "idx_stock_changes_changed_at", columnList = "changed_at")
+    })
+public class StockChange {
+
+  @Id
+  // pooled, so the changes of a manifest are batched; ids grow in the order changes are made
+  @GeneratedValue(generator = "stock_changes_seq")
+  @GenericGenerator(
+      name = "stock_changes_seq",
+      type = ShardedIdGenerator.class,
+      parameters = @Parameter(name = "sequence_name", value = "stock_changes_seq"))
+  @Column(name = "PK_stock_changes", updatable = false, nullable = false)
+  private Long changeId;
+
+  @Column(name = "site_id", nullable = false)
+  private Long siteId;
+
+  @Column(name = "item_id", nullable = false)
+  private Long itemId;
+
+  // the quantity after the change, so replaying a change twice is harmless
+  @Column(name = "quantity", nullable = false)
+  private Integer quantity;
+
+  @Column(name = "changed_at", nullable = false)
+  private Timestamp changedAt;
+}
@@ -0,0 +1,74 @@
+package com.depot.ims.models;
+
+import com.depot.ims.sharding.ShardedIdGenerator;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import java.sql.Timestamp;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * This class represents a stock checkpoint entity: the stock of one site once every StockChange up
+ * to lastChangeId is applied, encoded column by column. A checkpoint is only written for a site
+ * that changed since its previous one, on the shard of the site. A baseline checkpoint is read from
+ * the availabilities instead, when history starts on a shard that already holds stock; the stock
+ * before it is not known.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(
+    name = "Stock_Checkpoints",
+    indexes = {
+      // the latest checkpoint of a site taken at or before a given moment
+      @Index(name = "idx_stock_checkpoints_site_id_as_of", columnList = "site_id, as_of"),
+      // the change the latest checkpoints reach up to
+      @Index(name = "idx_stock_checkpoints_last_change_id", columnList = "last_change_id"),
+      // the first baseline, before which the stock is not known
+      @Index(name = "idx_stock_checkpoints_baseline_as_of", columnList = "baseline, as_of")
+    })
+public class StockCheckpoint {
+
+  @Id
+  @GeneratedValue(generator = "stock_checkpoints_seq")
+  @GenericGenerator(
+      name = "stock_checkpoints_seq",
+      type = ShardedIdGenerator.class,
+      parameters = @Parameter(name = "sequence_name", value = "stock_checkpoints_seq"))
+  @Column(name = "PK_stock_checkpoints", updatable = false, nullable = false)
+  private Long checkpointId;
+
+  @Column(name = "site_id", nullable = false)
+  private Long siteId;
+
+  // every change made up to this moment is included
+  @Column(name = "as_of", nullable = false)
+  private Timestamp asOf;
+
+  @Column(name = "last_change_id", nullable = false)
+  private Long lastChangeId;
+
+  @Column(name = "baseline", nullable = false)
+  private Boolean baseline;
+
+  @Column(name = "item_count", nullable = false)
+  private Integer itemCount;
+
+  // the item ids and quantities, as written by CheckpointCodec
+  @Lob
+  @ToString.Exclude
+  @Column(name = "stock", nullable = false)
+  private byte[] stock;
+}
@@ -5,6 +5,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -28,8 +29,9 @@ import lombok.ToString;
 public class User {
 
   @Id // Marks this field as the primary key.
-  // Configures auto-increment behavior for the primary key.
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // Pooled: ids are fetched 50 at a time, so inserts can be batched.
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+  @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
 
   // primary key
   @Column(name = "PK_users", updatable = false, nullable = false)
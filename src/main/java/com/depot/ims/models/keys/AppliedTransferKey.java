@@ -0,0 +1,56 @@
+package com.depot.ims.models.keys;
+
+import java.io.Serializable;
+import java.util.Objects;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Represents the primary key of AppliedTransfer entity. Transfer ids are only unique within the
+ * shard that wrote them, so every unique tuple of (sourceShard, transferId) identifies one
+ * transfer.
+ */
+@Data
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AppliedTransferKey implements Serializable {
+
+  private Integer sourceShard;
+
+  private Long transferId;
+
+  /**
+   * Override equals() for identifying whether two applied transfers are identical, which means
+   * this.sourceShard == other.sourceShard && this.transferId == other.transferId.
+   *
+   * @param o the other Object to compare to
+   * @return true if two applied transfers are considered identical, false or not
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    AppliedTransferKey that = (AppliedTransferKey) o;
+    return Objects.equals(sourceShard, that.sourceShard)
+        && Objects.equals(transferId, that.transferId);
+  }
+
+  /**
+   * Override hashCode() that is one-to-one mapped by each unique AppliedTransfer entity.
+   *
+   * @return calculated hashCode
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(sourceShard, transferId);
+  }
+}
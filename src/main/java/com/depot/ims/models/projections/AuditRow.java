@@ -0,0 +1,27 @@
+package com.depot.ims.models.projections;
+
+import com.depot.ims.audit.AuditField;
+import java.sql.Timestamp;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A read-only view of one Audit row in its typed form, read straight from the query without a
+ * managed entity. AuditFormat renders it as an AuditResponse.
+ */
+@Data
+@AllArgsConstructor
+public class AuditRow {
+  private final Long auditId;
+  private final String tableName;
+  private final AuditField field;
+  private final Long entityId;
+  private final Long itemId;
+  private final Long oldNumber;
+  private final Long newNumber;
+  private final String oldText;
+  private final String newText;
+  private final byte[] snapshot;
+  private final String action;
+  private final Timestamp actionTimestamp;
+}
@@ -0,0 +1,16 @@
+package com.depot.ims.models.projections;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A lean, read-only view of one Ship row that carries only the ids and the quantity, so listing the
+ * ships of a shipment does not hydrate the Item and Shipment entities.
+ */
+@Data
+@AllArgsConstructor
+public class ShippedQuantity {
+  private final long shipmentId;
+  private final long itemId;
+  private final int quantity;
+}
@@ -0,0 +1,15 @@
+package com.depot.ims.models.projections;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The stock value of one site: the sum of quantity times unit price over its availabilities, in
+ * whole cents with each unit price rounded to the cent.
+ */
+@Data
+@AllArgsConstructor
+public class SiteValue {
+  private final long siteId;
+  private final long valueCents;
+}
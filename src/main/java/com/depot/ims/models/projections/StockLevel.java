@@ -0,0 +1,16 @@
+package com.depot.ims.models.projections;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A lean, read-only view of one Availability row that carries only the ids and the quantity, so
+ * large scans over the table do not hydrate the Site and Item entities.
+ */
+@Data
+@AllArgsConstructor
+public class StockLevel {
+  private final long siteId;
+  private final long itemId;
+  private final int quantity;
+}
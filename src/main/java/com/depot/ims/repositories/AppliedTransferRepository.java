@@ -0,0 +1,12 @@
+package com.depot.ims.repositories;
+
+import com.depot.ims.models.AppliedTransfer;
+import com.depot.ims.models.keys.AppliedTransferKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * AppliedTransfer Repository interface extends JpaRepository for performing CRUD on
+ * Applied_Transfers.
+ */
+public interface AppliedTransferRepository
+    extends JpaRepository<AppliedTransfer, AppliedTransferKey> {}
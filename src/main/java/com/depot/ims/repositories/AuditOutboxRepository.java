@@ -0,0 +1,20 @@
+package com.depot.ims.repositories;
+
+import com.depot.ims.models.AuditOutbox;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+/** AuditOutbox Repository interface extends JpaRepository for performing CRUD on Audit_Outbox. */
+public interface AuditOutboxRepository extends JpaRepository<AuditOutbox, Long> {
+
+  /**
+   * Find the oldest outbox rows.
+   *
+   * @param pageable the number of rows to read
+   * @return a list of outbox rows ordered by id
+   */
+  @Query("SELECT o FROM AuditOutbox o ORDER BY o.outboxId")
+  List<AuditOutbox> findOldest(Pageable pageable);
+}
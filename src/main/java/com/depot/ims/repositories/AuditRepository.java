@@ -1,10 +1,18 @@
 package com.depot.ims.repositories;
 
+import com.depot.ims.audit.AuditFormat;
 import com.depot.ims.models.Audit;
+import com.depot.ims.models.projections.AuditRow;
+import com.depot.ims.response.AuditResponse;
+import jakarta.persistence.QueryHint;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 /** Audit Repository interface extends JpaRepository for performing CRUD on table Audits. */
 public interface AuditRepository extends JpaRepository<Audit, Long> {
@@ -38,4 +46,220 @@ public interface AuditRepository extends JpaRepository<Audit, Long> {
    */
   @Query("SELECT a FROM Audit a WHERE a.actionTimestamp >= ?1 AND a.actionTimestamp <= ?2")
   List<Audit> findBetweenPeriod(Timestamp start, Timestamp end);
+
+  /** Select clause reading audits straight into AuditRow, without managed entities. */
+  String SELECT_ROW =
+      "SELECT new com.depot.ims.models.projections.AuditRow(a.auditId, a.tableName, a.field,"
+          + " a.entityId, a.itemId, a.oldNumber, a.newNumber, a.oldText, a.newText, a.snapshot,"
+          + " a.action, a.actionTimestamp) FROM Audit a ";
+
+  /**
+   * Find the page of audits that follows auditId after, in auditId order.
+   *
+   * @param after the last auditId of the previous page, or 0 for the first page
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditRows
+   */
+  @Query(SELECT_ROW + "WHERE a.auditId > ?1 ORDER BY a.auditId")
+  List<AuditRow> findRowPageAfter(Long after, Pageable pageable);
+
+  /**
+   * Find the page of audits on a specific table that follows auditId after, in auditId order.
+   *
+   * @param tableName tableName
+   * @param after the last auditId of the previous page, or 0 for the first page
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditRows
+   */
+  @Query(SELECT_ROW + "WHERE a.tableName = ?1 AND a.auditId > ?2 ORDER BY a.auditId")
+  List<AuditRow> findRowPageOnTableAfter(String tableName, Long after, Pageable pageable);
+
+  /**
+   * Find the page of audits of one row that follows auditId after, in auditId order.
+   *
+   * @param tableName tableName
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param after the last auditId of the previous page, or 0 for the first page
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditRows
+   */
+  @Query(
+      SELECT_ROW
+          + "WHERE a.tableName = ?1 AND a.entityId = ?2 AND a.auditId > ?3 ORDER BY a.auditId")
+  List<AuditRow> findRowPageOnEntityAfter(
+      String tableName, Long entityId, Long after, Pageable pageable);
+
+  /**
+   * Find the page of audits recorded between a time period that follows the (actionTimestamp,
+   * auditId) position of the last audit of the previous page, in that order.
+   *
+   * @param start start of the time period
+   * @param end end of the time period
+   * @param afterTimestamp actionTimestamp of the last audit of the previous page, or start
+   * @param afterId auditId of the last audit of the previous page, or 0
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditRows
+   */
+  @Query(
+      SELECT_ROW
+          + "WHERE a.actionTimestamp >= ?1 AND a.actionTimestamp <= ?2"
+          + " AND (a.actionTimestamp > ?3 OR (a.actionTimestamp = ?3 AND a.auditId > ?4))"
+          + " ORDER BY a.actionTimestamp, a.auditId")
+  List<AuditRow> findRowPageBetweenPeriodAfter(
+      Timestamp start, Timestamp end, Timestamp afterTimestamp, Long afterId, Pageable pageable);
+
+  /**
+   * Stream every audit in auditId order. Rows are fetched from the database in batches as the
+   * stream is consumed. Must be called inside a transaction, and the stream must be closed after
+   * use.
+   *
+   * @return a stream of AuditRows
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+  @Query(SELECT_ROW + "ORDER BY a.auditId")
+  Stream<AuditRow> streamRowsAll();
+
+  /**
+   * Stream the audits on a specific table in auditId order, fetched in batches. Must be called
+   * inside a transaction, and the stream must be closed after use.
+   *
+   * @param tableName tableName
+   * @return a stream of AuditRows
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+  @Query(SELECT_ROW + "WHERE a.tableName = ?1 ORDER BY a.auditId")
+  Stream<AuditRow> streamRowsByTableName(String tableName);
+
+  /**
+   * Stream the audits recorded between a time period in (actionTimestamp, auditId) order, fetched
+   * in batches. Must be called inside a transaction, and the stream must be closed after use.
+   *
+   * @param start start of the time period
+   * @param end end of the time period
+   * @return a stream of AuditRows
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+  @Query(
+      SELECT_ROW
+          + "WHERE a.actionTimestamp >= ?1 AND a.actionTimestamp <= ?2"
+          + " ORDER BY a.actionTimestamp, a.auditId")
+  Stream<AuditRow> streamRowsBetweenPeriod(Timestamp start, Timestamp end);
+
+  /**
+   * Stream the audits recorded from a moment until, but not including, a later one, in
+   * (actionTimestamp, auditId) order, fetched in batches. Must be called inside a transaction, and
+   * the stream must be closed after use.
+   *
+   * @param from start of the period, inclusive
+   * @param until end of the period, exclusive
+   * @return a stream of AuditRows
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+  @Query(
+      SELECT_ROW
+          + "WHERE a.actionTimestamp >= ?1 AND a.actionTimestamp < ?2"
+          + " ORDER BY a.actionTimestamp, a.auditId")
+  Stream<AuditRow> streamRowsFromUntil(Timestamp from, Timestamp until);
+
+  /**
+   * Find the actionTimestamp of the oldest audit recorded at or after a moment.
+   *
+   * @param from the moment
+   * @return the actionTimestamp, or null if no audit was recorded since
+   */
+  @Query("SELECT MIN(a.actionTimestamp) FROM Audit a WHERE a.actionTimestamp >= ?1")
+  Timestamp findOldestTimestampFrom(Timestamp from);
+
+  /**
+   * Find the page of audits that follows auditId after, in auditId order.
+   *
+   * @param after the last auditId of the previous page, or 0 for the first page
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditResponses
+   */
+  default List<AuditResponse> findPageAfter(Long after, Pageable pageable) {
+    return toResponses(findRowPageAfter(after, pageable));
+  }
+
+  /**
+   * Find the page of audits on a specific table that follows auditId after, in auditId order.
+   *
+   * @param tableName tableName
+   * @param after the last auditId of the previous page, or 0 for the first page
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditResponses
+   */
+  default List<AuditResponse> findPageOnTableAfter(
+      String tableName, Long after, Pageable pageable) {
+    return toResponses(findRowPageOnTableAfter(tableName, after, pageable));
+  }
+
+  /**
+   * Find the page of audits of one row that follows auditId after, in auditId order.
+   *
+   * @param tableName tableName
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param after the last auditId of the previous page, or 0 for the first page
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditResponses
+   */
+  default List<AuditResponse> findPageOnEntityAfter(
+      String tableName, Long entityId, Long after, Pageable pageable) {
+    return toResponses(findRowPageOnEntityAfter(tableName, entityId, after, pageable));
+  }
+
+  /**
+   * Find the page of audits recorded between a time period that follows the (actionTimestamp,
+   * auditId) position of the last audit of the previous page, in that order.
+   *
+   * @param start start of the time period
+   * @param end end of the time period
+   * @param afterTimestamp actionTimestamp of the last audit of the previous page, or start
+   * @param afterId auditId of the last audit of the previous page, or 0
+   * @param pageable the page size; the page number must be 0
+   * @return a list of AuditResponses
+   */
+  default List<AuditResponse> findPageBetweenPeriodAfter(
+      Timestamp start, Timestamp end, Timestamp afterTimestamp, Long afterId, Pageable pageable) {
+    return toResponses(
+        findRowPageBetweenPeriodAfter(start, end, afterTimestamp, afterId, pageable));
+  }
+
+  /**
+   * Stream every audit in auditId order, rendered as AuditResponses as the stream is consumed. Must
+   * be called inside a transaction, and the stream must be closed after use.
+   *
+   * @return a stream of AuditResponses
+   */
+  default Stream<AuditResponse> streamAll() {
+    return streamRowsAll().map(AuditFormat::toResponse);
+  }
+
+  /**
+   * Stream the audits on a specific table in auditId order, rendered as AuditResponses. Must be
+   * called inside a transaction, and the stream must be closed after use.
+   *
+   * @param tableName tableName
+   * @return a stream of AuditResponses
+   */
+  default Stream<AuditResponse> streamByTableName(String tableName) {
+    return streamRowsByTableName(tableName).map(AuditFormat::toResponse);
+  }
+
+  /**
+   * Stream the audits recorded between a time period in (actionTimestamp, auditId) order, rendered
+   * as AuditResponses. Must be called inside a transaction, and the stream must be closed after
+   * use.
+   *
+   * @param start start of the time period
+   * @param end end of the time period
+   * @return a stream of AuditResponses
+   */
+  default Stream<AuditResponse> streamBetweenPeriod(Timestamp start, Timestamp end) {
+    return streamRowsBetweenPeriod(start, end).map(AuditFormat::toResponse);
+  }
+
+  private static List<AuditResponse> toResponses(List<AuditRow> rows) {
+    return rows.stream().map(AuditFormat::toResponse).toList();
+  }
 }
@@ -3,19 +3,42 @@ package com.depot.ims.repositories;
 import com.depot.ims.models.Availability;
 import com.depot.ims.models.Item;
 import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.models.projections.StockLevel;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
  * Availability Repository interface for accessing and manipulating Availability entity data.
  * Extends JpaRepository to provide standard CRUD operations and includes custom queries for finding
- * availabilities by their ID.
+ * availabilities by their ID. The site and item of an availability are lazy: the reads whose result
+ * is returned to clients fetch them in the same statement through Availability.WITH_SITE_AND_ITEM,
+ * the others leave them unloaded, and listings that only need the ids select a StockLevel instead.
  */
 @Repository
-public interface AvailabilityRepository extends JpaRepository<Availability, Long> {
+public interface AvailabilityRepository
+    extends JpaRepository<Availability, Long>, BatchPersistRepository<Availability> {
+
+  /**
+   * Find every availability, with its site and item.
+   *
+   * @return a list of availability entities
+   */
+  @Override
+  @EntityGraph(Availability.WITH_SITE_AND_ITEM)
+  List<Availability> findAll();
 
   /**
    * Find all the availabilities with the given siteId Uses a custom JPQL query to retrieve a list
@@ -24,9 +47,23 @@ public interface AvailabilityRepository extends JpaRepository<Availability, Long
    * @param siteId The ID of the site
    * @return a list of availability entity if found, or null otherwise
    */
+  @EntityGraph(Availability.WITH_SITE_AND_ITEM)
   @Query("select a from Availability a where a.siteId.siteId = ?1")
   List<Availability> findBySiteId(Long siteId);
 
+  /**
+   * Find the ids and quantity of every availability of the given site, in itemId order, without
+   * loading the Site and Item entities.
+   *
+   * @param siteId The ID of the site
+   * @return a list of StockLevel, empty if the site holds nothing
+   */
+  @Query(
+      "select new com.depot.ims.models.projections.StockLevel("
+          + "a.siteId.siteId, a.itemId.itemId, a.quantity) from Availability a"
+          + " where a.siteId.siteId = ?1 order by a.itemId.itemId")
+  List<StockLevel> findStockLevelsBySiteId(Long siteId);
+
   /**
    * Find all the availabilities with the given itemId Uses a custom JPQL query to retrieve a list
    * of availability.
@@ -34,6 +71,7 @@ public interface AvailabilityRepository extends JpaRepository<Availability, Long
    * @param itemId The ID of the item
    * @return a list of availability entity if found, or null otherwise
    */
+  @EntityGraph(Availability.WITH_SITE_AND_ITEM)
   @Query("select a from Availability a where a.itemId.itemId = ?1")
   List<Availability> findByItemId(Long itemId);
 
@@ -45,6 +83,7 @@ public interface AvailabilityRepository extends JpaRepository<Availability, Long
    * @param itemId the id of the item
    * @return availability entity if found, or null otherwise.
    */
+  @EntityGraph(Availability.WITH_SITE_AND_ITEM)
   @Query("select a from Availability a where a.siteId.siteId = ?1 and a.itemId.itemId = ?2")
   Availability findBySiteIdAndItemId(Long siteId, Long itemId);
 
@@ -67,4 +106,173 @@ public interface AvailabilityRepository extends JpaRepository<Availability, Long
    */
   @Query("SELECT a.siteId from Availability a where a.itemId = :item")
   List<Site> findSitesByOneItem(@Param("item") Item item);
+
+  /**
+   * Find the ids of the sites that hold an availability for every one of the given items, in a
+   * single grouped query.
+   *
+   * @param itemIds the distinct ids of the items
+   * @param itemCount the number of distinct item ids
+   * @return a list of site ids, empty if no site holds all the items
+   */
+  @Query(
+      "select a.siteId.siteId from Availability a where a.itemId.itemId in :itemIds"
+          + " group by a.siteId.siteId having count(a.itemId.itemId) = :itemCount")
+  List<Long> findSiteIdsHoldingAll(
+      @Param("itemIds") Collection<Long> itemIds, @Param("itemCount") Long itemCount);
+
+  /**
+   * Find the ids of the sites that hold at least minQuantity of the item.
+   *
+   * @param itemId the id of the item
+   * @param minQuantity the minimum quantity
+   * @return a list of site ids, empty if no site holds enough
+   */
+  @Query(
+      "select a.siteId.siteId from Availability a"
+          + " where a.itemId.itemId = ?1 and a.quantity >= ?2")
+  List<Long> findSiteIdsByItemIdAndMinQuantity(Long itemId, Integer minQuantity);
+
+  /**
+   * Find the availability with the given siteId and itemId and take a write lock on its row until
+   * the surrounding transaction ends. Must be called inside a transaction.
+   *
+   * @param siteId The ID of the site
+   * @param itemId the id of the item
+   * @return availability entity if found, or null otherwise.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select a from Availability a where a.siteId.siteId = ?1 and a.itemId.itemId = ?2")
+  Availability findBySiteIdAndItemIdForUpdate(Long siteId, Long itemId);
+
+  /**
+   * Find every availability of the given items at the given sites and take a write lock on their
+   * rows until the surrounding transaction ends, in one statement. Rows are read in (siteId,
+   * itemId) order. Must be called inside a transaction.
+   *
+   * @param siteIds the ids of the sites
+   * @param itemIds the ids of the items
+   * @return the availabilities found, possibly fewer than siteIds x itemIds
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query(
+      "select a from Availability a where a.siteId.siteId in :siteIds"
+          + " and a.itemId.itemId in :itemIds order by a.siteId.siteId, a.itemId.itemId")
+  List<Availability> findBySiteIdsAndItemIdsForUpdate(
+      @Param("siteIds") Collection<Long> siteIds, @Param("itemIds") Collection<Long> itemIds);
+
+  /**
+   * Find only the quantity of the availability with the given siteId and itemId. Inside a
+   * transaction that has already modified the row, this returns the value written by that
+   * transaction.
+   *
+   * @param siteId The ID of the site
+   * @param itemId the id of the item
+   * @return the quantity if the availability exists, or null otherwise.
+   */
+  @Query(
+      "select a.quantity from Availability a where a.siteId.siteId = ?1 and a.itemId.itemId = ?2")
+  Integer findQuantityBySiteIdAndItemId(Long siteId, Long itemId);
+
+  /**
+   * Atomically add amount to the quantity of the availability with the given siteId and itemId in a
+   * single UPDATE statement, so concurrent increments never overwrite each other.
+   *
+   * @param siteId The ID of the site
+   * @param itemId the id of the item
+   * @param amount the amount to add
+   * @return the number of rows updated: 1 if the availability exists, 0 otherwise
+   */
+  @Modifying
+  @Query(
+      "update Availability a set a.quantity = a.quantity + :amount"
+          + " where a.siteId.siteId = :siteId and a.itemId.itemId = :itemId")
+  int incrementQuantity(
+      @Param("siteId") Long siteId, @Param("itemId") Long itemId, @Param("amount") Integer amount);
+
+  /**
+   * Atomically subtract amount from the quantity of the availability with the given siteId and
+   * itemId in a single UPDATE statement. The row is only updated when it holds at least amount, so
+   * the quantity never drops below zero.
+   *
+   * @param siteId The ID of the site
+   * @param itemId the id of the item
+   * @param amount the amount to subtract
+   * @return the number of rows updated: 1 if the availability exists and holds at least amount, 0
+   *     otherwise
+   */
+  @Modifying
+  @Query(
+      "update Availability a set a.quantity = a.quantity - :amount"
+          + " where a.siteId.siteId = :siteId and a.itemId.itemId = :itemId"
+          + " and a.quantity >= :amount")
+  int decrementQuantity(
+      @Param("siteId") Long siteId, @Param("itemId") Long itemId, @Param("amount") Integer amount);
+
+  /**
+   * Sum the stock value of every site holding availabilities, in cents, rounding each unit price to
+   * the cent as InventoryLedger does. Reads the whole table, for the periodic reconciliation of the
+   * valuation kept by the ledger.
+   *
+   * @return the value of each site, in no particular order
+   */
+  @Query(
+      "select new com.depot.ims.models.projections.SiteValue(a.siteId.siteId,"
+          + " cast(sum(a.quantity * round(a.itemId.itemPrice * 100, 0)) as Long))"
+          + " from Availability a group by a.siteId.siteId")
+  List<SiteValue> sumValueCentsBySite();
+
+  /**
+   * Sum the stock value of one site, in cents, rounding each unit price to the cent.
+   *
+   * @param siteId the id of the site
+   * @return the value of the site, 0 if it holds nothing
+   */
+  @Query(
+      "select cast(coalesce(sum(a.quantity * round(a.itemId.itemPrice * 100, 0)), 0) as Long)"
+          + " from Availability a where a.siteId.siteId = ?1")
+  Long sumValueCentsBySiteId(Long siteId);
+
+  /**
+   * Stream the ids and quantity of every availability without loading Site and Item entities. Rows
+   * are fetched from the database in batches as the stream is consumed. Must be called inside a
+   * transaction, and the stream must be closed after use.
+   *
+   * @return a stream of StockLevel, one per availability
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+  @Query(
+      "select new com.depot.ims.models.projections.StockLevel("
+          + "a.siteId.siteId, a.itemId.itemId, a.quantity) from Availability a")
+  Stream<StockLevel> streamAllStockLevels();
+
+  /**
+   * Stream every availability with its site and item, which are read in the same rows. Rows are
+   * fetched from the database in batches as the stream is consumed, and loaded read-only. Must be
+   * called inside a transaction, and the stream must be closed after use.
+   *
+   * @return a stream of availability entities
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  @Query("select a from Availability a join fetch a.siteId join fetch a.itemId")
+  Stream<Availability> streamAll();
+
+  /**
+   * Stream the availabilities of every site at the given location, with their site and item, the
+   * same way as streamAll.
+   *
+   * @param siteLocation the location of the sites
+   * @return a stream of availability entities
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  @Query(
+      "select a from Availability a join fetch a.siteId s join fetch a.itemId"
+          + " where s.siteLocation = ?1")
+  Stream<Availability> streamBySiteLocation(String siteLocation);
 }
@@ -0,0 +1,23 @@
+package com.depot.ims.repositories;
+
+import java.util.List;
+
+/**
+ * Repository fragment for inserting many new entities at once. Unlike saveAll, which merges any
+ * entity whose id is already set and so reads each row with an assigned or composite key before
+ * writing it, persistAll only persists, letting Hibernate group the INSERTs into JDBC batches at
+ * flush time.
+ *
+ * @param <T> the entity type
+ */
+public interface BatchPersistRepository<T> {
+
+  /**
+   * Persist entities that are known not to exist yet. Must be called inside a transaction; the rows
+   * are written when it flushes.
+   *
+   * @param entities the new entities
+   * @return the persisted entities
+   */
+  <S extends T> List<S> persistAll(Iterable<S> entities);
+}
@@ -0,0 +1,25 @@
+package com.depot.ims.repositories;
+
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Implementation of the BatchPersistRepository fragment. */
+public class BatchPersistRepositoryImpl<T> implements BatchPersistRepository<T> {
+
+  private final EntityManager entityManager;
+
+  public BatchPersistRepositoryImpl(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  @Override
+  public <S extends T> List<S> persistAll(Iterable<S> entities) {
+    List<S> persisted = new ArrayList<>();
+    for (S entity : entities) {
+      entityManager.persist(entity);
+      persisted.add(entity);
+    }
+    return persisted;
+  }
+}
@@ -1,24 +1,41 @@
 package com.depot.ims.repositories;
 
 import com.depot.ims.models.Item;
+import jakarta.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 /**
  * Item Repository interface for accessing and manipulating item entity data. Extends JpaRepository
- * to provide standard CRUD operations and includes custom queries for finding item by their ID.
+ * to provide standard CRUD operations and includes custom queries for finding item by their ID. The
+ * lookups by id and name are cacheable: with the second-level cache enabled, a repeated lookup is
+ * answered from memory until a write to Items invalidates it.
  */
 @Repository
 public interface ItemRepository extends JpaRepository<Item, Long> {
 
+  /**
+   * Whether an item with the given item id exists.
+   *
+   * @param itemId The id of the item
+   * @return true if the item exists
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+  @Override
+  boolean existsById(Long itemId);
+
   /**
    * Find all the items with the given itemName Uses a custom JPQL query to retrieve the user.
    *
    * @param itemName The name of the site
    * @return a list of item entity if found, or null otherwise.
    */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
   @Query("SELECT i FROM Item i WHERE i.itemName = ?1")
   List<Item> findByItemName(String itemName);
 
@@ -28,6 +45,21 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
    * @param itemId The id of the item
    * @return item entity if found, or null otherwise.
    */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
   @Query("SELECT i FROM Item i WHERE i.itemId = ?1")
   Item findByItemId(Long itemId);
+
+  /**
+   * Stream every item in itemId order. Rows are fetched from the database in batches as the stream
+   * is consumed, and loaded read-only. Must be called inside a transaction, and the stream must be
+   * closed after use.
+   *
+   * @return a stream of item entities
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  @Query("SELECT i FROM Item i ORDER BY i.itemId")
+  Stream<Item> streamAll();
 }
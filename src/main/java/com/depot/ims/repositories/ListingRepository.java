@@ -0,0 +1,36 @@
+package com.depot.ims.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.util.List;
+import java.util.Map;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Runs the scalar projections that ListingService builds for the collection endpoints. Rows come
+ * back as arrays of column values, so no entity is loaded or tracked by the persistence context.
+ */
+@Repository
+public class ListingRepository {
+
+  private final EntityManager entityManager;
+
+  public ListingRepository(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * Run a projection query.
+   *
+   * @param jpql a select of one or more paths
+   * @param parameters values of its named parameters
+   * @param offset rows to skip
+   * @param limit most rows to return
+   * @return the selected values of every row, in select order
+   */
+  public List<Object[]> select(String jpql, Map<String, Object> parameters, int offset, int limit) {
+    TypedQuery<Object[]> query = entityManager.createQuery(jpql, Object[].class);
+    parameters.forEach(query::setParameter);
+    return query.setFirstResult(offset).setMaxResults(limit).getResultList();
+  }
+}
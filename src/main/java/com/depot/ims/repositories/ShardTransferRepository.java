@@ -0,0 +1,23 @@
+package com.depot.ims.repositories;
+
+import com.depot.ims.models.ShardTransfer;
+import java.sql.Timestamp;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * ShardTransfer Repository interface extends JpaRepository for performing CRUD on Shard_Transfers.
+ */
+public interface ShardTransferRepository extends JpaRepository<ShardTransfer, Long> {
+
+  /**
+   * Find the oldest transfers of a status created before a time, e.g. the pending transfers whose
+   * first delivery has failed.
+   *
+   * @param transferStatus the status
+   * @param createdAt the time
+   * @return at most 100 transfers ordered by id
+   */
+  List<ShardTransfer> findTop100ByTransferStatusAndCreatedAtBeforeOrderByTransferId(
+      String transferStatus, Timestamp createdAt);
+}
@@ -2,14 +2,29 @@ package com.depot.ims.repositories;
 
 import com.depot.ims.models.Ship;
 import com.depot.ims.models.keys.ShipKey;
+import com.depot.ims.models.projections.ShippedQuantity;
 import java.util.List;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
-/** Ship Repository interface extends JpaRepository for performing CRUD on table Ships. */
+/**
+ * Ship Repository interface extends JpaRepository for performing CRUD on table Ships. The item and
+ * shipment of a ship are lazy: the reads below fetch them in the same statement through
+ * Ship.WITH_ITEM_AND_SHIPMENT, and findShippedQuantitiesByShipmentId selects only the ids.
+ */
 @Repository
-public interface ShipRepository extends JpaRepository<Ship, ShipKey> {
+public interface ShipRepository extends JpaRepository<Ship, ShipKey>, BatchPersistRepository<Ship> {
+
+  /**
+   * Find every ship, with its item and shipment.
+   *
+   * @return a list of ships
+   */
+  @Override
+  @EntityGraph(Ship.WITH_ITEM_AND_SHIPMENT)
+  List<Ship> findAll();
 
   /**
    * Find a list of ships that contain a specific item.
@@ -17,6 +32,7 @@ public interface ShipRepository extends JpaRepository<Ship, ShipKey> {
    * @param itemId itemId
    * @return a list of ships
    */
+  @EntityGraph(Ship.WITH_ITEM_AND_SHIPMENT)
   @Query("select s from Ship s where s.itemId.itemId = ?1")
   List<Ship> findByItemId(Long itemId);
 
@@ -26,6 +42,7 @@ public interface ShipRepository extends JpaRepository<Ship, ShipKey> {
    * @param shipmentId shipmentId
    * @return a list of ships
    */
+  @EntityGraph(Ship.WITH_ITEM_AND_SHIPMENT)
   @Query("select s from Ship s where s.shipmentId.shipmentId = ?1")
   List<Ship> findByShipmentId(Long shipmentId);
 
@@ -37,6 +54,32 @@ public interface ShipRepository extends JpaRepository<Ship, ShipKey> {
    * @param shipmentId shipmentId
    * @return a list of ships. Ideally, only one ship entity will be returned
    */
+  @EntityGraph(Ship.WITH_ITEM_AND_SHIPMENT)
   @Query("select s from Ship s where s.itemId.itemId = ?1 and s.shipmentId.shipmentId = ?2")
   List<Ship> findByItemIdAndShipmentId(Long itemId, Long shipmentId);
+
+  /**
+   * Find the ids and quantity of every ship of a shipment, in itemId order, without loading the
+   * Item and Shipment entities.
+   *
+   * @param shipmentId shipmentId
+   * @return a list of ShippedQuantity, empty if nothing was shipped
+   */
+  @Query(
+      "select new com.depot.ims.models.projections.ShippedQuantity("
+          + "s.shipmentId.shipmentId, s.itemId.itemId, s.quantity) from Ship s"
+          + " where s.shipmentId.shipmentId = ?1 order by s.itemId.itemId")
+  List<ShippedQuantity> findShippedQuantitiesByShipmentId(Long shipmentId);
+
+  /**
+   * Check whether an item is already shipped on a shipment, without loading the ship.
+   *
+   * @param shipmentId shipmentId
+   * @param itemId itemId
+   * @return true if the shipment has a ship of the item
+   */
+  @Query(
+      "select count(s) > 0 from Ship s"
+          + " where s.shipmentId.shipmentId = ?1 and s.itemId.itemId = ?2")
+  boolean existsByShipmentIdAndItemId(Long shipmentId, Long itemId);
 }
@@ -1,6 +1,7 @@
 package com.depot.ims.repositories;
 
 import com.depot.ims.models.Shipment;
+import java.sql.Timestamp;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -64,7 +65,7 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
    * @return A list of Shipment entities with the given departure time.
    */
   @Query("select s from Shipment s where s.departureTime = ?1")
-  List<Shipment> findByDepartureTime(String departureTime);
+  List<Shipment> findByDepartureTime(Timestamp departureTime);
 
   /**
    * Finds shipments by their estimated arrival time.
@@ -73,7 +74,7 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
    * @return A list of Shipment entities with the given estimated arrival time.
    */
   @Query("select s from Shipment s where s.estimatedArrivalTime = ?1")
-  List<Shipment> findByEstimatedArrivalTime(String estimatedArrivalTime);
+  List<Shipment> findByEstimatedArrivalTime(Timestamp estimatedArrivalTime);
 
   /**
    * Finds shipments by their actual arrival time.
@@ -82,7 +83,7 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
    * @return A list of Shipment entities with the given actual arrival time.
    */
   @Query("select s from Shipment s where s.actualArrivalTime = ?1")
-  List<Shipment> findByActualArrivalTime(String actualArrivalTime);
+  List<Shipment> findByActualArrivalTime(Timestamp actualArrivalTime);
 
   /**
    * Finds shipments by their status.
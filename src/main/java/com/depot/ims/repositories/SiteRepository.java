@@ -1,18 +1,36 @@
 package com.depot.ims.repositories;
 
 import com.depot.ims.models.Site;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
-/** Site Repository interface extends JpaRepository for performing CRUD on table Sites. */
+/**
+ * Site Repository interface extends JpaRepository for performing CRUD on table Sites. The lookups
+ * by id and name are cacheable: with the second-level cache enabled, a repeated lookup is answered
+ * from memory until a write to Sites invalidates it.
+ */
 public interface SiteRepository extends JpaRepository<Site, Long> {
 
+  /**
+   * Whether a site with the given site ID exists.
+   *
+   * @param siteId siteId
+   * @return true if the site exists
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+  @Override
+  boolean existsById(Long siteId);
+
   /**
    * Find a site that has a given site name.
    *
    * @param siteName siteName
    * @return a site entity
    */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
   @Query("select s from Site s where s.siteName = ?1")
   Site findBySiteName(String siteName);
 
@@ -22,6 +40,7 @@ public interface SiteRepository extends JpaRepository<Site, Long> {
    * @param siteId siteId
    * @return a site entity
    */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
   @Query("SELECT s FROM Site s WHERE s.siteId=?1")
   Site findBySiteId(Long siteId);
 
@@ -31,6 +50,7 @@ public interface SiteRepository extends JpaRepository<Site, Long> {
    * @param siteId siteId
    * @return site Status in String format
    */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
   @Query("SELECT s.siteStatus FROM Site s WHERE s.siteId=?1")
   String findSiteStatusBySiteId(Long siteId);
 }
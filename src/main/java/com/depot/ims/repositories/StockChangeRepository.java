@@ -0,0 +1,67 @@
+package com.depot.ims.repositories;
+
+import com.depot.ims.models.StockChange;
+import java.sql.Timestamp;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+/** StockChange Repository interface extends JpaRepository for performing CRUD on Stock_Changes. */
+public interface StockChangeRepository extends JpaRepository<StockChange, Long> {
+
+  /**
+   * Find the id of the last change made at or before a time.
+   *
+   * @param changedAt the time
+   * @return the id, or null if no change was made by then
+   */
+  @Query("select max(c.changeId) from StockChange c where c.changedAt <= ?1")
+  Long findLastChangeIdAtOrBefore(Timestamp changedAt);
+
+  /**
+   * Find the id of the last change.
+   *
+   * @return the id, or null if no change was recorded yet
+   */
+  @Query("select max(c.changeId) from StockChange c")
+  Long findLastChangeId();
+
+  /**
+   * Find the sites changed within a range of change ids.
+   *
+   * @param afterId the range starts after this id
+   * @param upToId the range ends with this id
+   * @return the ids of the sites, each once
+   */
+  @Query(
+      "select distinct c.siteId from StockChange c"
+          + " where c.changeId > ?1 and c.changeId <= ?2 order by c.siteId")
+  List<Long> findSiteIdsChangedBetween(Long afterId, Long upToId);
+
+  /**
+   * Find the changes of a site within a range of change ids, to roll a checkpoint forward.
+   *
+   * @param siteId the id of the site
+   * @param afterId the range starts after this id
+   * @param upToId the range ends with this id
+   * @return the changes ordered by id
+   */
+  @Query(
+      "from StockChange c where c.siteId = ?1 and c.changeId > ?2 and c.changeId <= ?3"
+          + " order by c.changeId")
+  List<StockChange> findBySiteIdBetween(Long siteId, Long afterId, Long upToId);
+
+  /**
+   * Find the changes of a site after a change id made up to a time, to replay them on top of a
+   * checkpoint.
+   *
+   * @param siteId the id of the site
+   * @param afterId the id of the last change the checkpoint includes
+   * @param changedAt the time
+   * @return the changes ordered by id
+   */
+  @Query(
+      "from StockChange c where c.siteId = ?1 and c.changeId > ?2 and c.changedAt <= ?3"
+          + " order by c.changeId")
+  List<StockChange> findBySiteIdAfterUpTo(Long siteId, Long afterId, Timestamp changedAt);
+}
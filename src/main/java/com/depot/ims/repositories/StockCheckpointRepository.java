@@ -0,0 +1,46 @@
+package com.depot.ims.repositories;
+
+import com.depot.ims.models.StockCheckpoint;
+import java.sql.Timestamp;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+/**
+ * StockCheckpoint Repository interface extends JpaRepository for performing CRUD on
+ * Stock_Checkpoints.
+ */
+public interface StockCheckpointRepository extends JpaRepository<StockCheckpoint, Long> {
+
+  /**
+   * Find the latest checkpoint of a site taken at or before a time.
+   *
+   * @param siteId the id of the site
+   * @param asOf the time
+   * @return the checkpoint, or null if the site has none that old
+   */
+  StockCheckpoint findFirstBySiteIdAndAsOfLessThanEqualOrderByAsOfDesc(Long siteId, Timestamp asOf);
+
+  /**
+   * Find the latest checkpoint of a site.
+   *
+   * @param siteId the id of the site
+   * @return the checkpoint, or null if the site has none
+   */
+  StockCheckpoint findFirstBySiteIdOrderByLastChangeIdDesc(Long siteId);
+
+  /**
+   * Find the id of the last change the checkpoints include.
+   *
+   * @return the id, or null if there is no checkpoint
+   */
+  @Query("select max(c.lastChangeId) from StockCheckpoint c")
+  Long findLastCheckpointedChangeId();
+
+  /**
+   * Find the time of the first baseline checkpoint, before which the stock is not known.
+   *
+   * @return the time, or null if history started on an empty shard
+   */
+  @Query("select min(c.asOf) from StockCheckpoint c where c.baseline = true")
+  Timestamp findHistoryStart();
+}
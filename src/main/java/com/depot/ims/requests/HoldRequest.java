@@ -0,0 +1,23 @@
+package com.depot.ims.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * HoldRequest asks for a quantity of an item in a site to be held for a checkout, for ttlSeconds or
+ * the default TTL if that is not given.
+ *
+ * @see com.depot.ims.services.ReservationService
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class HoldRequest {
+  private Long siteId;
+  private Long itemId;
+  private Integer quantity;
+  private Long ttlSeconds;
+}
@@ -0,0 +1,33 @@
+package com.depot.ims.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The query parameters of a collection GET, e.g. {@code /items?size=50&sort=-itemPrice&fields=
+ * itemId,itemName}. page and size page by offset; after continues from a nextCursor instead. sort
+ * is a comma-separated list of fields, each descending when prefixed with "-". fields limits the
+ * fields of every row. When none of them is given the endpoint returns every entity as before.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ListingRequest {
+  private Integer page;
+  private Integer size;
+  private String after;
+  private String sort;
+  private String fields;
+
+  /**
+   * Whether the client asked for a listing rather than the whole table.
+   *
+   * @return true if any of the listing parameters is present
+   */
+  public boolean isRequested() {
+    return page != null || size != null || after != null || sort != null || fields != null;
+  }
+}
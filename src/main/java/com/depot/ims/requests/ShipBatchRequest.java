@@ -0,0 +1,23 @@
+package com.depot.ims.requests;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ShipBatchRequest is a request object for shipping a whole manifest at once: one shipment and the
+ * list of items, with their quantities, loaded onto it.
+ *
+ * @see ShipLineRequest
+ * @see com.depot.ims.services.ShipService#addShips(ShipBatchRequest)
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ShipBatchRequest {
+  private Long shipmentId;
+  private List<ShipLineRequest> lines;
+}
@@ -0,0 +1,20 @@
+package com.depot.ims.requests;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ShipLineRequest is one line of a ShipBatchRequest: an item and the quantity of it to ship.
+ *
+ * @see ShipBatchRequest
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ShipLineRequest {
+  private Long itemId;
+  private Integer quantity;
+}
@@ -13,6 +13,9 @@ import lombok.NoArgsConstructor;
  * <p>Rather than frontend passing in the Item and Shipment objects, it passes in their IDs and
  * querying is done in the service layer to get the actual objects.
  *
+ * <p>A reservationId, if given, names a hold on exactly this quantity of the item in the shipment's
+ * source, which the ship consumes instead of competing with it.
+ *
  * @see com.depot.ims.models.Ship
  * @see com.depot.ims.services.ShipService
  */
@@ -24,4 +27,5 @@ public class ShipRequest {
   private Long itemId;
   private Long shipmentId;
   private Integer quantity;
+  private Long reservationId;
 }
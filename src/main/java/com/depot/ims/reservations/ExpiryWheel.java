@@ -0,0 +1,102 @@
+package com.depot.ims.reservations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timing wheel of reservations waiting to expire. Time is cut into ticks, and a
+ * reservation is queued in the slot of the tick it expires in, modulo the number of slots, so
+ * scheduling is O(1) whatever the TTL and advancing one tick only looks at one slot. A reservation
+ * further out than one turn of the wheel is passed over until the turn it expires in.
+ *
+ * <p>Reservations that end before they expire are not removed; they are dropped when their slot
+ * comes up. Schedule may be called from any thread, advance from one thread at a time.
+ */
+final class ExpiryWheel {
+
+  private final long tickMillis;
+  private final ConcurrentLinkedQueue<Reservation>[] slots;
+  private final int mask;
+  // the last tick whose slot was processed; written by advance only
+  private volatile long cursor;
+
+  /**
+   * Constructor for ExpiryWheel.
+   *
+   * @param slotCount the number of slots, rounded up to a power of two
+   * @param tickMillis the length of a tick in milliseconds
+   * @param now the current time in epoch millis
+   */
+  @SuppressWarnings("unchecked")
+  ExpiryWheel(int slotCount, long tickMillis, long now) {
+    int size = Integer.highestOneBit(Math.max(slotCount, 2) - 1) << 1;
+    this.tickMillis = tickMillis;
+    this.slots = new ConcurrentLinkedQueue[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new ConcurrentLinkedQueue<>();
+    }
+    this.mask = size - 1;
+    this.cursor = now / tickMillis;
+  }
+
+  /**
+   * Queue a reservation to expire at its expiresAt, or at the next tick if that has passed.
+   *
+   * @param reservation the reservation
+   */
+  void schedule(Reservation reservation) {
+    long tick = Math.max(reservation.getExpiresAt() / tickMillis, cursor + 1);
+    slots[(int) (tick & mask)].add(reservation);
+  }
+
+  /**
+   * Process every tick up to now and return the reservations whose time has come. Reservations that
+   * no longer hold stock are dropped; the caller decides whether the others still expire.
+   *
+   * @param now the current time in epoch millis
+   * @return the reservations still HELD whose expiresAt is not after now
+   */
+  List<Reservation> advance(long now) {
+    List<Reservation> due = new ArrayList<>();
+    long target = now / tickMillis;
+    // after a pause longer than one turn, every slot comes up once
+    long from = Math.max(cursor + 1, target - mask);
+    for (long tick = from; tick <= target; tick++) {
+      ConcurrentLinkedQueue<Reservation> slot = slots[(int) (tick & mask)];
+      List<Reservation> later = new ArrayList<>();
+      for (int n = slot.size(); n > 0; n--) {
+        Reservation reservation = slot.poll();
+        if (reservation == null) {
+          break;
+        }
+        Reservation.Status status = reservation.getStatus();
+        if (status != Reservation.Status.HELD && status != Reservation.Status.CONFIRMING) {
+          continue;
+        }
+        if (status == Reservation.Status.HELD && reservation.getExpiresAt() <= now) {
+          due.add(reservation);
+        } else {
+          // a later turn, or a confirm in progress that may still fall back to HELD
+          later.add(reservation);
+        }
+      }
+      slot.addAll(later);
+    }
+    cursor = Math.max(cursor, target);
+    return due;
+  }
+
+  /**
+   * The number of reservations queued, ended ones not yet dropped included.
+   *
+   * @return the count
+   */
+  int size() {
+    int size = 0;
+    for (ConcurrentLinkedQueue<Reservation> slot : slots) {
+      size += slot.size();
+    }
+    return size;
+  }
+}
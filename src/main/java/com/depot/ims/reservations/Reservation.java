@@ -0,0 +1,82 @@
+package com.depot.ims.reservations;
+
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A hold on a quantity of an item in a site, taken by the ReservationEngine. The hold counts
+ * against the site's available quantity until it is confirmed, released or expires; only a confirm
+ * changes the Availabilities table.
+ *
+ * <p>The status moves from HELD to CONFIRMING while a confirm runs, and from there to CONFIRMED if
+ * it commits or back to HELD if it does not. Every transition is a compare-and-set, so a confirm, a
+ * release and the expiry of the same hold race safely and exactly one of them ends it.
+ */
+@Getter
+public class Reservation {
+
+  /** The states a reservation goes through. */
+  public enum Status {
+    HELD,
+    CONFIRMING,
+    CONFIRMED,
+    RELEASED,
+    EXPIRED
+  }
+
+  private final long reservationId;
+  private final long siteId;
+  private final long itemId;
+  private final int quantity;
+  private final long createdAt;
+  private final long expiresAt;
+
+  @Getter(AccessLevel.NONE)
+  private final AtomicReference<Status> status = new AtomicReference<>(Status.HELD);
+
+  /**
+   * Constructor for Reservation.
+   *
+   * @param reservationId the id of the reservation
+   * @param siteId the id of the site the stock is held in
+   * @param itemId the id of the item held
+   * @param quantity the quantity held
+   * @param createdAt when the hold was taken, in epoch millis
+   * @param expiresAt when the hold expires unless confirmed or released, in epoch millis
+   */
+  public Reservation(
+      long reservationId, long siteId, long itemId, int quantity, long createdAt, long expiresAt) {
+    this.reservationId = reservationId;
+    this.siteId = siteId;
+    this.itemId = itemId;
+    this.quantity = quantity;
+    this.createdAt = createdAt;
+    this.expiresAt = expiresAt;
+  }
+
+  /**
+   * The current status of the reservation.
+   *
+   * @return the status
+   */
+  public Status getStatus() {
+    return status.get();
+  }
+
+  /**
+   * Whether this reservation holds exactly the given stock.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @param quantity the quantity
+   * @return true if site, item and quantity all match
+   */
+  public boolean covers(long siteId, long itemId, int quantity) {
+    return this.siteId == siteId && this.itemId == itemId && this.quantity == quantity;
+  }
+
+  boolean transition(Status from, Status to) {
+    return status.compareAndSet(from, to);
+  }
+}
@@ -0,0 +1,334 @@
+package com.depot.ims.reservations;
+
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.inventory.LedgerLookup;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Allocates stock to checkouts without locking availability rows. Every (siteId, itemId) pair has a
+ * reserved counter; a hold succeeds if the quantity on hand minus the reserved counter covers it,
+ * and claims its quantity with a compare-and-set on the counter, so any number of concurrent holds
+ * on the same stock never reserve more than is on hand. The quantity on hand is read from the
+ * InventoryLedger, or with a plain, non-locking select when the ledger misses.
+ *
+ * <p>A hold ends in one of three ways. A confirm debits the availability with one conditional
+ * UPDATE and releases the counter once that commits; a release or the expiry of its TTL releases
+ * the counter without touching the database. Expiry is driven by an ExpiryWheel that a background
+ * thread advances every tick.
+ *
+ * <p>Holds live in memory, like the ledger, so they only count against stock taken through this
+ * instance, and are lost on restart. The conditional UPDATE of the confirm stays the final guard
+ * against selling stock that is not there.
+ *
+ * <p>A counter that drops back to 0 is retired, by a compare-and-set to RETIRED, and removed, so
+ * the map only holds pairs with open holds. A hold that finds a retired counter retries with a new
+ * one; the compare-and-set keeps it from claiming a counter that is being removed.
+ */
+@Component
+public class ReservationEngine {
+
+  private static final Logger log = LoggerFactory.getLogger(ReservationEngine.class);
+
+  private static final int RETIRED = -1;
+
+  private final InventoryLedger inventoryLedger;
+  private final AvailabilityRepository availabilityRepository;
+  private final ShardRouter shardRouter;
+  private final BackgroundThreads backgroundThreads;
+  private final long tickMillis;
+  private final ExpiryWheel expiryWheel;
+
+  private final ConcurrentHashMap<StockKey, AtomicInteger> reserved = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+  private final AtomicLong nextId = new AtomicLong();
+
+  private final LongAdder held = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder confirmed = new LongAdder();
+  private final LongAdder released = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+
+  private volatile Thread expiryThread;
+  private volatile boolean running;
+
+  /**
+   * Constructor for ReservationEngine.
+   *
+   * @param inventoryLedger answers the quantity on hand
+   * @param availabilityRepository answers the quantity on hand when the ledger misses
+   * @param shardRouter routes those reads to the shard of the site
+   * @param backgroundThreads creates the expiry thread
+   * @param tickMillis the length of an expiry tick, ims.reservations.tick-ms
+   * @param wheelSlots the number of slots of the expiry wheel, ims.reservations.wheel-slots
+   */
+  public ReservationEngine(
+      InventoryLedger inventoryLedger,
+      AvailabilityRepository availabilityRepository,
+      ShardRouter shardRouter,
+      BackgroundThreads backgroundThreads,
+      @Value("${ims.reservations.tick-ms:100}") long tickMillis,
+      @Value("${ims.reservations.wheel-slots:1024}") int wheelSlots) {
+    this.inventoryLedger = inventoryLedger;
+    this.availabilityRepository = availabilityRepository;
+    this.shardRouter = shardRouter;
+    this.backgroundThreads = backgroundThreads;
+    this.tickMillis = tickMillis;
+    this.expiryWheel = new ExpiryWheel(wheelSlots, tickMillis, System.currentTimeMillis());
+  }
+
+  /** Start the expiry thread. */
+  @PostConstruct
+  public void start() {
+    running = true;
+    expiryThread = backgroundThreads.newThread("reservation-expiry", this::run);
+    expiryThread.start();
+  }
+
+  /**
+   * Stop the expiry thread.
+   *
+   * @throws InterruptedException if interrupted while waiting for the thread to finish
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    Thread thread = expiryThread;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(5_000);
+    }
+  }
+
+  /**
+   * Hold a quantity of an item in a site, if that much is on hand and not held already.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @param quantity the quantity to hold, positive
+   * @param ttlMillis how long the hold lasts unless confirmed or released
+   * @return the reservation, or null if not enough stock is available
+   */
+  public Reservation hold(long siteId, long itemId, int quantity, long ttlMillis) {
+    int onHand = onHand(siteId, itemId);
+    StockKey key = new StockKey(siteId, itemId);
+    AtomicInteger counter = reserved.computeIfAbsent(key, k -> new AtomicInteger());
+    while (true) {
+      int current = counter.get();
+      if (current == RETIRED) {
+        counter = reserved.computeIfAbsent(key, k -> new AtomicInteger());
+        continue;
+      }
+      if (onHand - current < quantity) {
+        rejected.increment();
+        return null;
+      }
+      if (counter.compareAndSet(current, current + quantity)) {
+        break;
+      }
+    }
+    long now = System.currentTimeMillis();
+    Reservation reservation =
+        new Reservation(nextId.incrementAndGet(), siteId, itemId, quantity, now, now + ttlMillis);
+    reservations.put(reservation.getReservationId(), reservation);
+    expiryWheel.schedule(reservation);
+    held.increment();
+    return reservation;
+  }
+
+  /**
+   * Find an open reservation, i.e. one that still counts against the available stock.
+   *
+   * @param reservationId the id of the reservation
+   * @return the reservation, or null if it never existed or has ended
+   */
+  public Reservation find(long reservationId) {
+    return reservations.get(reservationId);
+  }
+
+  /**
+   * The quantity of an item in a site held by open reservations.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @return the reserved quantity, 0 if none
+   */
+  public int reservedQuantity(long siteId, long itemId) {
+    AtomicInteger counter = reserved.get(new StockKey(siteId, itemId));
+    return counter == null ? 0 : Math.max(counter.get(), 0);
+  }
+
+  /**
+   * Release a hold, returning its quantity to the available stock.
+   *
+   * @param reservationId the id of the reservation
+   * @return true if the reservation was held and is now released
+   */
+  public boolean release(long reservationId) {
+    Reservation reservation = reservations.get(reservationId);
+    if (reservation == null
+        || !reservation.transition(Reservation.Status.HELD, Reservation.Status.RELEASED)) {
+      return false;
+    }
+    end(reservation);
+    released.increment();
+    return true;
+  }
+
+  /**
+   * Claim a hold for a confirm, so that it can no longer be released or expire while the confirm
+   * runs. The caller must follow up with confirmAfterCommit or abortConfirm.
+   *
+   * @param reservationId the id of the reservation
+   * @return the reservation, or null if it is not held
+   */
+  public Reservation beginConfirm(long reservationId) {
+    Reservation reservation = reservations.get(reservationId);
+    if (reservation == null
+        || !reservation.transition(Reservation.Status.HELD, Reservation.Status.CONFIRMING)) {
+      return null;
+    }
+    return reservation;
+  }
+
+  /**
+   * Finish a confirm once the current transaction, which debited the stock, completes: the hold is
+   * CONFIRMED if it commits, and HELD again if it rolls back. Without a transaction the hold is
+   * confirmed at once.
+   *
+   * @param reservation the reservation returned by beginConfirm
+   */
+  public void confirmAfterCommit(Reservation reservation) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      completeConfirm(reservation);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+              completeConfirm(reservation);
+            } else {
+              abortConfirm(reservation);
+            }
+          }
+        });
+  }
+
+  /**
+   * Give up a confirm that did not debit the stock. The reservation is held again, or expires now
+   * if its TTL ran out meanwhile.
+   *
+   * @param reservation the reservation returned by beginConfirm
+   */
+  public void abortConfirm(Reservation reservation) {
+    if (!reservation.transition(Reservation.Status.CONFIRMING, Reservation.Status.HELD)) {
+      return;
+    }
+    if (reservation.getExpiresAt() <= System.currentTimeMillis()) {
+      expire(reservation);
+    }
+  }
+
+  /**
+   * The counters of the engine since startup.
+   *
+   * @return a snapshot of the counters
+   */
+  public ReservationStats stats() {
+    return new ReservationStats(
+        held.sum(),
+        rejected.sum(),
+        confirmed.sum(),
+        released.sum(),
+        expired.sum(),
+        reservations.size());
+  }
+
+  /**
+   * Expire every hold whose TTL ran out by now.
+   *
+   * @param now the current time in epoch millis
+   * @return the number of holds expired
+   */
+  int expireDue(long now) {
+    int count = 0;
+    for (Reservation reservation : expiryWheel.advance(now)) {
+      if (expire(reservation)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private void completeConfirm(Reservation reservation) {
+    if (reservation.transition(Reservation.Status.CONFIRMING, Reservation.Status.CONFIRMED)) {
+      end(reservation);
+      confirmed.increment();
+    }
+  }
+
+  private boolean expire(Reservation reservation) {
+    if (!reservation.transition(Reservation.Status.HELD, Reservation.Status.EXPIRED)) {
+      return false;
+    }
+    end(reservation);
+    expired.increment();
+    return true;
+  }
+
+  private void end(Reservation reservation) {
+    reservations.remove(reservation.getReservationId());
+    StockKey key = new StockKey(reservation.getSiteId(), reservation.getItemId());
+    AtomicInteger counter = reserved.get(key);
+    if (counter.addAndGet(-reservation.getQuantity()) == 0 && counter.compareAndSet(0, RETIRED)) {
+      reserved.remove(key, counter);
+    }
+  }
+
+  /**
+   * The number of (siteId, itemId) pairs with a reserved counter.
+   *
+   * @return the number of counters
+   */
+  int counterCount() {
+    return reserved.size();
+  }
+
+  private int onHand(long siteId, long itemId) {
+    LedgerLookup<Integer> lookup = inventoryLedger.findQuantity(siteId, itemId);
+    Integer quantity =
+        lookup.isHit()
+            ? lookup.getValue()
+            : shardRouter.onSite(
+                siteId, () -> availabilityRepository.findQuantityBySiteIdAndItemId(siteId, itemId));
+    return quantity == null ? 0 : quantity;
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(tickMillis);
+        expireDue(System.currentTimeMillis());
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Reservation expiry failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.depot.ims.reservations;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.function.ToDoubleFunction;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the ReservationEngine counters as meters: holds by outcome, and the holds still open.
+ */
+@Component
+public class ReservationMetrics implements MeterBinder {
+
+  private final ReservationEngine reservationEngine;
+
+  /**
+   * Constructor for ReservationMetrics.
+   *
+   * @param reservationEngine the engine to observe
+   */
+  public ReservationMetrics(ReservationEngine reservationEngine) {
+    this.reservationEngine = reservationEngine;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    outcome(registry, "held", engine -> engine.stats().getHeld());
+    outcome(registry, "rejected", engine -> engine.stats().getRejected());
+    outcome(registry, "confirmed", engine -> engine.stats().getConfirmed());
+    outcome(registry, "released", engine -> engine.stats().getReleased());
+    outcome(registry, "expired", engine -> engine.stats().getExpired());
+    Gauge.builder("ims.reservations.open", reservationEngine, engine -> engine.stats().getOpen())
+        .description("Holds still counting against the available stock")
+        .register(registry);
+  }
+
+  private void outcome(
+      MeterRegistry registry, String outcome, ToDoubleFunction<ReservationEngine> count) {
+    FunctionCounter.builder("ims.reservations", reservationEngine, count)
+        .tag("outcome", outcome)
+        .description("Reservation holds by outcome")
+        .register(registry);
+  }
+}
@@ -0,0 +1,22 @@
+package com.depot.ims.reservations;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** A point-in-time snapshot of the ReservationEngine counters. */
+@Data
+@AllArgsConstructor
+public class ReservationStats {
+  // number of holds taken
+  private final long held;
+  // number of holds refused for lack of available stock
+  private final long rejected;
+  // number of holds confirmed, i.e. debited from their availability
+  private final long confirmed;
+  // number of holds released by the caller
+  private final long released;
+  // number of holds that ran out their TTL
+  private final long expired;
+  // number of holds still counting against the available stock
+  private final int open;
+}
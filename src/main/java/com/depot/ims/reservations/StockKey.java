@@ -0,0 +1,30 @@
+package com.depot.ims.reservations;
+
+/** The (siteId, itemId) pair a reserved quantity is counted under. */
+final class StockKey {
+
+  private final long siteId;
+  private final long itemId;
+
+  StockKey(long siteId, long itemId) {
+    this.siteId = siteId;
+    this.itemId = itemId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof StockKey)) {
+      return false;
+    }
+    StockKey other = (StockKey) o;
+    return siteId == other.siteId && itemId == other.itemId;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(siteId) * 31 + Long.hashCode(itemId);
+  }
+}
@@ -0,0 +1,18 @@
+package com.depot.ims.response;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * An auditPage is a DTO for one page of a keyset-paginated audit query: the audits of the page and
+ * the cursor to pass as "after" to fetch the next one, which is null on the last page.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class AuditPage {
+  List<AuditResponse> audits;
+  String nextCursor;
+}
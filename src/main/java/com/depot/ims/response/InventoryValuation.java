@@ -0,0 +1,18 @@
+package com.depot.ims.response;
+
+import java.math.BigDecimal;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * An InventoryValuation is a DTO for the stock value of every site and their total, and whether it
+ * was answered from the valuation the InventoryLedger maintains or recomputed from the database.
+ */
+@Data
+@AllArgsConstructor
+public class InventoryValuation {
+  BigDecimal totalValue;
+  List<SiteValuation> sites;
+  boolean fromLedger;
+}
@@ -0,0 +1,22 @@
+package com.depot.ims.response;
+
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A ListingPage is a DTO for one page of a collection GET: the rows, each holding only the
+ * requested fields, the page number when paging by offset, and the cursor to pass as "after" to
+ * fetch the next page, which is null on the last page.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class ListingPage {
+  List<Map<String, Object>> rows;
+  Integer page;
+  int size;
+  String nextCursor;
+}
@@ -0,0 +1,19 @@
+package com.depot.ims.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A quantityChangeResponse is a DTO describing the result of a quantity change on an availability:
+ * which (siteId, itemId) pair was changed and its quantity before and after the change.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class QuantityChangeResponse {
+  Long siteId;
+  Long itemId;
+  Integer oldQuantity;
+  Integer newQuantity;
+}
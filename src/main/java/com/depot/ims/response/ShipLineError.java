@@ -0,0 +1,18 @@
+package com.depot.ims.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A shipLineError is a DTO describing why one line of a ship manifest was rejected: the position of
+ * the line in the manifest, its itemId and the reason.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class ShipLineError {
+  Integer line;
+  Long itemId;
+  String message;
+}
@@ -0,0 +1,16 @@
+package com.depot.ims.response;
+
+import java.math.BigDecimal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A SiteValuation is a DTO for the stock value of one site: the sum of quantity times unit price
+ * over its availabilities, with each unit price rounded to the cent.
+ */
+@Data
+@AllArgsConstructor
+public class SiteValuation {
+  long siteId;
+  BigDecimal value;
+}
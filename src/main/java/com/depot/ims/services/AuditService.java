@@ -1,44 +1,71 @@
 package com.depot.ims.services;
 
+import com.depot.ims.audit.AuditArchive;
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditFormat;
+import com.depot.ims.audit.AuditWriter;
 import com.depot.ims.models.Audit;
+import com.depot.ims.models.projections.AuditRow;
 import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.response.AuditPage;
 import com.depot.ims.response.AuditResponse;
+import com.depot.ims.streaming.JsonStreamer;
+import io.micrometer.core.annotation.Timed;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
+import java.util.stream.Stream;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /** This class provides methods for business level logic operations managing audits. */
 @Service
+@Timed("ims.service")
 public class AuditService {
+  // largest page a keyset-paginated query returns
+  private static final int MAX_PAGE_SIZE = 1000;
+
   private final AuditRepository auditRepository;
+  private final AuditWriter auditWriter;
+  private final JsonStreamer jsonStreamer;
+  private final AuditArchive auditArchive;
 
-  public AuditService(AuditRepository auditRepository) {
+  /**
+   * Constructor for AuditService.
+   *
+   * @param auditRepository The AuditRepository instance.
+   * @param auditWriter The AuditWriter that writes new audits off the request path.
+   * @param jsonStreamer writes streamed audits to the response as they are read
+   * @param auditArchive holds the audits of the months moved out of the Audits table
+   */
+  public AuditService(
+      AuditRepository auditRepository,
+      AuditWriter auditWriter,
+      JsonStreamer jsonStreamer,
+      AuditArchive auditArchive) {
     this.auditRepository = auditRepository;
+    this.auditWriter = auditWriter;
+    this.jsonStreamer = jsonStreamer;
+    this.auditArchive = auditArchive;
   }
 
   /**
    * This method convert an Audit object to AuditResponse object to screen out sensitive user's
-   * information, such as password.
+   * information, such as password, and to render its typed values as text.
    *
    * @param audit the Audit object to convert
    * @return the converted AuditResponse
    */
   private static AuditResponse convertToAuditResponse(Audit audit) {
-
-    return AuditResponse.builder()
-        .auditId(audit.getAuditId())
-        .tableName(audit.getTableName())
-        .fieldName(audit.getFieldName())
-        .rowKey(audit.getRowKey())
-        .oldValue(audit.getOldValue())
-        .newValue(audit.getNewValue())
-        .action(audit.getAction())
-        .actionTimestamp(audit.getActionTimestamp())
-        .build();
+    return AuditFormat.toResponse(audit);
   }
 
   /**
@@ -47,6 +74,7 @@ public class AuditService {
    * @return ResponseEntity OK with a list of AuditResponses; or InternalServerError if exception
    *     happens
    */
+  @Transactional(readOnly = true)
   public ResponseEntity<?> findAll() {
     try {
       List<Audit> result = auditRepository.findAll();
@@ -67,6 +95,7 @@ public class AuditService {
    * @return ResponseEntity OK with a list of AuditResponses; or InternalServerError if * exception
    *     happens
    */
+  @Transactional(readOnly = true)
   public ResponseEntity<?> findAuditsOnTable(String tableName) {
     if (tableName == null) {
       return ResponseEntity.badRequest().body("tableName should not be null");
@@ -84,26 +113,34 @@ public class AuditService {
   }
 
   /**
-   * Find all audits that are recorded between a specific time period. Apply
-   * convertToAuditResponse() on each row.
+   * Find all audits that are recorded between a specific time period, from the Audits table merged
+   * with the archive when the period reaches into it. Apply convertToAuditResponse() on each row.
    *
    * @param start the start of the time period. Format: YYYY-MM-DD
    * @param end the end of the time period. Format: YYYY-MM-DD
    * @return ResponseEntity OK with a list of AuditResponses; ResponseEntity badRequest if the
    *     client sends incorrect time format; InternalServerError if other exception happens
    */
+  @Transactional(readOnly = true)
   public ResponseEntity<?> findAuditsBetweenPeriod(String start, String end) {
     try {
-      LocalDate startDate = LocalDate.parse(start);
-      LocalDate endDate = LocalDate.parse(end);
-      List<Audit> result =
-          auditRepository.findBetweenPeriod(
-              Timestamp.valueOf(startDate.atStartOfDay()),
-              Timestamp.valueOf(endDate.atStartOfDay()));
-
+      Timestamp startTimestamp = Timestamp.valueOf(LocalDate.parse(start).atStartOfDay());
+      Timestamp endTimestamp = Timestamp.valueOf(LocalDate.parse(end).atStartOfDay());
+      AuditArchive.Catalog catalog = auditArchive.catalog();
+      if (catalog.covers(startTimestamp)) {
+        try (Stream<AuditRow> rows =
+            catalog.withArchived(
+                startTimestamp,
+                endTimestamp,
+                auditRepository.streamRowsBetweenPeriod(startTimestamp, endTimestamp))) {
+          return ResponseEntity.ok(rows.map(AuditFormat::toResponse).toList());
+        }
+      }
       // convert each Audit from the result to AuditResponse
       List<AuditResponse> responses =
-          result.stream().map(AuditService::convertToAuditResponse).toList();
+          auditRepository.findBetweenPeriod(startTimestamp, endTimestamp).stream()
+              .map(AuditService::convertToAuditResponse)
+              .toList();
       return ResponseEntity.ok(responses);
     } catch (DateTimeParseException e) {
       return ResponseEntity.badRequest().body("Datetime format should be:\nYYYY-MM-DD");
@@ -113,32 +150,325 @@ public class AuditService {
   }
 
   /**
-   * Helper method for other service classes to save an audit into database.
+   * Find one page of all audits, in auditId order.
+   *
+   * @param after the nextCursor of the previous page, or null for the first page
+   * @param limit the page size, from 1 to 1000
+   * @return ResponseEntity OK with an AuditPage; badRequest if the cursor or limit is invalid
+   */
+  @Transactional(readOnly = true)
+  public ResponseEntity<?> findAuditsPage(String after, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body("limit should be between 1 and " + MAX_PAGE_SIZE);
+    }
+    try {
+      long afterId = after == null ? 0 : Long.parseLong(decodeCursor(after));
+      List<AuditResponse> page = auditRepository.findPageAfter(afterId, PageRequest.of(0, limit));
+      return ResponseEntity.ok(toPage(page, limit, false));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body("Invalid cursor");
+    } catch (Exception e) {
+      return ResponseEntity.internalServerError().body(e.getMessage());
+    }
+  }
+
+  /**
+   * Find one page of the audits that relate to a specific table, in auditId order.
+   *
+   * @param tableName the name of a table that user want to use to search by for audits
+   * @param after the nextCursor of the previous page, or null for the first page
+   * @param limit the page size, from 1 to 1000
+   * @return ResponseEntity OK with an AuditPage; badRequest if an argument is invalid
+   */
+  @Transactional(readOnly = true)
+  public ResponseEntity<?> findAuditsOnTablePage(String tableName, String after, int limit) {
+    if (tableName == null) {
+      return ResponseEntity.badRequest().body("tableName should not be null");
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body("limit should be between 1 and " + MAX_PAGE_SIZE);
+    }
+    try {
+      long afterId = after == null ? 0 : Long.parseLong(decodeCursor(after));
+      List<AuditResponse> page =
+          auditRepository.findPageOnTableAfter(tableName, afterId, PageRequest.of(0, limit));
+      return ResponseEntity.ok(toPage(page, limit, false));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body("Invalid cursor");
+    } catch (Exception e) {
+      return ResponseEntity.internalServerError().body(e.getMessage());
+    }
+  }
+
+  /**
+   * Find one page of the audits of one row, in auditId order.
+   *
+   * @param tableName the table of the row
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param after the nextCursor of the previous page, or null for the first page
+   * @param limit the page size, from 1 to 1000
+   * @return ResponseEntity OK with an AuditPage; badRequest if an argument is invalid
+   */
+  @Transactional(readOnly = true)
+  public ResponseEntity<?> findAuditsOnEntityPage(
+      String tableName, Long entityId, String after, int limit) {
+    if (tableName == null || entityId == null) {
+      return ResponseEntity.badRequest().body("tableName and entityId should not be null");
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body("limit should be between 1 and " + MAX_PAGE_SIZE);
+    }
+    try {
+      long afterId = after == null ? 0 : Long.parseLong(decodeCursor(after));
+      List<AuditResponse> page =
+          auditRepository.findPageOnEntityAfter(
+              tableName, entityId, afterId, PageRequest.of(0, limit));
+      return ResponseEntity.ok(toPage(page, limit, false));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body("Invalid cursor");
+    } catch (Exception e) {
+      return ResponseEntity.internalServerError().body(e.getMessage());
+    }
+  }
+
+  /**
+   * Find one page of the audits recorded between a specific time period, in (actionTimestamp,
+   * auditId) order. A page that starts in the archive is filled from it merged with the Audits
+   * table.
+   *
+   * @param start the start of the time period. Format: YYYY-MM-DD
+   * @param end the end of the time period. Format: YYYY-MM-DD
+   * @param after the nextCursor of the previous page, or null for the first page
+   * @param limit the page size, from 1 to 1000
+   * @return ResponseEntity OK with an AuditPage; badRequest if an argument is invalid
+   */
+  @Transactional(readOnly = true)
+  public ResponseEntity<?> findAuditsBetweenPeriodPage(
+      String start, String end, String after, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body("limit should be between 1 and " + MAX_PAGE_SIZE);
+    }
+    try {
+      Timestamp startTimestamp = Timestamp.valueOf(LocalDate.parse(start).atStartOfDay());
+      Timestamp endTimestamp = Timestamp.valueOf(LocalDate.parse(end).atStartOfDay());
+      Timestamp afterTimestamp = startTimestamp;
+      long afterId = 0;
+      if (after != null) {
+        String[] position = decodeCursor(after).split("_", 2);
+        afterTimestamp = Timestamp.from(Instant.parse(position[0]));
+        afterId = Long.parseLong(position[1]);
+      }
+      AuditArchive.Catalog catalog = auditArchive.catalog();
+      if (!catalog.covers(afterTimestamp)) {
+        List<AuditResponse> page =
+            auditRepository.findPageBetweenPeriodAfter(
+                startTimestamp, endTimestamp, afterTimestamp, afterId, PageRequest.of(0, limit));
+        return ResponseEntity.ok(toPage(page, limit, true));
+      }
+      // a full page from each side is enough, since the merge takes the first limit of them
+      List<AuditRow> live =
+          auditRepository.findRowPageBetweenPeriodAfter(
+              startTimestamp, endTimestamp, afterTimestamp, afterId, PageRequest.of(0, limit));
+      Timestamp positionTimestamp = afterTimestamp;
+      long positionId = afterId;
+      List<AuditResponse> page;
+      try (Stream<AuditRow> rows =
+          catalog.withArchived(afterTimestamp, endTimestamp, live.stream())) {
+        page =
+            rows.filter(
+                    row ->
+                        row.getActionTimestamp().after(positionTimestamp)
+                            || (row.getActionTimestamp().equals(positionTimestamp)
+                                && row.getAuditId() > positionId))
+                .limit(limit)
+                .map(AuditFormat::toResponse)
+                .toList();
+      }
+      return ResponseEntity.ok(toPage(page, limit, true));
+    } catch (DateTimeParseException e) {
+      if (after != null) {
+        return ResponseEntity.badRequest().body("Invalid cursor");
+      }
+      return ResponseEntity.badRequest().body("Datetime format should be:\nYYYY-MM-DD");
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      return ResponseEntity.badRequest().body("Invalid cursor");
+    } catch (Exception e) {
+      return ResponseEntity.internalServerError().body(e.getMessage());
+    }
+  }
+
+  /**
+   * Stream all audits as newline-delimited JSON, in auditId order.
+   *
+   * @return ResponseEntity OK whose body writes one AuditResponse per line
+   */
+  public ResponseEntity<StreamingResponseBody> streamAudits() {
+    return jsonStreamer.ndjson(AuditResponse.class, auditRepository::streamAll);
+  }
+
+  /**
+   * Stream the audits that relate to a specific table as newline-delimited JSON, in auditId order.
+   *
+   * @param tableName the name of a table that user want to use to search by for audits
+   * @return ResponseEntity OK whose body writes one AuditResponse per line; badRequest if tableName
+   *     is null
+   */
+  public ResponseEntity<StreamingResponseBody> streamAuditsOnTable(String tableName) {
+    if (tableName == null) {
+      return JsonStreamer.text(HttpStatus.BAD_REQUEST, "tableName should not be null");
+    }
+    return jsonStreamer.ndjson(
+        AuditResponse.class, () -> auditRepository.streamByTableName(tableName));
+  }
+
+  /**
+   * Stream the audits recorded between a specific time period as newline-delimited JSON, in
+   * (actionTimestamp, auditId) order, from the Audits table merged with the archive when the period
+   * reaches into it.
+   *
+   * @param start the start of the time period. Format: YYYY-MM-DD
+   * @param end the end of the time period. Format: YYYY-MM-DD
+   * @return ResponseEntity OK whose body writes one AuditResponse per line; badRequest if the
+   *     client sends incorrect time format
+   */
+  public ResponseEntity<StreamingResponseBody> streamAuditsBetweenPeriod(String start, String end) {
+    Timestamp startTimestamp;
+    Timestamp endTimestamp;
+    try {
+      startTimestamp = Timestamp.valueOf(LocalDate.parse(start).atStartOfDay());
+      endTimestamp = Timestamp.valueOf(LocalDate.parse(end).atStartOfDay());
+    } catch (DateTimeParseException e) {
+      return JsonStreamer.text(HttpStatus.BAD_REQUEST, "Datetime format should be:\nYYYY-MM-DD");
+    }
+    AuditArchive.Catalog catalog = auditArchive.catalog();
+    if (!catalog.covers(startTimestamp)) {
+      return jsonStreamer.ndjson(
+          AuditResponse.class,
+          () -> auditRepository.streamBetweenPeriod(startTimestamp, endTimestamp));
+    }
+    return jsonStreamer.ndjson(
+        AuditResponse.class,
+        () ->
+            catalog
+                .withArchived(
+                    startTimestamp,
+                    endTimestamp,
+                    auditRepository.streamRowsBetweenPeriod(startTimestamp, endTimestamp))
+                .map(AuditFormat::toResponse));
+  }
+
+  /**
+   * Helper method for other service classes to audit the change of one field of a row. The audit is
+   * handed to the AuditWriter, which writes it according to the configured durability mode.
    *
    * @param tableName the table that has been changed
-   * @param fieldName the field of the table that has been changed. Null if the operation is INSERT
-   *     or DELETE
-   * @param rowKey the value of the primary key of the row that has been changed
-   * @param oldValue old value. Null if the operation is INSERT
-   * @param newValue new value. Null if the operation is DELETE
-   * @param action Enum from INSERT, UPDATE, DELETE
-   */
-  public void saveAudit(
+   * @param field the field of the row that has been changed
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param itemId the item id of an availability or ship; null for any other row
+   * @param oldValue old value, e.g. an Integer quantity or a Timestamp
+   * @param newValue new value
+   */
+  public void saveUpdate(
       String tableName,
-      String fieldName,
-      String rowKey,
-      String oldValue,
-      String newValue,
-      String action) {
-    auditRepository.save(
+      AuditField field,
+      Long entityId,
+      Long itemId,
+      Object oldValue,
+      Object newValue) {
+    Audit.AuditBuilder audit =
+        Audit.builder().tableName(tableName).field(field).entityId(entityId).itemId(itemId);
+    if (field.isNumeric()) {
+      audit.oldNumber(field.toNumber(oldValue)).newNumber(field.toNumber(newValue));
+    } else {
+      audit
+          .oldText(oldValue == null ? null : oldValue.toString())
+          .newText(newValue == null ? null : newValue.toString());
+    }
+    submit(audit.action("UPDATE"));
+  }
+
+  /**
+   * Helper method for other service classes to audit the insert of a row.
+   *
+   * @param tableName the table that has been changed
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param itemId the item id of an availability or ship; null for any other row
+   * @param snapshot the inserted row, from AuditSnapshot
+   */
+  public void saveInsert(String tableName, Long entityId, Long itemId, byte[] snapshot) {
+    submit(
+        Audit.builder()
+            .tableName(tableName)
+            .entityId(entityId)
+            .itemId(itemId)
+            .snapshot(snapshot)
+            .action("INSERT"));
+  }
+
+  /**
+   * Helper method for other service classes to audit the delete of a row.
+   *
+   * @param tableName the table that has been changed
+   * @param entityId the id of the row; for an availability its site id, for a ship its shipment id
+   * @param itemId the item id of an availability or ship; null for any other row
+   * @param snapshot the deleted row, from AuditSnapshot
+   */
+  public void saveDelete(String tableName, Long entityId, Long itemId, byte[] snapshot) {
+    submit(
         Audit.builder()
             .tableName(tableName)
-            .fieldName(fieldName)
-            .rowKey(rowKey)
-            .oldValue(oldValue)
-            .newValue(newValue)
-            .action(action)
-            .actionTimestamp(Timestamp.from(Instant.now()))
-            .build());
+            .entityId(entityId)
+            .itemId(itemId)
+            .snapshot(snapshot)
+            .action("DELETE"));
+  }
+
+  private void submit(Audit.AuditBuilder audit) {
+    auditWriter.submit(List.of(audit.actionTimestamp(Timestamp.from(Instant.now())).build()));
+  }
+
+  /**
+   * Helper method for other service classes to save many audits into database at once. Every audit
+   * gets the same action timestamp.
+   *
+   * @param audits the audits to save, without their actionTimestamp
+   */
+  public void saveAudits(List<Audit> audits) {
+    Timestamp now = Timestamp.from(Instant.now());
+    audits.forEach(audit -> audit.setActionTimestamp(now));
+    auditWriter.submit(audits);
+  }
+
+  /**
+   * Get the queue depth, throughput and backpressure counters of the audit writer.
+   *
+   * @return ResponseEntity OK with the current AuditWriterStats
+   */
+  public ResponseEntity<?> getWriterStats() {
+    return ResponseEntity.ok(auditWriter.stats());
+  }
+
+  /**
+   * Wrap a page of audits with the cursor of its last row. A page shorter than the limit is the
+   * last one. Period pages are ordered by (actionTimestamp, auditId), so their cursor carries both.
+   */
+  private static AuditPage toPage(List<AuditResponse> audits, int limit, boolean byTimestamp) {
+    String nextCursor = null;
+    if (audits.size() == limit) {
+      AuditResponse last = audits.get(audits.size() - 1);
+      String position =
+          byTimestamp
+              ? last.getActionTimestamp().toInstant() + "_" + last.getAuditId()
+              : String.valueOf(last.getAuditId());
+      nextCursor =
+          Base64.getUrlEncoder()
+              .withoutPadding()
+              .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+    return new AuditPage(audits, nextCursor);
+  }
+
+  private static String decodeCursor(String cursor) {
+    return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
   }
 }
@@ -1,28 +1,55 @@
 package com.depot.ims.services;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.inventory.LedgerLookup;
 import com.depot.ims.models.Availability;
 import com.depot.ims.models.Item;
 import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.StockLevel;
 import com.depot.ims.repositories.AvailabilityRepository;
 import com.depot.ims.repositories.ItemRepository;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.response.QuantityChangeResponse;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.snapshots.StockHistory;
+import com.depot.ims.streaming.JsonStreamer;
+import io.micrometer.core.annotation.Timed;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /** Service class for managing Availability operations. */
 @Service
+@Timed("ims.service")
 public class AvailabilityService {
 
   private final SiteRepository siteRepository;
   private final ItemRepository itemRepository;
   private final AvailabilityRepository availabilityRepository;
   private final AuditService auditService;
+  private final InventoryLedger inventoryLedger;
+  private final JsonStreamer jsonStreamer;
+  private final ShardRouter shardRouter;
+  private final StockHistory stockHistory;
 
   /**
    * Constructor for availability Service.
@@ -30,16 +57,28 @@ public class AvailabilityService {
    * @param siteRepository The ShipRepository instance.
    * @param itemRepository The ItemRepository instance.
    * @param availabilityRepository The AvailabilityRepository instance.
+   * @param inventoryLedger The in-memory InventoryLedger answering availability reads.
+   * @param jsonStreamer writes streamed availabilities to the response as they are read
+   * @param shardRouter routes each site's availabilities to its shard
+   * @param stockHistory logs every change of a quantity and answers past stock levels
    */
   public AvailabilityService(
       SiteRepository siteRepository,
       ItemRepository itemRepository,
       AvailabilityRepository availabilityRepository,
-      AuditService auditService) {
+      AuditService auditService,
+      InventoryLedger inventoryLedger,
+      JsonStreamer jsonStreamer,
+      ShardRouter shardRouter,
+      StockHistory stockHistory) {
     this.siteRepository = siteRepository;
     this.itemRepository = itemRepository;
     this.availabilityRepository = availabilityRepository;
     this.auditService = auditService;
+    this.inventoryLedger = inventoryLedger;
+    this.jsonStreamer = jsonStreamer;
+    this.shardRouter = shardRouter;
+    this.stockHistory = stockHistory;
   }
 
   /**
@@ -50,10 +89,25 @@ public class AvailabilityService {
    */
   public ResponseEntity<?> addAvailabilities(@RequestBody Availability availability) {
     try {
-      var res = availabilityRepository.save(availability);
-      String rowKey =
-          "itemId: " + res.getItemId().getItemId() + ", siteId: " + res.getSiteId().getSiteId();
-      this.auditService.saveAudit("Availabilities", null, rowKey, null, res.toString(), "INSERT");
+      Long siteId = availability.getSiteId() == null ? null : availability.getSiteId().getSiteId();
+      var res =
+          shardRouter.onSite(
+              siteId,
+              () -> {
+                Availability saved = availabilityRepository.save(availability);
+                stockHistory.record(
+                    saved.getSiteId().getSiteId(),
+                    saved.getItemId().getItemId(),
+                    saved.getQuantity());
+                return saved;
+              });
+      inventoryLedger.put(
+          res.getSiteId().getSiteId(), res.getItemId().getItemId(), res.getQuantity());
+      this.auditService.saveInsert(
+          "Availabilities",
+          res.getSiteId().getSiteId(),
+          res.getItemId().getItemId(),
+          AuditSnapshot.of(res));
       return ResponseEntity.ok(res);
     } catch (Exception e) {
       return ResponseEntity.badRequest().body(e.getMessage());
@@ -63,62 +117,109 @@ public class AvailabilityService {
   /**
    * Change the quantity of the item of the site.
    *
+   * <p>"+" and "-" are applied as a single delta UPDATE on the availability row, so concurrent
+   * changes on the same (siteId, itemId) never lose updates. The existence of the site, the item
+   * and the availability is derived from the number of rows affected, and only looked up separately
+   * to build the error message when nothing was updated. A "-" that would drop below zero and a
+   * direct modification lock the row, read the current quantity and write the new one.
+   *
    * @param itemId the id of item
    * @param siteId the id of site
    * @param operation one of the three operation(+,- or direct modification)
    * @param quantity quantity to change
-   * @return ResponseEntity containing the result of the updated availability
+   * @return ResponseEntity containing the quantity of the availability before and after the change
    */
+  @Transactional
   public ResponseEntity<?> changeQuantity(
       Long siteId, Long itemId, String operation, Integer quantity) {
-
-    if (!this.siteRepository.existsById(siteId)) {
-      return ResponseEntity.badRequest().body("Site not found by siteId");
-    }
-    if (!this.itemRepository.existsById(itemId)) {
-      return ResponseEntity.badRequest().body("Item not found by item Id");
+    if (quantity == null || quantity < 0) {
+      return ResponseEntity.badRequest().body("Quantity must be a non-negative number");
     }
+    return shardRouter.onSite(
+        siteId, () -> changeQuantityOnShard(siteId, itemId, operation, quantity));
+  }
 
-    Availability availability = this.availabilityRepository.findBySiteIdAndItemId(siteId, itemId);
-    // modify the quantity depending on the operation
-    Integer currentQuantity = availability.getQuantity();
-    Integer newQuantity = currentQuantity;
-
+  private ResponseEntity<?> changeQuantityOnShard(
+      Long siteId, Long itemId, String operation, Integer quantity) {
+    Integer oldQuantity;
+    Integer newQuantity;
     if (operation.equals("+")) {
-      newQuantity = currentQuantity + quantity;
-    } else if (operation.equals("-")) {
-      if (quantity >= currentQuantity) {
-        newQuantity = 0;
-      } else {
-        newQuantity = currentQuantity - quantity;
+      if (this.availabilityRepository.incrementQuantity(siteId, itemId, quantity) == 0) {
+        return availabilityNotFound(siteId, itemId);
       }
+      newQuantity = this.availabilityRepository.findQuantityBySiteIdAndItemId(siteId, itemId);
+      oldQuantity = newQuantity - quantity;
+    } else if (operation.equals("-")
+        && this.availabilityRepository.decrementQuantity(siteId, itemId, quantity) == 1) {
+      newQuantity = this.availabilityRepository.findQuantityBySiteIdAndItemId(siteId, itemId);
+      oldQuantity = newQuantity + quantity;
     } else {
-      newQuantity = quantity;
+      // either the row holds less than the amount to subtract, or this is a direct modification
+      Availability availability =
+          this.availabilityRepository.findBySiteIdAndItemIdForUpdate(siteId, itemId);
+      if (availability == null) {
+        return availabilityNotFound(siteId, itemId);
+      }
+      oldQuantity = availability.getQuantity();
+      newQuantity = operation.equals("-") ? Math.max(oldQuantity - quantity, 0) : quantity;
+      availability.setQuantity(newQuantity);
     }
-    availability.setQuantity(newQuantity);
-    Availability updatedAvailability = this.availabilityRepository.save(availability);
 
-    // construct rowKey as: "itemId: *** ,siteId: ***"
-    String rowKey =
-        "itemId: "
-            + updatedAvailability.getItemId().getItemId()
-            + ", siteId: "
-            + updatedAvailability.getSiteId().getSiteId();
+    inventoryLedger.adjust(siteId, itemId, newQuantity - oldQuantity);
+    stockHistory.record(siteId, itemId, newQuantity);
 
     // record audit
-    auditService.saveAudit(
-        "Availabilities",
-        "quantity",
-        rowKey,
-        currentQuantity.toString(),
-        newQuantity.toString(),
-        "UPDATE");
-
-    return ResponseEntity.ok(updatedAvailability);
+    auditService.saveUpdate(
+        "Availabilities", AuditField.QUANTITY, siteId, itemId, oldQuantity, newQuantity);
+
+    return ResponseEntity.ok(
+        QuantityChangeResponse.builder()
+            .siteId(siteId)
+            .itemId(itemId)
+            .oldQuantity(oldQuantity)
+            .newQuantity(newQuantity)
+            .build());
+  }
+
+  /**
+   * Build the error response for a quantity change that did not find its availability. This is only
+   * reached when no row was updated, so the extra lookups stay off the common path.
+   *
+   * @param siteId the id of site
+   * @param itemId the id of item
+   * @return ResponseEntity badRequest naming whichever of site, item or availability is missing
+   */
+  private ResponseEntity<?> availabilityNotFound(Long siteId, Long itemId) {
+    if (!this.siteRepository.existsById(siteId)) {
+      return ResponseEntity.badRequest().body("Site not found by siteId");
+    }
+    if (!this.itemRepository.existsById(itemId)) {
+      return ResponseEntity.badRequest().body("Item not found by item Id");
+    }
+    return ResponseEntity.badRequest().body("Availability not found by siteId and itemId");
   }
 
   /**
-   * Gets all availabilities of the site with the given siteId.
+   * Streams all availabilities, or those of the sites at one location, as newline-delimited JSON
+   * with their site and item. Runs in constant memory however many availabilities there are. When
+   * sharded, the shards are streamed one after another.
+   *
+   * @param siteLocation location of the sites to export, or null for every site
+   * @return ResponseEntity OK whose body writes one availability per line
+   */
+  public ResponseEntity<StreamingResponseBody> streamAvailabilities(String siteLocation) {
+    if (siteLocation == null) {
+      return jsonStreamer.ndjson(
+          Availability.class, shardRouter.perShard(availabilityRepository::streamAll));
+    }
+    return jsonStreamer.ndjson(
+        Availability.class,
+        shardRouter.perShard(() -> availabilityRepository.streamBySiteLocation(siteLocation)));
+  }
+
+  /**
+   * Gets all availabilities of the site with the given siteId. Answered by the InventoryLedger when
+   * it holds the site; otherwise read from the database and loaded into the ledger.
    *
    * @param siteId id of site.
    * @return ResponseEntity containing all availabilities of the site with the given siteId.
@@ -127,82 +228,192 @@ public class AvailabilityService {
       @RequestParam(value = "siteId", required = false) Long siteId) {
     // make sure the given ID is valid
     if (siteId != null) {
-      // make sure the given ID exist in our inventory
-      if (!siteRepository.existsById(siteId)) {
-        return ResponseEntity.badRequest().body("Site not found by siteId");
-      }
-      try {
-        return ResponseEntity.ok(availabilityRepository.findBySiteId(siteId));
-      } catch (Exception e) {
-        return ResponseEntity.badRequest().body(e);
+      LedgerLookup<List<Availability>> cached = inventoryLedger.findBySiteId(siteId);
+      if (cached.isHit()) {
+        return ResponseEntity.ok(cached.getValue());
       }
+      return shardRouter.onSite(
+          siteId,
+          () -> {
+            // make sure the given ID exist in our inventory
+            if (!siteRepository.existsById(siteId)) {
+              return ResponseEntity.badRequest().body("Site not found by siteId");
+            }
+            try {
+              long epoch = inventoryLedger.beginLoad();
+              List<Availability> availabilities = availabilityRepository.findBySiteId(siteId);
+              inventoryLedger.loadSite(siteId, availabilities, epoch);
+              return ResponseEntity.ok(availabilities);
+            } catch (Exception e) {
+              return ResponseEntity.badRequest().body(e);
+            }
+          });
     }
 
     return ResponseEntity.badRequest().body("please provide a valid siteId");
   }
 
   /**
-   * Get sites that contain all the items with the given item id.
+   * Gets the ids and quantity of every availability of the site with the given siteId, without its
+   * Site and Item. Answered by the InventoryLedger when it holds the site; otherwise read from the
+   * database in one narrow query, which leaves the ledger as it is.
+   *
+   * @param siteId id of site.
+   * @return ResponseEntity containing one StockLevel per availability of the site, by itemId.
+   */
+  public ResponseEntity<?> getStockLevels(Long siteId) {
+    if (siteId == null) {
+      return ResponseEntity.badRequest().body("please provide a valid siteId");
+    }
+    LedgerLookup<List<StockLevel>> cached = inventoryLedger.findStockLevelsBySiteId(siteId);
+    if (cached.isHit()) {
+      return ResponseEntity.ok(cached.getValue());
+    }
+    return shardRouter.onSite(
+        siteId,
+        () -> {
+          if (!siteRepository.existsById(siteId)) {
+            return ResponseEntity.badRequest().body("Site not found by siteId");
+          }
+          return ResponseEntity.ok(availabilityRepository.findStockLevelsBySiteId(siteId));
+        });
+  }
+
+  /**
+   * Gets the stock levels of the site with the given siteId as they were at a past moment, rebuilt
+   * from the latest stock checkpoint taken by then and the stock changes logged after it.
+   *
+   * @param siteId id of site.
+   * @param at the moment, an ISO date-time such as 2024-05-07T10:00:00, or a date for the end of
+   *     that day
+   * @return ResponseEntity containing one StockLevel per item the site held then, by itemId.
+   */
+  public ResponseEntity<?> getStockHistory(Long siteId, String at) {
+    if (siteId == null) {
+      return ResponseEntity.badRequest().body("please provide a valid siteId");
+    }
+    Timestamp moment;
+    try {
+      moment =
+          Timestamp.valueOf(
+              at.contains("T")
+                  ? LocalDateTime.parse(at)
+                  : LocalDate.parse(at).atTime(LocalTime.MAX));
+    } catch (DateTimeParseException e) {
+      return ResponseEntity.badRequest()
+          .body("at must be a date or date-time, e.g. 2024-05-07 or 2024-05-07T10:00:00");
+    }
+    return shardRouter.onSite(
+        siteId,
+        () -> {
+          if (!siteRepository.existsById(siteId)) {
+            return ResponseEntity.badRequest().body("Site not found by siteId");
+          }
+          List<StockLevel> levels = stockHistory.stockAt(siteId, moment);
+          if (levels == null) {
+            return ResponseEntity.badRequest()
+                .body("No stock history before " + stockHistory.historyStart(siteId));
+          }
+          return ResponseEntity.ok(levels);
+        });
+  }
+
+  /**
+   * Get sites that contain all the items with the given item id. Answered by intersecting the
+   * ledger's item-to-sites bitmaps, falling back to a single grouped query on a miss. When sharded,
+   * the query runs on every shard in parallel: a site's availabilities all live on its own shard,
+   * so the sites holding every item are the union of each shard's answer.
    *
    * @param items contains multiple item id
    * @return ResponseEntity containing sites that contains all the items with the given item id.
    */
   public ResponseEntity<?> getSitesByItems(@RequestParam MultiValueMap<String, String> items) {
-    //        System.out.println(items);
-
-    List<Item> itemList = new ArrayList<>();
-    for (Map.Entry<String, List<String>> entry : items.entrySet()) {
-      List<String> values = entry.getValue();
+    Set<Long> itemIds = new LinkedHashSet<>();
+    for (List<String> values : items.values()) {
       for (String value : values) {
-        Long id = Long.parseLong(value);
-        Item item = this.itemRepository.findByItemId(id);
-        itemList.add(item);
+        itemIds.add(Long.parseLong(value));
       }
     }
+    if (itemIds.isEmpty()) {
+      return ResponseEntity.ok(this.siteRepository.findAll());
+    }
 
-    // case one, there is only item
-    if (itemList.size() == 1) {
-      List<Site> sites = this.availabilityRepository.findSitesByItems(itemList);
-      return ResponseEntity.ok(sites);
-    } else if (itemList.size() == 2) {
-      List<Site> results = new ArrayList<>();
-      List<Site> sitesWithItem1 = this.availabilityRepository.findSitesByOneItem(itemList.get(0));
-      List<Site> sitesWithItem2 = this.availabilityRepository.findSitesByOneItem(itemList.get(1));
-      for (Site site : sitesWithItem1) {
-        if (sitesWithItem2.contains(site)) {
-          results.add(site);
-        }
-      }
-      return ResponseEntity.ok(results);
-    } else if (itemList.size() > 2) {
-
-      List<Site> results = this.availabilityRepository.findSitesByOneItem(itemList.get(0));
+    LedgerLookup<List<Site>> cached =
+        inventoryLedger.findSitesHoldingAll(itemIds.stream().mapToLong(Long::longValue).toArray());
+    if (cached.isHit()) {
+      return ResponseEntity.ok(cached.getValue());
+    }
+    List<Long> siteIds =
+        shardRouter.gather(
+            () ->
+                this.availabilityRepository.findSiteIdsHoldingAll(itemIds, (long) itemIds.size()));
+    return ResponseEntity.ok(findSitesOrdered(siteIds));
+  }
 
-      // Iterate through the remaining lists and retain only the common elements
-      for (int i = 1; i < itemList.size(); i++) {
-        results.retainAll(this.availabilityRepository.findSitesByOneItem(itemList.get(i)));
+  /**
+   * Get the sites that can fulfil a whole order, i.e. hold at least the requested quantity of every
+   * item in it.
+   *
+   * @param order the quantity needed, keyed by item id
+   * @return ResponseEntity containing the list of sites, ordered by siteId
+   */
+  public ResponseEntity<?> getSitesByOrder(Map<Long, Integer> order) {
+    if (order.isEmpty()) {
+      return ResponseEntity.ok(this.siteRepository.findAll());
+    }
+    long[] itemIds = new long[order.size()];
+    int[] minQuantities = new int[order.size()];
+    int next = 0;
+    for (Map.Entry<Long, Integer> line : order.entrySet()) {
+      if (line.getKey() == null || line.getValue() == null || line.getValue() < 0) {
+        return ResponseEntity.badRequest().body("Order quantities must be non-negative");
       }
-
-      return ResponseEntity.ok(results);
+      itemIds[next] = line.getKey();
+      minQuantities[next++] = line.getValue();
     }
 
-    List<Site> allSite = this.siteRepository.findAll();
-    return ResponseEntity.ok(allSite);
+    LedgerLookup<List<Site>> cached =
+        inventoryLedger.findSitesHoldingAtLeast(itemIds, minQuantities);
+    if (cached.isHit()) {
+      return ResponseEntity.ok(cached.getValue());
+    }
+    Set<Long> siteIds = null;
+    for (int i = 0; i < itemIds.length && (siteIds == null || !siteIds.isEmpty()); i++) {
+      long itemId = itemIds[i];
+      int minQuantity = minQuantities[i];
+      List<Long> holding =
+          shardRouter.gather(
+              () ->
+                  this.availabilityRepository.findSiteIdsByItemIdAndMinQuantity(
+                      itemId, minQuantity));
+      if (siteIds == null) {
+        siteIds = new HashSet<>(holding);
+      } else {
+        siteIds.retainAll(holding);
+      }
+    }
+    return ResponseEntity.ok(findSitesOrdered(siteIds));
   }
 
   /**
-   * Get sites that contain the item with the given item id.
+   * Get sites that contain the item with the given item id. Answered by the InventoryLedger once it
+   * is warm; otherwise read from the database.
    *
    * @param itemId id of item
    * @return ResponseEntity containing sites that contains the item with the given item id.
    */
   public ResponseEntity<?> getAvailabilitiesByItemId(@RequestParam(value = "itemId") Long itemId) {
     if (itemId != null) {
+      LedgerLookup<List<Site>> cached = inventoryLedger.findSitesByItemId(itemId);
+      if (cached.isHit()) {
+        return ResponseEntity.ok(cached.getValue());
+      }
       if (!itemRepository.existsById(itemId)) {
         return ResponseEntity.badRequest().body("item not found by itemId");
       }
       Item item = this.itemRepository.findByItemId(itemId);
-      List<Site> sites = this.availabilityRepository.findSitesByOneItem(item);
+      List<Site> sites =
+          shardRouter.gather(() -> this.availabilityRepository.findSitesByOneItem(item));
       return ResponseEntity.ok(sites);
     } else {
       return ResponseEntity.badRequest().body("expecting JSON array");
@@ -210,7 +421,8 @@ public class AvailabilityService {
   }
 
   /**
-   * Get availability with given site id and item id.
+   * Get availability with given site id and item id. Answered by the InventoryLedger when it holds
+   * the site; otherwise read from the database.
    *
    * @param itemId id of item
    * @param siteId id of site
@@ -218,6 +430,10 @@ public class AvailabilityService {
    */
   public ResponseEntity<?> getAvailabilityBySiteIdAndItemId(
       @RequestParam(value = "siteId") Long siteId, @RequestParam(value = "itemId") Long itemId) {
+    LedgerLookup<Availability> cached = inventoryLedger.findBySiteIdAndItemId(siteId, itemId);
+    if (cached.isHit()) {
+      return ResponseEntity.ok(cached.getValue());
+    }
     if (!itemRepository.existsById(itemId)) {
       return ResponseEntity.badRequest().body("item not found by itemId");
     }
@@ -225,6 +441,26 @@ public class AvailabilityService {
       return ResponseEntity.badRequest().body("Site not found by siteId");
     }
 
-    return ResponseEntity.ok(availabilityRepository.findBySiteIdAndItemId(siteId, itemId));
+    return ResponseEntity.ok(
+        shardRouter.onSite(
+            siteId, () -> availabilityRepository.findBySiteIdAndItemId(siteId, itemId)));
+  }
+
+  /**
+   * Get the hit/miss counters and size of the InventoryLedger.
+   *
+   * @return ResponseEntity containing the current LedgerStats
+   */
+  public ResponseEntity<?> getLedgerStats() {
+    return ResponseEntity.ok(inventoryLedger.stats());
+  }
+
+  private List<Site> findSitesOrdered(Collection<Long> siteIds) {
+    if (siteIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<Site> sites = new ArrayList<>(this.siteRepository.findAllById(siteIds));
+    sites.sort(Comparator.comparing(Site::getSiteId));
+    return sites;
   }
 }
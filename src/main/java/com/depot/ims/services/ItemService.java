@@ -1,29 +1,57 @@
 package com.depot.ims.services;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
+import com.depot.ims.cache.ReferenceCache;
+import com.depot.ims.inventory.InventoryLedger;
 import com.depot.ims.models.Item;
 import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.streaming.JsonStreamer;
+import io.micrometer.core.annotation.Timed;
+import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /** Item class for managing Ship operations. */
 @Service
+@Timed("ims.service")
 public class ItemService {
 
   private final ItemRepository itemRepository;
   private final AuditService auditService;
+  private final InventoryLedger inventoryLedger;
+  private final JsonStreamer jsonStreamer;
+  private final ShardRouter shardRouter;
+  private final ReferenceCache referenceCache;
 
   /**
    * Constructor for itemService.
    *
    * @param itemRepository The ItemRepository instance.
+   * @param inventoryLedger The InventoryLedger to report item changes to.
+   * @param jsonStreamer writes streamed items to the response as they are read
+   * @param shardRouter copies saved items to every shard
+   * @param referenceCache evicts changed items from the second-level cache
    */
-  public ItemService(ItemRepository itemRepository, AuditService auditService) {
+  public ItemService(
+      ItemRepository itemRepository,
+      AuditService auditService,
+      InventoryLedger inventoryLedger,
+      JsonStreamer jsonStreamer,
+      ShardRouter shardRouter,
+      ReferenceCache referenceCache) {
     this.itemRepository = itemRepository;
     this.auditService = auditService;
+    this.inventoryLedger = inventoryLedger;
+    this.jsonStreamer = jsonStreamer;
+    this.shardRouter = shardRouter;
+    this.referenceCache = referenceCache;
   }
 
   /**
@@ -35,8 +63,9 @@ public class ItemService {
   public ResponseEntity<?> addItem(@RequestBody Item item) {
     try {
       var res = this.itemRepository.save(item);
-      this.auditService.saveAudit(
-          "Items", null, res.getItemId().toString(), null, res.toString(), "INSERT");
+      this.shardRouter.copyToShards(List.of(res));
+      this.inventoryLedger.putItem(res);
+      this.auditService.saveInsert("Items", res.getItemId(), null, AuditSnapshot.of(res));
       return ResponseEntity.ok(item);
 
     } catch (Exception e) {
@@ -81,22 +110,30 @@ public class ItemService {
     }
     Item item = itemRepository.findByItemId(itemId);
     if (newName != null) {
-      auditService.saveAudit(
-          "Items", "itemName", item.getItemId().toString(), item.getItemName(), newName, "UPDATE");
+      auditService.saveUpdate(
+          "Items", AuditField.ITEM_NAME, itemId, null, item.getItemName(), newName);
       item.setItemName(newName);
     }
     if (newPrice != null) {
-      auditService.saveAudit(
-          "Items",
-          "itemPrice",
-          item.getItemId().toString(),
-          item.getItemPrice().toString(),
-          newPrice.toString(),
-          "UPDATE");
+      auditService.saveUpdate(
+          "Items", AuditField.ITEM_PRICE, itemId, null, item.getItemPrice(), newPrice);
       item.setItemPrice(newPrice);
     }
 
     Item updatedItem = itemRepository.save(item);
+    shardRouter.copyToShards(List.of(updatedItem));
+    inventoryLedger.putItem(updatedItem);
+    referenceCache.evictItem(itemId);
     return ResponseEntity.ok(updatedItem);
   }
+
+  /**
+   * Streams all items as newline-delimited JSON, in itemId order. Runs in constant memory however
+   * many items there are.
+   *
+   * @return ResponseEntity OK whose body writes one item per line
+   */
+  public ResponseEntity<StreamingResponseBody> streamItems() {
+    return jsonStreamer.ndjson(Item.class, itemRepository::streamAll);
+  }
 }
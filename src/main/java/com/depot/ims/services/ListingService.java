@@ -0,0 +1,274 @@
+package com.depot.ims.services;
+
+import com.depot.ims.listing.ListingField;
+import com.depot.ims.listing.ListingSpec;
+import com.depot.ims.repositories.ListingRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.response.ListingPage;
+import com.depot.ims.sharding.ShardRouter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Answers the paged form of the collection endpoints. Each request becomes one JPQL query that
+ * selects only the requested fields, plus whatever the sort and the cursor need, so rows are built
+ * from column values without loading entities or their associations.
+ *
+ * <p>Rows are ordered by the requested sort followed by the key of the spec. Paging by offset skips
+ * page * size rows; paging by cursor continues after the sort and key values of the last row of the
+ * previous page, which stays cheap however deep the client pages. Every page also returns the
+ * cursor of its last row, so a client can start with page=0 and continue by cursor.
+ *
+ * <p>A sharded spec runs the query on every shard, each returning up to the end of the requested
+ * page, and merges the rows in the same order before cutting out the page. Nulls sort first
+ * ascending and last descending, as on H2 and MySQL.
+ */
+@Service
+@Timed("ims.service")
+public class ListingService {
+
+  public static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private final ListingRepository listingRepository;
+  private final ObjectMapper objectMapper;
+  private final ShardRouter shardRouter;
+
+  /**
+   * Constructor for ListingService.
+   *
+   * @param listingRepository The ListingRepository instance.
+   * @param objectMapper the mapper cursors are encoded with
+   * @param shardRouter gathers the rows of sharded specs from every shard
+   */
+  public ListingService(
+      ListingRepository listingRepository, ObjectMapper objectMapper, ShardRouter shardRouter) {
+    this.listingRepository = listingRepository;
+    this.objectMapper = objectMapper;
+    this.shardRouter = shardRouter;
+  }
+
+  /** One term of the ORDER BY. */
+  private static class Order {
+    private final ListingField field;
+    private final boolean descending;
+
+    Order(ListingField field, boolean descending) {
+      this.field = field;
+      this.descending = descending;
+    }
+  }
+
+  /**
+   * List one page of a collection.
+   *
+   * @param spec the collection and the fields it exposes
+   * @param request page, size, after, sort and fields
+   * @return ResponseEntity containing a ListingPage, or a message if a parameter is invalid
+   */
+  @Transactional(readOnly = true)
+  public ResponseEntity<?> list(ListingSpec spec, ListingRequest request) {
+    int size = request.getSize() == null ? DEFAULT_PAGE_SIZE : request.getSize();
+    if (size < 1 || size > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body("size should be between 1 and " + MAX_PAGE_SIZE);
+    }
+    if (request.getPage() != null && request.getPage() < 0) {
+      return ResponseEntity.badRequest().body("page should not be negative");
+    }
+    if (request.getPage() != null && (long) request.getPage() * size > Integer.MAX_VALUE) {
+      return ResponseEntity.badRequest().body("page is too deep, continue with after instead");
+    }
+    if (request.getPage() != null && request.getAfter() != null) {
+      return ResponseEntity.badRequest().body("page and after cannot be combined");
+    }
+
+    Map<String, ListingField> fields = spec.getFields();
+    List<ListingField> selected = new ArrayList<>();
+    if (request.getFields() == null || request.getFields().isBlank()) {
+      selected.addAll(fields.values());
+    } else {
+      for (String name : request.getFields().split(",")) {
+        ListingField field = fields.get(name.trim());
+        if (field == null) {
+          return unknownField(spec, name.trim());
+        }
+        if (!selected.contains(field)) {
+          selected.add(field);
+        }
+      }
+    }
+
+    List<Order> orders = new ArrayList<>();
+    if (request.getSort() != null && !request.getSort().isBlank()) {
+      for (String term : request.getSort().split(",")) {
+        String name = term.trim();
+        boolean descending = name.startsWith("-");
+        if (descending) {
+          name = name.substring(1);
+        }
+        ListingField field = fields.get(name);
+        if (field == null) {
+          return unknownField(spec, name);
+        }
+        orders.add(new Order(field, descending));
+      }
+    }
+    for (String name : spec.getKey()) {
+      ListingField field = fields.get(name);
+      if (orders.stream().noneMatch(order -> order.field == field)) {
+        orders.add(new Order(field, false));
+      }
+    }
+
+    // select the requested fields, then any sort field the rows do not show but the cursor needs
+    List<ListingField> columns = new ArrayList<>(selected);
+    for (Order order : orders) {
+      if (!columns.contains(order.field)) {
+        columns.add(order.field);
+      }
+    }
+
+    StringBuilder jpql = new StringBuilder("select ");
+    for (int i = 0; i < columns.size(); i++) {
+      jpql.append(i == 0 ? "" : ", ").append(columns.get(i).getPath());
+    }
+    jpql.append(" from ").append(spec.getEntity()).append(' ').append(spec.getAlias());
+
+    Map<String, Object> parameters = new HashMap<>();
+    if (request.getAfter() != null) {
+      for (Order order : orders) {
+        if (order.field.isNullable()) {
+          return ResponseEntity.badRequest()
+              .body(
+                  "after cannot continue a sort on " + order.field.getName() + ", it can be null");
+        }
+      }
+      Object[] position;
+      try {
+        position = decodeCursor(request.getAfter(), orders);
+      } catch (IOException | IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body("Invalid cursor");
+      }
+      jpql.append(" where ").append(keysetPredicate(orders));
+      for (int i = 0; i < position.length; i++) {
+        parameters.put("k" + i, position[i]);
+      }
+    }
+
+    jpql.append(" order by ");
+    for (int i = 0; i < orders.size(); i++) {
+      Order order = orders.get(i);
+      jpql.append(i == 0 ? "" : ", ")
+          .append(order.field.getPath())
+          .append(order.descending ? " desc" : " asc");
+    }
+
+    int page = request.getPage() == null ? 0 : request.getPage();
+    List<Object[]> results;
+    if (spec.isSharded() && shardRouter.isSharded()) {
+      int end = page * size + size + 1;
+      List<Object[]> merged =
+          shardRouter.gather(() -> listingRepository.select(jpql.toString(), parameters, 0, end));
+      merged.sort(rowOrder(orders, columns));
+      results = merged.subList(Math.min(page * size, merged.size()), Math.min(end, merged.size()));
+    } else {
+      results = listingRepository.select(jpql.toString(), parameters, page * size, size + 1);
+    }
+
+    boolean hasNext = results.size() > size;
+    List<Map<String, Object>> rows = new ArrayList<>(Math.min(results.size(), size));
+    for (int r = 0; r < results.size() && r < size; r++) {
+      Object[] values = results.get(r);
+      Map<String, Object> row = new LinkedHashMap<>();
+      for (int i = 0; i < selected.size(); i++) {
+        row.put(selected.get(i).getName(), values[i]);
+      }
+      rows.add(row);
+    }
+    String nextCursor = hasNext ? encodeCursor(results.get(size - 1), columns, orders) : null;
+    return ResponseEntity.ok(
+        new ListingPage(rows, request.getAfter() == null ? page : null, size, nextCursor));
+  }
+
+  private static ResponseEntity<?> unknownField(ListingSpec spec, String name) {
+    return ResponseEntity.badRequest()
+        .body("Unknown field " + name + ", expected one of " + spec.getFields().keySet());
+  }
+
+  /** Compares selected rows as the ORDER BY does. */
+  @SuppressWarnings("unchecked")
+  private static Comparator<Object[]> rowOrder(List<Order> orders, List<ListingField> columns) {
+    Comparator<Object[]> comparator = (a, b) -> 0;
+    for (Order order : orders) {
+      int column = columns.indexOf(order.field);
+      Comparator<Object[]> term =
+          Comparator.comparing(
+              row -> (Comparable<Object>) row[column],
+              Comparator.nullsFirst(Comparator.naturalOrder()));
+      comparator = comparator.thenComparing(order.descending ? term.reversed() : term);
+    }
+    return comparator;
+  }
+
+  /**
+   * The rows after a position in the order, e.g. for "sort=-a" and key b: a &lt; :k0 or (a = :k0
+   * and b &gt; :k1).
+   */
+  private static String keysetPredicate(List<Order> orders) {
+    StringBuilder predicate = new StringBuilder();
+    for (int i = 0; i < orders.size(); i++) {
+      predicate.append(i == 0 ? "(" : " or (");
+      for (int j = 0; j < i; j++) {
+        predicate.append(orders.get(j).field.getPath()).append(" = :k").append(j).append(" and ");
+      }
+      Order order = orders.get(i);
+      predicate
+          .append(order.field.getPath())
+          .append(order.descending ? " < :k" : " > :k")
+          .append(i)
+          .append(')');
+    }
+    return predicate.toString();
+  }
+
+  private String encodeCursor(Object[] row, List<ListingField> columns, List<Order> orders) {
+    List<Object> position = new ArrayList<>(orders.size());
+    for (Order order : orders) {
+      position.add(row[columns.indexOf(order.field)]);
+    }
+    try {
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(objectMapper.writeValueAsBytes(position));
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot encode a cursor", e);
+    }
+  }
+
+  private Object[] decodeCursor(String cursor, List<Order> orders) throws IOException {
+    JsonNode position = objectMapper.readTree(Base64.getUrlDecoder().decode(cursor));
+    if (position == null || !position.isArray() || position.size() != orders.size()) {
+      throw new IllegalArgumentException("Cursor does not match the sort");
+    }
+    Object[] values = new Object[orders.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = objectMapper.treeToValue(position.get(i), orders.get(i).field.getType());
+      if (values[i] == null) {
+        throw new IllegalArgumentException("Cursor holds a null");
+      }
+    }
+    return values;
+  }
+}
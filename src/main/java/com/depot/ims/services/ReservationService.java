@@ -0,0 +1,177 @@
+package com.depot.ims.services;
+
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.requests.HoldRequest;
+import com.depot.ims.reservations.Reservation;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.response.QuantityChangeResponse;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.snapshots.StockHistory;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/** Service class for holding, confirming and releasing stock for checkouts. */
+@Service
+@Timed("ims.service")
+public class ReservationService {
+
+  private final ReservationEngine reservationEngine;
+  private final AvailabilityRepository availabilityRepository;
+  private final AuditService auditService;
+  private final InventoryLedger inventoryLedger;
+  private final ShardRouter shardRouter;
+  private final StockHistory stockHistory;
+  private final long defaultTtlMillis;
+  private final long maxTtlMillis;
+
+  /**
+   * Constructor for ReservationService.
+   *
+   * @param reservationEngine holds the reserved stock
+   * @param availabilityRepository The AvailabilityRepository instance.
+   * @param auditService records confirmed holds
+   * @param inventoryLedger The InventoryLedger to report confirmed holds to.
+   * @param shardRouter routes each confirm to the shard of its site
+   * @param stockHistory logs the quantities confirmed holds leave
+   * @param defaultTtlMillis the TTL of a hold that names none, ims.reservations.default-ttl-ms
+   * @param maxTtlMillis the longest TTL a hold may ask for, ims.reservations.max-ttl-ms
+   */
+  public ReservationService(
+      ReservationEngine reservationEngine,
+      AvailabilityRepository availabilityRepository,
+      AuditService auditService,
+      InventoryLedger inventoryLedger,
+      ShardRouter shardRouter,
+      StockHistory stockHistory,
+      @Value("${ims.reservations.default-ttl-ms:900000}") long defaultTtlMillis,
+      @Value("${ims.reservations.max-ttl-ms:86400000}") long maxTtlMillis) {
+    this.reservationEngine = reservationEngine;
+    this.availabilityRepository = availabilityRepository;
+    this.auditService = auditService;
+    this.inventoryLedger = inventoryLedger;
+    this.shardRouter = shardRouter;
+    this.stockHistory = stockHistory;
+    this.defaultTtlMillis = defaultTtlMillis;
+    this.maxTtlMillis = maxTtlMillis;
+  }
+
+  /**
+   * Hold a quantity of an item in a site for a checkout. Takes no row lock and writes nothing to
+   * the database; the hold only counts against the stock other holds and ships may take.
+   *
+   * @param holdRequest the site, item, quantity and optional TTL in seconds
+   * @return ResponseEntity containing the Reservation, or badRequest if not enough is available
+   */
+  public ResponseEntity<?> hold(HoldRequest holdRequest) {
+    if (holdRequest == null
+        || holdRequest.getSiteId() == null
+        || holdRequest.getItemId() == null
+        || holdRequest.getQuantity() == null
+        || holdRequest.getQuantity() <= 0) {
+      return ResponseEntity.badRequest().body("Invalid holdRequest");
+    }
+    Long ttlSeconds = holdRequest.getTtlSeconds();
+    // checked in seconds, so a huge ttlSeconds cannot overflow into a valid TTL
+    if (ttlSeconds != null && (ttlSeconds <= 0 || ttlSeconds > maxTtlMillis / 1000)) {
+      return ResponseEntity.badRequest()
+          .body(String.format("ttlSeconds must be between 1 and %d", maxTtlMillis / 1000));
+    }
+    long ttlMillis = ttlSeconds == null ? defaultTtlMillis : ttlSeconds * 1000;
+    Reservation reservation =
+        reservationEngine.hold(
+            holdRequest.getSiteId(), holdRequest.getItemId(), holdRequest.getQuantity(), ttlMillis);
+    if (reservation == null) {
+      return ResponseEntity.badRequest()
+          .body(
+              String.format(
+                  "Not enough quantity for %d available in the site", holdRequest.getQuantity()));
+    }
+    return ResponseEntity.ok(reservation);
+  }
+
+  /**
+   * Confirm a hold: debit its quantity from the availability and record the change. The debit is
+   * one conditional UPDATE that only applies if the row still holds the quantity, so no row is read
+   * under lock. If it does not apply the hold stays in place and badRequest is returned.
+   *
+   * @param reservationId the id of the reservation
+   * @return ResponseEntity containing the QuantityChangeResponse, or badRequest
+   */
+  @Transactional
+  public ResponseEntity<?> confirm(Long reservationId) {
+    Reservation reservation =
+        reservationId == null ? null : reservationEngine.beginConfirm(reservationId);
+    if (reservation == null) {
+      return ResponseEntity.badRequest().body("Reservation not found or no longer held");
+    }
+    return shardRouter.onSite(reservation.getSiteId(), () -> confirmOnShard(reservation));
+  }
+
+  private ResponseEntity<?> confirmOnShard(Reservation reservation) {
+    long siteId = reservation.getSiteId();
+    long itemId = reservation.getItemId();
+    int quantity = reservation.getQuantity();
+    if (availabilityRepository.decrementQuantity(siteId, itemId, quantity) == 0) {
+      reservationEngine.abortConfirm(reservation);
+      return ResponseEntity.badRequest()
+          .body(String.format("Not enough quantity for %d in the site", quantity));
+    }
+    reservationEngine.confirmAfterCommit(reservation);
+    Integer newQuantity = availabilityRepository.findQuantityBySiteIdAndItemId(siteId, itemId);
+    Integer oldQuantity = newQuantity + quantity;
+    inventoryLedger.adjust(siteId, itemId, -quantity);
+    stockHistory.record(siteId, itemId, newQuantity);
+
+    auditService.saveUpdate(
+        "Availabilities", AuditField.QUANTITY, siteId, itemId, oldQuantity, newQuantity);
+
+    return ResponseEntity.ok(
+        QuantityChangeResponse.builder()
+            .siteId(siteId)
+            .itemId(itemId)
+            .oldQuantity(oldQuantity)
+            .newQuantity(newQuantity)
+            .build());
+  }
+
+  /**
+   * Release a hold, returning its quantity to the available stock.
+   *
+   * @param reservationId the id of the reservation
+   * @return ResponseEntity ok, or badRequest if the reservation is not held
+   */
+  public ResponseEntity<?> release(Long reservationId) {
+    if (reservationId == null || !reservationEngine.release(reservationId)) {
+      return ResponseEntity.badRequest().body("Reservation not found or no longer held");
+    }
+    return ResponseEntity.ok().build();
+  }
+
+  /**
+   * Find an open reservation.
+   *
+   * @param reservationId the id of the reservation
+   * @return ResponseEntity containing the Reservation, or badRequest if it is not open
+   */
+  public ResponseEntity<?> getReservation(Long reservationId) {
+    Reservation reservation = reservationId == null ? null : reservationEngine.find(reservationId);
+    if (reservation == null) {
+      return ResponseEntity.badRequest().body("Reservation not found or no longer held");
+    }
+    return ResponseEntity.ok(reservation);
+  }
+
+  /**
+   * Fetch the hold, confirm, release and expiry counters of the reservation engine.
+   *
+   * @return ResponseEntity with the current ReservationStats
+   */
+  public ResponseEntity<?> getReservationStats() {
+    return ResponseEntity.ok(reservationEngine.stats());
+  }
+}
@@ -1,6 +1,10 @@
 package com.depot.ims.services;
 
+import com.depot.ims.audit.AuditSnapshot;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.models.Audit;
 import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
 import com.depot.ims.models.Ship;
 import com.depot.ims.models.Shipment;
 import com.depot.ims.models.Site;
@@ -9,12 +13,29 @@ import com.depot.ims.repositories.ItemRepository;
 import com.depot.ims.repositories.ShipRepository;
 import com.depot.ims.repositories.ShipmentRepository;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ShipBatchRequest;
+import com.depot.ims.requests.ShipLineRequest;
 import com.depot.ims.requests.ShipRequest;
+import com.depot.ims.reservations.Reservation;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.response.ShipLineError;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.sharding.ShardTransfers;
+import com.depot.ims.snapshots.StockHistory;
+import io.micrometer.core.annotation.Timed;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /** Service class for managing Ship operations. */
 @Service
+@Timed("ims.service")
 public class ShipService {
   private final ShipRepository shipRepository;
   private final ShipmentRepository shipmentRepository;
@@ -22,6 +43,11 @@ public class ShipService {
   private final AvailabilityRepository availabilityRepository;
   private final SiteRepository siteRepository;
   private final AuditService auditService;
+  private final InventoryLedger inventoryLedger;
+  private final ShardRouter shardRouter;
+  private final ShardTransfers shardTransfers;
+  private final ReservationEngine reservationEngine;
+  private final StockHistory stockHistory;
 
   /**
    * Constructor for ShipService.
@@ -30,6 +56,11 @@ public class ShipService {
    * @param shipmentRepository The ShipmentRepository instance.
    * @param itemRepository The ItemRepository instance.
    * @param availabilityRepository The AvailabilityRepository instance.
+   * @param inventoryLedger The InventoryLedger to report stock moves to.
+   * @param shardRouter routes each shipment to the shard of its source site
+   * @param shardTransfers credits destinations on another shard than the source
+   * @param reservationEngine the holds a ship must leave in place, or consumes
+   * @param stockHistory logs the quantities a ship leaves at its sites
    */
   public ShipService(
       ShipRepository shipRepository,
@@ -37,30 +68,60 @@ public class ShipService {
       ItemRepository itemRepository,
       AvailabilityRepository availabilityRepository,
       AuditService auditService,
-      SiteRepository siteRepository) {
+      SiteRepository siteRepository,
+      InventoryLedger inventoryLedger,
+      ShardRouter shardRouter,
+      ShardTransfers shardTransfers,
+      ReservationEngine reservationEngine,
+      StockHistory stockHistory) {
     this.shipRepository = shipRepository;
     this.shipmentRepository = shipmentRepository;
     this.itemRepository = itemRepository;
     this.availabilityRepository = availabilityRepository;
     this.siteRepository = siteRepository;
     this.auditService = auditService;
+    this.inventoryLedger = inventoryLedger;
+    this.shardRouter = shardRouter;
+    this.shardTransfers = shardTransfers;
+    this.reservationEngine = reservationEngine;
+    this.stockHistory = stockHistory;
   }
 
   /**
    * Adds a new Ship object to the database and updates the quantity of the item in the source and
    * destination sites.
    *
+   * <p>Runs as one transaction: the stock move, the ship row and its audit record commit together
+   * or not at all. The source and destination availabilities are each read once, with a row lock,
+   * and the locks are always taken in ascending siteId order so that two shipments moving the same
+   * item in opposite directions cannot deadlock. Holding the source lock until commit also means
+   * two concurrent ships from the same source can no longer both pass the quantity check.
+   *
+   * <p>When sharded, the transaction runs on the shard of the shipment's source. If the destination
+   * lives on another shard, only the source is locked and debited here, and the credit is recorded
+   * as a ShardTransfer that is applied on the destination's shard once this transaction commits.
+   *
+   * <p>Stock held by open reservations is not available to a ship. A ship that names the
+   * reservation holding its quantity consumes it instead: the hold is confirmed if the ship
+   * commits.
+   *
    * @param shipRequest The ShipRequest object representing the Ship object to be added.
    * @return ResponseEntity containing the result of the ship addition operation.
    */
+  @Transactional
   public ResponseEntity<?> addShip(ShipRequest shipRequest) {
     // Validate
     if (shipRequest == null
         || shipRequest.getShipmentId() == null
         || shipRequest.getItemId() == null
-        || shipRequest.getQuantity() == null) {
+        || shipRequest.getQuantity() == null
+        || shipRequest.getQuantity() < 0) {
       return ResponseEntity.badRequest().body("Invalid shipRequest");
     }
+    return shardRouter.onShipment(shipRequest.getShipmentId(), () -> shipOnShard(shipRequest));
+  }
+
+  private ResponseEntity<?> shipOnShard(ShipRequest shipRequest) {
     // Check if the shipment, source, destination, and item exist in the database
     Shipment shipment = shipmentRepository.findByShipmentId(shipRequest.getShipmentId());
     com.depot.ims.models.Item item = itemRepository.findByItemId(shipRequest.getItemId());
@@ -79,12 +140,52 @@ public class ShipService {
             .itemId(item)
             .quantity(shipRequest.getQuantity())
             .build();
+    Long sourceId = shipment.getSource();
+    Long destinationId = shipment.getDestination();
+    Long itemId = item.getItemId();
+    boolean crossShard = shardRouter.isCrossShard(sourceId, destinationId);
+
+    // Lock both availabilities, lowest siteId first
+    Availability source;
+    Availability destination;
+    if (crossShard) {
+      // the destination is not on this shard; it is credited after commit
+      source = availabilityRepository.findBySiteIdAndItemIdForUpdate(sourceId, itemId);
+      destination = null;
+    } else if (sourceId <= destinationId) {
+      source = availabilityRepository.findBySiteIdAndItemIdForUpdate(sourceId, itemId);
+      destination = availabilityRepository.findBySiteIdAndItemIdForUpdate(destinationId, itemId);
+    } else {
+      destination = availabilityRepository.findBySiteIdAndItemIdForUpdate(destinationId, itemId);
+      source = availabilityRepository.findBySiteIdAndItemIdForUpdate(sourceId, itemId);
+    }
+
+    // Checked under the source lock, so two concurrent ships of the item cannot both pass
+    if (shipRepository.existsByShipmentIdAndItemId(shipment.getShipmentId(), itemId)) {
+      return ResponseEntity.badRequest().body("Item is already shipped on this shipment");
+    }
+
+    // Claim the ship's own reservation, if it names one
+    Reservation reservation = null;
+    if (shipRequest.getReservationId() != null) {
+      reservation = reservationEngine.beginConfirm(shipRequest.getReservationId());
+      if (reservation == null || !reservation.covers(sourceId, itemId, ship.getQuantity())) {
+        if (reservation != null) {
+          reservationEngine.abortConfirm(reservation);
+        }
+        return ResponseEntity.badRequest()
+            .body("Reservation is not held for this item and quantity in the source site");
+      }
+    }
+    int reservedByOthers =
+        reservationEngine.reservedQuantity(sourceId, itemId)
+            - (reservation == null ? 0 : reservation.getQuantity());
 
     // Check if the quantity of the item in the source site is enough
-    if (availabilityRepository
-            .findBySiteIdAndItemId(ship.getShipmentId().getSource(), ship.getItemId().getItemId())
-            .getQuantity()
-        < ship.getQuantity()) {
+    if (source == null || source.getQuantity() - reservedByOthers < ship.getQuantity()) {
+      if (reservation != null) {
+        reservationEngine.abortConfirm(reservation);
+      }
       return ResponseEntity.badRequest()
           .body(
               String.format(
@@ -92,46 +193,185 @@ public class ShipService {
     }
 
     // Update the quantity of the item in the source site
-    availabilityRepository
-        .findBySiteIdAndItemId(ship.getShipmentId().getSource(), ship.getItemId().getItemId())
-        .setQuantity(
-            availabilityRepository
-                    .findBySiteIdAndItemId(
-                        ship.getShipmentId().getSource(), ship.getItemId().getItemId())
-                    .getQuantity()
-                - ship.getQuantity());
+    source.setQuantity(source.getQuantity() - ship.getQuantity());
+    inventoryLedger.adjust(sourceId, itemId, -ship.getQuantity());
+    stockHistory.record(sourceId, itemId, source.getQuantity());
+    if (reservation != null) {
+      reservationEngine.confirmAfterCommit(reservation);
+    }
 
     // Update the quantity of the item in the destination site
     // If the item is not available in the destination site, add it
-    if (availabilityRepository.findBySiteIdAndItemId(
-            ship.getShipmentId().getDestination(), ship.getItemId().getItemId())
-        == null) {
-      Site destination = siteRepository.findBySiteId(ship.getShipmentId().getDestination());
-      availabilityRepository.save(
-          new Availability(destination, ship.getItemId(), ship.getQuantity()));
+    if (crossShard) {
+      shardTransfers.record(shipment, item, ship.getQuantity());
+    } else if (destination == null) {
+      Site destinationSite = siteRepository.findBySiteId(destinationId);
+      availabilityRepository.save(new Availability(destinationSite, item, ship.getQuantity()));
+      inventoryLedger.put(destinationId, itemId, ship.getQuantity());
+      stockHistory.record(destinationId, itemId, ship.getQuantity());
     } else {
-      availabilityRepository
-          .findBySiteIdAndItemId(
-              ship.getShipmentId().getDestination(), ship.getItemId().getItemId())
-          .setQuantity(
-              availabilityRepository
-                      .findBySiteIdAndItemId(
-                          ship.getShipmentId().getDestination(), ship.getItemId().getItemId())
-                      .getQuantity()
-                  + ship.getQuantity());
+      destination.setQuantity(destination.getQuantity() + ship.getQuantity());
+      inventoryLedger.adjust(destinationId, itemId, ship.getQuantity());
+      stockHistory.record(destinationId, itemId, destination.getQuantity());
     }
 
     // Save the changes
     var res = shipRepository.save(ship);
 
-    // construct rowKey as: "shipmentId: ***, itemId: ***"
-    String rowKey =
-        "shipmentId: "
-            + res.getShipmentId().getShipmentId()
-            + ", itemId: "
-            + res.getItemId().getItemId();
     // record audit
-    auditService.saveAudit("Ships", null, rowKey, null, res.toString(), "INSERT");
+    auditService.saveInsert(
+        "Ships",
+        res.getShipmentId().getShipmentId(),
+        res.getItemId().getItemId(),
+        AuditSnapshot.of(res));
+
+    return ResponseEntity.ok().body(res);
+  }
+
+  /**
+   * Ships a whole manifest: every line of the request moves its quantity of an item from the
+   * shipment's source to its destination, in one transaction.
+   *
+   * <p>The items, the ships already recorded for the shipment, and the source and destination
+   * availabilities of every line are each fetched with one query, the availabilities with row
+   * locks. Every line is validated before anything is written, and if any line fails the manifest
+   * is rejected with the errors of all failing lines. Otherwise the quantity changes, destination
+   * inserts, ships and audits are flushed together at commit, where Hibernate groups them into JDBC
+   * batches.
+   *
+   * <p>When sharded, the transaction runs on the shard of the shipment's source, and a destination
+   * on another shard is credited line by line through ShardTransfers, as in addShip. As there,
+   * stock held by open reservations is not available to the manifest.
+   *
+   * @param shipBatchRequest the shipment and the lines to ship on it
+   * @return ResponseEntity containing the saved ships, or the list of ShipLineErrors
+   */
+  @Transactional
+  public ResponseEntity<?> addShips(ShipBatchRequest shipBatchRequest) {
+    // Validate
+    if (shipBatchRequest == null
+        || shipBatchRequest.getShipmentId() == null
+        || shipBatchRequest.getLines() == null
+        || shipBatchRequest.getLines().isEmpty()) {
+      return ResponseEntity.badRequest().body("Invalid shipBatchRequest");
+    }
+    return shardRouter.onShipment(
+        shipBatchRequest.getShipmentId(), () -> shipManifestOnShard(shipBatchRequest));
+  }
+
+  private ResponseEntity<?> shipManifestOnShard(ShipBatchRequest shipBatchRequest) {
+    Shipment shipment = shipmentRepository.findByShipmentId(shipBatchRequest.getShipmentId());
+    if (shipment == null) {
+      return ResponseEntity.badRequest()
+          .body(String.format("Shipment does not exist: %d", shipBatchRequest.getShipmentId()));
+    }
+    List<ShipLineRequest> lines = shipBatchRequest.getLines();
+    Long sourceId = shipment.getSource();
+    Long destinationId = shipment.getDestination();
+    boolean crossShard = shardRouter.isCrossShard(sourceId, destinationId);
+
+    Set<Long> itemIds = new HashSet<>();
+    for (ShipLineRequest line : lines) {
+      if (line != null && line.getItemId() != null) {
+        itemIds.add(line.getItemId());
+      }
+    }
+    Map<Long, Item> items = new HashMap<>();
+    itemRepository.findAllById(itemIds).forEach(item -> items.put(item.getItemId(), item));
+    Set<Long> shippedItemIds = new HashSet<>();
+    shipRepository
+        .findShippedQuantitiesByShipmentId(shipment.getShipmentId())
+        .forEach(shipped -> shippedItemIds.add(shipped.getItemId()));
+    Map<Long, Availability> sources = new HashMap<>();
+    Map<Long, Availability> destinations = new HashMap<>();
+    if (!items.isEmpty()) {
+      for (Availability availability :
+          availabilityRepository.findBySiteIdsAndItemIdsForUpdate(
+              crossShard ? List.of(sourceId) : List.of(sourceId, destinationId), items.keySet())) {
+        Long siteId = availability.getSiteId().getSiteId();
+        Long itemId = availability.getItemId().getItemId();
+        if (siteId.equals(sourceId)) {
+          sources.put(itemId, availability);
+        }
+        if (siteId.equals(destinationId)) {
+          destinations.put(itemId, availability);
+        }
+      }
+    }
+
+    // Check every line before changing anything
+    List<ShipLineError> errors = new ArrayList<>();
+    Set<Long> seen = new HashSet<>();
+    for (int i = 0; i < lines.size(); i++) {
+      ShipLineRequest line = lines.get(i);
+      Long itemId = line == null ? null : line.getItemId();
+      String message = null;
+      if (line == null || itemId == null || line.getQuantity() == null || line.getQuantity() < 0) {
+        message = "Invalid ship line";
+      } else if (!items.containsKey(itemId)) {
+        message = "Item does not exist";
+      } else if (!seen.add(itemId)) {
+        message = "Item appears more than once in the manifest";
+      } else if (shippedItemIds.contains(itemId)) {
+        message = "Item is already shipped on this shipment";
+      } else if (sources.get(itemId) == null
+          || sources.get(itemId).getQuantity()
+                  - reservationEngine.reservedQuantity(sourceId, itemId)
+              < line.getQuantity()) {
+        message =
+            String.format("Not enough quantity for %d in the source site", line.getQuantity());
+      }
+      if (message != null) {
+        errors.add(new ShipLineError(i, itemId, message));
+      }
+    }
+    if (!errors.isEmpty()) {
+      return ResponseEntity.badRequest().body(errors);
+    }
+
+    // Apply the stock moves
+    List<Availability> inserts = new ArrayList<>();
+    List<Ship> ships = new ArrayList<>();
+    List<Audit> audits = new ArrayList<>();
+    Site destinationSite = null;
+    for (ShipLineRequest line : lines) {
+      Item item = items.get(line.getItemId());
+      int quantity = line.getQuantity();
+      Availability source = sources.get(item.getItemId());
+      source.setQuantity(source.getQuantity() - quantity);
+      inventoryLedger.adjust(sourceId, item.getItemId(), -quantity);
+      stockHistory.record(sourceId, item.getItemId(), source.getQuantity());
+
+      Availability destination = destinations.get(item.getItemId());
+      if (crossShard) {
+        shardTransfers.record(shipment, item, quantity);
+      } else if (destination == null) {
+        if (destinationSite == null) {
+          destinationSite = siteRepository.findBySiteId(destinationId);
+        }
+        inserts.add(new Availability(destinationSite, item, quantity));
+        inventoryLedger.put(destinationId, item.getItemId(), quantity);
+        stockHistory.record(destinationId, item.getItemId(), quantity);
+      } else {
+        destination.setQuantity(destination.getQuantity() + quantity);
+        inventoryLedger.adjust(destinationId, item.getItemId(), quantity);
+        stockHistory.record(destinationId, item.getItemId(), destination.getQuantity());
+      }
+
+      Ship ship = Ship.builder().shipmentId(shipment).itemId(item).quantity(quantity).build();
+      ships.add(ship);
+      audits.add(
+          Audit.builder()
+              .tableName("Ships")
+              .entityId(shipment.getShipmentId())
+              .itemId(item.getItemId())
+              .snapshot(AuditSnapshot.of(ship))
+              .action("INSERT")
+              .build());
+    }
+    availabilityRepository.persistAll(inserts);
+    var res = shipRepository.persistAll(ships);
+    auditService.saveAudits(audits);
 
     return ResponseEntity.ok().body(res);
   }
@@ -1,7 +1,11 @@
 package com.depot.ims.services;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
 import com.depot.ims.models.Shipment;
 import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.sharding.ShardRouter;
+import io.micrometer.core.annotation.Timed;
 import java.sql.Timestamp;
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -13,24 +17,30 @@ import org.springframework.stereotype.Service;
  * System. This includes operations like updating, retrieving, and deleting shipment records.
  */
 @Service
+@Timed("ims.service")
 public class ShipmentService {
   private final ShipmentRepository shipmentRepository;
   private final AuditService auditService;
+  private final ShardRouter shardRouter;
 
   /**
    * Constructs a ShipmentService with a repository for data access.
    *
    * @param shipmentRepository The repository providing data access operations for shipments.
+   * @param shardRouter routes each shipment to the shard its id was issued by.
    */
-  public ShipmentService(ShipmentRepository shipmentRepository, AuditService auditService) {
+  public ShipmentService(
+      ShipmentRepository shipmentRepository, AuditService auditService, ShardRouter shardRouter) {
 
     this.shipmentRepository = shipmentRepository;
     this.auditService = auditService;
+    this.shardRouter = shardRouter;
   }
 
   /**
    * Updates the details of an existing shipment using its ID. Allows for partial updates where only
-   * specified fields are updated.
+   * specified fields are updated. A shipment lives on the shard of its source, so when sharded the
+   * source can only change to a site on the same shard.
    *
    * @param shipmentId The ID of the shipment to update.
    * @param newSource The new source location ID (nullable).
@@ -51,7 +61,34 @@ public class ShipmentService {
       Timestamp newEstimatedArrivalTime,
       Timestamp newActualArrivalTime,
       String newShipmentStatus) {
+    if (newSource != null
+        && shardRouter.shardOfSite(newSource) != shardRouter.shardOfShipment(shipmentId)) {
+      return ResponseEntity.badRequest()
+          .body("The new source is on another shard than the shipment, create a new shipment");
+    }
+    return shardRouter.onShipment(
+        shipmentId,
+        () ->
+            updateShipmentOnShard(
+                shipmentId,
+                newSource,
+                newDestination,
+                newCurrentLocation,
+                newDepartureTime,
+                newEstimatedArrivalTime,
+                newActualArrivalTime,
+                newShipmentStatus));
+  }
 
+  private ResponseEntity<?> updateShipmentOnShard(
+      Long shipmentId,
+      Long newSource,
+      Long newDestination,
+      String newCurrentLocation,
+      Timestamp newDepartureTime,
+      Timestamp newEstimatedArrivalTime,
+      Timestamp newActualArrivalTime,
+      String newShipmentStatus) {
     if (!shipmentRepository.existsById(shipmentId)) {
       return ResponseEntity.badRequest().body("Shipment not found by shipment id!");
     }
@@ -72,79 +109,70 @@ public class ShipmentService {
     // Apply non-null updates to the shipment
     Shipment shipment = shipmentRepository.findByShipmentId(shipmentId);
     if (newSource != null) {
-      auditService.saveAudit(
-          "Shipments",
-          "source",
-          shipment.getShipmentId().toString(),
-          shipment.getSource().toString(),
-          newSource.toString(),
-          "UPDATE");
+      auditService.saveUpdate(
+          "Shipments", AuditField.SOURCE, shipmentId, null, shipment.getSource(), newSource);
       shipment.setSource(newSource);
     }
     if (newDestination != null) {
-      auditService.saveAudit(
+      auditService.saveUpdate(
           "Shipments",
-          "destination",
-          shipment.getShipmentId().toString(),
-          shipment.getDestination().toString(),
-          newDestination.toString(),
-          "UPDATE");
+          AuditField.DESTINATION,
+          shipmentId,
+          null,
+          shipment.getDestination(),
+          newDestination);
       shipment.setDestination(newDestination);
     }
     if (newCurrentLocation != null) {
-      auditService.saveAudit(
+      auditService.saveUpdate(
           "Shipments",
-          "currentLocation",
-          shipment.getShipmentId().toString(),
+          AuditField.CURRENT_LOCATION,
+          shipmentId,
+          null,
           shipment.getCurrentLocation(),
-          newCurrentLocation,
-          "UPDATE");
+          newCurrentLocation);
 
       shipment.setCurrentLocation(newCurrentLocation);
     }
     if (newDepartureTime != null) {
-      auditService.saveAudit(
+      auditService.saveUpdate(
           "Shipments",
-          "departureTime",
-          shipment.getShipmentId().toString(),
-          shipment.getDepartureTime() == null ? null : shipment.getDepartureTime().toString(),
-          newDepartureTime.toString(),
-          "UPDATE");
+          AuditField.DEPARTURE_TIME,
+          shipmentId,
+          null,
+          shipment.getDepartureTime(),
+          newDepartureTime);
       shipment.setDepartureTime(newDepartureTime);
     }
     if (newEstimatedArrivalTime != null) {
-      auditService.saveAudit(
+      auditService.saveUpdate(
           "Shipments",
-          "estimatedArrivalTime",
-          shipment.getShipmentId().toString(),
-          shipment.getEstimatedArrivalTime() == null
-              ? null
-              : shipment.getEstimatedArrivalTime().toString(),
-          newEstimatedArrivalTime.toString(),
-          "UPDATE");
+          AuditField.ESTIMATED_ARRIVAL_TIME,
+          shipmentId,
+          null,
+          shipment.getEstimatedArrivalTime(),
+          newEstimatedArrivalTime);
       shipment.setEstimatedArrivalTime(newEstimatedArrivalTime);
     }
     if (newActualArrivalTime != null) {
-      auditService.saveAudit(
+      auditService.saveUpdate(
           "Shipments",
-          "actualArrivalTime",
-          shipment.getShipmentId().toString(),
-          shipment.getActualArrivalTime() == null
-              ? null
-              : shipment.getActualArrivalTime().toString(),
-          newActualArrivalTime.toString(),
-          "UPDATE");
+          AuditField.ACTUAL_ARRIVAL_TIME,
+          shipmentId,
+          null,
+          shipment.getActualArrivalTime(),
+          newActualArrivalTime);
 
       shipment.setActualArrivalTime(newActualArrivalTime);
     }
     if (newShipmentStatus != null) {
-      auditService.saveAudit(
+      auditService.saveUpdate(
           "Shipments",
-          "shipmentStatus",
-          shipment.getShipmentId().toString(),
+          AuditField.SHIPMENT_STATUS,
+          shipmentId,
+          null,
           shipment.getShipmentStatus(),
-          newDestination.toString(),
-          "UPDATE");
+          newShipmentStatus);
 
       shipment.setShipmentStatus(newShipmentStatus);
     }
@@ -163,7 +191,9 @@ public class ShipmentService {
   public ResponseEntity<?> getShipment(Long shipmentId) {
     // shipment id has to be unique!!
     if (shipmentId != null) {
-      return ResponseEntity.ok(shipmentRepository.findByShipmentId(shipmentId));
+      return ResponseEntity.ok(
+          shardRouter.onShipment(
+              shipmentId, () -> shipmentRepository.findByShipmentId(shipmentId)));
     } else {
       return ResponseEntity.badRequest().body("You have to provide the shipment Id");
     }
@@ -176,12 +206,15 @@ public class ShipmentService {
    * @return ResponseEntity<?> Returns OK if deletion was successful, or Bad Request on error.
    */
   public ResponseEntity<?> deleteShipment(Long shipmentId) {
+    return shardRouter.onShipment(shipmentId, () -> deleteShipmentOnShard(shipmentId));
+  }
+
+  private ResponseEntity<?> deleteShipmentOnShard(Long shipmentId) {
     try {
       boolean isFound = shipmentRepository.existsById(shipmentId);
       if (isFound) {
         var res = shipmentRepository.findByShipmentId(shipmentId);
-        auditService.saveAudit(
-            "Shipments", null, shipmentId.toString(), res.toString(), null, "DELETE");
+        auditService.saveDelete("Shipments", shipmentId, null, AuditSnapshot.of(res));
         shipmentRepository.deleteById(shipmentId);
         return ResponseEntity.ok().body("Successfully deleted");
       }
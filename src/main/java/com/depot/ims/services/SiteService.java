@@ -1,9 +1,16 @@
 package com.depot.ims.services;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
+import com.depot.ims.cache.ReferenceCache;
+import com.depot.ims.inventory.InventoryLedger;
 import com.depot.ims.models.Site;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.sharding.ShardRouter;
+import io.micrometer.core.annotation.Timed;
 import java.sql.Date;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 import org.springframework.http.ResponseEntity;
@@ -11,14 +18,35 @@ import org.springframework.stereotype.Service;
 
 /** This class provides methods for business level logic operations for managing sites. */
 @Service
+@Timed("ims.service")
 public class SiteService {
 
   private final SiteRepository siteRepository;
   private final AuditService auditService;
+  private final InventoryLedger inventoryLedger;
+  private final ShardRouter shardRouter;
+  private final ReferenceCache referenceCache;
 
-  public SiteService(SiteRepository siteRepository, AuditService auditService) {
+  /**
+   * Constructor for SiteService.
+   *
+   * @param siteRepository The SiteRepository instance.
+   * @param auditService The AuditService instance.
+   * @param inventoryLedger The InventoryLedger to report site changes to.
+   * @param shardRouter copies saved sites to every shard.
+   * @param referenceCache evicts changed sites from the second-level cache.
+   */
+  public SiteService(
+      SiteRepository siteRepository,
+      AuditService auditService,
+      InventoryLedger inventoryLedger,
+      ShardRouter shardRouter,
+      ReferenceCache referenceCache) {
     this.siteRepository = siteRepository;
     this.auditService = auditService;
+    this.inventoryLedger = inventoryLedger;
+    this.shardRouter = shardRouter;
+    this.referenceCache = referenceCache;
   }
 
   /**
@@ -73,9 +101,10 @@ public class SiteService {
   public ResponseEntity<?> addSite(Site site) {
     try {
       var res = siteRepository.save(site);
+      shardRouter.copyToShards(List.of(res));
+      inventoryLedger.putSite(res);
       System.out.println(site);
-      auditService.saveAudit(
-          "sites", null, res.getSiteId().toString(), null, res.toString(), "INSERT");
+      auditService.saveInsert("sites", res.getSiteId(), null, AuditSnapshot.of(res));
       return ResponseEntity.ok(res);
     } catch (Exception e) {
       return ResponseEntity.badRequest().body(e.getMessage());
@@ -114,51 +143,39 @@ public class SiteService {
 
     Site site = siteRepository.findBySiteId(siteId);
     if (newStatus != null) {
-      auditService.saveAudit(
-          "sites", "siteStatus", siteId.toString(), site.getSiteStatus(), newStatus, "UPDATE");
+      auditService.saveUpdate(
+          "sites", AuditField.SITE_STATUS, siteId, null, site.getSiteStatus(), newStatus);
       site.setSiteStatus(newStatus);
     }
     if (newName != null) {
-      auditService.saveAudit(
-          "sites", "siteName", siteId.toString(), site.getSiteName(), newName, "UPDATE");
+      auditService.saveUpdate(
+          "sites", AuditField.SITE_NAME, siteId, null, site.getSiteName(), newName);
       site.setSiteName(newName);
     }
     if (newLocation != null) {
-      auditService.saveAudit(
-          "sites",
-          "siteLocation",
-          siteId.toString(),
-          site.getSiteLocation(),
-          newLocation,
-          "UPDATE");
+      auditService.saveUpdate(
+          "sites", AuditField.SITE_LOCATION, siteId, null, site.getSiteLocation(), newLocation);
       site.setSiteLocation(newLocation);
     }
     if (newInternalSite != null) {
-      auditService.saveAudit(
-          "sites",
-          "internalSite",
-          siteId.toString(),
-          site.getInternalSite().toString(),
-          newInternalSite.toString(),
-          "UPDATE");
+      auditService.saveUpdate(
+          "sites", AuditField.INTERNAL_SITE, siteId, null, site.getInternalSite(), newInternalSite);
       site.setInternalSite(newInternalSite);
     }
     if (newCeaseDate != null) {
       try {
         Date date = Date.valueOf(newCeaseDate);
-        auditService.saveAudit(
-            "sites",
-            "ceaseDate",
-            siteId.toString(),
-            site.getCeaseDate().toString(),
-            newCeaseDate,
-            "UPDATE");
+        auditService.saveUpdate(
+            "sites", AuditField.CEASE_DATE, siteId, null, site.getCeaseDate(), date);
         site.setCeaseDate(date);
       } catch (IllegalArgumentException e) {
         return ResponseEntity.badRequest().body("Date format is illegal.");
       }
     }
     Site updatedSite = siteRepository.save(site);
+    shardRouter.copyToShards(List.of(updatedSite));
+    inventoryLedger.putSite(updatedSite);
+    referenceCache.evictSite(siteId);
     return ResponseEntity.ok(updatedSite);
   }
 
@@ -180,18 +197,26 @@ public class SiteService {
     }
     Site site = siteRepository.findBySiteId(siteId);
     Date date = ceaseDate == null ? Date.valueOf(LocalDate.now()) : Date.valueOf(ceaseDate);
-    auditService.saveAudit(
-        "Sites", "internalSite", site.getSiteId().toString(), "open", "closed", "UPDATE");
-    auditService.saveAudit(
-        "Sites",
-        "ceaseDate",
-        site.getSiteId().toString(),
-        site.getCeaseDate() == null ? null : site.getCeaseDate().toString(),
-        date.toString(),
-        "UPDATE");
+    auditService.saveUpdate(
+        "sites", AuditField.SITE_STATUS, siteId, null, site.getSiteStatus(), "closed");
+    auditService.saveUpdate(
+        "sites", AuditField.CEASE_DATE, siteId, null, site.getCeaseDate(), date);
     site.setCeaseDate(date);
     site.setSiteStatus("closed");
 
-    return ResponseEntity.ok(siteRepository.saveAndFlush(site));
+    Site deletedSite = siteRepository.saveAndFlush(site);
+    shardRouter.copyToShards(List.of(deletedSite));
+    inventoryLedger.putSite(deletedSite);
+    referenceCache.evictSite(siteId);
+    return ResponseEntity.ok(deletedSite);
+  }
+
+  /**
+   * Get the hit/miss counters and size of each region of the site and item cache.
+   *
+   * @return ResponseEntity containing one ReferenceCacheStats per region, none if it is disabled
+   */
+  public ResponseEntity<?> getReferenceCacheStats() {
+    return ResponseEntity.ok(referenceCache.stats());
   }
 }
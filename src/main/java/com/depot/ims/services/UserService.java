@@ -2,6 +2,7 @@ package com.depot.ims.services;
 
 import com.depot.ims.models.User;
 import com.depot.ims.repositories.UserRepository;
+import io.micrometer.core.annotation.Timed;
 import java.util.Objects;
 import java.util.stream.Stream;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
  * System. This includes creating, updating, retrieving, and deleting user information.
  */
 @Service
+@Timed("ims.service")
 public class UserService {
   private final UserRepository usersRepository;
 
@@ -0,0 +1,117 @@
+package com.depot.ims.services;
+
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.inventory.LedgerLookup;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.response.InventoryValuation;
+import com.depot.ims.response.SiteValuation;
+import com.depot.ims.sharding.ShardRouter;
+import io.micrometer.core.annotation.Timed;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service class for the stock value of the sites. Values are answered from the InventoryLedger,
+ * which keeps them up to date with every quantity and price change, and recomputed from the
+ * database while the ledger cannot answer, e.g. before its startup scan has completed.
+ */
+@Service
+@Timed("ims.service")
+public class ValuationService {
+
+  private final SiteRepository siteRepository;
+  private final AvailabilityRepository availabilityRepository;
+  private final InventoryLedger inventoryLedger;
+  private final ShardRouter shardRouter;
+
+  /**
+   * Constructor for ValuationService.
+   *
+   * @param siteRepository The SiteRepository instance.
+   * @param availabilityRepository The AvailabilityRepository instance.
+   * @param inventoryLedger The InventoryLedger keeping the value of every site.
+   * @param shardRouter routes the recomputes to the shards holding the availabilities
+   */
+  public ValuationService(
+      SiteRepository siteRepository,
+      AvailabilityRepository availabilityRepository,
+      InventoryLedger inventoryLedger,
+      ShardRouter shardRouter) {
+    this.siteRepository = siteRepository;
+    this.availabilityRepository = availabilityRepository;
+    this.inventoryLedger = inventoryLedger;
+    this.shardRouter = shardRouter;
+  }
+
+  /**
+   * Gets the stock value of every site and their total.
+   *
+   * @return ResponseEntity containing an InventoryValuation with the sites ordered by siteId
+   */
+  public ResponseEntity<?> getValuation() {
+    LedgerLookup<List<SiteValue>> cached = inventoryLedger.findSiteValues();
+    List<SiteValue> values = cached.isHit() ? cached.getValue() : recompute();
+    long totalCents = 0;
+    List<SiteValuation> sites = new ArrayList<>(values.size());
+    for (SiteValue value : values) {
+      totalCents += value.getValueCents();
+      sites.add(new SiteValuation(value.getSiteId(), amount(value.getValueCents())));
+    }
+    return ResponseEntity.ok(new InventoryValuation(amount(totalCents), sites, cached.isHit()));
+  }
+
+  /**
+   * Gets the stock value of the site with the given siteId.
+   *
+   * @param siteId the id of the site
+   * @return ResponseEntity containing a SiteValuation, or BadRequest if the site cannot be found
+   */
+  public ResponseEntity<?> getSiteValuation(Long siteId) {
+    if (siteId == null) {
+      return ResponseEntity.badRequest().body("please provide a valid siteId");
+    }
+    LedgerLookup<Long> cached = inventoryLedger.findValueCents(siteId);
+    if (cached.isHit()) {
+      return ResponseEntity.ok(new SiteValuation(siteId, amount(cached.getValue())));
+    }
+    return shardRouter.onSite(
+        siteId,
+        () -> {
+          if (!siteRepository.existsById(siteId)) {
+            return ResponseEntity.badRequest().body("Site not found by siteId");
+          }
+          long valueCents = availabilityRepository.sumValueCentsBySiteId(siteId);
+          return ResponseEntity.ok(new SiteValuation(siteId, amount(valueCents)));
+        });
+  }
+
+  /**
+   * Gets the stock value of all sites together, without listing the sites.
+   *
+   * @return ResponseEntity containing the total value
+   */
+  public ResponseEntity<?> getTotalValuation() {
+    LedgerLookup<Long> cached = inventoryLedger.findTotalValueCents();
+    long totalCents =
+        cached.isHit()
+            ? cached.getValue()
+            : recompute().stream().mapToLong(SiteValue::getValueCents).sum();
+    return ResponseEntity.ok(amount(totalCents));
+  }
+
+  private List<SiteValue> recompute() {
+    List<SiteValue> values = shardRouter.gather(availabilityRepository::sumValueCentsBySite);
+    values.sort(Comparator.comparingLong(SiteValue::getSiteId));
+    return values;
+  }
+
+  private static BigDecimal amount(long cents) {
+    return BigDecimal.valueOf(cents, 2);
+  }
+}
@@ -0,0 +1,51 @@
+package com.depot.ims.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the shard the current thread works on. ShardRoutingDataSource reads it whenever a
+ * connection is fetched, which behind the lazy connection proxy happens at the first statement of a
+ * transaction, so a transaction stays on the shard that was current at its first statement. Threads
+ * that never set one work on the home shard.
+ */
+public final class ShardContext {
+
+  /** The shard of the spring.datasource database, which also holds the global tables. */
+  public static final int HOME = 0;
+
+  private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+  private ShardContext() {}
+
+  /**
+   * The shard of the current thread.
+   *
+   * @return the shard set by the innermost on(), or HOME
+   */
+  public static int current() {
+    Integer shard = CURRENT.get();
+    return shard == null ? HOME : shard;
+  }
+
+  /**
+   * Run work on a shard, then return to the shard the thread was on.
+   *
+   * @param shard the shard to work on
+   * @param work the work to run
+   * @param <T> the type of the result
+   * @return the result of the work
+   */
+  public static <T> T on(int shard, Supplier<T> work) {
+    Integer previous = CURRENT.get();
+    CURRENT.set(shard);
+    try {
+      return work.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+}
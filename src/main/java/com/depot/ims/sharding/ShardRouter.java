@@ -0,0 +1,278 @@
+package com.depot.ims.sharding;
+
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Decides which shard holds a row and runs work there. A site and its availabilities live on shard
+ * siteId mod shardCount; a shipment and its ships live on the shard of its source site, and
+ * ShardedIdGenerator gives it an id of shard * SHIPMENT_ID_SPAN plus a number unique across shards,
+ * so the shard of a shipment follows from its id. Sites and items are kept on the home shard and
+ * copied to every other shard, so that availabilities and ships can reference and join them
+ * locally.
+ *
+ * <p>Without shards everything runs on the home database directly, and gather() is a plain call.
+ */
+@Component
+public class ShardRouter {
+
+  /** Shipment ids of shard k are k * SHIPMENT_ID_SPAN + 1 and up. */
+  public static final long SHIPMENT_ID_SPAN = 1L << 40;
+
+  private final int shardCount;
+  private final TransactionTemplate readOnlyTransaction;
+  private final TransactionTemplate newTransaction;
+  private final EntityManagerFactory entityManagerFactory;
+  private final ExecutorService gatherPool;
+
+  /**
+   * Constructor for ShardRouter.
+   *
+   * @param environment the environment ims.sharding is read from
+   * @param transactionManager runs the per-shard transactions
+   * @param entityManagerFactory opens the sessions that copy sites and items to the shards
+   * @param backgroundThreads creates the threads that query the shards in parallel
+   */
+  public ShardRouter(
+      Environment environment,
+      PlatformTransactionManager transactionManager,
+      EntityManagerFactory entityManagerFactory,
+      BackgroundThreads backgroundThreads) {
+    this.shardCount = 1 + ShardingProperties.from(environment).getShards().size();
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.newTransaction = new TransactionTemplate(transactionManager);
+    this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.entityManagerFactory = entityManagerFactory;
+    this.gatherPool =
+        isSharded()
+            ? Executors.newCachedThreadPool(
+                task -> backgroundThreads.newThread("shard-gather", task))
+            : null;
+  }
+
+  /** Stop the threads that query the shards. */
+  @PreDestroy
+  public void stop() {
+    if (gatherPool != null) {
+      gatherPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Whether more than the home shard is configured.
+   *
+   * @return true if rows are spread across shards
+   */
+  public boolean isSharded() {
+    return shardCount > 1;
+  }
+
+  /**
+   * The number of shards, the home shard included.
+   *
+   * @return at least 1
+   */
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * The shard holding the availabilities of a site, and the shipments leaving it.
+   *
+   * @param siteId the id of the site
+   * @return the shard, or the home shard for a null id
+   */
+  public int shardOfSite(Long siteId) {
+    if (!isSharded() || siteId == null) {
+      return ShardContext.HOME;
+    }
+    return (int) Math.floorMod(siteId, (long) shardCount);
+  }
+
+  /**
+   * The shard holding a shipment and its ships.
+   *
+   * @param shipmentId the id of the shipment
+   * @return the shard, or the home shard for a null id
+   */
+  public int shardOfShipment(Long shipmentId) {
+    if (!isSharded() || shipmentId == null) {
+      return ShardContext.HOME;
+    }
+    return (int) Math.min(Math.max(shipmentId, 0) / SHIPMENT_ID_SPAN, shardCount - 1);
+  }
+
+  /**
+   * Whether two sites are on different shards.
+   *
+   * @param siteId the id of one site
+   * @param otherSiteId the id of the other site
+   * @return true if a move between them spans two shards
+   */
+  public boolean isCrossShard(Long siteId, Long otherSiteId) {
+    return shardOfSite(siteId) != shardOfSite(otherSiteId);
+  }
+
+  /**
+   * Run work on a shard. A transaction begun before stays on the shard of its first statement.
+   *
+   * @param shard the shard
+   * @param work the work to run
+   * @param <T> the type of the result
+   * @return the result of the work
+   */
+  public <T> T onShard(int shard, Supplier<T> work) {
+    return isSharded() ? ShardContext.on(shard, work) : work.get();
+  }
+
+  /**
+   * Run work on the shard of a site.
+   *
+   * @param siteId the id of the site
+   * @param work the work to run
+   * @param <T> the type of the result
+   * @return the result of the work
+   */
+  public <T> T onSite(Long siteId, Supplier<T> work) {
+    return onShard(shardOfSite(siteId), work);
+  }
+
+  /**
+   * Run work on the shard of a shipment.
+   *
+   * @param shipmentId the id of the shipment
+   * @param work the work to run
+   * @param <T> the type of the result
+   * @return the result of the work
+   */
+  public <T> T onShipment(Long shipmentId, Supplier<T> work) {
+    return onShard(shardOfShipment(shipmentId), work);
+  }
+
+  /**
+   * Run work in a transaction of its own on a shard, e.g. one step of a cross-shard transfer.
+   *
+   * @param shard the shard
+   * @param work the work to run
+   * @param <T> the type of the result
+   * @return the result of the work
+   */
+  public <T> T inTransaction(int shard, Supplier<T> work) {
+    return onShard(shard, () -> newTransaction.execute(status -> work.get()));
+  }
+
+  /**
+   * Run a query on every shard in parallel, each in a read-only transaction, and concatenate the
+   * results in shard order. The query must not depend on the calling thread's transaction.
+   *
+   * @param query the query to run on each shard
+   * @param <T> the type of the rows
+   * @return the rows of every shard
+   */
+  public <T> List<T> gather(Supplier<? extends Collection<? extends T>> query) {
+    if (!isSharded()) {
+      return new ArrayList<>(query.get());
+    }
+    List<CompletableFuture<Collection<? extends T>>> parts = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      int target = shard;
+      parts.add(
+          CompletableFuture.supplyAsync(
+              () -> ShardContext.on(target, () -> readOnlyTransaction.execute(s -> query.get())),
+              gatherPool));
+    }
+    List<T> rows = new ArrayList<>();
+    try {
+      for (CompletableFuture<Collection<? extends T>> part : parts) {
+        rows.addAll(part.join());
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    return rows;
+  }
+
+  /**
+   * Build one supplier per shard that runs work on that shard, e.g. to stream every shard in turn.
+   *
+   * @param work the work to run on each shard
+   * @param <T> the type of the result
+   * @return the suppliers, the home shard first
+   */
+  public <T> List<Supplier<T>> perShard(Supplier<T> work) {
+    if (!isSharded()) {
+      return List.of(work);
+    }
+    List<Supplier<T>> parts = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      int target = shard;
+      parts.add(() -> ShardContext.on(target, work));
+    }
+    return parts;
+  }
+
+  /**
+   * Run work on every shard in turn, each time in a read-only transaction of its own.
+   *
+   * @param work the work to run on each shard
+   */
+  public void readEachShard(Runnable work) {
+    for (Supplier<Object> part :
+        perShard(
+            () ->
+                readOnlyTransaction.execute(
+                    status -> {
+                      work.run();
+                      return null;
+                    }))) {
+      part.get();
+    }
+  }
+
+  /**
+   * Copy sites or items, with their ids, to every shard but the home shard, inserting or updating
+   * them. Called after they were saved on the home shard.
+   *
+   * @param entities the saved entities
+   */
+  public void copyToShards(Collection<?> entities) {
+    if (!isSharded() || entities.isEmpty()) {
+      return;
+    }
+    SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    for (int shard = 1; shard < shardCount; shard++) {
+      ShardContext.on(
+          shard,
+          () -> {
+            try (StatelessSession session = sessionFactory.openStatelessSession()) {
+              Transaction transaction = session.beginTransaction();
+              entities.forEach(session::upsert);
+              transaction.commit();
+            }
+            return null;
+          });
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.depot.ims.sharding;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the shard in ShardContext. Must sit behind a
+ * LazyConnectionDataSourceProxy, so that a transaction fetches its connection at its first
+ * statement, once the service has chosen the shard, rather than when the transaction begins.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+  private final List<DataSource> shards;
+
+  /**
+   * Constructor for ShardRoutingDataSource.
+   *
+   * @param shards the DataSource of every shard, the home shard first
+   */
+  public ShardRoutingDataSource(List<DataSource> shards) {
+    this.shards = List.copyOf(shards);
+    Map<Object, Object> targets = new HashMap<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      targets.put(shard, shards.get(shard));
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(shards.get(ShardContext.HOME));
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return ShardContext.current();
+  }
+
+  /**
+   * The DataSources this routes between.
+   *
+   * @return the DataSource of every shard, the home shard first
+   */
+  public List<DataSource> getShards() {
+    return shards;
+  }
+}
@@ -0,0 +1,95 @@
+package com.depot.ims.sharding;
+
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import javax.sql.DataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares the shards after the home shard before the application serves requests. When Hibernate
+ * creates the schema (ddl-auto create or create-drop) it only does so on the home shard, so the
+ * same schema is created on every other shard here. Then every site and item of the home shard is
+ * copied to the other shards. Shipment ids need no setup per shard: ShardedIdGenerator draws them
+ * all from the home shard and offsets them by the shard they are inserted on.
+ */
+public class ShardSchemaInitializer {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+
+  private final ShardRoutingDataSource shardRoutingDataSource;
+  private final SessionFactory sessionFactory;
+  private final ShardRouter shardRouter;
+
+  /**
+   * Constructor for ShardSchemaInitializer.
+   *
+   * @param shardRoutingDataSource the routing DataSource, whose shard pools this closes
+   * @param entityManagerFactory the application's EntityManagerFactory
+   * @param shardRouter copies the sites and items
+   */
+  public ShardSchemaInitializer(
+      ShardRoutingDataSource shardRoutingDataSource,
+      EntityManagerFactory entityManagerFactory,
+      ShardRouter shardRouter) {
+    this.shardRoutingDataSource = shardRoutingDataSource;
+    this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    this.shardRouter = shardRouter;
+  }
+
+  /** Create the schema on the shards if Hibernate creates it, and copy the sites and items. */
+  @PostConstruct
+  public void initialize() {
+    Object ddlAuto = sessionFactory.getProperties().get(AvailableSettings.HBM2DDL_AUTO);
+    boolean create = "create".equals(ddlAuto) || "create-drop".equals(ddlAuto);
+    for (int shard = 1; shard < shardRouter.getShardCount(); shard++) {
+      if (create) {
+        ShardContext.on(
+            shard,
+            () -> {
+              sessionFactory.getSchemaManager().dropMappedObjects(false);
+              sessionFactory.getSchemaManager().exportMappedObjects(false);
+              return null;
+            });
+      }
+    }
+    if (!create) {
+      log.info("Hibernate does not create the schema; the shards must already hold it");
+    }
+
+    List<Site> sites =
+        sessionFactory.fromStatelessSession(
+            session -> session.createSelectionQuery("from Site", Site.class).getResultList());
+    List<Item> items =
+        sessionFactory.fromStatelessSession(
+            session -> session.createSelectionQuery("from Item", Item.class).getResultList());
+    shardRouter.copyToShards(sites);
+    shardRouter.copyToShards(items);
+    log.info(
+        "Sharding availabilities and shipments across {} shards; copied {} sites and {} items",
+        shardRouter.getShardCount(),
+        sites.size(),
+        items.size());
+  }
+
+  /** Close the pools of the shards after the home shard, whose pool Spring closes. */
+  @PreDestroy
+  public void close() {
+    List<DataSource> shards = shardRoutingDataSource.getShards();
+    for (DataSource shard : shards.subList(1, shards.size())) {
+      if (shard instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) shard).close();
+        } catch (Exception e) {
+          log.warn("Could not close a shard pool", e);
+        }
+      }
+    }
+  }
+}
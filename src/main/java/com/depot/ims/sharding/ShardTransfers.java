@@ -0,0 +1,299 @@
+package com.depot.ims.sharding;
+
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.models.AppliedTransfer;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.ShardTransfer;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.keys.AppliedTransferKey;
+import com.depot.ims.repositories.AppliedTransferRepository;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.ShardTransferRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.snapshots.StockHistory;
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Moves stock between sites on different shards. A single transaction cannot span two shards, so a
+ * cross-shard ship runs as a saga of local transactions that only ever moves forward:
+ *
+ * <ol>
+ *   <li>the source shard debits the source, records the ship and writes a PENDING ShardTransfer,
+ *       all in the ship's transaction;
+ *   <li>after that commits, the destination shard credits the destination and writes an
+ *       AppliedTransfer under the transfer's (sourceShard, transferId) key, in one transaction;
+ *   <li>the source shard marks the transfer APPLIED.
+ * </ol>
+ *
+ * <p>If step 2 or 3 fails, e.g. because the destination shard is down, the relay thread retries
+ * every pending transfer older than ims.sharding.transfer-retry-ms until it succeeds. The
+ * AppliedTransfer key makes step 2 idempotent, so a transfer delivered twice is credited once. The
+ * stock is in transit between the two commits, but never lost or credited twice.
+ */
+@Component
+public class ShardTransfers {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardTransfers.class);
+
+  private final ShardRouter shardRouter;
+  private final ShardTransferRepository shardTransferRepository;
+  private final AppliedTransferRepository appliedTransferRepository;
+  private final AvailabilityRepository availabilityRepository;
+  private final SiteRepository siteRepository;
+  private final ItemRepository itemRepository;
+  private final InventoryLedger inventoryLedger;
+  private final StockHistory stockHistory;
+  private final BackgroundThreads backgroundThreads;
+  private final long retryMillis;
+
+  private final LongAdder recorded = new LongAdder();
+  private final LongAdder applied = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  private volatile Thread relayThread;
+  private volatile boolean running;
+
+  /**
+   * Constructor for ShardTransfers.
+   *
+   * @param shardRouter runs each step on its shard
+   * @param shardTransferRepository The ShardTransferRepository instance.
+   * @param appliedTransferRepository The AppliedTransferRepository instance.
+   * @param availabilityRepository The AvailabilityRepository instance.
+   * @param siteRepository The SiteRepository instance.
+   * @param itemRepository The ItemRepository instance.
+   * @param inventoryLedger The InventoryLedger to report credits to.
+   * @param stockHistory logs the quantities credits leave at their destinations
+   * @param backgroundThreads creates the relay thread
+   * @param environment the environment ims.sharding.transfer-retry-ms is read from
+   */
+  public ShardTransfers(
+      ShardRouter shardRouter,
+      ShardTransferRepository shardTransferRepository,
+      AppliedTransferRepository appliedTransferRepository,
+      AvailabilityRepository availabilityRepository,
+      SiteRepository siteRepository,
+      ItemRepository itemRepository,
+      InventoryLedger inventoryLedger,
+      StockHistory stockHistory,
+      BackgroundThreads backgroundThreads,
+      Environment environment) {
+    this.shardRouter = shardRouter;
+    this.shardTransferRepository = shardTransferRepository;
+    this.appliedTransferRepository = appliedTransferRepository;
+    this.availabilityRepository = availabilityRepository;
+    this.siteRepository = siteRepository;
+    this.itemRepository = itemRepository;
+    this.inventoryLedger = inventoryLedger;
+    this.stockHistory = stockHistory;
+    this.backgroundThreads = backgroundThreads;
+    this.retryMillis = ShardingProperties.from(environment).getTransferRetryMs();
+  }
+
+  /** Start the relay thread, if there is more than one shard. */
+  @PostConstruct
+  public void start() {
+    if (shardRouter.isSharded()) {
+      running = true;
+      relayThread = backgroundThreads.newThread("shard-transfer-relay", this::run);
+      relayThread.start();
+    }
+  }
+
+  /**
+   * Stop the relay thread. Pending transfers are picked up again after the next start.
+   *
+   * @throws InterruptedException if interrupted while waiting for the thread to finish
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    Thread thread = relayThread;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(5_000);
+    }
+  }
+
+  /**
+   * Record the credit a ship owes a destination on another shard. Must be called in the ship's
+   * transaction on the source shard; the credit is applied once that transaction has committed.
+   *
+   * @param shipment the shipment, whose source shard the current transaction runs on
+   * @param item the item shipped
+   * @param quantity the quantity shipped
+   */
+  public void record(Shipment shipment, Item item, int quantity) {
+    int sourceShard = shardRouter.shardOfSite(shipment.getSource());
+    ShardTransfer transfer =
+        shardTransferRepository.save(
+            ShardTransfer.builder()
+                .shipmentId(shipment.getShipmentId())
+                .itemId(item.getItemId())
+                .destinationId(shipment.getDestination())
+                .quantity(quantity)
+                .transferStatus(ShardTransfer.PENDING)
+                .createdAt(new Timestamp(System.currentTimeMillis()))
+                .build());
+    recorded.increment();
+    Long transferId = transfer.getTransferId();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              apply(sourceShard, transferId);
+            }
+          });
+    } else {
+      apply(sourceShard, transferId);
+    }
+  }
+
+  /**
+   * Credit a transfer to its destination and mark it applied, unless that already happened.
+   *
+   * @param sourceShard the shard that recorded the transfer
+   * @param transferId the id of the transfer on that shard
+   * @return true if the transfer is applied, false if it stays pending
+   */
+  public boolean apply(int sourceShard, Long transferId) {
+    try {
+      ShardTransfer transfer =
+          shardRouter.inTransaction(
+              sourceShard, () -> shardTransferRepository.findById(transferId).orElse(null));
+      if (transfer == null || ShardTransfer.APPLIED.equals(transfer.getTransferStatus())) {
+        return true;
+      }
+      int destinationShard = shardRouter.shardOfSite(transfer.getDestinationId());
+      shardRouter.inTransaction(destinationShard, () -> credit(sourceShard, transfer));
+      shardRouter.inTransaction(
+          sourceShard,
+          () -> {
+            shardTransferRepository
+                .findById(transferId)
+                .ifPresent(pending -> pending.setTransferStatus(ShardTransfer.APPLIED));
+            return null;
+          });
+      applied.increment();
+      return true;
+    } catch (RuntimeException e) {
+      failed.increment();
+      log.warn(
+          "Could not apply transfer {} of shard {}, retrying in {} ms",
+          transferId,
+          sourceShard,
+          retryMillis,
+          e);
+      return false;
+    }
+  }
+
+  /**
+   * The number of transfers recorded since startup.
+   *
+   * @return the count
+   */
+  public long getRecorded() {
+    return recorded.sum();
+  }
+
+  /**
+   * The number of transfers applied since startup, by their first delivery or a retry.
+   *
+   * @return the count
+   */
+  public long getApplied() {
+    return applied.sum();
+  }
+
+  /**
+   * The number of deliveries that failed and left their transfer pending.
+   *
+   * @return the count
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  private Void credit(int sourceShard, ShardTransfer transfer) {
+    if (appliedTransferRepository.existsById(
+        new AppliedTransferKey(sourceShard, transfer.getTransferId()))) {
+      return null;
+    }
+    Long destinationId = transfer.getDestinationId();
+    Long itemId = transfer.getItemId();
+    int quantity = transfer.getQuantity();
+    Availability destination =
+        availabilityRepository.findBySiteIdAndItemIdForUpdate(destinationId, itemId);
+    if (destination == null) {
+      Site destinationSite = siteRepository.findBySiteId(destinationId);
+      Item item = itemRepository.findByItemId(itemId);
+      availabilityRepository.save(new Availability(destinationSite, item, quantity));
+      inventoryLedger.put(destinationId, itemId, quantity);
+      stockHistory.record(destinationId, itemId, quantity);
+    } else {
+      destination.setQuantity(destination.getQuantity() + quantity);
+      inventoryLedger.adjust(destinationId, itemId, quantity);
+      stockHistory.record(destinationId, itemId, destination.getQuantity());
+    }
+    // a concurrent delivery of the same transfer fails on this key and rolls its credit back
+    appliedTransferRepository.saveAndFlush(
+        AppliedTransfer.builder()
+            .sourceShard(sourceShard)
+            .transferId(transfer.getTransferId())
+            .appliedAt(new Timestamp(System.currentTimeMillis()))
+            .build());
+    return null;
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(retryMillis);
+        relayPending();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Shard transfer relay failed", e);
+      }
+    }
+  }
+
+  /** Retry the pending transfers of every shard whose first delivery is overdue. */
+  void relayPending() {
+    Timestamp overdue = new Timestamp(System.currentTimeMillis() - retryMillis);
+    for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+      List<ShardTransfer> pending;
+      try {
+        pending =
+            shardRouter.inTransaction(
+                shard,
+                () ->
+                    shardTransferRepository
+                        .findTop100ByTransferStatusAndCreatedAtBeforeOrderByTransferId(
+                            ShardTransfer.PENDING, overdue));
+      } catch (RuntimeException e) {
+        log.warn("Could not read the pending transfers of shard {}", shard, e);
+        continue;
+      }
+      for (ShardTransfer transfer : pending) {
+        apply(shard, transfer.getTransferId());
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.depot.ims.sharding;
+
+import java.util.Properties;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * A pooled id generator for rows that live on a shard. Ids are drawn from one table-backed
+ * generator on the home shard, increment_size at a time, so a block of ids costs one round trip and
+ * inserts can be batched. Every block is fetched on a connection of its own to the home shard,
+ * whichever shard the current transaction runs on, so no two shards are ever handed the same id.
+ *
+ * <p>With shard_span set, the id is offset by ShardRouter.SHIPMENT_ID_SPAN times the shard the row
+ * is inserted on, which is how ShardRouter finds the shard of a shipment from its id.
+ *
+ * <pre>
+ *   &#64;GenericGenerator(
+ *       name = "shipments_seq",
+ *       type = ShardedIdGenerator.class,
+ *       parameters = &#64;Parameter(name = ShardedIdGenerator.SHARD_SPAN, value = "true"))
+ * </pre>
+ */
+public class ShardedIdGenerator extends SequenceStyleGenerator {
+
+  /** Whether to offset ids by the shard they are inserted on. */
+  public static final String SHARD_SPAN = "shard_span";
+
+  /** Ids fetched per round trip, unless increment_size says otherwise. */
+  public static final int DEFAULT_BLOCK = 50;
+
+  private boolean shardSpan;
+
+  @Override
+  public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry)
+      throws MappingException {
+    shardSpan = ConfigurationHelper.getBoolean(SHARD_SPAN, parameters, false);
+    parameters.putIfAbsent(FORCE_TBL_PARAM, "true");
+    parameters.putIfAbsent(INCREMENT_PARAM, String.valueOf(DEFAULT_BLOCK));
+    super.configure(type, parameters, serviceRegistry);
+  }
+
+  @Override
+  public Object generate(SharedSessionContractImplementor session, Object object) {
+    int shard = ShardContext.current();
+    long id =
+        ShardContext.on(
+            ShardContext.HOME, () -> ((Number) super.generate(session, object)).longValue());
+    return shardSpan ? shard * ShardRouter.SHIPMENT_ID_SPAN + id : id;
+  }
+}
@@ -0,0 +1,131 @@
+package com.depot.ims.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+/**
+ * Replaces Boot's single DataSource with one that routes every connection to the shard in
+ * ShardContext, as soon as ims.sharding.shards lists one. The home shard keeps the
+ * spring.datasource settings and its Hikari pool; each further shard gets a pool of its own, named
+ * shard-1, shard-2 and so on, with the credentials of the home shard unless it lists its own.
+ *
+ * <p>Sharding cannot be combined with read-replica routing, and needs the fire-and-forget audit
+ * mode: the other modes write audits inside the transaction, which would put them on whichever
+ * shard the transaction runs on instead of the home shard the audit endpoints read.
+ */
+@Configuration
+@ConditionalOnProperty("ims.sharding.shards[0].url")
+public class ShardingConfiguration {
+
+  /**
+   * The pool of the home shard, configured by spring.datasource and spring.datasource.hikari.
+   *
+   * @param dataSourceProperties the spring.datasource settings
+   * @param environment checked for settings sharding does not support
+   * @return the pool
+   */
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource homeShardDataSource(
+      DataSourceProperties dataSourceProperties, Environment environment) {
+    if (environment.containsProperty("ims.datasource.replicas[0].url")) {
+      throw new IllegalStateException(
+          "ims.sharding.shards and ims.datasource.replicas cannot be combined");
+    }
+    String auditMode = environment.getProperty("ims.audit.mode", "fire-and-forget");
+    if (!auditMode.equals("fire-and-forget")) {
+      throw new IllegalStateException(
+          "ims.sharding.shards needs ims.audit.mode=fire-and-forget, not " + auditMode);
+    }
+    HikariDataSource pool =
+        dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    pool.setPoolName("shard-0");
+    return pool;
+  }
+
+  /**
+   * The DataSource that picks the shard of each connection.
+   *
+   * @param homeShardDataSource the pool of the home shard
+   * @param dataSourceProperties the spring.datasource settings, for the default credentials
+   * @param environment the environment ims.sharding is read from
+   * @param meterRegistry records the hikaricp.* meters of the shard pools, if present
+   * @return the routing DataSource, which owns the pools of the other shards
+   */
+  @Bean
+  public ShardRoutingDataSource shardRoutingDataSource(
+      HikariDataSource homeShardDataSource,
+      DataSourceProperties dataSourceProperties,
+      Environment environment,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    ShardingProperties properties = ShardingProperties.from(environment);
+    List<DataSource> shards = new ArrayList<>();
+    shards.add(homeShardDataSource);
+    List<ShardingProperties.Shard> configured = properties.getShards();
+    for (int i = 0; i < configured.size(); i++) {
+      ShardingProperties.Shard shard = configured.get(i);
+      HikariDataSource pool = new HikariDataSource();
+      pool.setPoolName("shard-" + (i + 1));
+      pool.setJdbcUrl(shard.getUrl());
+      pool.setUsername(
+          StringUtils.hasText(shard.getUsername())
+              ? shard.getUsername()
+              : dataSourceProperties.determineUsername());
+      pool.setPassword(
+          shard.getPassword() != null
+              ? shard.getPassword()
+              : dataSourceProperties.determinePassword());
+      pool.setMaximumPoolSize(properties.getShardPoolSize());
+      pool.setConnectionTimeout(homeShardDataSource.getConnectionTimeout());
+      pool.setDataSourceProperties(homeShardDataSource.getDataSourceProperties());
+      meterRegistry.ifAvailable(
+          registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+      shards.add(pool);
+    }
+    return new ShardRoutingDataSource(shards);
+  }
+
+  /**
+   * The DataSource of the application. Connections are fetched at the first statement, once the
+   * service has chosen the shard.
+   *
+   * @param shardRoutingDataSource the routing DataSource
+   * @return the DataSource JPA and JDBC use
+   */
+  @Bean
+  @Primary
+  public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+    return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+  }
+
+  /**
+   * Create the schema on the shards and copy the sites and items to them.
+   *
+   * @param shardRoutingDataSource the routing DataSource
+   * @param entityManagerFactory the application's EntityManagerFactory
+   * @param shardRouter copies the sites and items
+   * @return the initializer, which closes the pools of the other shards on shutdown
+   */
+  @Bean
+  public ShardSchemaInitializer shardSchemaInitializer(
+      ShardRoutingDataSource shardRoutingDataSource,
+      EntityManagerFactory entityManagerFactory,
+      ShardRouter shardRouter) {
+    return new ShardSchemaInitializer(shardRoutingDataSource, entityManagerFactory, shardRouter);
+  }
+}
@@ -0,0 +1,46 @@
+package com.depot.ims.sharding;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+/**
+ * Settings of site sharding, bound from ims.sharding. The database of spring.datasource is the home
+ * shard, shard 0; every listed shard adds one more. With no shards listed the application runs on
+ * the home database alone, as before.
+ */
+@Data
+public class ShardingProperties {
+
+  /** The shards after the home shard, numbered from 1 in the order listed. */
+  private List<Shard> shards = new ArrayList<>();
+
+  /** Connections in each shard pool; the home pool keeps spring.datasource.hikari. */
+  private int shardPoolSize = 10;
+
+  /** How long a cross-shard transfer may stay unapplied before the relay retries it. */
+  private long transferRetryMs = 1000;
+
+  /**
+   * Bind ims.sharding from the environment.
+   *
+   * @param environment the application's environment
+   * @return the settings, with the defaults if nothing is configured
+   */
+  public static ShardingProperties from(Environment environment) {
+    return Binder.get(environment)
+        .bind("ims.sharding", ShardingProperties.class)
+        .orElseGet(ShardingProperties::new);
+  }
+
+  /** Connection settings of one shard. */
+  @Data
+  public static class Shard {
+
+    private String url;
+    private String username;
+    private String password;
+  }
+}
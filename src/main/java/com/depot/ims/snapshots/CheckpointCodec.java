@@ -0,0 +1,101 @@
+package com.depot.ims.snapshots;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes the stock of one site, as parallel arrays of item ids and quantities, in a compact
+ * columnar form: the number of items, then every item id, then every quantity. Item ids are sorted
+ * and stored as the difference to the previous id, and every number is a variable-length integer of
+ * 7 bits per byte, with quantities zigzag-encoded so that a negative quantity stays short. A site
+ * holding items 1000 to 1099 at quantities under 128 takes about 200 bytes.
+ */
+final class CheckpointCodec {
+
+  private CheckpointCodec() {}
+
+  /**
+   * Encode the stock of a site.
+   *
+   * @param itemIds the item ids, ascending and non-negative
+   * @param quantities the quantity of each item
+   * @return the encoded stock
+   */
+  static byte[] encode(long[] itemIds, int[] quantities) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(4 + itemIds.length * 3);
+    writeVarLong(out, itemIds.length);
+    long previous = 0;
+    for (long itemId : itemIds) {
+      if (itemId < previous) {
+        throw new IllegalArgumentException("item ids must be ascending and non-negative");
+      }
+      writeVarLong(out, itemId - previous);
+      previous = itemId;
+    }
+    for (int quantity : quantities) {
+      writeVarLong(out, Integer.toUnsignedLong((quantity << 1) ^ (quantity >> 31)));
+    }
+    return out.toByteArray();
+  }
+
+  /** The decoded stock of a site. */
+  static final class Stock {
+    final long[] itemIds;
+    final int[] quantities;
+
+    Stock(long[] itemIds, int[] quantities) {
+      this.itemIds = itemIds;
+      this.quantities = quantities;
+    }
+  }
+
+  /**
+   * Decode the stock of a site.
+   *
+   * @param bytes the encoded stock
+   * @return the item ids, ascending, and their quantities
+   */
+  static Stock decode(byte[] bytes) {
+    int[] position = {0};
+    int count = Math.toIntExact(readVarLong(bytes, position));
+    long[] itemIds = new long[count];
+    int[] quantities = new int[count];
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      previous += readVarLong(bytes, position);
+      itemIds[i] = previous;
+    }
+    for (int i = 0; i < count; i++) {
+      int zigzag = (int) readVarLong(bytes, position);
+      quantities[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+    if (position[0] != bytes.length) {
+      throw new IllegalArgumentException(
+          "checkpoint has " + (bytes.length - position[0]) + " trailing bytes");
+    }
+    return new Stock(itemIds, quantities);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    long rest = value;
+    while ((rest & ~0x7FL) != 0) {
+      out.write((int) ((rest & 0x7F) | 0x80));
+      rest >>>= 7;
+    }
+    out.write((int) rest);
+  }
+
+  private static long readVarLong(byte[] bytes, int[] position) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (position[0] >= bytes.length) {
+        throw new IllegalArgumentException("checkpoint ends inside a number");
+      }
+      byte b = bytes[position[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("checkpoint holds a number longer than 64 bits");
+  }
+}
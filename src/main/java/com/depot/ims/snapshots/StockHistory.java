@@ -0,0 +1,293 @@
+package com.depot.ims.snapshots;
+
+import com.depot.ims.models.Site;
+import com.depot.ims.models.StockChange;
+import com.depot.ims.models.StockCheckpoint;
+import com.depot.ims.models.projections.StockLevel;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.repositories.StockChangeRepository;
+import com.depot.ims.repositories.StockCheckpointRepository;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the stock history of every site, so that the stock of a site can be looked up as it was at
+ * any past moment. Every change of a quantity is logged as a StockChange, holding the new quantity,
+ * in the transaction that makes it. Every ims.snapshots.checkpoint-interval-ms each site that
+ * changed gets a StockCheckpoint of its whole stock, rolled forward from its previous checkpoint
+ * and the changes since. The stock at a moment is then one checkpoint read plus a replay of the
+ * changes made after it, which are at most one interval's worth.
+ *
+ * <p>A checkpoint only takes in changes older than ims.snapshots.settle-ms, so that a transaction
+ * still in flight when it is written, whose change has a lower id than a committed one, is not
+ * passed over. Replaying a change sets a quantity rather than adding to it, so replaying one the
+ * checkpoint already holds does no harm.
+ *
+ * <p>On a shard that holds stock but no checkpoint yet, e.g. on the first start after an upgrade,
+ * baseline checkpoints are read from the availabilities at startup; the stock before them is not
+ * known.
+ */
+@Component
+public class StockHistory {
+
+  private static final Logger log = LoggerFactory.getLogger(StockHistory.class);
+
+  private final StockChangeRepository stockChangeRepository;
+  private final StockCheckpointRepository stockCheckpointRepository;
+  private final AvailabilityRepository availabilityRepository;
+  private final SiteRepository siteRepository;
+  private final ShardRouter shardRouter;
+  private final BackgroundThreads backgroundThreads;
+  private final long intervalMillis;
+  private final long settleMillis;
+
+  private volatile Thread checkpointThread;
+  private volatile boolean running;
+
+  /**
+   * Constructor for StockHistory.
+   *
+   * @param stockChangeRepository The StockChangeRepository instance.
+   * @param stockCheckpointRepository The StockCheckpointRepository instance.
+   * @param availabilityRepository reads the baseline checkpoints
+   * @param siteRepository lists the sites of a shard for the baseline checkpoints
+   * @param shardRouter runs the checkpoints and lookups on the shard of each site
+   * @param backgroundThreads creates the checkpoint thread
+   * @param intervalMillis how often to checkpoint, ims.snapshots.checkpoint-interval-ms; 0 never
+   *     does, and lookups replay every change since the baseline
+   * @param settleMillis how old a change must be to go into a checkpoint, ims.snapshots.settle-ms
+   */
+  public StockHistory(
+      StockChangeRepository stockChangeRepository,
+      StockCheckpointRepository stockCheckpointRepository,
+      AvailabilityRepository availabilityRepository,
+      SiteRepository siteRepository,
+      ShardRouter shardRouter,
+      BackgroundThreads backgroundThreads,
+      @Value("${ims.snapshots.checkpoint-interval-ms:3600000}") long intervalMillis,
+      @Value("${ims.snapshots.settle-ms:60000}") long settleMillis) {
+    this.stockChangeRepository = stockChangeRepository;
+    this.stockCheckpointRepository = stockCheckpointRepository;
+    this.availabilityRepository = availabilityRepository;
+    this.siteRepository = siteRepository;
+    this.shardRouter = shardRouter;
+    this.backgroundThreads = backgroundThreads;
+    this.intervalMillis = intervalMillis;
+    this.settleMillis = settleMillis;
+  }
+
+  /** Write the baseline checkpoints where needed, and start the checkpoint thread. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+      int target = shard;
+      int written = shardRouter.inTransaction(target, () -> writeBaseline(target));
+      if (written > 0) {
+        log.info("Stock history of shard {} starts with {} baseline checkpoints", target, written);
+      }
+    }
+    if (intervalMillis > 0) {
+      running = true;
+      checkpointThread = backgroundThreads.newThread("stock-checkpoints", this::run);
+      checkpointThread.start();
+    }
+  }
+
+  /**
+   * Stop the checkpoint thread. The changes since the last checkpoint go into the next one after
+   * the next start.
+   *
+   * @throws InterruptedException if interrupted while waiting for the thread to finish
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    Thread thread = checkpointThread;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(5_000);
+    }
+  }
+
+  /**
+   * Log a change of the quantity of an item at a site. Must be called in the transaction that makes
+   * the change, on the shard of the site.
+   *
+   * @param siteId the id of the site
+   * @param itemId the id of the item
+   * @param quantity the quantity after the change
+   */
+  public void record(Long siteId, Long itemId, int quantity) {
+    stockChangeRepository.save(
+        StockChange.builder()
+            .siteId(siteId)
+            .itemId(itemId)
+            .quantity(quantity)
+            .changedAt(new Timestamp(System.currentTimeMillis()))
+            .build());
+  }
+
+  /**
+   * Rebuild the stock of a site as it was at a moment. Must be called on the shard of the site.
+   *
+   * @param siteId the id of the site
+   * @param at the moment
+   * @return the stock levels ordered by item id, without the items the site did not hold yet, or
+   *     null if the moment lies before the stock history of the site's shard starts
+   */
+  public List<StockLevel> stockAt(Long siteId, Timestamp at) {
+    Timestamp start = stockCheckpointRepository.findHistoryStart();
+    if (start != null && at.before(start)) {
+      return null;
+    }
+    StockCheckpoint checkpoint =
+        stockCheckpointRepository.findFirstBySiteIdAndAsOfLessThanEqualOrderByAsOfDesc(siteId, at);
+    TreeMap<Long, Integer> stock = decode(checkpoint);
+    long afterId = checkpoint == null ? 0 : checkpoint.getLastChangeId();
+    for (StockChange change : stockChangeRepository.findBySiteIdAfterUpTo(siteId, afterId, at)) {
+      stock.put(change.getItemId(), change.getQuantity());
+    }
+    List<StockLevel> levels = new ArrayList<>(stock.size());
+    stock.forEach((itemId, quantity) -> levels.add(new StockLevel(siteId, itemId, quantity)));
+    return levels;
+  }
+
+  /**
+   * The moment before which the stock history of a site is not known.
+   *
+   * @param siteId the id of the site
+   * @return the time of the baseline of the site's shard, or null if history started on an empty
+   *     shard
+   */
+  public Timestamp historyStart(Long siteId) {
+    return shardRouter.onSite(siteId, stockCheckpointRepository::findHistoryStart);
+  }
+
+  /**
+   * Checkpoint every site changed since the last checkpoints, on every shard.
+   *
+   * @return the number of checkpoints written
+   */
+  public int checkpoint() {
+    Timestamp cutoff = new Timestamp(System.currentTimeMillis() - settleMillis);
+    int written = 0;
+    for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+      written += shardRouter.inTransaction(shard, () -> checkpointShard(cutoff));
+    }
+    return written;
+  }
+
+  private int checkpointShard(Timestamp cutoff) {
+    Long upToId = stockChangeRepository.findLastChangeIdAtOrBefore(cutoff);
+    Long last = stockCheckpointRepository.findLastCheckpointedChangeId();
+    long afterId = last == null ? 0 : last;
+    if (upToId == null || upToId <= afterId) {
+      return 0;
+    }
+    int written = 0;
+    for (Long siteId : stockChangeRepository.findSiteIdsChangedBetween(afterId, upToId)) {
+      StockCheckpoint previous =
+          stockCheckpointRepository.findFirstBySiteIdOrderByLastChangeIdDesc(siteId);
+      TreeMap<Long, Integer> stock = decode(previous);
+      long fromId = previous == null ? 0 : previous.getLastChangeId();
+      for (StockChange change : stockChangeRepository.findBySiteIdBetween(siteId, fromId, upToId)) {
+        stock.put(change.getItemId(), change.getQuantity());
+      }
+      save(siteId, cutoff, upToId, false, stock);
+      written++;
+    }
+    return written;
+  }
+
+  private int writeBaseline(int shard) {
+    if (stockCheckpointRepository.findLastCheckpointedChangeId() != null
+        || availabilityRepository.count() == 0) {
+      return 0;
+    }
+    // changes after this id are replayed on top of the baseline, which may already hold some of
+    // them; that is harmless, while one missed would not be
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    Long settled =
+        stockChangeRepository.findLastChangeIdAtOrBefore(
+            new Timestamp(now.getTime() - settleMillis));
+    long lastChangeId = settled == null ? 0 : settled;
+    Map<Long, TreeMap<Long, Integer>> sites = new TreeMap<>();
+    for (Site site : siteRepository.findAll()) {
+      if (shardRouter.shardOfSite(site.getSiteId()) == shard) {
+        sites.put(site.getSiteId(), new TreeMap<>());
+      }
+    }
+    try (Stream<StockLevel> rows = availabilityRepository.streamAllStockLevels()) {
+      rows.forEach(
+          row ->
+              sites
+                  .computeIfAbsent(row.getSiteId(), siteId -> new TreeMap<>())
+                  .put(row.getItemId(), row.getQuantity()));
+    }
+    sites.forEach((siteId, stock) -> save(siteId, now, lastChangeId, true, stock));
+    return sites.size();
+  }
+
+  private void save(
+      Long siteId,
+      Timestamp asOf,
+      long lastChangeId,
+      boolean baseline,
+      TreeMap<Long, Integer> stock) {
+    long[] itemIds = new long[stock.size()];
+    int[] quantities = new int[stock.size()];
+    int i = 0;
+    for (Map.Entry<Long, Integer> entry : stock.entrySet()) {
+      itemIds[i] = entry.getKey();
+      quantities[i] = entry.getValue();
+      i++;
+    }
+    stockCheckpointRepository.save(
+        StockCheckpoint.builder()
+            .siteId(siteId)
+            .asOf(asOf)
+            .lastChangeId(lastChangeId)
+            .baseline(baseline)
+            .itemCount(itemIds.length)
+            .stock(CheckpointCodec.encode(itemIds, quantities))
+            .build());
+  }
+
+  private static TreeMap<Long, Integer> decode(StockCheckpoint checkpoint) {
+    TreeMap<Long, Integer> stock = new TreeMap<>();
+    if (checkpoint != null) {
+      CheckpointCodec.Stock decoded = CheckpointCodec.decode(checkpoint.getStock());
+      for (int i = 0; i < decoded.itemIds.length; i++) {
+        stock.put(decoded.itemIds[i], decoded.quantities[i]);
+      }
+    }
+    return stock;
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(intervalMillis);
+        checkpoint();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Stock checkpoint failed", e);
+      }
+    }
+  }
+}
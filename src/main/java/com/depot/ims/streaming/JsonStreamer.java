@@ -0,0 +1,129 @@
+package com.depot.ims.streaming;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.persistence.EntityManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Writes the rows of a repository Stream to the response as newline-delimited JSON while they are
+ * read. The query runs through a forward-only cursor inside a read-only transaction that stays open
+ * while the body is written; every row goes straight to a Jackson generator on the response, and
+ * every CHUNK_SIZE rows the generator is flushed and the persistence context is cleared, so neither
+ * the JSON nor the loaded entities pile up in the heap however many rows the query returns.
+ */
+@Component
+public class JsonStreamer {
+
+  // rows written between two flushes; matches the fetch size of the streaming queries
+  static final int CHUNK_SIZE = 1000;
+
+  private final TransactionTemplate readOnlyTransaction;
+  private final ObjectMapper objectMapper;
+  private final EntityManager entityManager;
+
+  /**
+   * Constructor for JsonStreamer.
+   *
+   * @param transactionManager used to hold a read-only transaction open while streaming
+   * @param objectMapper the application's ObjectMapper, used to write the rows
+   * @param entityManager the shared EntityManager, cleared after every chunk
+   */
+  public JsonStreamer(
+      PlatformTransactionManager transactionManager,
+      ObjectMapper objectMapper,
+      EntityManager entityManager) {
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.objectMapper = objectMapper;
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * Build an NDJSON response that streams the rows of a query.
+   *
+   * @param type the type of the rows
+   * @param query opens the stream; called once the response body is written
+   * @param <T> the type of the rows
+   * @return ResponseEntity OK whose body writes one row per line
+   */
+  public <T> ResponseEntity<StreamingResponseBody> ndjson(
+      Class<T> type, Supplier<Stream<T>> query) {
+    return ndjson(type, List.of(query));
+  }
+
+  /**
+   * Build an NDJSON response that streams the rows of several queries one after another, e.g. the
+   * same query on every shard. Each query runs in a read-only transaction of its own.
+   *
+   * @param type the type of the rows
+   * @param queries open the streams, in order; called once the response body is written
+   * @param <T> the type of the rows
+   * @return ResponseEntity OK whose body writes one row per line
+   */
+  public <T> ResponseEntity<StreamingResponseBody> ndjson(
+      Class<T> type, List<Supplier<Stream<T>>> queries) {
+    ObjectWriter lineWriter =
+        objectMapper
+            .writerFor(type)
+            .withRootValueSeparator("\n")
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    StreamingResponseBody body =
+        out -> {
+          try (SequenceWriter lines = lineWriter.writeValues(out)) {
+            AtomicLong written = new AtomicLong();
+            for (Supplier<Stream<T>> query : queries) {
+              readOnlyTransaction.executeWithoutResult(
+                  status -> {
+                    try (Stream<T> rows = query.get()) {
+                      for (Iterator<T> it = rows.iterator(); it.hasNext(); ) {
+                        lines.write(it.next());
+                        if (written.incrementAndGet() % CHUNK_SIZE == 0) {
+                          lines.flush();
+                          // the rows written so far are no longer needed; detach them
+                          entityManager.clear();
+                        }
+                      }
+                    } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                    }
+                  });
+            }
+            if (written.get() > 0) {
+              lines.flush();
+              out.write('\n');
+            }
+          }
+        };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+  }
+
+  /**
+   * Build a plain text response for a streaming endpoint, e.g. to reject its parameters.
+   *
+   * @param status the status of the response
+   * @param message the body of the response
+   * @return ResponseEntity whose body writes the message
+   */
+  public static ResponseEntity<StreamingResponseBody> text(HttpStatus status, String message) {
+    return ResponseEntity.status(status)
+        .contentType(MediaType.TEXT_PLAIN)
+        .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+  }
+}
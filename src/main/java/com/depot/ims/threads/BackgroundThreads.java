@@ -0,0 +1,54 @@
+package com.depot.ims.threads;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the long-running threads of background jobs, such as the audit writer, on the same kind
+ * of thread as requests. With spring.threads.virtual.enabled on a Java 21 runtime, Spring Boot runs
+ * Tomcat requests and async work on virtual threads, and so do these jobs; otherwise they are
+ * platform daemon threads.
+ */
+@Component
+public class BackgroundThreads {
+
+  private final boolean virtual;
+
+  /**
+   * Constructor for BackgroundThreads.
+   *
+   * @param environment the environment spring.threads.virtual.enabled is read from
+   */
+  public BackgroundThreads(Environment environment) {
+    this.virtual = Threading.VIRTUAL.isActive(environment);
+  }
+
+  /**
+   * Whether background jobs, requests and async work run on virtual threads.
+   *
+   * @return true in virtual-thread mode
+   */
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  /**
+   * Create an unstarted thread for a job. Neither kind keeps the JVM from exiting.
+   *
+   * @param name the name of the thread
+   * @param task what the thread runs
+   * @return the thread
+   */
+  public Thread newThread(String name, Runnable task) {
+    if (virtual) {
+      Thread thread = new VirtualThreadTaskExecutor().getVirtualThreadFactory().newThread(task);
+      thread.setName(name);
+      return thread;
+    }
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -0,0 +1,63 @@
+package com.depot.ims.threads;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs, in virtual-thread mode, how far database work can scale. Virtual threads remove the ceiling
+ * of the Tomcat thread pool, so the Hikari pool becomes what bounds concurrent requests that use
+ * the database: at most maximum-pool-size of them hold a connection, and the rest wait up to
+ * connection-timeout for one. Size the pool for the database, not for the request rate, and watch
+ * hikaricp.connections.pending.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class ConnectionPoolReport {
+
+  private static final Logger log = LoggerFactory.getLogger(ConnectionPoolReport.class);
+
+  private final DataSource dataSource;
+
+  /**
+   * Constructor for ConnectionPoolReport.
+   *
+   * @param dataSource the application's DataSource
+   */
+  public ConnectionPoolReport(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /** Log the pool limits once the application is ready. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void report() {
+    HikariDataSource pool = primaryPool();
+    if (pool != null) {
+      log.info(
+          "Requests run on virtual threads; at most {} use the database at once, the others wait"
+              + " up to {} ms for a connection",
+          pool.getMaximumPoolSize(),
+          pool.getConnectionTimeout());
+    } else {
+      log.info("Requests run on virtual threads; the DataSource bounds concurrent database work");
+    }
+  }
+
+  // the pool itself, or the primary pool behind read-replica routing
+  private HikariDataSource primaryPool() {
+    try {
+      return dataSource.isWrapperFor(HikariDataSource.class)
+          ? dataSource.unwrap(HikariDataSource.class)
+          : null;
+    } catch (SQLException e) {
+      return null;
+    }
+  }
+}
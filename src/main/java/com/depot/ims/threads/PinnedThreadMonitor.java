@@ -0,0 +1,110 @@
+package com.depot.ims.threads;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, in virtual-thread mode only. A
+ * virtual thread that blocks inside a synchronized block or a native call cannot unmount, so it
+ * holds one of the few carrier threads for as long as it blocks; JDBC drivers that guard their
+ * connections with synchronized are the usual cause. Pins longer than the threshold are read from
+ * the JDK Flight Recorder event jdk.VirtualThreadPinned, counted as ims.threads.pinned, timed as
+ * ims.threads.pinned.duration, and logged with the frames that held the monitor.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class PinnedThreadMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(PinnedThreadMonitor.class);
+
+  // frames of the pinned stack logged for each event
+  private static final int LOGGED_FRAMES = 12;
+
+  private final Duration threshold;
+  private final Counter pinned;
+  private final Timer pinnedDuration;
+  private RecordingStream recording;
+
+  /**
+   * Constructor for PinnedThreadMonitor.
+   *
+   * @param registry the application's MeterRegistry
+   * @param thresholdMillis pins shorter than this are ignored
+   */
+  public PinnedThreadMonitor(
+      MeterRegistry registry,
+      @Value("${ims.threads.pinned-threshold-ms:20}") long thresholdMillis) {
+    this.threshold = Duration.ofMillis(thresholdMillis);
+    this.pinned =
+        Counter.builder("ims.threads.pinned")
+            .description("Virtual threads pinned to their carrier longer than the threshold")
+            .register(registry);
+    this.pinnedDuration =
+        Timer.builder("ims.threads.pinned.duration")
+            .description("How long virtual threads stayed pinned, above the threshold")
+            .register(registry);
+  }
+
+  /** Start streaming pinned-thread events. */
+  @PostConstruct
+  public void start() {
+    recording = new RecordingStream();
+    recording.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+    recording.onEvent("jdk.VirtualThreadPinned", this::record);
+    recording.startAsync();
+    log.info("Reporting virtual threads pinned for more than {} ms", threshold.toMillis());
+  }
+
+  /** Stop streaming. */
+  @PreDestroy
+  public void stop() {
+    if (recording != null) {
+      recording.close();
+    }
+  }
+
+  private void record(RecordedEvent event) {
+    pinned.increment();
+    pinnedDuration.record(event.getDuration());
+    log.warn(
+        "Virtual thread {} pinned for {} ms at:{}",
+        event.getThread() == null ? "?" : event.getThread().getJavaName(),
+        event.getDuration().toMillis(),
+        frames(event.getStackTrace()));
+  }
+
+  private static String frames(RecordedStackTrace stackTrace) {
+    if (stackTrace == null) {
+      return " (no stack trace)";
+    }
+    List<RecordedFrame> frames = stackTrace.getFrames();
+    return frames.stream()
+        .limit(LOGGED_FRAMES)
+        .map(
+            frame ->
+                "\n\tat "
+                    + frame.getMethod().getType().getName()
+                    + "."
+                    + frame.getMethod().getName()
+                    + "("
+                    + frame.getLineNumber()
+                    + ")")
+        .collect(Collectors.joining());
+  }
+}
@@ -0,0 +1,253 @@
+package com.depot.ims.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Audit;
+import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.response.AuditPage;
+import com.depot.ims.response.AuditResponse;
+import com.depot.ims.services.AuditService;
+import com.depot.ims.streaming.JsonStreamer;
+import com.depot.ims.threads.BackgroundThreads;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Integration tests for AuditArchive using the H2 in-memory database. Audits of old months are
+ * moved to segment files, after which the period queries of AuditService must return the same
+ * audits as before, in the same order, whether they page, list or stream across the boundary
+ * between the archive and the Audits table.
+ */
+@DataJpaTest
+@Import({AuditWriter.class, JsonStreamer.class, BackgroundThreads.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop"
+    })
+class AuditArchiveTest {
+
+  @Autowired private AuditRepository auditRepository;
+  @Autowired private AuditWriter auditWriter;
+  @Autowired private JsonStreamer jsonStreamer;
+  @Autowired private BackgroundThreads backgroundThreads;
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  @TempDir Path directory;
+
+  private final YearMonth current = YearMonth.now();
+  private String start;
+  private String end;
+
+  /**
+   * Two audits sharing a timestamp five months back, one four months back and one today, which is
+   * all that stays in the table when two months besides the current one are retained.
+   */
+  @BeforeEach
+  void setUp() {
+    auditRepository.deleteAllInBatch();
+    Timestamp fiveMonths = Timestamp.valueOf(current.minusMonths(5).atDay(15).atTime(12, 0));
+    save("sites", AuditField.SITE_NAME, fiveMonths, "Depot", "Depot Nord");
+    save("sites", AuditField.SITE_LOCATION, fiveMonths, "Bern", "Zürich");
+    Timestamp fourMonths = Timestamp.valueOf(current.minusMonths(4).atDay(1).atStartOfDay());
+    save("items", AuditField.ITEM_NAME, fourMonths, "Bolt", "Nut");
+    save("items", AuditField.ITEM_NAME, new Timestamp(System.currentTimeMillis()), "Nut", "Pin");
+    start = current.minusMonths(6).atDay(1).toString();
+    end = LocalDate.now().plusDays(1).toString();
+  }
+
+  private void save(String tableName, AuditField field, Timestamp at, String oldText, String to) {
+    auditRepository.saveAndFlush(
+        Audit.builder()
+            .tableName(tableName)
+            .field(field)
+            .entityId(1L)
+            .oldText(oldText)
+            .newText(to)
+            .action("UPDATE")
+            .actionTimestamp(at)
+            .build());
+  }
+
+  private AuditArchive archive() throws Exception {
+    return archive(2, directory.toString());
+  }
+
+  private AuditArchive archive(int retainMonths, String dir) throws Exception {
+    AuditArchive archive =
+        new AuditArchive(
+            auditRepository, transactionManager, backgroundThreads, dir, retainMonths, 0, 1);
+    archive.start();
+    return archive;
+  }
+
+  private AuditService service(AuditArchive archive) {
+    return new AuditService(auditRepository, auditWriter, jsonStreamer, archive);
+  }
+
+  /** Lists the period in a read-only transaction, as the @Transactional service method would. */
+  @SuppressWarnings("unchecked")
+  private List<AuditResponse> list(AuditService service) {
+    TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+    return readOnly.execute(
+        status -> (List<AuditResponse>) service.findAuditsBetweenPeriod(start, end).getBody());
+  }
+
+  private static List<String> newValues(List<AuditResponse> audits) {
+    return audits.stream().map(AuditResponse::getNewValue).toList();
+  }
+
+  /** Tests that old months move to one segment each and leave the table. */
+  @Test
+  void testArchive() throws Exception {
+    AuditArchive archive = archive();
+    assertNull(archive.catalog().getArchivedUntil());
+    List<AuditResponse> before = list(service(archive));
+
+    assertEquals(2, archive.archive());
+    assertEquals(
+        List.of(current.minusMonths(5), current.minusMonths(4)), archive.catalog().getMonths());
+    assertEquals(
+        Timestamp.valueOf(current.minusMonths(3).atDay(1).atStartOfDay()),
+        archive.catalog().getArchivedUntil());
+    assertEquals(1, auditRepository.count());
+    assertTrue(Files.exists(directory.resolve("audits-" + current.minusMonths(5) + ".seg")));
+    assertTrue(Files.exists(directory.resolve("audits-" + current.minusMonths(4) + ".seg")));
+
+    assertEquals(before, list(service(archive)));
+    assertEquals(List.of("Depot Nord", "Zürich", "Nut", "Pin"), newValues(before));
+    assertEquals(0, archive.archive());
+  }
+
+  /** Tests that the period pages run from the archive into the table without gaps or repeats. */
+  @Test
+  void testPagesAcrossArchive() throws Exception {
+    AuditArchive archive = archive();
+    archive.archive();
+    AuditService service = service(archive);
+
+    AuditPage first =
+        (AuditPage) service.findAuditsBetweenPeriodPage(start, end, null, 3).getBody();
+    assertEquals(List.of("Depot Nord", "Zürich", "Nut"), newValues(first.getAudits()));
+    AuditPage second =
+        (AuditPage)
+            service.findAuditsBetweenPeriodPage(start, end, first.getNextCursor(), 3).getBody();
+    assertEquals(List.of("Pin"), newValues(second.getAudits()));
+    assertNull(second.getNextCursor());
+
+    AuditPage pair = (AuditPage) service.findAuditsBetweenPeriodPage(start, end, null, 1).getBody();
+    pair =
+        (AuditPage)
+            service.findAuditsBetweenPeriodPage(start, end, pair.getNextCursor(), 2).getBody();
+    assertEquals(List.of("Zürich", "Nut"), newValues(pair.getAudits()));
+    pair =
+        (AuditPage)
+            service.findAuditsBetweenPeriodPage(start, end, pair.getNextCursor(), 2).getBody();
+    assertEquals(List.of("Pin"), newValues(pair.getAudits()));
+  }
+
+  /** Tests that the period stream writes the archived audits, then those in the table. */
+  @Test
+  void testStreamAcrossArchive() throws Exception {
+    AuditArchive archive = archive();
+    archive.archive();
+
+    ResponseEntity<StreamingResponseBody> res =
+        service(archive).streamAuditsBetweenPeriod(start, end);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    res.getBody().writeTo(out);
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(4, lines.length);
+    assertTrue(lines[0].contains("\"newValue\":\"Depot Nord\""));
+    assertTrue(lines[2].contains("\"newValue\":\"Nut\""));
+    assertTrue(lines[3].contains("\"newValue\":\"Pin\""));
+  }
+
+  /**
+   * Tests that an audit written into a month after it was archived is listed from the table, and
+   * moves into the month's segment on the next run.
+   */
+  @Test
+  void testLateAudit() throws Exception {
+    AuditArchive archive = archive();
+    archive.archive();
+    Timestamp late = Timestamp.valueOf(current.minusMonths(5).atDay(20).atStartOfDay());
+    save("items", AuditField.ITEM_NAME, late, "Pin", "Late");
+    AuditService service = service(archive);
+    List<String> expected = List.of("Depot Nord", "Zürich", "Late", "Nut", "Pin");
+    assertEquals(expected, newValues(list(service)));
+    AuditPage page = (AuditPage) service.findAuditsBetweenPeriodPage(start, end, null, 3).getBody();
+    assertEquals(List.of("Depot Nord", "Zürich", "Late"), newValues(page.getAudits()));
+
+    assertEquals(1, archive.archive());
+    assertEquals(1, auditRepository.count());
+    assertEquals(expected, newValues(list(service)));
+    assertEquals(0, archive.archive());
+  }
+
+  /** Tests that a restart finds the archived months again, and skips a damaged segment. */
+  @Test
+  void testReload() throws Exception {
+    archive().archive();
+    Files.write(directory.resolve("audits-" + current.minusMonths(4) + ".seg.tmp"), new byte[8]);
+
+    AuditArchive reloaded = archive();
+    assertEquals(
+        List.of(current.minusMonths(5), current.minusMonths(4)), reloaded.catalog().getMonths());
+    assertFalse(Files.exists(directory.resolve("audits-" + current.minusMonths(4) + ".seg.tmp")));
+    assertEquals(4, list(service(reloaded)).size());
+
+    Files.write(directory.resolve("audits-" + current.minusMonths(4) + ".seg"), new byte[8]);
+    AuditArchive damaged = archive();
+    assertEquals(List.of(current.minusMonths(5)), damaged.catalog().getMonths());
+  }
+
+  /** Tests that an instance that archives refuses a relative directory, and one that does not. */
+  @Test
+  void testRelativeDirectory() throws Exception {
+    assertThrows(IllegalStateException.class, () -> archive(2, "audit-archive"));
+    assertEquals(List.of(), archive(0, "audit-archive").catalog().getMonths());
+  }
+
+  /** Tests that an instance sharing the directory reads the months another one archived. */
+  @Test
+  void testSharedDirectory() throws Exception {
+    AuditArchive reader = archive(0, directory.toString());
+    List<AuditResponse> before = list(service(reader));
+
+    AuditArchive archiver = archive();
+    assertEquals(2, archiver.archive());
+    assertEquals(
+        List.of(current.minusMonths(5), current.minusMonths(4)), reader.catalog().getMonths());
+    assertEquals(before, list(service(reader)));
+    assertEquals(0, reader.archive());
+  }
+}
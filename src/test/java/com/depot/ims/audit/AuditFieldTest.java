@@ -0,0 +1,64 @@
+package com.depot.ims.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for AuditField. Validates that live values, legacy text and stored numbers convert
+ * into each other, and that every field has its own code.
+ */
+class AuditFieldTest {
+
+  /** Tests that each kind of value is stored as the number its text renders back from. */
+  @Test
+  void testNumbersRoundTrip() {
+    assertEquals(399L, AuditField.ITEM_PRICE.toNumber(3.99));
+    assertEquals("3.99", AuditField.ITEM_PRICE.render(AuditField.ITEM_PRICE.parse("3.99")));
+
+    Timestamp departure = Timestamp.valueOf("2024-05-07 10:00:00.25");
+    Long millis = AuditField.DEPARTURE_TIME.toNumber(departure);
+    assertEquals(departure.toString(), AuditField.DEPARTURE_TIME.render(millis));
+    assertEquals(millis, AuditField.DEPARTURE_TIME.parse(departure.toString()));
+
+    Long day = AuditField.CEASE_DATE.toNumber(Date.valueOf("2024-05-07"));
+    assertEquals("2024-05-07", AuditField.CEASE_DATE.render(day));
+
+    assertEquals(1L, AuditField.INTERNAL_SITE.toNumber(true));
+    assertEquals("false", AuditField.INTERNAL_SITE.render(0L));
+    assertEquals(-4L, AuditField.QUANTITY.parse("-4"));
+    assertNull(AuditField.QUANTITY.toNumber(null));
+    assertNull(AuditField.QUANTITY.render(null));
+  }
+
+  /** Tests that text that is not a value of the field is rejected. */
+  @Test
+  void testParseRejectsForeignText() {
+    assertThrows(IllegalArgumentException.class, () -> AuditField.INTERNAL_SITE.parse("open"));
+    assertThrows(IllegalArgumentException.class, () -> AuditField.QUANTITY.parse("ten"));
+    assertThrows(IllegalArgumentException.class, () -> AuditField.SITE_NAME.parse("x"));
+  }
+
+  /** Tests that codes are unique and convert back, and fields are found by their legacy name. */
+  @Test
+  void testCodesAndNames() {
+    AuditField.Converter converter = new AuditField.Converter();
+    Set<Short> codes = new HashSet<>();
+    for (AuditField field : AuditField.values()) {
+      Short code = converter.convertToDatabaseColumn(field);
+      assertTrue(codes.add(code));
+      assertEquals(field, converter.convertToEntityAttribute(code));
+      assertEquals(field, AuditField.fromFieldName(field.getFieldName()));
+    }
+    assertNull(AuditField.fromFieldName("password"));
+    assertThrows(
+        IllegalArgumentException.class, () -> converter.convertToEntityAttribute((short) 999));
+  }
+}
@@ -0,0 +1,188 @@
+package com.depot.ims.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.depot.ims.models.Audit;
+import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.response.AuditResponse;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Integration tests for AuditMigration using the H2 in-memory database. The legacy text columns are
+ * added back to the Audits table and filled with rows as the services used to write them; after the
+ * migration they must read back exactly as before, through the typed columns alone.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop"
+    })
+class AuditMigrationTest {
+
+  private static final String INSERT_LEGACY =
+      "insert into audits (table_name, field_name, row_key, old_value, new_value, action,"
+          + " action_timestamp) values (?, ?, ?, ?, ?, ?, current_timestamp)";
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+  @Autowired private AuditRepository auditRepository;
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  /** Add the legacy columns, as a schema update of an old database leaves them. */
+  @BeforeEach
+  void setUp() {
+    auditRepository.deleteAllInBatch();
+    jdbcTemplate.execute("alter table audits add column row_key varchar(255) not null");
+    for (String column : new String[] {"field_name", "old_value", "new_value"}) {
+      jdbcTemplate.execute("alter table audits add column " + column + " varchar(255)");
+    }
+  }
+
+  /** Drop whatever legacy columns a test left behind. */
+  @AfterEach
+  void tearDown() {
+    for (String column : new String[] {"row_key", "field_name", "old_value", "new_value"}) {
+      jdbcTemplate.execute("alter table audits drop column if exists " + column);
+    }
+    auditRepository.deleteAllInBatch();
+  }
+
+  /** Tests that every form of legacy audit converts and reads back unchanged. */
+  @Test
+  void testMigratesLegacyRows() {
+    legacy("Availabilities", "quantity", "itemId: 3, siteId: 7", "20", "40", "UPDATE");
+    legacy(
+        "Ships",
+        null,
+        "shipmentId: 4, itemId: 3",
+        null,
+        "shipmentId: 4, itemId: 3 ,quantity: 5",
+        "INSERT");
+    legacy("Items", "itemPrice", "3", "2.5", "3.99", "UPDATE");
+    legacy("Sites", "internalSite", "7", "open", "closed", "UPDATE");
+    legacy("Shipments", null, "4", "Shipment(shipmentId=4, ...)", null, "DELETE");
+    legacy("Sites", "ceaseDate", "7", null, "2024-05-07", "UPDATE");
+    legacy("sites", "siteName", "7", "Nord", "Süd", "UPDATE");
+
+    new AuditMigration(jdbcTemplate, transactionManager, 2).migrate();
+
+    assertThrows(
+        BadSqlGrammarException.class,
+        () -> jdbcTemplate.queryForList("select row_key from audits"));
+    List<AuditResponse> audits = auditRepository.findPageAfter(0L, PageRequest.of(0, 10));
+    assertEquals(7, audits.size());
+    expect(audits.get(0), "quantity", "itemId: 3, siteId: 7", "20", "40");
+    expect(
+        audits.get(1),
+        null,
+        "shipmentId: 4, itemId: 3",
+        null,
+        "shipmentId: 4, itemId: 3 ,quantity: 5");
+    expect(audits.get(2), "itemPrice", "3", "2.5", "3.99");
+    // deleteSite recorded closing a site as a change of internalSite
+    expect(audits.get(3), "siteStatus", "7", "open", "closed");
+    expect(audits.get(4), null, "4", "Shipment(shipmentId=4, ...)", null);
+    expect(audits.get(5), "ceaseDate", "7", null, "2024-05-07");
+    expect(audits.get(6), "siteName", "7", "Nord", "Süd");
+
+    Audit quantity = auditRepository.findByAuditId(audits.get(0).getAuditId());
+    assertEquals(AuditField.QUANTITY, quantity.getField());
+    assertEquals(7L, quantity.getEntityId());
+    assertEquals(40L, quantity.getNewNumber());
+    // deleteSite filed its audits under "Sites", the rest of the site audits under "sites"
+    assertEquals(3, auditRepository.findByTableName("sites").size());
+    assertEquals(0, auditRepository.findByTableName("Sites").size());
+  }
+
+  /** Tests that a row that cannot be parsed is left alone, and the legacy columns kept for it. */
+  @Test
+  void testKeepsUnparsableRows() {
+    legacy("Items", "itemPrice", "3", "2.5", "3.99", "UPDATE");
+    legacy("Items", "itemPrice", "item three", "2.5", "3.99", "UPDATE");
+    legacy("Items", "itemColour", "3", "red", "blue", "UPDATE");
+
+    AuditMigration migration = new AuditMigration(jdbcTemplate, transactionManager, 200);
+    migration.migrate();
+
+    List<String> keys =
+        jdbcTemplate.queryForList(
+            "select row_key from audits where entity_id is null order by PK_audits", String.class);
+    assertEquals(List.of("item three", "3"), keys);
+
+    // a second start retries the same rows, and typed audits can be written meanwhile
+    jdbcTemplate.update(
+        "insert into audits (table_name, entity_id, action, action_timestamp)"
+            + " values ('Items', 3, 'INSERT', current_timestamp)");
+    migration.migrate();
+    assertEquals(4, auditRepository.count());
+  }
+
+  /** Tests that the migration does nothing on a table that has only the typed columns. */
+  @Test
+  void testNothingToMigrate() {
+    tearDown();
+    new AuditMigration(jdbcTemplate, transactionManager, 200).migrate();
+    assertEquals(0, auditRepository.count());
+  }
+
+  /** Tests the parsing of single rows, including the ones it must refuse. */
+  @Test
+  void testConvert() {
+    AuditMigration.TypedRow ship =
+        AuditMigration.convert(
+            new AuditMigration.LegacyRow(
+                1, "Ships", null, "shipmentId: 4, itemId: 3", null, "text", "INSERT"));
+    assertEquals(4L, ship.entityId);
+    assertEquals(3L, ship.itemId);
+    assertNull(ship.field);
+    assertEquals("text", AuditSnapshot.render(ship.snapshot));
+
+    assertNull(
+        AuditMigration.convert(
+            new AuditMigration.LegacyRow(
+                2, "Availabilities", "quantity", "7", "many", "40", "UPDATE")));
+    assertNull(
+        AuditMigration.convert(
+            new AuditMigration.LegacyRow(
+                3, "sites", "internalSite", "7", "true", "maybe", "UPDATE")));
+    AuditMigration.TypedRow site =
+        AuditMigration.convert(
+            new AuditMigration.LegacyRow(
+                4, "Sites", "internalSite", "7", "true", "false", "UPDATE"));
+    assertEquals(AuditField.INTERNAL_SITE, site.field);
+    assertEquals("sites", site.tableName);
+  }
+
+  private void legacy(
+      String tableName,
+      String fieldName,
+      String rowKey,
+      String oldValue,
+      String newValue,
+      String action) {
+    jdbcTemplate.update(INSERT_LEGACY, tableName, fieldName, rowKey, oldValue, newValue, action);
+  }
+
+  private static void expect(
+      AuditResponse audit, String fieldName, String rowKey, String oldValue, String newValue) {
+    assertEquals(fieldName, audit.getFieldName());
+    assertEquals(rowKey, audit.getRowKey());
+    assertEquals(oldValue, audit.getOldValue());
+    assertEquals(newValue, audit.getNewValue());
+  }
+}
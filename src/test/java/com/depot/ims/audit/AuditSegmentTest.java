@@ -0,0 +1,208 @@
+package com.depot.ims.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Item;
+import com.depot.ims.models.projections.AuditRow;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for AuditSegment. Validates that every kind of audit reads back as written, that a
+ * period query reads only the blocks it needs, that segments are several times smaller than the
+ * text they hold, and that damaged and truncated files are rejected.
+ */
+class AuditSegmentTest {
+
+  private static final YearMonth MONTH = YearMonth.of(2024, 5);
+  private static final long START = Timestamp.valueOf("2024-05-01 00:00:00").getTime();
+
+  @TempDir Path directory;
+
+  /** One month of audits over three blocks, in pairs that share a timestamp. */
+  private static List<AuditRow> rows() {
+    List<AuditRow> rows = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      Timestamp at = new Timestamp(START + (i / 2) * 1_000L);
+      at.setNanos((i / 2) % 2 * 123_456_789);
+      long id = i + 1;
+      switch (i % 3) {
+        case 0:
+          rows.add(
+              new AuditRow(
+                  id,
+                  "items",
+                  AuditField.ITEM_NAME,
+                  3L,
+                  null,
+                  null,
+                  null,
+                  "Bolt",
+                  "Nut",
+                  null,
+                  "UPDATE",
+                  at));
+          break;
+        case 1:
+          rows.add(
+              new AuditRow(
+                  id,
+                  "availabilities",
+                  AuditField.QUANTITY,
+                  7L,
+                  3L,
+                  (long) i,
+                  i + 1L,
+                  null,
+                  null,
+                  null,
+                  "UPDATE",
+                  at));
+          break;
+        default:
+          rows.add(
+              new AuditRow(
+                  id,
+                  "items",
+                  null,
+                  3L,
+                  null,
+                  null,
+                  null,
+                  null,
+                  null,
+                  AuditSnapshot.of(new Item(3L, "Bolt ø" + i, 3.99)),
+                  "INSERT",
+                  at));
+          break;
+      }
+    }
+    return rows;
+  }
+
+  /** Tests that every audit reads back as written, in order, and survives reopening. */
+  @Test
+  void testRoundTrip() throws Exception {
+    List<AuditRow> rows = rows();
+    Path path = directory.resolve("audits-2024-05.seg");
+    AuditSegment written = AuditSegment.write(path, MONTH, rows.iterator());
+    assertEquals(2500, written.getRowCount());
+    assertEquals(2500, written.getMaxAuditId());
+    assertFalse(Files.exists(directory.resolve("audits-2024-05.seg.tmp")));
+
+    AuditSegment segment = AuditSegment.open(path);
+    assertEquals(MONTH, segment.getMonth());
+    assertEquals(2500, segment.getRowCount());
+    Timestamp end = Timestamp.valueOf("2024-05-31 23:59:59");
+    assertEquals(rows, segment.rows(new Timestamp(START), end).toList());
+  }
+
+  /** Tests that a period query returns exactly the audits within it, inclusive at both ends. */
+  @Test
+  void testPeriod() throws Exception {
+    List<AuditRow> rows = rows();
+    AuditSegment segment =
+        AuditSegment.write(directory.resolve("audits-2024-05.seg"), MONTH, rows.iterator());
+    Timestamp from = rows.get(1100).getActionTimestamp();
+    Timestamp to = rows.get(1300).getActionTimestamp();
+    List<AuditRow> period = segment.rows(from, to).toList();
+    assertEquals(rows.subList(1100, 1302), period);
+
+    Timestamp after = Timestamp.valueOf("2024-06-01 00:00:00");
+    assertTrue(segment.rows(after, Timestamp.valueOf("2024-06-30 00:00:00")).toList().isEmpty());
+  }
+
+  /** Tests that the blocks are compressed well below the text the audits used to be stored as. */
+  @Test
+  void testCompact() throws Exception {
+    List<AuditRow> rows = rows();
+    AuditSegment segment =
+        AuditSegment.write(directory.resolve("audits-2024-05.seg"), MONTH, rows.iterator());
+    long text = 0;
+    for (AuditRow row : rows) {
+      text += AuditFormat.toResponse(row).toString().length();
+    }
+    assertTrue(segment.getSizeBytes() * 5 < text, segment.getSizeBytes() + " vs " + text);
+  }
+
+  /**
+   * Tests that a damaged block fails its checksum when read, while queries that skip it still
+   * succeed.
+   */
+  @Test
+  void testDamagedBlock() throws Exception {
+    List<AuditRow> rows = rows();
+    Path path = directory.resolve("audits-2024-05.seg");
+    AuditSegment.write(path, MONTH, rows.iterator());
+    byte[] bytes = Files.readAllBytes(path);
+    // the first block starts right after the 9-byte header
+    bytes[40] ^= 0x5a;
+    Files.write(path, bytes);
+
+    AuditSegment segment = AuditSegment.open(path);
+    Timestamp lastBlock = rows.get(2100).getActionTimestamp();
+    Timestamp end = Timestamp.valueOf("2024-05-31 23:59:59");
+    assertEquals(rows.subList(2100, 2500), segment.rows(lastBlock, end).toList());
+    assertThrows(
+        IllegalStateException.class, () -> segment.rows(new Timestamp(START), end).toList());
+  }
+
+  /** Tests that truncated files and files with a damaged index are not opened. */
+  @Test
+  void testDamagedFile() throws Exception {
+    Path path = directory.resolve("audits-2024-05.seg");
+    AuditSegment.write(path, MONTH, rows().iterator());
+    byte[] bytes = Files.readAllBytes(path);
+
+    Path truncated = directory.resolve("truncated.seg");
+    Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+    assertThrows(IllegalStateException.class, () -> AuditSegment.open(truncated));
+
+    Path damagedIndex = directory.resolve("index.seg");
+    byte[] copy = bytes.clone();
+    // the index lies right before the 36-byte footer
+    copy[copy.length - 40] ^= 0x01;
+    Files.write(damagedIndex, copy);
+    assertThrows(IllegalStateException.class, () -> AuditSegment.open(damagedIndex));
+
+    Path empty = directory.resolve("empty.seg");
+    Files.write(empty, new byte[0]);
+    assertThrows(IllegalStateException.class, () -> AuditSegment.open(empty));
+  }
+
+  /** Tests that audits out of order are refused and leave no file behind. */
+  @Test
+  void testOutOfOrder() {
+    List<AuditRow> rows = new ArrayList<>(rows().subList(0, 10));
+    rows.add(rows.get(0));
+    Path path = directory.resolve("audits-2024-05.seg");
+    assertThrows(
+        IllegalArgumentException.class, () -> AuditSegment.write(path, MONTH, rows.iterator()));
+    assertFalse(Files.exists(path));
+    assertFalse(Files.exists(directory.resolve("audits-2024-05.seg.tmp")));
+  }
+
+  /** Tests that a month without audits makes a valid, empty segment. */
+  @Test
+  void testEmpty() throws Exception {
+    AuditSegment segment =
+        AuditSegment.write(
+            directory.resolve("audits-2024-05.seg"), MONTH, List.<AuditRow>of().iterator());
+    assertEquals(0, segment.getRowCount());
+    assertTrue(
+        segment
+            .rows(new Timestamp(START), Timestamp.valueOf("2024-05-31 00:00:00"))
+            .toList()
+            .isEmpty());
+  }
+}
@@ -0,0 +1,96 @@
+package com.depot.ims.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Ship;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for AuditSnapshot. Validates that every kind of row renders as its toString() used to
+ * read, nulls and non-ASCII text included, that snapshots are several times smaller than that text,
+ * and that damaged snapshots are rejected.
+ */
+class AuditSnapshotTest {
+
+  private static final Site SITE =
+      new Site(7L, "Depot Nord", "Zürich", "open", Date.valueOf("2024-05-07"), true);
+  private static final Item ITEM = new Item(3L, "Bolt", 3.99);
+
+  /** Tests that sites, items and shipments render as their Lombok toString(). */
+  @Test
+  void testRendersAsToString() {
+    assertEquals(SITE.toString(), AuditSnapshot.render(AuditSnapshot.of(SITE)));
+    assertEquals(ITEM.toString(), AuditSnapshot.render(AuditSnapshot.of(ITEM)));
+
+    Site bare = new Site(8L, "Depot Süd", "Bern", "closed", null, null);
+    assertEquals(bare.toString(), AuditSnapshot.render(AuditSnapshot.of(bare)));
+
+    Shipment shipment =
+        new Shipment(
+            4L,
+            7L,
+            8L,
+            null,
+            Timestamp.valueOf("2024-05-07 10:00:00"),
+            Timestamp.valueOf("2024-05-08 10:30:00.5"),
+            null,
+            "In Transit");
+    assertEquals(shipment.toString(), AuditSnapshot.render(AuditSnapshot.of(shipment)));
+  }
+
+  /** Tests that ships keep their own format and availabilities carry only ids and quantity. */
+  @Test
+  void testShipsAndAvailabilities() {
+    Shipment shipment = new Shipment();
+    shipment.setShipmentId(4L);
+    Ship ship = Ship.builder().shipmentId(shipment).itemId(ITEM).quantity(-2).build();
+    assertEquals(ship.toString(), AuditSnapshot.render(AuditSnapshot.of(ship)));
+
+    Availability availability = new Availability(SITE, ITEM, 10);
+    assertEquals(
+        "Availability(siteId=7, itemId=3, quantity=10)",
+        AuditSnapshot.render(AuditSnapshot.of(availability)));
+    assertTrue(AuditSnapshot.of(availability).length < 10);
+  }
+
+  /** Tests that a snapshot takes a fraction of the text it replaces. */
+  @Test
+  void testIsCompact() {
+    int text = SITE.toString().getBytes(StandardCharsets.UTF_8).length;
+    assertTrue(AuditSnapshot.of(SITE).length * 2 < text);
+  }
+
+  /** Tests that legacy text survives the wrapping, and null stays null. */
+  @Test
+  void testText() {
+    assertEquals(
+        "Site(siteId=1, ...)", AuditSnapshot.render(AuditSnapshot.ofText("Site(siteId=1, ...)")));
+    assertNull(AuditSnapshot.ofText(null));
+    assertNull(AuditSnapshot.render(null));
+  }
+
+  /** Tests that truncated, padded and unknown snapshots are rejected. */
+  @Test
+  void testRejectsDamagedSnapshots() {
+    byte[] site = AuditSnapshot.of(SITE);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AuditSnapshot.render(Arrays.copyOf(site, site.length - 1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AuditSnapshot.render(Arrays.copyOf(site, site.length + 1)));
+    assertThrows(IllegalArgumentException.class, () -> AuditSnapshot.render(new byte[] {9}));
+    assertThrows(IllegalArgumentException.class, () -> AuditSnapshot.render(new byte[0]));
+  }
+}
@@ -0,0 +1,203 @@
+package com.depot.ims.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Audit;
+import com.depot.ims.repositories.AuditOutboxRepository;
+import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.threads.BackgroundThreads;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Integration tests for AuditWriter using the H2 in-memory database. Each durability mode is driven
+ * through committed and rolled back transactions, and the queue is filled past its capacity to
+ * check that backpressure falls back to the caller without losing audits.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop"
+    })
+class AuditWriterTest {
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+  @Autowired private AuditRepository auditRepository;
+  @Autowired private AuditOutboxRepository auditOutboxRepository;
+  @Autowired private PlatformTransactionManager transactionManager;
+  private TransactionTemplate transactionTemplate;
+
+  /** Empty the tables before each test, since these tests commit. */
+  @BeforeEach
+  void setUp() {
+    auditRepository.deleteAllInBatch();
+    auditOutboxRepository.deleteAllInBatch();
+    transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /** Tests that flush-before-commit writes the audits inside the transaction, or not at all. */
+  @Test
+  void testFlushBeforeCommit() {
+    AuditWriter writer = writer("flush-before-commit", 100, 10, 10);
+
+    transactionTemplate.executeWithoutResult(status -> writer.submit(audits(3)));
+    assertEquals(3, auditRepository.count());
+
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          writer.submit(audits(2));
+          status.setRollbackOnly();
+        });
+    assertEquals(3, auditRepository.count());
+    assertEquals(3, writer.stats().getWritten());
+  }
+
+  /** Tests that fire-and-forget queues committed audits for the writer thread only. */
+  @Test
+  void testFireAndForget() throws Exception {
+    AuditWriter writer = writer("fire-and-forget", 100, 10, 10);
+    writer.start();
+
+    transactionTemplate.executeWithoutResult(status -> writer.submit(audits(25)));
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          writer.submit(audits(5));
+          status.setRollbackOnly();
+        });
+    writer.stop();
+
+    assertEquals(25, auditRepository.count());
+    AuditWriterStats stats = writer.stats();
+    assertEquals(30, stats.getSubmitted());
+    assertEquals(25, stats.getWritten());
+    assertEquals(0, stats.getQueueDepth());
+    assertEquals(0, stats.getCallerRuns());
+  }
+
+  /** Tests that a full queue makes the caller write the overflow itself. */
+  @Test
+  void testBackpressureWritesOnCaller() throws Exception {
+    AuditWriter writer = writer("fire-and-forget", 4, 100, 60_000);
+    writer.start();
+
+    writer.submit(audits(10));
+    assertTrue(auditRepository.count() >= 6);
+    assertEquals(6, writer.stats().getCallerRuns());
+    assertEquals(4, writer.stats().getMaxQueueDepth());
+
+    writer.stop();
+    assertEquals(10, auditRepository.count());
+  }
+
+  /**
+   * Tests that audits overflowing the queue when a transaction commits are written in a transaction
+   * of their own, not on the connection of the one that already committed.
+   */
+  @Test
+  void testBackpressureAfterCommit() throws Exception {
+    AuditWriter writer = writer("fire-and-forget", 4, 100, 60_000);
+    writer.start();
+
+    transactionTemplate.executeWithoutResult(status -> writer.submit(audits(10)));
+    assertEquals(6, writer.stats().getCallerRuns());
+    assertEquals(6, auditRepository.count());
+    assertEquals(0, writer.stats().getFailed());
+
+    writer.stop();
+    assertEquals(10, auditRepository.count());
+    assertEquals(10, writer.stats().getWritten());
+
+    // a stopped writer queues nothing; an audit that cannot be written is counted, not thrown
+    List<Audit> broken = audits(1);
+    broken.get(0).setAction(null);
+    transactionTemplate.executeWithoutResult(status -> writer.submit(broken));
+    assertEquals(1, writer.stats().getFailed());
+    assertEquals(10, auditRepository.count());
+  }
+
+  /** Tests that AuditWriterMetrics publishes the queue depth and the writer's counters. */
+  @Test
+  void testAuditWriterMetrics() throws Exception {
+    AuditWriter writer = writer("fire-and-forget", 100, 100, 60_000);
+    MeterRegistry registry = new SimpleMeterRegistry();
+    new AuditWriterMetrics(writer).bindTo(registry);
+    writer.start();
+
+    writer.submit(audits(3));
+    assertEquals(
+        3, registry.get("ims.audit.queue.depth").tag("mode", "fire-and-forget").gauge().value());
+    assertEquals(100, registry.get("ims.audit.queue.capacity").gauge().value());
+
+    writer.stop();
+    assertEquals(0, registry.get("ims.audit.queue.depth").gauge().value());
+    assertEquals(3, registry.get("ims.audit.submitted").functionCounter().count());
+    assertEquals(3, registry.get("ims.audit.written").functionCounter().count());
+    assertEquals(0, registry.get("ims.audit.caller.runs").functionCounter().count());
+  }
+
+  /** Tests that outbox mode stores one row per transaction and relays it into the Audits table. */
+  @Test
+  void testOutbox() {
+    AuditWriter writer = writer("outbox", 100, 10, 10);
+
+    transactionTemplate.executeWithoutResult(status -> writer.submit(audits(7)));
+    transactionTemplate.executeWithoutResult(status -> writer.submit(audits(2)));
+    assertEquals(2, auditOutboxRepository.count());
+    assertEquals(0, auditRepository.count());
+
+    writer.flush();
+    assertEquals(0, auditOutboxRepository.count());
+    List<Audit> relayed = auditRepository.findByTableName("Sites");
+    assertEquals(9, relayed.size());
+    assertEquals(6L, relayed.get(6).getEntityId());
+    assertEquals(AuditField.SITE_NAME, relayed.get(6).getField());
+    assertEquals("new", relayed.get(6).getNewText());
+  }
+
+  private AuditWriter writer(String mode, int capacity, int batchSize, long flushIntervalMillis) {
+    return new AuditWriter(
+        jdbcTemplate,
+        auditOutboxRepository,
+        transactionManager,
+        mode,
+        capacity,
+        batchSize,
+        flushIntervalMillis,
+        new BackgroundThreads(new MockEnvironment()));
+  }
+
+  private static List<Audit> audits(int count) {
+    List<Audit> audits = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      audits.add(
+          Audit.builder()
+              .tableName("Sites")
+              .field(AuditField.SITE_NAME)
+              .entityId((long) i)
+              .oldText("old")
+              .newText("new")
+              .action("UPDATE")
+              .actionTimestamp(Timestamp.from(Instant.now()))
+              .build());
+    }
+    return audits;
+  }
+}
@@ -0,0 +1,134 @@
+package com.depot.ims.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.audit.AuditArchive;
+import com.depot.ims.audit.AuditWriter;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.metrics.SqlAssertions;
+import com.depot.ims.metrics.SqlTrackingConfiguration;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.services.AuditService;
+import com.depot.ims.services.SiteService;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.streaming.JsonStreamer;
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Tests the second-level cache of sites and items against the H2 in-memory database: repeated
+ * lookups issue no SQL, and updates are seen by the next lookup.
+ */
+@DataJpaTest
+@Import({
+  ReferenceCacheConfiguration.class,
+  ReferenceCache.class,
+  SiteService.class,
+  ShardRouter.class,
+  AuditService.class,
+  AuditWriter.class,
+  AuditArchive.class,
+  BackgroundThreads.class,
+  InventoryLedger.class,
+  JsonStreamer.class,
+  SqlTrackingConfiguration.class
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop"
+    })
+class ReferenceCacheTest {
+
+  @Autowired private SiteService siteService;
+  @Autowired private ReferenceCache referenceCache;
+  @Autowired private SiteRepository siteRepository;
+  @Autowired private ItemRepository itemRepository;
+  @Autowired private JdbcTemplate jdbcTemplate;
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  private Site site;
+  private Item item;
+
+  /** One site and one item, with nothing cached. */
+  @BeforeEach
+  void setUp() {
+    // these tests commit, so empty the tables and the cache first
+    JdbcTestUtils.deleteFromTables(jdbcTemplate, "audits", "items", "sites");
+    entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+    site = siteRepository.save(new Site("Site 1", "Location 1", "open", null, true));
+    item = itemRepository.save(new Item("Item 1", 1.0));
+  }
+
+  /** Tests that the validation lookups of the services are answered from memory once cached. */
+  @Test
+  void testRepeatedLookupsIssueNoSql() throws Exception {
+    Long siteId = site.getSiteId();
+    Long itemId = item.getItemId();
+    Runnable lookups =
+        () -> {
+          assertTrue(siteRepository.existsById(siteId));
+          assertEquals("Site 1", siteRepository.findBySiteId(siteId).getSiteName());
+          assertEquals(siteId, siteRepository.findBySiteName("Site 1").getSiteId());
+          assertEquals("open", siteRepository.findSiteStatusBySiteId(siteId));
+          assertTrue(itemRepository.existsById(itemId));
+          assertEquals("Item 1", itemRepository.findByItemId(itemId).getItemName());
+          assertTrue(siteRepository.findById(siteId).isPresent());
+        };
+    lookups.run();
+
+    SqlAssertions.assertStatementsAtMost(0, lookups::run);
+    ReferenceCacheStats sites = referenceCache.stats().get(0);
+    assertEquals(ReferenceCache.SITES, sites.getRegion());
+    assertTrue(sites.getHits() > 0);
+    assertEquals(1, sites.getSize());
+  }
+
+  /** Tests that updateSite and deleteSite are seen by the lookups that cached the site. */
+  @Test
+  void testUpdatesAreSeen() {
+    Long siteId = site.getSiteId();
+    assertEquals("open", siteRepository.findSiteStatusBySiteId(siteId));
+    assertEquals("Location 1", siteRepository.findBySiteId(siteId).getSiteLocation());
+
+    siteService.updateSite(siteId, "maintenance", null, "Location 2", null, null);
+    assertEquals("maintenance", siteRepository.findSiteStatusBySiteId(siteId));
+    assertEquals("Location 2", siteRepository.findBySiteId(siteId).getSiteLocation());
+
+    siteService.deleteSite(siteId, "2024-04-05");
+    assertEquals("closed", siteRepository.findSiteStatusBySiteId(siteId));
+    assertEquals("closed", siteRepository.findBySiteId(siteId).getSiteStatus());
+  }
+
+  /** Tests that a write Hibernate did not see is picked up once the site is evicted. */
+  @Test
+  void testEvictSiteDropsStaleEntries() {
+    Long siteId = site.getSiteId();
+    assertEquals("Location 1", siteRepository.findBySiteId(siteId).getSiteLocation());
+
+    jdbcTemplate.update("UPDATE sites SET site_location = 'Location 2' WHERE pk_sites = ?", siteId);
+    assertEquals("Location 1", siteRepository.findBySiteId(siteId).getSiteLocation());
+
+    referenceCache.evictSite(siteId);
+    assertEquals("Location 2", siteRepository.findBySiteId(siteId).getSiteLocation());
+  }
+}
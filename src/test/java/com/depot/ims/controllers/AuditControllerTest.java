@@ -1,14 +1,22 @@
 package com.depot.ims.controllers;
 
 import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
 import com.depot.ims.models.Audit;
 import com.depot.ims.models.User;
 import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.response.AuditPage;
+import com.depot.ims.response.AuditResponse;
 import com.depot.ims.services.AuditService;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,9 +26,12 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 public class AuditControllerTest {
   @InjectMocks AuditController auditControllerMock;
@@ -39,10 +50,10 @@ public class AuditControllerTest {
     Audit audit1 =
         Audit.builder()
             .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.SITE_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
@@ -50,8 +61,8 @@ public class AuditControllerTest {
     Audit audit2 =
         Audit.builder()
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -59,10 +70,10 @@ public class AuditControllerTest {
     Audit audit3 =
         Audit.builder()
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -85,10 +96,10 @@ public class AuditControllerTest {
     Audit audit1 =
         Audit.builder()
             .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.SITE_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
@@ -96,8 +107,8 @@ public class AuditControllerTest {
     Audit audit2 =
         Audit.builder()
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -105,10 +116,10 @@ public class AuditControllerTest {
     Audit audit3 =
         Audit.builder()
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -126,8 +137,8 @@ public class AuditControllerTest {
     Audit audit2 =
         Audit.builder()
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -135,10 +146,10 @@ public class AuditControllerTest {
     Audit audit3 =
         Audit.builder()
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -154,4 +165,48 @@ public class AuditControllerTest {
         .andExpect(jsonPath("$").isArray())
         .andExpect(jsonPath("$.length()").value(2));
   }
+
+  @Test
+  void testGetAuditsPage() throws Exception {
+    AuditResponse audit =
+        AuditResponse.builder()
+            .auditId(5L)
+            .tableName("sites")
+            .action("INSERT")
+            .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
+            .build();
+    doReturn(ResponseEntity.ok(new AuditPage(List.of(audit), "NQ")))
+        .when(auditServiceMock)
+        .findAuditsPage(null, 1);
+    doReturn(ResponseEntity.ok(new AuditPage(List.of(), null)))
+        .when(auditServiceMock)
+        .findAuditsOnTablePage("sites", "NQ", 100);
+
+    mockMvc
+        .perform(get("/audits?limit=1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.audits.length()").value(1))
+        .andExpect(jsonPath("$.nextCursor").value("NQ"));
+    mockMvc
+        .perform(get("/audits/onTable?tableName=sites&after=NQ"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.audits.length()").value(0));
+  }
+
+  @Test
+  void testStreamAudits() throws Exception {
+    StreamingResponseBody body =
+        out -> out.write("{\"auditId\":1}\n{\"auditId\":2}\n".getBytes(StandardCharsets.UTF_8));
+    doReturn(ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body))
+        .when(auditServiceMock)
+        .streamAudits();
+
+    MvcResult result =
+        mockMvc.perform(get("/audits/stream")).andExpect(request().asyncStarted()).andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(content().string("{\"auditId\":1}\n{\"auditId\":2}\n"));
+  }
 }
@@ -1,14 +1,21 @@
 package com.depot.ims.controllers;
 
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.depot.ims.models.*;
+import com.depot.ims.models.projections.StockLevel;
 import com.depot.ims.repositories.*;
 import com.depot.ims.services.AvailabilityService;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.sharding.TestShards;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.util.ArrayList;
 import java.util.List;
@@ -17,13 +24,17 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Tests for AvailabilityController - ensures correct handling of availability-related requests.
@@ -33,6 +44,7 @@ import org.springframework.util.MultiValueMap;
 public class AvailabilityControllerTest {
 
   @InjectMocks AvailabilityController availabilityController;
+  @Spy ShardRouter shardRouter = TestShards.unsharded();
   @Mock AvailabilityRepository availabilityRepository;
 
   @Mock AvailabilityService availabilityService;
@@ -82,6 +94,21 @@ public class AvailabilityControllerTest {
     mockMvc.perform(get("/availabilities/site").param("siteID", "123")).andExpect(status().isOk());
   }
 
+  /** Tests that view=ids lists the site's stock levels instead of full availabilities. */
+  @Test
+  void testGetStockLevels() throws Exception {
+    doReturn(ResponseEntity.ok(List.of(new StockLevel(123L, 1L, 5))))
+        .when(availabilityService)
+        .getStockLevels(123L);
+
+    mockMvc
+        .perform(get("/availabilities/site").param("siteId", "123").param("view", "ids"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].siteId").value(123))
+        .andExpect(jsonPath("$[0].itemId").value(1))
+        .andExpect(jsonPath("$[0].quantity").value(5));
+  }
+
   /**
    * Tests retrieval of a list of sites by item id, verifying correct HTTP status and JSON
    * structure.
@@ -93,6 +120,21 @@ public class AvailabilityControllerTest {
     mockMvc.perform(get("/availabilities/searchByItems").params(item)).andExpect(status().isOk());
   }
 
+  /**
+   * Tests retrieval of the sites that can fulfil an order, verifying correct HTTP status.
+   *
+   * @throws Exception
+   */
+  @Test
+  void testGetSitesByOrder() throws Exception {
+    mockMvc
+        .perform(
+            MockMvcRequestBuilders.post("/availabilities/searchByOrder")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"1\": 5, \"2\": 1}"))
+        .andExpect(status().isOk());
+  }
+
   /**
    * Tests changing the quantity of an item, verifying correct HTTP status and JSON structure.
    *
@@ -145,4 +187,25 @@ public class AvailabilityControllerTest {
                 .content(objectMapper.writeValueAsString(availability)))
         .andExpect(MockMvcResultMatchers.status().isOk());
   }
+
+  /** Tests that the siteLocation of a streamed export reaches the service. */
+  @Test
+  void testStreamAvailabilities() throws Exception {
+    StreamingResponseBody body =
+        out -> out.write("{\"quantity\":1}\n".getBytes(StandardCharsets.UTF_8));
+    doReturn(ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body))
+        .when(availabilityService)
+        .streamAvailabilities("North");
+
+    MvcResult result =
+        mockMvc
+            .perform(get("/availabilities/stream?siteLocation=North"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(content().string("{\"quantity\":1}\n"));
+  }
 }
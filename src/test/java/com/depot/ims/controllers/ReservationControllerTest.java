@@ -0,0 +1,79 @@
+package com.depot.ims.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.depot.ims.requests.HoldRequest;
+import com.depot.ims.reservations.Reservation;
+import com.depot.ims.reservations.ReservationStats;
+import com.depot.ims.services.ReservationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class ReservationControllerTest {
+  @InjectMocks ReservationController reservationController;
+  @Mock ReservationService reservationService;
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    mockMvc = MockMvcBuilders.standaloneSetup(reservationController).build();
+  }
+
+  @Test
+  void testHold() throws Exception {
+    // Given
+    HoldRequest holdRequest = HoldRequest.builder().siteId(1L).itemId(10L).quantity(5).build();
+    Reservation reservation = new Reservation(3L, 1L, 10L, 5, 0L, 900_000L);
+
+    // When
+    doReturn(ResponseEntity.ok(reservation)).when(reservationService).hold(any(HoldRequest.class));
+
+    // Then
+    mockMvc
+        .perform(
+            post("/reservations/hold")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(holdRequest)))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.reservationId").value(3))
+        .andExpect(jsonPath("$.status").value("HELD"));
+  }
+
+  @Test
+  void testReleaseNotHeld() throws Exception {
+    doReturn(ResponseEntity.badRequest().body("Reservation not found or no longer held"))
+        .when(reservationService)
+        .release(4L);
+
+    mockMvc
+        .perform(post("/reservations/release").param("reservationId", "4"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void testGetReservationStats() throws Exception {
+    doReturn(ResponseEntity.ok(new ReservationStats(5, 1, 2, 1, 1, 1)))
+        .when(reservationService)
+        .getReservationStats();
+
+    mockMvc
+        .perform(get("/reservations/stats"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.held").value(5))
+        .andExpect(jsonPath("$.open").value(1));
+  }
+}
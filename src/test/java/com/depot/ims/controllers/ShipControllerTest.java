@@ -9,9 +9,14 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.depot.ims.models.Ship;
+import com.depot.ims.models.projections.ShippedQuantity;
 import com.depot.ims.repositories.ShipRepository;
+import com.depot.ims.requests.ShipBatchRequest;
+import com.depot.ims.requests.ShipLineRequest;
 import com.depot.ims.requests.ShipRequest;
 import com.depot.ims.services.ShipService;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.sharding.TestShards;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +25,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -29,6 +35,7 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 // For more information, please refer to the documentation in the README under Testing Documentation
 class ShipControllerTest {
   @InjectMocks ShipController shipController;
+  @Spy ShardRouter shardRouter = TestShards.unsharded();
   @Mock ShipRepository shipRepository;
   @Mock ShipService shipService;
 
@@ -131,6 +138,26 @@ class ShipControllerTest {
         .andExpect(jsonPath("$.length()").value(1));
   }
 
+  /**
+   * Test method to verify that view=ids lists only the ids and quantity of the ships of a shipment.
+   *
+   * @throws Exception if an error occurs during the test execution
+   */
+  @Test
+  void testGetShippedQuantitiesByShipmentId() throws Exception {
+    // When
+    when(shipRepository.findShippedQuantitiesByShipmentId(1L))
+        .thenReturn(List.of(new ShippedQuantity(1L, 2L, 3)));
+
+    // Then
+    mockMvc
+        .perform(get("/ships/shipment=1").param("view", "ids"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].shipmentId").value(1))
+        .andExpect(jsonPath("$[0].itemId").value(2))
+        .andExpect(jsonPath("$[0].quantity").value(3));
+  }
+
   /**
    * Test method to verify the functionality of retrieving ships by item ID and shipment ID.
    *
@@ -181,4 +208,28 @@ class ShipControllerTest {
         .andExpect(status().isOk())
         .andExpect(jsonPath("$").value(ship));
   }
+
+  @Test
+  void testAddShips() throws Exception {
+    // Given
+    ShipBatchRequest shipBatchRequest =
+        ShipBatchRequest.builder()
+            .shipmentId(1L)
+            .lines(List.of(ShipLineRequest.builder().itemId(1L).quantity(5).build()))
+            .build();
+    List<Ship> ships = List.of(new Ship());
+    ResponseEntity<?> res = new ResponseEntity<>(ships, HttpStatus.OK);
+
+    // When
+    doReturn(res).when(shipService).addShips(any(ShipBatchRequest.class));
+
+    // Then
+    mockMvc
+        .perform(
+            post("/ships/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(shipBatchRequest)))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+  }
 }
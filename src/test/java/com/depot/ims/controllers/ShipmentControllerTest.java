@@ -10,6 +10,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import com.depot.ims.models.Shipment;
 import com.depot.ims.repositories.ShipmentRepository;
 import com.depot.ims.services.ShipmentService;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.sharding.TestShards;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.sql.Timestamp;
 import java.util.Arrays;
@@ -19,6 +21,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -32,6 +35,7 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
  */
 public class ShipmentControllerTest {
   @InjectMocks ShipmentController shipmentController;
+  @Spy ShardRouter shardRouter = TestShards.unsharded();
   @Mock ShipmentRepository shipmentRepository;
   @Mock ShipmentService shipmentService;
 
@@ -1,20 +1,32 @@
 package com.depot.ims.controllers;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.depot.ims.listing.Listings;
 import com.depot.ims.models.Site;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.response.InventoryValuation;
+import com.depot.ims.response.ListingPage;
+import com.depot.ims.response.SiteValuation;
+import com.depot.ims.services.ListingService;
 import com.depot.ims.services.SiteService;
+import com.depot.ims.services.ValuationService;
+import java.math.BigDecimal;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -30,6 +42,8 @@ public class SiteControllerTest {
   @InjectMocks SiteController siteControllerMock;
   @Mock SiteRepository siteRepositoryMock;
   @Mock SiteService siteServiceMock;
+  @Mock ListingService listingServiceMock;
+  @Mock ValuationService valuationServiceMock;
 
   private MockMvc mockMvc;
 
@@ -60,6 +74,29 @@ public class SiteControllerTest {
         .andExpect(status().isOk())
         .andExpect(jsonPath("$").isArray())
         .andExpect(jsonPath("$.length()").value(2));
+    verifyNoInteractions(listingServiceMock);
+  }
+
+  /** test a listing parameter switches getSites to one page from listingService */
+  @Test
+  void testGetSitesPage() throws Exception {
+    ResponseEntity<?> page =
+        ResponseEntity.ok(
+            new ListingPage(List.of(Map.of("siteId", 1L, "name", "A")), 0, 1, "next"));
+    doReturn(page)
+        .when(listingServiceMock)
+        .list(
+            eq(Listings.SITES),
+            argThat(
+                (ListingRequest request) ->
+                    request.getSize() == 1 && "siteId,name".equals(request.getFields())));
+
+    mockMvc
+        .perform(get("/sites?size=1&fields=siteId,name"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.rows[0].name").value("A"))
+        .andExpect(jsonPath("$.page").value(0))
+        .andExpect(jsonPath("$.nextCursor").value("next"));
   }
 
   /** test getStatusBySiteId */
@@ -133,4 +170,37 @@ public class SiteControllerTest {
         .andExpect(status().isOk())
         .andExpect(jsonPath("$.siteStatus").value("closed"));
   }
+
+  /** test the valuation of every site, of one site and the total are routed to valuationService */
+  @Test
+  void testValuation() throws Exception {
+    doReturn(
+            ResponseEntity.ok(
+                new InventoryValuation(
+                    new BigDecimal("12.50"),
+                    List.of(new SiteValuation(1L, new BigDecimal("12.50"))),
+                    true)))
+        .when(valuationServiceMock)
+        .getValuation();
+    doReturn(ResponseEntity.ok(new SiteValuation(1L, new BigDecimal("12.50"))))
+        .when(valuationServiceMock)
+        .getSiteValuation(1L);
+    doReturn(ResponseEntity.ok(new BigDecimal("12.50")))
+        .when(valuationServiceMock)
+        .getTotalValuation();
+
+    mockMvc
+        .perform(get("/sites/valuation"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.totalValue").value(12.5))
+        .andExpect(jsonPath("$.sites[0].siteId").value(1));
+    mockMvc
+        .perform(get("/sites/valuation?siteId=1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.value").value(12.5));
+    mockMvc
+        .perform(get("/sites/valuation/total"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$").value(12.5));
+  }
 }
@@ -0,0 +1,87 @@
+package com.depot.ims.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/** Unit tests for ReadYourWritesFilter. */
+class ReadYourWritesFilterTest {
+
+  private static final long WINDOW = 1250;
+
+  private final ReadYourWritesFilter filter = new ReadYourWritesFilter(WINDOW);
+
+  private MockHttpServletResponse run(MockHttpServletRequest request, FilterChain chain)
+      throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, chain);
+    return response;
+  }
+
+  /** Tests that a request without the cookie may read from replicas and sets no cookie. */
+  @Test
+  void testReadWithoutCookie() throws Exception {
+    AtomicBoolean pinned = new AtomicBoolean(true);
+    MockHttpServletResponse response =
+        run(
+            new MockHttpServletRequest(),
+            (req, res) ->
+                pinned.set(ReplicaRoutingContext.isPinnedToPrimary(System.currentTimeMillis())));
+    assertFalse(pinned.get());
+    assertNull(response.getCookie(ReadYourWritesFilter.COOKIE));
+  }
+
+  /** Tests that a committed write sets the cookie one window past the commit. */
+  @Test
+  void testWriteSetsCookie() throws Exception {
+    long before = System.currentTimeMillis();
+    MockHttpServletResponse response =
+        run(new MockHttpServletRequest(), (req, res) -> ReplicaRoutingContext.markWrite());
+    Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE);
+    assertNotNull(cookie);
+    long until = Long.parseLong(cookie.getValue());
+    assertTrue(until >= before + WINDOW && until <= System.currentTimeMillis() + WINDOW);
+    assertTrue(cookie.isHttpOnly());
+  }
+
+  /** Tests that a request carrying an unexpired cookie reads from the primary. */
+  @Test
+  void testCookieKeepsReadsOnPrimary() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(
+        new Cookie(
+            ReadYourWritesFilter.COOKIE, Long.toString(System.currentTimeMillis() + WINDOW)));
+    AtomicBoolean pinned = new AtomicBoolean();
+    run(
+        request,
+        (req, res) ->
+            pinned.set(ReplicaRoutingContext.isPinnedToPrimary(System.currentTimeMillis())));
+    assertTrue(pinned.get());
+    assertFalse(ReplicaRoutingContext.isPinnedToPrimary(System.currentTimeMillis()));
+  }
+
+  /** Tests that a cookie further ahead than one window, or not a number, is cut down. */
+  @Test
+  void testForgedCookieIsBounded() throws Exception {
+    for (String value : new String[] {Long.toString(Long.MAX_VALUE), "soon"}) {
+      MockHttpServletRequest request = new MockHttpServletRequest();
+      request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, value));
+      AtomicBoolean pinnedAfterWindow = new AtomicBoolean(true);
+      run(
+          request,
+          (req, res) ->
+              pinnedAfterWindow.set(
+                  ReplicaRoutingContext.isPinnedToPrimary(
+                      System.currentTimeMillis() + WINDOW + 1)));
+      assertFalse(pinnedAfterWindow.get());
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package com.depot.ims.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.threads.BackgroundThreads;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** Tests ReplicaRoutingDataSource against two H2 in-memory databases, a primary and a replica. */
+class ReplicaRoutingDataSourceTest {
+
+  private static final String WHERE = "select name from place";
+
+  private final JdbcTemplate primary = new JdbcTemplate(h2("primary"));
+  private final JdbcTemplate replica = new JdbcTemplate(h2("replica"));
+  private ReplicaLagMonitor monitor;
+  private JdbcTemplate routed;
+  private TransactionTemplate readOnly;
+  private TransactionTemplate writing;
+
+  private static DataSource h2(String name) {
+    return new DriverManagerDataSource(
+        "jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+  }
+
+  /** Each database names itself in its place table; both hold the heartbeat table. */
+  @BeforeEach
+  void setUp() {
+    for (JdbcTemplate database : List.of(primary, replica)) {
+      database.execute(ReplicaLagMonitor.CREATE_TABLE);
+      database.execute("create table place (name varchar(16))");
+    }
+    primary.update("insert into place values ('primary')");
+    replica.update("insert into place values ('replica')");
+
+    monitor =
+        new ReplicaLagMonitor(
+            primary.getDataSource(),
+            Map.of("replica-1", replica.getDataSource()),
+            1000,
+            250,
+            new BackgroundThreads(new MockEnvironment()));
+    ReplicaRoutingDataSource routing =
+        new ReplicaRoutingDataSource(primary.getDataSource(), monitor);
+    DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+    routed = new JdbcTemplate(dataSource);
+    DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+    writing = new TransactionTemplate(transactionManager);
+
+    monitor.check();
+    replicate();
+    monitor.check();
+  }
+
+  @AfterEach
+  void tearDown() {
+    ReplicaRoutingContext.end();
+    for (JdbcTemplate database : List.of(primary, replica)) {
+      database.execute("drop all objects");
+    }
+  }
+
+  // copy the last heartbeat of the primary to the replica, as replication would
+  private void replicate() {
+    Long beat = primary.queryForObject("select beat_millis from replica_heartbeat", Long.class);
+    replica.update("delete from replica_heartbeat");
+    replica.update("insert into replica_heartbeat (id, beat_millis) values (1, ?)", beat);
+  }
+
+  private String readOnlyRead() {
+    return readOnly.execute(status -> routed.queryForObject(WHERE, String.class));
+  }
+
+  /** Tests that read-only transactions go to a replica that keeps up. */
+  @Test
+  void testReadOnlyTransactionReadsReplica() {
+    assertEquals(List.of("replica-1"), monitor.healthyReplicas());
+    assertEquals("replica", readOnlyRead());
+  }
+
+  /** Tests that writing transactions and work outside a transaction go to the primary. */
+  @Test
+  void testWritesAndNonTransactionalWorkUsePrimary() {
+    assertEquals("primary", writing.execute(status -> routed.queryForObject(WHERE, String.class)));
+    assertEquals("primary", routed.queryForObject(WHERE, String.class));
+  }
+
+  /** Tests that reads go back to the primary while the replica lags more than the tolerance. */
+  @Test
+  void testLaggingReplicaIsLeftOut() {
+    replica.update("update replica_heartbeat set beat_millis = beat_millis - 5000");
+    monitor.check();
+    assertEquals(List.of(), monitor.healthyReplicas());
+    assertTrue(monitor.lagMillis("replica-1") >= 5000);
+    assertEquals("primary", readOnlyRead());
+
+    replicate();
+    monitor.check();
+    assertEquals("replica", readOnlyRead());
+  }
+
+  /** Tests that a replica that cannot be read is left out. */
+  @Test
+  void testUnreachableReplicaIsLeftOut() {
+    replica.execute("drop table replica_heartbeat");
+    monitor.check();
+    assertEquals(ReplicaLagMonitor.UNKNOWN_LAG, monitor.lagMillis("replica-1"));
+    assertEquals("primary", readOnlyRead());
+  }
+
+  /** Tests that reads stay on the primary inside onPrimary() and while the client is sticky. */
+  @Test
+  void testPinnedReadsUsePrimary() {
+    assertEquals("primary", ReplicaRoutingContext.onPrimary(this::readOnlyRead));
+    assertEquals("replica", readOnlyRead());
+
+    ReplicaRoutingContext.begin(System.currentTimeMillis() + 60_000, committedAt -> {});
+    assertEquals("primary", readOnlyRead());
+  }
+
+  /** Tests that a committed write reports its commit and moves later reads to the primary. */
+  @Test
+  void testCommittedWriteSticksToPrimary() {
+    List<Long> commits = new ArrayList<>();
+    ReplicaRoutingContext.begin(0, commits::add);
+    assertEquals("replica", readOnlyRead());
+
+    writing.executeWithoutResult(status -> routed.update("update place set name = 'written'"));
+    assertEquals(1, commits.size());
+    assertEquals("written", readOnlyRead());
+  }
+
+  /** Tests that a rolled back write does not make the client sticky. */
+  @Test
+  void testRolledBackWriteDoesNotStick() {
+    List<Long> commits = new ArrayList<>();
+    ReplicaRoutingContext.begin(0, commits::add);
+    writing.executeWithoutResult(
+        status -> {
+          routed.update("update place set name = 'written'");
+          status.setRollbackOnly();
+        });
+    assertEquals(List.of(), commits);
+    assertEquals("replica", readOnlyRead());
+  }
+}
@@ -0,0 +1,79 @@
+package com.depot.ims.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for CompressedBitmap. Validates membership and intersection for sparse and dense
+ * chunks against java.util.BitSet.
+ */
+class CompressedBitmapTest {
+
+  /** Tests adding, duplicate values and ordering across chunks. */
+  @Test
+  void testAddAndContains() {
+    CompressedBitmap bitmap = new CompressedBitmap();
+    assertTrue(bitmap.isEmpty());
+    bitmap.add(70000);
+    bitmap.add(3);
+    bitmap.add(3);
+    bitmap.add(65535);
+
+    assertEquals(3, bitmap.cardinality());
+    assertTrue(bitmap.contains(3));
+    assertTrue(bitmap.contains(65535));
+    assertFalse(bitmap.contains(4));
+    assertFalse(bitmap.contains(-1));
+    assertArrayEquals(new int[] {3, 65535, 70000}, bitmap.toArray());
+    assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+  }
+
+  /** Tests that intersections of sparse and dense chunks match BitSet. */
+  @Test
+  void testAndMatchesBitSet() {
+    Random random = new Random(42);
+    CompressedBitmap dense = new CompressedBitmap();
+    CompressedBitmap sparse = new CompressedBitmap();
+    CompressedBitmap denseToo = new CompressedBitmap();
+    BitSet denseBits = new BitSet();
+    BitSet sparseBits = new BitSet();
+    BitSet denseTooBits = new BitSet();
+    for (int i = 0; i < 20000; i++) {
+      int value = random.nextInt(140000);
+      dense.add(value);
+      denseBits.set(value);
+      value = random.nextInt(140000);
+      denseToo.add(value);
+      denseTooBits.set(value);
+    }
+    for (int i = 0; i < 500; i++) {
+      int value = random.nextInt(140000);
+      sparse.add(value);
+      sparseBits.set(value);
+    }
+
+    assertEquals(denseBits.cardinality(), dense.cardinality());
+    assertBitmapEquals(and(denseBits, sparseBits), dense.and(sparse));
+    assertBitmapEquals(and(sparseBits, denseBits), sparse.and(dense));
+    assertBitmapEquals(and(denseBits, denseTooBits), dense.and(denseToo));
+    assertTrue(sparse.and(new CompressedBitmap()).isEmpty());
+  }
+
+  private static BitSet and(BitSet left, BitSet right) {
+    BitSet result = (BitSet) left.clone();
+    result.and(right);
+    return result;
+  }
+
+  private static void assertBitmapEquals(BitSet expected, CompressedBitmap actual) {
+    assertEquals(expected.cardinality(), actual.cardinality());
+    assertArrayEquals(expected.stream().toArray(), actual.toArray());
+  }
+}
@@ -0,0 +1,334 @@
+package com.depot.ims.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.models.projections.StockLevel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Unit tests for InventoryLedger. Validates that reads are answered from memory once the ledger is
+ * warm, that quantity changes are applied as deltas, and that a load racing with a write never
+ * overwrites the newer value.
+ */
+class InventoryLedgerTest {
+
+  private final Site site1 = new Site(1L, "Site 1", "Location 1", "open", null, true);
+  private final Site site2 = new Site(2L, "Site 2", "Location 2", "open", null, true);
+  private final Item item1 = new Item(10L, "Item 1", 1.0);
+  private final Item item2 = new Item(20L, "Item 2", 2.0);
+  private InventoryLedger ledger;
+
+  /** Warm a ledger with two sites and two items before each test. */
+  @BeforeEach
+  void setUp() {
+    ledger = new InventoryLedger(4);
+    long epoch = ledger.beginLoad();
+    ledger.loadItemRow(item1);
+    ledger.loadItemRow(item2);
+    ledger.loadSiteRow(site1);
+    ledger.loadSiteRow(site2);
+    ledger.loadRow(new StockLevel(1L, 10L, 5), epoch);
+    ledger.loadRow(new StockLevel(1L, 20L, 7), epoch);
+    ledger.loadRow(new StockLevel(2L, 10L, 3), epoch);
+    ledger.finishWarm(epoch);
+  }
+
+  /** Tests that every read is a hit after warming and renders the full Availability. */
+  @Test
+  void testReadsAfterWarm() {
+    LedgerLookup<List<Availability>> bySite = ledger.findBySiteId(1L);
+    assertTrue(bySite.isHit());
+    assertEquals(
+        List.of(new Availability(site1, item1, 5), new Availability(site1, item2, 7)),
+        bySite.getValue());
+
+    LedgerLookup<Availability> one = ledger.findBySiteIdAndItemId(2L, 10L);
+    assertTrue(one.isHit());
+    assertEquals(new Availability(site2, item1, 3), one.getValue());
+
+    LedgerLookup<Availability> absent = ledger.findBySiteIdAndItemId(2L, 20L);
+    assertTrue(absent.isHit());
+    assertNull(absent.getValue());
+
+    assertEquals(List.of(site1, site2), ledger.findSitesByItemId(10L).getValue());
+    assertEquals(List.of(site1), ledger.findSitesByItemId(20L).getValue());
+
+    LedgerStats stats = ledger.stats();
+    assertEquals(5, stats.getHits());
+    assertEquals(0, stats.getMisses());
+    assertEquals(2, stats.getSites());
+    assertEquals(3, stats.getRows());
+  }
+
+  /** Tests that the ids-only listing of a site is served from memory, in itemId order. */
+  @Test
+  void testStockLevelsBySite() {
+    LedgerLookup<List<StockLevel>> levels = ledger.findStockLevelsBySiteId(1L);
+    assertTrue(levels.isHit());
+    assertEquals(
+        List.of(new StockLevel(1L, 10L, 5), new StockLevel(1L, 20L, 7)), levels.getValue());
+    assertFalse(ledger.findStockLevelsBySiteId(3L).isHit());
+  }
+
+  /** Tests that unknown sites and items miss and are counted. */
+  @Test
+  void testMisses() {
+    assertFalse(ledger.findBySiteId(3L).isHit());
+    assertFalse(ledger.findBySiteIdAndItemId(1L, 30L).isHit());
+    assertFalse(ledger.findSitesByItemId(30L).isHit());
+    assertEquals(3, ledger.stats().getMisses());
+  }
+
+  /** Tests that LedgerMetrics publishes the hit and miss counts and their ratio. */
+  @Test
+  void testLedgerMetrics() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    new LedgerMetrics(ledger).bindTo(registry);
+
+    ledger.findBySiteId(1L);
+    ledger.findBySiteId(2L);
+    ledger.findBySiteId(3L);
+
+    assertEquals(
+        2, registry.get("ims.ledger.reads").tag("result", "hit").functionCounter().count());
+    assertEquals(
+        1, registry.get("ims.ledger.reads").tag("result", "miss").functionCounter().count());
+    assertEquals(2.0 / 3, registry.get("ims.ledger.hit.ratio").gauge().value(), 1e-9);
+    assertEquals(3, registry.get("ims.ledger.rows").gauge().value());
+    assertEquals(1, registry.get("ims.ledger.warmed").gauge().value());
+  }
+
+  /** Tests the multi-item and quantity threshold searches answered from the bitmap index. */
+  @Test
+  void testFindSitesHoldingAllAndAtLeast() {
+    assertEquals(List.of(site1), ledger.findSitesHoldingAll(new long[] {10L, 20L}).getValue());
+    assertEquals(List.of(), ledger.findSitesHoldingAll(new long[] {10L, 30L}).getValue());
+
+    assertEquals(
+        List.of(site1, site2),
+        ledger.findSitesHoldingAtLeast(new long[] {10L}, new int[] {3}).getValue());
+    assertEquals(
+        List.of(site1), ledger.findSitesHoldingAtLeast(new long[] {10L}, new int[] {4}).getValue());
+    assertEquals(
+        List.of(),
+        ledger.findSitesHoldingAtLeast(new long[] {10L, 20L}, new int[] {1, 8}).getValue());
+
+    ledger.put(2L, 20L, 9);
+    assertEquals(
+        List.of(site1, site2), ledger.findSitesHoldingAll(new long[] {20L, 10L}).getValue());
+    assertEquals(
+        List.of(site2),
+        ledger.findSitesHoldingAtLeast(new long[] {10L, 20L}, new int[] {1, 8}).getValue());
+  }
+
+  /** Tests that adjust() and put() update the ledger outside of a transaction. */
+  @Test
+  void testWrites() {
+    ledger.adjust(1L, 10L, -5);
+    ledger.put(2L, 20L, 4);
+    assertEquals(0, ledger.findBySiteIdAndItemId(1L, 10L).getValue().getQuantity());
+    assertEquals(4, ledger.findBySiteIdAndItemId(2L, 20L).getValue().getQuantity());
+    assertEquals(List.of(site1, site2), ledger.findSitesByItemId(20L).getValue());
+  }
+
+  /**
+   * Tests that adjusting a row the ledger does not know makes the site reload instead of guessing
+   * its quantity, while the row still joins the item-to-sites index.
+   */
+  @Test
+  void testAdjustUnknownRowInvalidatesSite() {
+    ledger.adjust(2L, 20L, 4);
+    assertFalse(ledger.findBySiteId(2L).isHit());
+    assertEquals(List.of(site1, site2), ledger.findSitesByItemId(20L).getValue());
+    assertFalse(ledger.findSitesHoldingAtLeast(new long[] {20L}, new int[] {1}).isHit());
+  }
+
+  /** Tests that a miss fill started before a write is discarded, and a later one is kept. */
+  @Test
+  void testLoadRacingWithWrite() {
+    ledger.adjust(2L, 20L, 4);
+
+    long staleEpoch = ledger.beginLoad();
+    ledger.adjust(2L, 10L, 1);
+    ledger.loadSite(2L, List.of(new Availability(site2, item1, 3)), staleEpoch);
+    assertFalse(ledger.findBySiteId(2L).isHit());
+
+    long epoch = ledger.beginLoad();
+    ledger.loadSite(
+        2L, List.of(new Availability(site2, item1, 4), new Availability(site2, item2, 4)), epoch);
+    assertEquals(4, ledger.findBySiteIdAndItemId(2L, 10L).getValue().getQuantity());
+  }
+
+  /**
+   * Tests that a miss fill run after a transaction committed, but before the ledger applied its
+   * change, is discarded rather than counting the change twice.
+   */
+  @Test
+  void testLoadBetweenCommitAndChange() {
+    ledger.adjust(2L, 20L, 4);
+    TransactionSynchronizationManager.initSynchronization();
+    List<TransactionSynchronization> committed;
+    try {
+      ledger.adjust(2L, 10L, 4);
+      committed = TransactionSynchronizationManager.getSynchronizations();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    // the database now holds 7 of item 1, which the load reads
+    ledger.loadSite(
+        2L,
+        List.of(new Availability(site2, item1, 7), new Availability(site2, item2, 4)),
+        ledger.beginLoad());
+    assertFalse(ledger.findBySiteId(2L).isHit());
+    committed.forEach(TransactionSynchronization::afterCommit);
+    committed.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    assertFalse(ledger.findBySiteId(2L).isHit());
+
+    ledger.loadSite(
+        2L,
+        List.of(new Availability(site2, item1, 7), new Availability(site2, item2, 4)),
+        ledger.beginLoad());
+    assertEquals(7, ledger.findBySiteIdAndItemId(2L, 10L).getValue().getQuantity());
+  }
+
+  /** Tests that renamed sites and items are rendered with their new values. */
+  @Test
+  void testReferenceRowsAreReplaced() {
+    Item renamed = new Item(10L, "Renamed", 1.0);
+    ledger.putItem(renamed);
+    assertEquals(renamed, ledger.findBySiteIdAndItemId(1L, 10L).getValue().getItemId());
+  }
+
+  /** Tests that the value of each site and the total follow quantity changes. */
+  @Test
+  void testValuationFollowsQuantities() {
+    assertEquals(1900L, ledger.findValueCents(1L).getValue());
+    assertEquals(300L, ledger.findValueCents(2L).getValue());
+    assertEquals(2200L, ledger.findTotalValueCents().getValue());
+
+    ledger.adjust(1L, 10L, -5);
+    ledger.put(2L, 20L, 4);
+    assertEquals(
+        List.of(new SiteValue(1L, 1400), new SiteValue(2L, 1100)),
+        ledger.findSiteValues().getValue());
+    assertEquals(2500L, ledger.findTotalValueCents().getValue());
+
+    ledger.putSite(new Site(3L, "Site 3", "Location 3", "open", null, true));
+    assertEquals(0L, ledger.findValueCents(3L).getValue());
+    assertEquals(2500L, ledger.findTotalValueCents().getValue());
+  }
+
+  /** Tests that a price change revalues every site holding the item, and only those. */
+  @Test
+  void testValuationFollowsPrices() {
+    ledger.putItem(new Item(20L, "Item 2", 2.5));
+    assertEquals(2250L, ledger.findValueCents(1L).getValue());
+    assertEquals(300L, ledger.findValueCents(2L).getValue());
+    assertEquals(2550L, ledger.findTotalValueCents().getValue());
+
+    // a price is counted rounded to the cent, so repeated changes add up exactly
+    ledger.putItem(new Item(10L, "Item 1", 0.105));
+    ledger.putItem(new Item(10L, "Item 1", 1.0));
+    assertEquals(2550L, ledger.findTotalValueCents().getValue());
+  }
+
+  /** Tests that a site out of step leaves the total unanswered until it is reloaded. */
+  @Test
+  void testValuationOfUnloadedSite() {
+    ledger.adjust(2L, 20L, 4);
+    assertFalse(ledger.findValueCents(2L).isHit());
+    assertFalse(ledger.findTotalValueCents().isHit());
+    assertFalse(ledger.findSiteValues().isHit());
+
+    ledger.loadSite(
+        2L,
+        List.of(new Availability(site2, item1, 3), new Availability(site2, item2, 4)),
+        ledger.beginLoad());
+    assertEquals(1100L, ledger.findValueCents(2L).getValue());
+    assertEquals(3000L, ledger.findTotalValueCents().getValue());
+  }
+
+  /**
+   * Tests that reconciling unloads the sites whose value differs from the recompute, but not those
+   * written to after the recompute started.
+   */
+  @Test
+  void testReconcileValues() {
+    long epoch = ledger.beginLoad();
+    ledger.adjust(1L, 10L, 1);
+    List<Long> drifted =
+        ledger.reconcileValues(List.of(new SiteValue(1L, 1900), new SiteValue(2L, 400)), epoch);
+    assertEquals(List.of(2L), drifted);
+    assertTrue(ledger.findValueCents(1L).isHit());
+    assertFalse(ledger.findValueCents(2L).isHit());
+
+    MeterRegistry registry = new SimpleMeterRegistry();
+    new LedgerMetrics(ledger).bindTo(registry);
+    assertEquals(1, registry.get("ims.ledger.valuation.drifts").functionCounter().count());
+    assertTrue(Double.isNaN(registry.get("ims.ledger.value").gauge().value()));
+
+    assertEquals(
+        List.of(), ledger.reconcileValues(List.of(new SiteValue(1L, 2000)), ledger.beginLoad()));
+  }
+
+  /**
+   * Tests that a site id beyond the int range is accepted, sends the item-to-sites lookups to the
+   * database, and is still revalued when a price changes.
+   */
+  @Test
+  void testWideSiteId() {
+    long wide = Integer.MAX_VALUE + 1L;
+    ledger.putSite(new Site(wide, "Site W", "Location W", "open", null, true));
+    ledger.put(wide, 10L, 2);
+    assertFalse(ledger.findSitesByItemId(10L).isHit());
+    assertFalse(ledger.findSitesHoldingAll(new long[] {10L}).isHit());
+    assertFalse(ledger.findSitesHoldingAtLeast(new long[] {10L}, new int[] {1}).isHit());
+    assertEquals(2, ledger.findBySiteIdAndItemId(wide, 10L).getValue().getQuantity());
+
+    ledger.putItem(new Item(10L, "Item 1", 2.0));
+    assertEquals(400L, ledger.findValueCents(wide).getValue());
+    assertEquals(600L, ledger.findValueCents(2L).getValue());
+    assertEquals(3400L, ledger.findTotalValueCents().getValue());
+  }
+
+  /** Tests that the primitive maps keep every entry while growing, including key 0. */
+  @Test
+  void testPrimitiveMapsGrow() {
+    LongIntHashMap quantities = new LongIntHashMap();
+    LongObjectHashMap<String> names = new LongObjectHashMap<>();
+    LongLongHashMap prices = new LongLongHashMap();
+    for (long key = 0; key < 10_000; key++) {
+      quantities.put(key, (int) key);
+      names.put(key, "v" + key);
+      prices.put(key, key * 1_000_000_000L);
+    }
+    assertEquals(10_000, quantities.size());
+    assertEquals(10_000, names.size());
+    assertEquals(10_000, prices.size());
+    for (long key = 0; key < 10_000; key++) {
+      assertEquals((int) key, quantities.get(key, -1));
+      assertEquals("v" + key, names.get(key));
+      assertEquals(key * 1_000_000_000L, prices.get(key, -1));
+    }
+    assertTrue(prices.containsKey(0L));
+    assertFalse(prices.containsKey(10_000L));
+    assertTrue(quantities.addTo(0L, 5));
+    assertEquals(5, quantities.get(0L, -1));
+    assertFalse(quantities.addTo(10_000L, 5));
+    assertEquals(-1, quantities.get(10_000L, -1));
+  }
+}
@@ -0,0 +1,73 @@
+package com.depot.ims.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.models.projections.StockLevel;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.sharding.TestShards;
+import com.depot.ims.threads.BackgroundThreads;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+/**
+ * Unit tests for ValuationReconciler. Validates that a site whose value differs from the database
+ * is reloaded, and that matching sites are left alone.
+ */
+class ValuationReconcilerTest {
+
+  private final Site site1 = new Site(1L, "Site 1", "Location 1", "open", null, true);
+  private final Item item1 = new Item(10L, "Item 1", 1.0);
+  private final AvailabilityRepository availabilityRepository = mock(AvailabilityRepository.class);
+  private InventoryLedger ledger;
+  private ValuationReconciler reconciler;
+
+  /** Warm a ledger with one site holding 5 of an item worth 1.00. */
+  @BeforeEach
+  void setUp() {
+    ledger = new InventoryLedger(1);
+    reconciler =
+        new ValuationReconciler(
+            ledger,
+            availabilityRepository,
+            TestShards.unsharded(),
+            new BackgroundThreads(new MockEnvironment()),
+            0);
+    long epoch = ledger.beginLoad();
+    ledger.loadItemRow(item1);
+    ledger.loadSiteRow(site1);
+    ledger.loadRow(new StockLevel(1L, 10L, 5), epoch);
+    ledger.finishWarm(epoch);
+  }
+
+  /** Tests that a site matching the database is kept. */
+  @Test
+  void testMatchingValuesAreKept() {
+    when(availabilityRepository.sumValueCentsBySite()).thenReturn(List.of(new SiteValue(1L, 500)));
+
+    assertEquals(List.of(), reconciler.reconcile());
+    verify(availabilityRepository, never()).findBySiteId(1L);
+  }
+
+  /** Tests that a site that drifted from the database is reloaded with the database's rows. */
+  @Test
+  void testDriftedSiteIsReloaded() {
+    when(availabilityRepository.sumValueCentsBySite()).thenReturn(List.of(new SiteValue(1L, 800)));
+    when(availabilityRepository.findBySiteId(1L))
+        .thenReturn(List.of(new Availability(site1, item1, 8)));
+
+    assertEquals(List.of(1L), reconciler.reconcile());
+    assertEquals(800L, ledger.findValueCents(1L).getValue());
+    assertEquals(8, ledger.findQuantity(1L, 10L).getValue());
+    assertEquals(800L, ledger.findTotalValueCents().getValue());
+  }
+}
@@ -0,0 +1,93 @@
+package com.depot.ims.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.depot.ims.controllers.SiteController;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.services.AuditService;
+import com.depot.ims.services.ListingService;
+import com.depot.ims.services.SiteService;
+import com.depot.ims.services.ValuationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.filter.ServerHttpObservationFilter;
+
+/**
+ * Tests for HandlerObservationConvention. Requests go through the same observation filter Spring
+ * Boot installs, in front of a standalone SiteController, and the resulting http.server.requests
+ * timers are read back from a SimpleMeterRegistry.
+ */
+class HandlerObservationConventionTest {
+
+  private MeterRegistry meterRegistry;
+  private MockMvc mockMvc;
+
+  /** Route observations into a fresh meter registry and mock the SiteRepository. */
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    ObservationRegistry observationRegistry = ObservationRegistry.create();
+    observationRegistry
+        .observationConfig()
+        .observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+
+    SiteRepository siteRepository = mock(SiteRepository.class);
+    when(siteRepository.findAll()).thenReturn(List.of());
+    SiteController siteController =
+        new SiteController(
+            siteRepository,
+            mock(SiteService.class),
+            mock(AuditService.class),
+            mock(ListingService.class),
+            mock(ValuationService.class));
+    mockMvc =
+        MockMvcBuilders.standaloneSetup(siteController)
+            .addFilters(
+                new ServerHttpObservationFilter(
+                    observationRegistry, new HandlerObservationConvention()))
+            .build();
+  }
+
+  /** Tests that a handled request is timed with its controller and handler method. */
+  @Test
+  void testTagsControllerAndMethod() throws Exception {
+    mockMvc.perform(get("/sites")).andExpect(status().isOk());
+    mockMvc.perform(get("/sites")).andExpect(status().isOk());
+
+    Timer timer =
+        meterRegistry
+            .get("http.server.requests")
+            .tag(HandlerObservationConvention.CONTROLLER, "SiteController")
+            .tag(HandlerObservationConvention.CONTROLLER_METHOD, "getSites")
+            .tag("uri", "/sites")
+            .tag("status", "200")
+            .timer();
+    assertEquals(2, timer.count());
+  }
+
+  /** Tests that a request no handler matched is tagged "none" instead of missing the tags. */
+  @Test
+  void testUnmatchedRequest() throws Exception {
+    mockMvc.perform(get("/nowhere")).andExpect(status().isNotFound());
+
+    Timer timer =
+        meterRegistry
+            .get("http.server.requests")
+            .tag(HandlerObservationConvention.CONTROLLER, "none")
+            .tag(HandlerObservationConvention.CONTROLLER_METHOD, "none")
+            .timer();
+    assertEquals(1, timer.count());
+  }
+}
@@ -0,0 +1,90 @@
+package com.depot.ims.metrics;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Map;
+
+/**
+ * Assertions on the SQL a block of code issues, for tests whose Hibernate has the hooks of
+ * SqlTrackingConfiguration registered, e.g. through
+ * {@code @Import(SqlTrackingConfiguration.class)}:
+ *
+ * <pre>
+ *   SqlAssertions.assertStatementsAtMost(3, () -&gt; shipService.addShip(request));
+ * </pre>
+ *
+ * <p>Only statements prepared by Hibernate on the calling thread are counted.
+ */
+public final class SqlAssertions {
+
+  /** A block of code under test. */
+  @FunctionalInterface
+  public interface Action {
+    void run() throws Exception;
+  }
+
+  private SqlAssertions() {}
+
+  /**
+   * Run a block of code and return the SQL it issued.
+   *
+   * @param action the code to run
+   * @return the statements, entities loaded and execution time of the block
+   * @throws Exception whatever the block throws
+   */
+  public static SqlStatementStats measure(Action action) throws Exception {
+    SqlStatementStats stats = SqlStatementTracker.start();
+    try {
+      action.run();
+    } finally {
+      SqlStatementTracker.stop();
+    }
+    return stats;
+  }
+
+  /**
+   * Assert that a block of code issues at most a number of statements.
+   *
+   * @param max the most statements allowed
+   * @param action the code to run
+   * @return the SQL the block issued
+   * @throws Exception whatever the block throws
+   */
+  public static SqlStatementStats assertStatementsAtMost(int max, Action action) throws Exception {
+    SqlStatementStats stats = measure(action);
+    if (stats.getStatements() > max) {
+      fail("Expected at most " + max + " statements, but " + describe(stats));
+    }
+    return stats;
+  }
+
+  /**
+   * Assert that a block of code prepares no statement more than a number of times, i.e. does not
+   * fetch row by row what one query could fetch at once.
+   *
+   * @param maxRepeats the most times one statement may be prepared
+   * @param action the code to run
+   * @return the SQL the block issued
+   * @throws Exception whatever the block throws
+   */
+  public static SqlStatementStats assertNoStatementRepeatedMoreThan(int maxRepeats, Action action)
+      throws Exception {
+    SqlStatementStats stats = measure(action);
+    if (!stats.repeated(maxRepeats + 1).isEmpty()) {
+      fail(
+          "Expected no statement repeated more than "
+              + maxRepeats
+              + " times, but "
+              + describe(stats));
+    }
+    return stats;
+  }
+
+  private static String describe(SqlStatementStats stats) {
+    StringBuilder description = new StringBuilder().append(stats).append(':');
+    for (Map.Entry<String, Integer> count : stats.getCounts().entrySet()) {
+      description.append("\n  ").append(count.getValue()).append("x ").append(count.getKey());
+    }
+    return description.toString();
+  }
+}
@@ -0,0 +1,108 @@
+package com.depot.ims.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Item;
+import com.depot.ims.repositories.ItemRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Integration tests for SqlStatementTracker and SqlBudgetFilter using the H2 in-memory database,
+ * with the Hibernate hooks registered by SqlTrackingConfiguration.
+ */
+@DataJpaTest
+@Import(SqlTrackingConfiguration.class)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop"
+    })
+class SqlStatementTrackerTest {
+
+  @Autowired private ItemRepository itemRepository;
+  @Autowired private TestEntityManager entityManager;
+  private List<Item> items;
+
+  /** Save three items and clear the persistence context, so later reads hit the database. */
+  @BeforeEach
+  void setUp() {
+    items =
+        itemRepository.saveAllAndFlush(
+            List.of(new Item("Item 1", 1.0), new Item("Item 2", 2.0), new Item("Item 3", 3.0)));
+    entityManager.clear();
+  }
+
+  /** Tests that statements and loaded entities are attributed to the tracked block. */
+  @Test
+  void testMeasure() throws Exception {
+    SqlStatementStats stats = SqlAssertions.measure(() -> itemRepository.findByItemName("Item 2"));
+    assertEquals(1, stats.getStatements());
+    assertEquals(1, stats.getEntitiesLoaded());
+    assertTrue(stats.getExecutionNanos() > 0);
+    assertNull(SqlStatementTracker.current());
+  }
+
+  /** Tests that the same query prepared once per id is reported as repeated. */
+  @Test
+  void testRepeatedStatements() throws Exception {
+    SqlStatementStats stats =
+        SqlAssertions.measure(
+            () -> items.forEach(item -> itemRepository.findByItemName(item.getItemName())));
+    assertEquals(3, stats.getStatements());
+    assertEquals(1, stats.repeated(3).size());
+    assertEquals(3, stats.repeated(3).values().iterator().next());
+    assertTrue(stats.repeated(4).isEmpty());
+
+    assertThrows(
+        AssertionFailedError.class,
+        () ->
+            SqlAssertions.assertNoStatementRepeatedMoreThan(
+                2, () -> items.forEach(item -> itemRepository.findByItemName(item.getItemName()))));
+    assertThrows(
+        AssertionFailedError.class,
+        () -> SqlAssertions.assertStatementsAtMost(2, () -> items.forEach(this::findByName)));
+    SqlAssertions.assertStatementsAtMost(3, () -> items.forEach(this::findByName));
+  }
+
+  /** Tests that the filter records the SQL of a request and counts requests over budget. */
+  @Test
+  void testBudgetFilter() throws Exception {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    SqlBudgetFilter filter = new SqlBudgetFilter(registry, 2, 2);
+
+    filter.doFilter(
+        new MockHttpServletRequest("GET", "/items"),
+        new MockHttpServletResponse(),
+        (request, response) -> items.forEach(this::findByName));
+
+    assertEquals(3, registry.get("ims.request.sql.statements").summary().totalAmount());
+    assertEquals(1, registry.get("ims.request.sql.time").timer().count());
+    assertEquals(
+        1,
+        registry
+            .get("ims.request.sql.over.budget")
+            .tag(HandlerObservationConvention.CONTROLLER, "none")
+            .counter()
+            .count());
+    assertNull(SqlStatementTracker.current());
+  }
+
+  private void findByName(Item item) {
+    itemRepository.findByItemName(item.getItemName());
+  }
+}
@@ -2,14 +2,20 @@ package com.depot.ims.repositories;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
 import com.depot.ims.models.Audit;
+import com.depot.ims.response.AuditResponse;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.TestPropertySource;
 
 @DataJpaTest
@@ -29,10 +35,10 @@ public class AuditTest {
         Audit.builder()
             // .auditId(1L)
             .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.SITE_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
@@ -41,8 +47,8 @@ public class AuditTest {
         Audit.builder()
             // .auditId(2L)
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -51,10 +57,10 @@ public class AuditTest {
         Audit.builder()
             // .auditId(3L)
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -88,4 +94,75 @@ public class AuditTest {
     assertEquals(1, result.size());
     assertEquals("2024-03-16 11:22:33.0", result.get(0).getActionTimestamp().toString());
   }
+
+  @Test
+  void testFindPageAfter() {
+    List<AuditResponse> first = auditRepository.findPageAfter(0L, PageRequest.of(0, 2));
+    assertEquals(2, first.size());
+    assertTrue(first.get(0).getAuditId() < first.get(1).getAuditId());
+
+    List<AuditResponse> rest =
+        auditRepository.findPageAfter(first.get(1).getAuditId(), PageRequest.of(0, 2));
+    assertEquals(1, rest.size());
+    assertEquals("items", rest.get(0).getTableName());
+  }
+
+  @Test
+  void testFindPageOnTableAfter() {
+    List<AuditResponse> first =
+        auditRepository.findPageOnTableAfter("sites", 0L, PageRequest.of(0, 1));
+    assertEquals(1, first.size());
+    List<AuditResponse> second =
+        auditRepository.findPageOnTableAfter(
+            "sites", first.get(0).getAuditId(), PageRequest.of(0, 1));
+    assertEquals(1, second.size());
+    assertEquals("INSERT", second.get(0).getAction());
+  }
+
+  @Test
+  void testFindPageOnEntityAfter() {
+    List<AuditResponse> site =
+        auditRepository.findPageOnEntityAfter("sites", 1L, 0L, PageRequest.of(0, 10));
+    assertEquals(2, site.size());
+    assertEquals("siteName", site.get(0).getFieldName());
+    assertEquals("1", site.get(0).getRowKey());
+    assertEquals("oldName", site.get(0).getOldValue());
+    assertEquals("newName", site.get(0).getNewValue());
+    assertEquals("newSite", site.get(1).getNewValue());
+    assertTrue(
+        auditRepository.findPageOnEntityAfter("sites", 2L, 0L, PageRequest.of(0, 10)).isEmpty());
+  }
+
+  @Test
+  void testFindPageBetweenPeriodAfter() {
+    Timestamp start = Timestamp.valueOf("2024-01-01 00:00:00");
+    Timestamp end = Timestamp.valueOf("2024-12-31 00:00:00");
+    List<AuditResponse> first =
+        auditRepository.findPageBetweenPeriodAfter(start, end, start, 0L, PageRequest.of(0, 2));
+    assertEquals(2, first.size());
+    assertEquals("2024-02-16 11:22:33.0", first.get(0).getActionTimestamp().toString());
+    assertEquals("2024-03-16 11:22:33.0", first.get(1).getActionTimestamp().toString());
+
+    AuditResponse last = first.get(1);
+    List<AuditResponse> rest =
+        auditRepository.findPageBetweenPeriodAfter(
+            start, end, last.getActionTimestamp(), last.getAuditId(), PageRequest.of(0, 2));
+    assertEquals(1, rest.size());
+    assertEquals("2024-04-16 11:22:33.0", rest.get(0).getActionTimestamp().toString());
+  }
+
+  @Test
+  void testStreamQueries() {
+    try (Stream<AuditResponse> all = auditRepository.streamAll()) {
+      assertEquals(3, all.count());
+    }
+    try (Stream<AuditResponse> sites = auditRepository.streamByTableName("sites")) {
+      assertEquals(2, sites.count());
+    }
+    try (Stream<AuditResponse> period =
+        auditRepository.streamBetweenPeriod(
+            Timestamp.valueOf("2024-2-28 11:22:33"), Timestamp.valueOf("2024-3-28 11:22:33"))) {
+      assertEquals(1, period.count());
+    }
+  }
 }
@@ -1,15 +1,23 @@
 package com.depot.ims.repositories;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.depot.ims.models.Availability;
 import com.depot.ims.models.Item;
 import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.models.projections.StockLevel;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.TestPropertySource;
 
 /**
@@ -30,6 +38,8 @@ public class AvailabilityTest {
 
   @Autowired private SiteRepository siteRepository;
 
+  @Autowired private TestEntityManager entityManager;
+
   /**
    * Tests retrieval of all availability entities by site id. Validates that the findBySiteId
    * operation can successfully retrieve the correct number of availability entities, and check the
@@ -130,4 +140,187 @@ public class AvailabilityTest {
     assertEquals(site1.getSiteId(), result.get(0).getSiteId());
     assertEquals(site2.getSiteId(), result.get(1).getSiteId());
   }
+
+  /**
+   * Tests the grouped site search. Validates that only the sites holding every one of the items are
+   * returned, and that the quantity threshold query filters on the quantity.
+   */
+  @Test
+  void testFindSiteIdsHoldingAllAndMinQuantity() {
+    Site site1 = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Site site2 = siteRepository.save(new Site("Site 2", "Location 2", "Open", null, true));
+    Item item1 = itemRepository.save(new Item("Item 1", 12.99));
+    Item item2 = itemRepository.save(new Item("Item 2", 5.99));
+    availabilityRepository.save(new Availability(site1, item1, 10));
+    availabilityRepository.save(new Availability(site1, item2, 2));
+    availabilityRepository.save(new Availability(site2, item1, 4));
+
+    List<Long> holdingBoth =
+        availabilityRepository.findSiteIdsHoldingAll(
+            List.of(item1.getItemId(), item2.getItemId()), 2L);
+    assertEquals(List.of(site1.getSiteId()), holdingBoth);
+
+    List<Long> holdingItem1 =
+        availabilityRepository.findSiteIdsHoldingAll(List.of(item1.getItemId()), 1L);
+    assertEquals(2, holdingItem1.size());
+
+    assertEquals(
+        List.of(site1.getSiteId()),
+        availabilityRepository.findSiteIdsByItemIdAndMinQuantity(item1.getItemId(), 5));
+    assertTrue(
+        availabilityRepository.findSiteIdsByItemIdAndMinQuantity(item2.getItemId(), 3).isEmpty());
+  }
+
+  /**
+   * Tests the set-based locked read. Validates that only the availabilities of the given items at
+   * the given sites are returned, ordered by site and item.
+   */
+  @Test
+  void testFindBySiteIdsAndItemIdsForUpdate() {
+    Site site1 = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Site site2 = siteRepository.save(new Site("Site 2", "Location 2", "Open", null, true));
+    Site site3 = siteRepository.save(new Site("Site 3", "Location 3", "Open", null, true));
+    Item item1 = itemRepository.save(new Item("Item 1", 12.99));
+    Item item2 = itemRepository.save(new Item("Item 2", 5.99));
+    availabilityRepository.save(new Availability(site2, item2, 1));
+    availabilityRepository.save(new Availability(site1, item1, 2));
+    availabilityRepository.save(new Availability(site3, item1, 3));
+    availabilityRepository.save(new Availability(site2, item1, 4));
+
+    List<Availability> result =
+        availabilityRepository.findBySiteIdsAndItemIdsForUpdate(
+            List.of(site1.getSiteId(), site2.getSiteId()),
+            List.of(item1.getItemId(), item2.getItemId()));
+
+    assertEquals(3, result.size());
+    assertEquals(2, result.get(0).getQuantity());
+    assertEquals(4, result.get(1).getQuantity());
+    assertEquals(1, result.get(2).getQuantity());
+  }
+
+  /**
+   * Tests the delta updates on quantity. Validates that incrementQuantity and decrementQuantity
+   * change the row in place, that decrementQuantity refuses to go below zero, and that both report
+   * no affected row for an availability that does not exist.
+   */
+  @Test
+  void testIncrementAndDecrementQuantity() {
+    Site site = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Item item = itemRepository.save(new Item("Item 1", 12.99));
+    availabilityRepository.save(new Availability(site, item, 10));
+
+    assertEquals(
+        1, availabilityRepository.incrementQuantity(site.getSiteId(), item.getItemId(), 5));
+    assertEquals(
+        15,
+        availabilityRepository.findQuantityBySiteIdAndItemId(site.getSiteId(), item.getItemId()));
+
+    assertEquals(
+        1, availabilityRepository.decrementQuantity(site.getSiteId(), item.getItemId(), 15));
+    assertEquals(
+        0, availabilityRepository.decrementQuantity(site.getSiteId(), item.getItemId(), 1));
+    assertEquals(
+        0,
+        availabilityRepository.findQuantityBySiteIdAndItemId(site.getSiteId(), item.getItemId()));
+
+    assertEquals(0, availabilityRepository.incrementQuantity(site.getSiteId(), -1L, 5));
+    assertNull(availabilityRepository.findQuantityBySiteIdAndItemId(site.getSiteId(), -1L));
+  }
+
+  /**
+   * Tests streaming every availability as a StockLevel. Validates that the projection carries the
+   * ids and quantity of each row.
+   */
+  @Test
+  void testStreamAllStockLevels() {
+    Site site = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Item item1 = itemRepository.save(new Item("Item 1", 12.99));
+    Item item2 = itemRepository.save(new Item("Item 2", 15.99));
+    availabilityRepository.save(new Availability(site, item1, 10));
+    availabilityRepository.save(new Availability(site, item2, 20));
+
+    List<StockLevel> result;
+    try (Stream<StockLevel> rows = availabilityRepository.streamAllStockLevels()) {
+      result = rows.toList();
+    }
+
+    assertEquals(2, result.size());
+    assertTrue(result.contains(new StockLevel(site.getSiteId(), item1.getItemId(), 10)));
+    assertTrue(result.contains(new StockLevel(site.getSiteId(), item2.getItemId(), 20)));
+  }
+
+  /**
+   * Tests the stock value sums. Validates that each unit price is rounded to the cent and
+   * multiplied by the quantity, per site and for one site, and that a site holding nothing is worth
+   * 0.
+   */
+  @Test
+  void testSumValueCents() {
+    Site site = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Site other = siteRepository.save(new Site("Site 2", "Location 2", "Open", null, true));
+    Site empty = siteRepository.save(new Site("Site 3", "Location 3", "Open", null, true));
+    Item item1 = itemRepository.save(new Item("Item 1", 12.99));
+    Item item2 = itemRepository.save(new Item("Item 2", 0.105));
+    availabilityRepository.save(new Availability(site, item1, 10));
+    availabilityRepository.save(new Availability(site, item2, 20));
+    availabilityRepository.save(new Availability(other, item1, 3));
+
+    List<SiteValue> values = availabilityRepository.sumValueCentsBySite();
+    assertEquals(2, values.size());
+    assertTrue(values.contains(new SiteValue(site.getSiteId(), 12990 + 20 * 11)));
+    assertTrue(values.contains(new SiteValue(other.getSiteId(), 3897)));
+    assertEquals(3897L, availabilityRepository.sumValueCentsBySiteId(other.getSiteId()));
+    assertEquals(0L, availabilityRepository.sumValueCentsBySiteId(empty.getSiteId()));
+  }
+
+  /**
+   * Tests the ids-only listing of a site. Validates that it holds one StockLevel per availability
+   * of the site, in itemId order.
+   */
+  @Test
+  void testFindStockLevelsBySiteId() {
+    Site site = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Site other = siteRepository.save(new Site("Site 2", "Location 2", "Open", null, true));
+    Item item1 = itemRepository.save(new Item("Item 1", 12.99));
+    Item item2 = itemRepository.save(new Item("Item 2", 15.99));
+    availabilityRepository.save(new Availability(site, item2, 20));
+    availabilityRepository.save(new Availability(site, item1, 10));
+    availabilityRepository.save(new Availability(other, item1, 30));
+
+    assertEquals(
+        List.of(
+            new StockLevel(site.getSiteId(), item1.getItemId(), 10),
+            new StockLevel(site.getSiteId(), item2.getItemId(), 20)),
+        availabilityRepository.findStockLevelsBySiteId(site.getSiteId()));
+  }
+
+  /**
+   * Tests that the site and item of an availability are lazy. Validates that the lock query leaves
+   * them unloaded, and that the reads returned to clients load them in the same statement.
+   */
+  @Test
+  void testSiteAndItemAreLoadedOnlyThroughTheEntityGraph() {
+    Site site = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Item item = itemRepository.save(new Item("Item 1", 12.99));
+    availabilityRepository.save(new Availability(site, item, 10));
+    entityManager.flush();
+    entityManager.clear();
+
+    Availability locked =
+        availabilityRepository.findBySiteIdAndItemIdForUpdate(site.getSiteId(), item.getItemId());
+    assertFalse(Hibernate.isInitialized(locked.getSiteId()));
+    assertFalse(Hibernate.isInitialized(locked.getItemId()));
+    assertEquals(site.getSiteId(), locked.getSiteId().getSiteId());
+    entityManager.clear();
+
+    Availability read =
+        availabilityRepository.findBySiteIdAndItemId(site.getSiteId(), item.getItemId());
+    assertTrue(Hibernate.isInitialized(read.getSiteId()));
+    assertTrue(Hibernate.isInitialized(read.getItemId()));
+    entityManager.clear();
+
+    List<Availability> all = availabilityRepository.findAll();
+    assertTrue(Hibernate.isInitialized(all.get(0).getSiteId()));
+    assertEquals("Item 1", all.get(0).getItemId().getItemName());
+  }
 }
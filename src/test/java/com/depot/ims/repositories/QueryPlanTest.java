@@ -0,0 +1,327 @@
+package com.depot.ims.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs every custom repository query against the H2 test database, captures the SQL Hibernate
+ * generates for it, and fails if EXPLAIN shows that any table in the plan is read with a full scan.
+ * A query added to a repository without a matching index, or without an entry here, fails the
+ * build.
+ */
+@DataJpaTest
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+          + "com.depot.ims.repositories.QueryPlanTest$RecordingInspector"
+    })
+public class QueryPlanTest {
+
+  // queries that read the whole table on purpose, so a scan is their intended plan
+  private static final Set<String> FULL_READS =
+      Set.of(
+          "AuditRepository.streamRowsAll",
+          "AuditOutboxRepository.findOldest",
+          "AvailabilityRepository.streamAllStockLevels",
+          "AvailabilityRepository.streamAll",
+          "AvailabilityRepository.sumValueCentsBySite",
+          "ItemRepository.streamAll");
+
+  @Autowired AuditRepository auditRepository;
+  @Autowired AuditOutboxRepository auditOutboxRepository;
+  @Autowired AvailabilityRepository availabilityRepository;
+  @Autowired ItemRepository itemRepository;
+  @Autowired ShipRepository shipRepository;
+  @Autowired ShipmentRepository shipmentRepository;
+  @Autowired SiteRepository siteRepository;
+  @Autowired StockChangeRepository stockChangeRepository;
+  @Autowired StockCheckpointRepository stockCheckpointRepository;
+  @Autowired UserRepository userRepository;
+  @Autowired DataSource dataSource;
+
+  /** Collects the SQL of every statement Hibernate prepares. */
+  public static class RecordingInspector implements StatementInspector {
+    static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+      STATEMENTS.add(sql);
+      return sql;
+    }
+  }
+
+  private Map<String, Runnable> queries() {
+    Timestamp start = Timestamp.valueOf("2024-01-01 00:00:00");
+    Timestamp end = Timestamp.valueOf("2024-12-31 00:00:00");
+    Item item = itemRepository.save(new Item("Item 1", 1.0));
+    Site site = siteRepository.save(new Site("Site 1", "Location 1", "Open", null, true));
+    Shipment shipment =
+        shipmentRepository.save(
+            Shipment.builder().source(1L).destination(2L).shipmentStatus("In Transit").build());
+
+    Map<String, Runnable> queries = new LinkedHashMap<>();
+    queries.put("AuditRepository.findByAuditId", () -> auditRepository.findByAuditId(1L));
+    queries.put("AuditRepository.findByTableName", () -> auditRepository.findByTableName("sites"));
+    queries.put(
+        "AuditRepository.findBetweenPeriod", () -> auditRepository.findBetweenPeriod(start, end));
+    queries.put(
+        "AuditRepository.findRowPageAfter",
+        () -> auditRepository.findRowPageAfter(0L, PageRequest.of(0, 10)));
+    queries.put(
+        "AuditRepository.findRowPageOnTableAfter",
+        () -> auditRepository.findRowPageOnTableAfter("sites", 0L, PageRequest.of(0, 10)));
+    queries.put(
+        "AuditRepository.findRowPageOnEntityAfter",
+        () -> auditRepository.findRowPageOnEntityAfter("sites", 1L, 0L, PageRequest.of(0, 10)));
+    queries.put(
+        "AuditRepository.findRowPageBetweenPeriodAfter",
+        () ->
+            auditRepository.findRowPageBetweenPeriodAfter(
+                start, end, start, 0L, PageRequest.of(0, 10)));
+    queries.put("AuditRepository.streamRowsAll", () -> consume(auditRepository.streamRowsAll()));
+    queries.put(
+        "AuditRepository.streamRowsByTableName",
+        () -> consume(auditRepository.streamRowsByTableName("sites")));
+    queries.put(
+        "AuditRepository.streamRowsBetweenPeriod",
+        () -> consume(auditRepository.streamRowsBetweenPeriod(start, end)));
+    queries.put(
+        "AuditRepository.streamRowsFromUntil",
+        () -> consume(auditRepository.streamRowsFromUntil(start, end)));
+    queries.put(
+        "AuditRepository.findOldestTimestampFrom",
+        () -> auditRepository.findOldestTimestampFrom(start));
+    queries.put(
+        "AuditOutboxRepository.findOldest",
+        () -> auditOutboxRepository.findOldest(PageRequest.of(0, 10)));
+    queries.put(
+        "AvailabilityRepository.findBySiteId",
+        () -> availabilityRepository.findBySiteId(site.getSiteId()));
+    queries.put(
+        "AvailabilityRepository.findStockLevelsBySiteId",
+        () -> availabilityRepository.findStockLevelsBySiteId(site.getSiteId()));
+    queries.put(
+        "AvailabilityRepository.findByItemId",
+        () -> availabilityRepository.findByItemId(item.getItemId()));
+    queries.put(
+        "AvailabilityRepository.findBySiteIdAndItemId",
+        () -> availabilityRepository.findBySiteIdAndItemId(site.getSiteId(), item.getItemId()));
+    queries.put(
+        "AvailabilityRepository.findSitesByItems",
+        () -> availabilityRepository.findSitesByItems(List.of(item)));
+    queries.put(
+        "AvailabilityRepository.findSitesByOneItem",
+        () -> availabilityRepository.findSitesByOneItem(item));
+    queries.put(
+        "AvailabilityRepository.findSiteIdsHoldingAll",
+        () -> availabilityRepository.findSiteIdsHoldingAll(List.of(item.getItemId()), 1L));
+    queries.put(
+        "AvailabilityRepository.findSiteIdsByItemIdAndMinQuantity",
+        () -> availabilityRepository.findSiteIdsByItemIdAndMinQuantity(item.getItemId(), 1));
+    queries.put(
+        "AvailabilityRepository.findBySiteIdAndItemIdForUpdate",
+        () ->
+            availabilityRepository.findBySiteIdAndItemIdForUpdate(
+                site.getSiteId(), item.getItemId()));
+    queries.put(
+        "AvailabilityRepository.findBySiteIdsAndItemIdsForUpdate",
+        () ->
+            availabilityRepository.findBySiteIdsAndItemIdsForUpdate(
+                List.of(site.getSiteId()), List.of(item.getItemId())));
+    queries.put(
+        "AvailabilityRepository.findQuantityBySiteIdAndItemId",
+        () ->
+            availabilityRepository.findQuantityBySiteIdAndItemId(
+                site.getSiteId(), item.getItemId()));
+    queries.put(
+        "AvailabilityRepository.incrementQuantity",
+        () -> availabilityRepository.incrementQuantity(site.getSiteId(), item.getItemId(), 1));
+    queries.put(
+        "AvailabilityRepository.decrementQuantity",
+        () -> availabilityRepository.decrementQuantity(site.getSiteId(), item.getItemId(), 1));
+    queries.put(
+        "AvailabilityRepository.sumValueCentsBySite",
+        () -> availabilityRepository.sumValueCentsBySite());
+    queries.put(
+        "AvailabilityRepository.sumValueCentsBySiteId",
+        () -> availabilityRepository.sumValueCentsBySiteId(site.getSiteId()));
+    queries.put(
+        "AvailabilityRepository.streamAllStockLevels",
+        () -> consume(availabilityRepository.streamAllStockLevels()));
+    queries.put(
+        "AvailabilityRepository.streamAll", () -> consume(availabilityRepository.streamAll()));
+    queries.put(
+        "AvailabilityRepository.streamBySiteLocation",
+        () -> consume(availabilityRepository.streamBySiteLocation("Location 1")));
+    queries.put("ItemRepository.findByItemName", () -> itemRepository.findByItemName("Item 1"));
+    queries.put("ItemRepository.findByItemId", () -> itemRepository.findByItemId(item.getItemId()));
+    queries.put("ItemRepository.streamAll", () -> consume(itemRepository.streamAll()));
+    queries.put("ShipRepository.findByItemId", () -> shipRepository.findByItemId(item.getItemId()));
+    queries.put(
+        "ShipRepository.findByShipmentId",
+        () -> shipRepository.findByShipmentId(shipment.getShipmentId()));
+    queries.put(
+        "ShipRepository.findShippedQuantitiesByShipmentId",
+        () -> shipRepository.findShippedQuantitiesByShipmentId(shipment.getShipmentId()));
+    queries.put(
+        "ShipRepository.findByItemIdAndShipmentId",
+        () -> shipRepository.findByItemIdAndShipmentId(item.getItemId(), shipment.getShipmentId()));
+    queries.put(
+        "ShipRepository.existsByShipmentIdAndItemId",
+        () ->
+            shipRepository.existsByShipmentIdAndItemId(shipment.getShipmentId(), item.getItemId()));
+    queries.put(
+        "ShipmentRepository.findByShipmentId",
+        () -> shipmentRepository.findByShipmentId(shipment.getShipmentId()));
+    queries.put(
+        "ShipmentRepository.findByShipmentSource",
+        () -> shipmentRepository.findByShipmentSource(1L));
+    queries.put("ShipmentRepository.findBySource", () -> shipmentRepository.findBySource(1L));
+    queries.put(
+        "ShipmentRepository.findByShipmentDestination",
+        () -> shipmentRepository.findByShipmentDestination(2L));
+    queries.put(
+        "ShipmentRepository.findByCurrentLocation",
+        () -> shipmentRepository.findByCurrentLocation("Dock"));
+    queries.put(
+        "ShipmentRepository.findByDepartureTime",
+        () -> shipmentRepository.findByDepartureTime(start));
+    queries.put(
+        "ShipmentRepository.findByEstimatedArrivalTime",
+        () -> shipmentRepository.findByEstimatedArrivalTime(start));
+    queries.put(
+        "ShipmentRepository.findByActualArrivalTime",
+        () -> shipmentRepository.findByActualArrivalTime(start));
+    queries.put(
+        "ShipmentRepository.findByShipmentStatus",
+        () -> shipmentRepository.findByShipmentStatus("In Transit"));
+    queries.put("SiteRepository.findBySiteName", () -> siteRepository.findBySiteName("Site 1"));
+    queries.put("SiteRepository.findBySiteId", () -> siteRepository.findBySiteId(site.getSiteId()));
+    queries.put(
+        "SiteRepository.findSiteStatusBySiteId",
+        () -> siteRepository.findSiteStatusBySiteId(site.getSiteId()));
+    queries.put(
+        "StockChangeRepository.findLastChangeIdAtOrBefore",
+        () -> stockChangeRepository.findLastChangeIdAtOrBefore(end));
+    queries.put("StockChangeRepository.findLastChangeId", stockChangeRepository::findLastChangeId);
+    queries.put(
+        "StockChangeRepository.findSiteIdsChangedBetween",
+        () -> stockChangeRepository.findSiteIdsChangedBetween(0L, 100L));
+    queries.put(
+        "StockChangeRepository.findBySiteIdBetween",
+        () -> stockChangeRepository.findBySiteIdBetween(site.getSiteId(), 0L, 100L));
+    queries.put(
+        "StockChangeRepository.findBySiteIdAfterUpTo",
+        () -> stockChangeRepository.findBySiteIdAfterUpTo(site.getSiteId(), 0L, end));
+    queries.put(
+        "StockCheckpointRepository.findLastCheckpointedChangeId",
+        stockCheckpointRepository::findLastCheckpointedChangeId);
+    queries.put(
+        "StockCheckpointRepository.findHistoryStart", stockCheckpointRepository::findHistoryStart);
+    queries.put("UserRepository.findByUserId", () -> userRepository.findByUserId(1L));
+    queries.put("UserRepository.findByUsername", () -> userRepository.findByUsername("user"));
+    return queries;
+  }
+
+  @Test
+  void everyCustomQueryIsCovered() {
+    Set<String> declared = new TreeSet<>();
+    for (Class<?> repository :
+        List.of(
+            AuditRepository.class,
+            AuditOutboxRepository.class,
+            AvailabilityRepository.class,
+            ItemRepository.class,
+            ShipRepository.class,
+            ShipmentRepository.class,
+            SiteRepository.class,
+            StockChangeRepository.class,
+            StockCheckpointRepository.class,
+            UserRepository.class)) {
+      Arrays.stream(repository.getDeclaredMethods())
+          .filter(method -> method.isAnnotationPresent(Query.class))
+          .forEach(method -> declared.add(repository.getSimpleName() + "." + method.getName()));
+    }
+    assertEquals(declared, new TreeSet<>(queries().keySet()));
+  }
+
+  @Test
+  void noCustomQueryScansATable() throws SQLException {
+    List<String> scans = new ArrayList<>();
+    for (Map.Entry<String, Runnable> query : queries().entrySet()) {
+      RecordingInspector.STATEMENTS.clear();
+      query.getValue().run();
+      List<String> statements =
+          RecordingInspector.STATEMENTS.stream()
+              .filter(sql -> !sql.startsWith("insert"))
+              .collect(Collectors.toList());
+      assertFalse(statements.isEmpty(), query.getKey() + " issued no statement");
+      if (FULL_READS.contains(query.getKey())) {
+        continue;
+      }
+      for (String sql : statements) {
+        String plan = explain(sql);
+        if (plan.contains(".tableScan")) {
+          scans.add(query.getKey() + ": " + plan);
+        }
+      }
+    }
+    assertTrue(scans.isEmpty(), String.join("\n", scans));
+  }
+
+  private String explain(String sql) throws SQLException {
+    Connection connection = DataSourceUtils.getConnection(dataSource);
+    try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+      for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+        statement.setNull(i, Types.NULL);
+      }
+      try (ResultSet plan = statement.executeQuery()) {
+        StringBuilder text = new StringBuilder();
+        while (plan.next()) {
+          text.append(plan.getString(1));
+        }
+        return text.toString().replaceAll("\\s+", " ");
+      }
+    } finally {
+      DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+  }
+
+  private static void consume(Stream<?> stream) {
+    try (stream) {
+      stream.forEach(row -> {});
+    }
+  }
+}
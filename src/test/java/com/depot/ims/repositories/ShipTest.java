@@ -1,11 +1,14 @@
 package com.depot.ims.repositories;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.depot.ims.models.Item;
 import com.depot.ims.models.Ship;
 import com.depot.ims.models.Shipment;
+import com.depot.ims.models.projections.ShippedQuantity;
 import java.sql.Timestamp;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
@@ -102,6 +105,24 @@ class ShipTest {
     assertEquals(1, res.size());
   }
 
+  /**
+   * Tests the findShippedQuantitiesByShipmentId() method of ShipRepository
+   *
+   * <p>Checks if the method returns the ids and quantity of the ships of the given shipment.
+   */
+  @Test
+  @DirtiesContext
+  void findShippedQuantitiesByShipmentIdTest() {
+    // Given
+    // setUp() method
+
+    // When
+    List<ShippedQuantity> res = shipRepository.findShippedQuantitiesByShipmentId(2L);
+
+    // Then
+    assertEquals(List.of(new ShippedQuantity(2L, 2L, 20)), res);
+  }
+
   /**
    * Tests the findByItemIdAndShipmentId() method of ShipRepository
    *
@@ -125,6 +146,58 @@ class ShipTest {
     assertEquals(1, res2.size());
   }
 
+  /**
+   * Tests the existsByShipmentIdAndItemId() method of ShipRepository
+   *
+   * <p>Checks that only a shipped (shipmentId, itemId) pair is reported.
+   */
+  @Test
+  @DirtiesContext
+  void existsByShipmentIdAndItemIdTest() {
+    // Given
+    // setUp() method
+    List<Ship> ships = shipRepository.findAll();
+    Long shipmentId = ships.get(0).getShipmentId().getShipmentId();
+
+    // When, Then
+    assertTrue(
+        shipRepository.existsByShipmentIdAndItemId(
+            shipmentId, ships.get(0).getItemId().getItemId()));
+    assertFalse(
+        shipRepository.existsByShipmentIdAndItemId(
+            shipmentId, ships.get(1).getItemId().getItemId()));
+  }
+
+  /**
+   * Tests the persistAll() method of ShipRepository
+   *
+   * <p>Checks that new ships are inserted without being merged first.
+   */
+  @Test
+  @DirtiesContext
+  void persistAllTest() {
+    // Given
+    Item item = createItem("item 3", 9.99);
+    Shipment shipment = createShipment(1, 2, "Dock C", System.currentTimeMillis(), 3600000);
+    List<Ship> ships =
+        List.of(
+            Ship.builder().shipmentId(shipment).itemId(item).quantity(5).build(),
+            Ship.builder()
+                .shipmentId(shipment)
+                .itemId(itemRepository.findByItemId(1L))
+                .quantity(7)
+                .build());
+
+    // When
+    List<Ship> res = shipRepository.persistAll(ships);
+    shipRepository.flush();
+
+    // Then
+    assertEquals(2, res.size());
+    assertEquals(2, shipRepository.findByShipmentId(shipment.getShipmentId()).size());
+    assertEquals(4, shipRepository.findAll().size());
+  }
+
   // Helper methods to create entities
 
   /**
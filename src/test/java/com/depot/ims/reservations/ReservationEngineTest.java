@@ -0,0 +1,229 @@
+package com.depot.ims.reservations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.inventory.LedgerLookup;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.sharding.TestShards;
+import com.depot.ims.threads.BackgroundThreads;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for ReservationEngine. Validates that holds never reserve more than is on hand, even
+ * when taken concurrently, and that confirm, release and expiry each end a hold exactly once.
+ */
+class ReservationEngineTest {
+
+  private static final long TTL = 60_000;
+
+  private final AvailabilityRepository availabilityRepository = mock(AvailabilityRepository.class);
+  private ReservationEngine engine;
+
+  /** Build an engine over a ledger holding 10 of item 10 in site 1, and missing anything else. */
+  @BeforeEach
+  void setUp() {
+    InventoryLedger ledger = mock(InventoryLedger.class);
+    when(ledger.findQuantity(anyLong(), anyLong())).thenReturn(LedgerLookup.miss());
+    when(ledger.findQuantity(1L, 10L)).thenReturn(LedgerLookup.hit(10));
+    engine =
+        new ReservationEngine(
+            ledger,
+            availabilityRepository,
+            TestShards.unsharded(),
+            mock(BackgroundThreads.class),
+            100,
+            64);
+  }
+
+  /** Tests that holds are taken until the stock on hand is reserved, and no further. */
+  @Test
+  void testHoldUpToOnHand() {
+    assertNotNull(engine.hold(1L, 10L, 6, TTL));
+    assertNull(engine.hold(1L, 10L, 5, TTL));
+    assertNotNull(engine.hold(1L, 10L, 4, TTL));
+    assertEquals(10, engine.reservedQuantity(1L, 10L));
+
+    ReservationStats stats = engine.stats();
+    assertEquals(2, stats.getHeld());
+    assertEquals(1, stats.getRejected());
+    assertEquals(2, stats.getOpen());
+    verifyNoInteractions(availabilityRepository);
+  }
+
+  /** Tests that a released hold returns its quantity, and that it can be released only once. */
+  @Test
+  void testRelease() {
+    Reservation reservation = engine.hold(1L, 10L, 10, TTL);
+    assertTrue(engine.release(reservation.getReservationId()));
+    assertFalse(engine.release(reservation.getReservationId()));
+    assertEquals(Reservation.Status.RELEASED, reservation.getStatus());
+    assertEquals(0, engine.reservedQuantity(1L, 10L));
+    assertNull(engine.find(reservation.getReservationId()));
+    assertEquals(0, engine.counterCount());
+    assertNotNull(engine.hold(1L, 10L, 10, TTL));
+    assertEquals(1, engine.counterCount());
+  }
+
+  /** Tests that the wheel expires a hold once its TTL has passed, and not before. */
+  @Test
+  void testExpiry() {
+    Reservation reservation = engine.hold(1L, 10L, 4, 1_000);
+    long now = System.currentTimeMillis();
+    assertEquals(0, engine.expireDue(now));
+    assertEquals(4, engine.reservedQuantity(1L, 10L));
+
+    assertEquals(1, engine.expireDue(reservation.getExpiresAt() + 100));
+    assertEquals(Reservation.Status.EXPIRED, reservation.getStatus());
+    assertEquals(0, engine.reservedQuantity(1L, 10L));
+    assertEquals(0, engine.counterCount());
+    assertEquals(1, engine.stats().getExpired());
+  }
+
+  /** Tests that a hold further out than one turn of the wheel survives the turns before it. */
+  @Test
+  void testExpiryBeyondOneTurn() {
+    // 64 slots of 100 ms make a turn of 6.4 s
+    Reservation reservation = engine.hold(1L, 10L, 1, 20_000);
+    long now = reservation.getCreatedAt();
+    for (long t = now; t < reservation.getExpiresAt() - 100; t += 100) {
+      assertEquals(0, engine.expireDue(t));
+    }
+    assertEquals(1, engine.expireDue(reservation.getExpiresAt() + 100));
+  }
+
+  /** Tests that a hold being confirmed can neither be released nor expire. */
+  @Test
+  void testConfirm() {
+    Reservation reservation = engine.hold(1L, 10L, 3, 1_000);
+    assertSame(reservation, engine.beginConfirm(reservation.getReservationId()));
+    assertNull(engine.beginConfirm(reservation.getReservationId()));
+    assertFalse(engine.release(reservation.getReservationId()));
+    assertEquals(0, engine.expireDue(reservation.getExpiresAt() + 100));
+    assertEquals(3, engine.reservedQuantity(1L, 10L));
+
+    // without a transaction the confirm completes at once
+    engine.confirmAfterCommit(reservation);
+    assertEquals(Reservation.Status.CONFIRMED, reservation.getStatus());
+    assertEquals(0, engine.reservedQuantity(1L, 10L));
+    assertEquals(0, engine.counterCount());
+    assertEquals(1, engine.stats().getConfirmed());
+  }
+
+  /** Tests that an aborted confirm holds again, or expires if its TTL ran out meanwhile. */
+  @Test
+  void testAbortConfirm() {
+    Reservation live = engine.hold(1L, 10L, 2, TTL);
+    engine.beginConfirm(live.getReservationId());
+    engine.abortConfirm(live);
+    assertEquals(Reservation.Status.HELD, live.getStatus());
+
+    Reservation stale = engine.hold(1L, 10L, 2, -1);
+    engine.beginConfirm(stale.getReservationId());
+    engine.abortConfirm(stale);
+    assertEquals(Reservation.Status.EXPIRED, stale.getStatus());
+    assertEquals(2, engine.reservedQuantity(1L, 10L));
+  }
+
+  /** Tests that the quantity on hand is read from the database when the ledger misses. */
+  @Test
+  void testLedgerMissReadsDatabase() {
+    when(availabilityRepository.findQuantityBySiteIdAndItemId(2L, 10L)).thenReturn(5);
+    assertNotNull(engine.hold(2L, 10L, 5, TTL));
+    assertNull(engine.hold(2L, 10L, 1, TTL));
+  }
+
+  /** Tests that concurrent holds on the same stock never reserve more than is on hand. */
+  @Test
+  void testConcurrentHoldsNeverOversell() throws InterruptedException {
+    AtomicInteger granted = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (int i = 0; i < 50; i++) {
+                  Reservation reservation = engine.hold(1L, 10L, 1, TTL);
+                  if (reservation != null) {
+                    granted.incrementAndGet();
+                    if (i % 2 == 0) {
+                      engine.release(reservation.getReservationId());
+                      granted.decrementAndGet();
+                    }
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(granted.get() <= 10);
+    assertEquals(granted.get(), engine.reservedQuantity(1L, 10L));
+    assertEquals(granted.get(), engine.stats().getOpen());
+  }
+
+  /**
+   * Tests that holds racing the removal of a counter that dropped to 0 never reserve more than is
+   * on hand, and that no counter is left once every hold has ended.
+   */
+  @Test
+  void testCounterRemovalNeverOversells() throws InterruptedException {
+    AtomicInteger granted = new AtomicInteger();
+    AtomicInteger oversold = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (int i = 0; i < 2_000; i++) {
+                  Reservation reservation = engine.hold(1L, 10L, 3, TTL);
+                  if (reservation != null) {
+                    if (granted.addAndGet(3) > 10) {
+                      oversold.incrementAndGet();
+                    }
+                    granted.addAndGet(-3);
+                    engine.release(reservation.getReservationId());
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, oversold.get());
+    assertEquals(0, engine.reservedQuantity(1L, 10L));
+    assertEquals(0, engine.counterCount());
+  }
+}
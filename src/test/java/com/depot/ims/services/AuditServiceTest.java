@@ -4,8 +4,19 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import com.depot.ims.audit.AuditArchive;
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.audit.AuditSnapshot;
+import com.depot.ims.audit.AuditWriter;
 import com.depot.ims.models.Audit;
 import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.response.AuditPage;
+import com.depot.ims.response.AuditResponse;
+import com.depot.ims.streaming.JsonStreamer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.util.List;
@@ -13,21 +24,50 @@ import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 public class AuditServiceTest {
   @Mock AuditRepository auditRepositoryMock = mock(AuditRepository.class);
-  @InjectMocks AuditService auditService = new AuditService(auditRepositoryMock);
+  @Mock AuditWriter auditWriterMock = mock(AuditWriter.class);
+  @Mock AuditArchive auditArchiveMock = mock(AuditArchive.class);
+
+  {
+    when(auditArchiveMock.catalog()).thenReturn(AuditArchive.Catalog.EMPTY);
+  }
+
+  @InjectMocks
+  AuditService auditService =
+      new AuditService(
+          auditRepositoryMock,
+          auditWriterMock,
+          new JsonStreamer(
+              mock(PlatformTransactionManager.class),
+              new ObjectMapper(),
+              mock(EntityManager.class)),
+          auditArchiveMock);
+
+  private static AuditResponse response(long auditId, String tableName, String timestamp) {
+    return AuditResponse.builder()
+        .auditId(auditId)
+        .tableName(tableName)
+        .rowKey("1")
+        .action("UPDATE")
+        .actionTimestamp(Timestamp.valueOf(timestamp))
+        .build();
+  }
 
   @Test
   void testFindAll() {
     Audit audit1 =
         Audit.builder()
             .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.SITE_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
@@ -35,8 +75,8 @@ public class AuditServiceTest {
     Audit audit2 =
         Audit.builder()
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -44,10 +84,10 @@ public class AuditServiceTest {
     Audit audit3 =
         Audit.builder()
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -73,10 +113,10 @@ public class AuditServiceTest {
     Audit audit1 =
         Audit.builder()
             .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.SITE_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
@@ -84,8 +124,8 @@ public class AuditServiceTest {
     Audit audit2 =
         Audit.builder()
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -93,10 +133,10 @@ public class AuditServiceTest {
     Audit audit3 =
         Audit.builder()
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -128,10 +168,10 @@ public class AuditServiceTest {
     Audit audit1 =
         Audit.builder()
             .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.SITE_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
@@ -139,8 +179,8 @@ public class AuditServiceTest {
     Audit audit2 =
         Audit.builder()
             .tableName("sites")
-            .rowKey("1")
-            .newValue("newSite")
+            .entityId(1L)
+            .snapshot(AuditSnapshot.ofText("newSite"))
             .action("INSERT")
             .actionTimestamp(Timestamp.valueOf("2024-02-16 11:22:33"))
             .build();
@@ -148,10 +188,10 @@ public class AuditServiceTest {
     Audit audit3 =
         Audit.builder()
             .tableName("items")
-            .fieldName("itemName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .field(AuditField.ITEM_NAME)
+            .entityId(1L)
+            .oldText("oldName")
+            .newText("newName")
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-03-16 11:22:33"))
             .build();
@@ -193,19 +233,194 @@ public class AuditServiceTest {
   }
 
   @Test
-  void testSaveAudit() {
-    Audit audit1 =
+  void testSaveUpdate() {
+    auditService.saveUpdate("Items", AuditField.ITEM_PRICE, 3L, null, 2.5, 3.99);
+    auditService.saveUpdate("sites", AuditField.SITE_NAME, 1L, null, "oldName", "newName");
+    verify(auditWriterMock)
+        .submit(
+            argThat(
+                audits ->
+                    audits.size() == 1
+                        && audits.get(0).getField() == AuditField.ITEM_PRICE
+                        && audits.get(0).getEntityId() == 3L
+                        && audits.get(0).getOldNumber() == 250L
+                        && audits.get(0).getNewNumber() == 399L
+                        && audits.get(0).getOldText() == null
+                        && audits.get(0).getActionTimestamp() != null));
+    verify(auditWriterMock)
+        .submit(
+            argThat(
+                audits ->
+                    audits.get(0).getField() == AuditField.SITE_NAME
+                        && audits.get(0).getOldNumber() == null
+                        && "newName".equals(audits.get(0).getNewText())));
+    verify(auditRepositoryMock, never()).save(any());
+  }
+
+  @Test
+  void testSaveInsertAndDelete() {
+    byte[] snapshot = AuditSnapshot.ofText("row");
+    auditService.saveInsert("Ships", 4L, 3L, snapshot);
+    auditService.saveDelete("Shipments", 4L, null, snapshot);
+    verify(auditWriterMock)
+        .submit(
+            argThat(
+                audits ->
+                    "INSERT".equals(audits.get(0).getAction())
+                        && audits.get(0).getItemId() == 3L
+                        && audits.get(0).getSnapshot() == snapshot));
+    verify(auditWriterMock)
+        .submit(
+            argThat(
+                audits ->
+                    "DELETE".equals(audits.get(0).getAction())
+                        && audits.get(0).getField() == null
+                        && audits.get(0).getEntityId() == 4L));
+  }
+
+  @Test
+  void testFindAllRendersTypedAudits() {
+    Audit audit =
         Audit.builder()
-            .tableName("sites")
-            .fieldName("siteName")
-            .rowKey("1")
-            .oldValue("oldName")
-            .newValue("newName")
+            .auditId(5L)
+            .tableName("Availabilities")
+            .field(AuditField.QUANTITY)
+            .entityId(7L)
+            .itemId(3L)
+            .oldNumber(20L)
+            .newNumber(40L)
             .action("UPDATE")
             .actionTimestamp(Timestamp.valueOf("2024-04-16 11:22:33"))
             .build();
-    when(auditRepositoryMock.save(any())).thenReturn(audit1);
-    auditService.saveAudit(null, null, null, null, null, null);
-    assertTrue(true);
+    when(auditRepositoryMock.findAll()).thenReturn(List.of(audit));
+    @SuppressWarnings("unchecked")
+    List<AuditResponse> res = (List<AuditResponse>) auditService.findAll().getBody();
+    assertEquals("quantity", res.get(0).getFieldName());
+    assertEquals("itemId: 3, siteId: 7", res.get(0).getRowKey());
+    assertEquals("20", res.get(0).getOldValue());
+    assertEquals("40", res.get(0).getNewValue());
+  }
+
+  @Test
+  void testFindAuditsOnEntityPage() {
+    when(auditRepositoryMock.findPageOnEntityAfter("sites", 1L, 0L, PageRequest.of(0, 1)))
+        .thenReturn(List.of(response(4, "sites", "2024-04-16 11:22:33")));
+    AuditPage page =
+        (AuditPage) auditService.findAuditsOnEntityPage("sites", 1L, null, 1).getBody();
+    assertEquals(1, page.getAudits().size());
+    assertNotNull(page.getNextCursor());
+    assertTrue(
+        auditService
+            .findAuditsOnEntityPage("sites", null, null, 1)
+            .getStatusCode()
+            .is4xxClientError());
+    assertEquals(
+        "Invalid cursor", auditService.findAuditsOnEntityPage("sites", 1L, "?", 1).getBody());
+  }
+
+  @Test
+  void testFindAuditsPage() {
+    when(auditRepositoryMock.findPageAfter(0L, PageRequest.of(0, 2)))
+        .thenReturn(
+            List.of(
+                response(1, "sites", "2024-04-16 11:22:33"),
+                response(2, "sites", "2024-02-16 11:22:33")));
+    when(auditRepositoryMock.findPageAfter(2L, PageRequest.of(0, 2)))
+        .thenReturn(List.of(response(3, "items", "2024-03-16 11:22:33")));
+
+    ResponseEntity<?> first = auditService.findAuditsPage(null, 2);
+    assertTrue(first.getStatusCode().is2xxSuccessful());
+    AuditPage firstPage = (AuditPage) first.getBody();
+    assertEquals(2, firstPage.getAudits().size());
+    assertNotNull(firstPage.getNextCursor());
+
+    ResponseEntity<?> second = auditService.findAuditsPage(firstPage.getNextCursor(), 2);
+    assertTrue(second.getStatusCode().is2xxSuccessful());
+    AuditPage secondPage = (AuditPage) second.getBody();
+    assertEquals(1, secondPage.getAudits().size());
+    assertNull(secondPage.getNextCursor());
+  }
+
+  @Test
+  void testFindAuditsPageInvalidArguments() {
+    assertTrue(auditService.findAuditsPage(null, 0).getStatusCode().is4xxClientError());
+    assertTrue(auditService.findAuditsPage(null, 1001).getStatusCode().is4xxClientError());
+    ResponseEntity<?> res = auditService.findAuditsPage("not a cursor!", 10);
+    assertTrue(res.getStatusCode().is4xxClientError());
+    assertEquals("Invalid cursor", res.getBody());
+    assertTrue(
+        auditService.findAuditsOnTablePage(null, null, 10).getStatusCode().is4xxClientError());
+  }
+
+  @Test
+  void testFindAuditsOnTablePage() {
+    when(auditRepositoryMock.findPageOnTableAfter("sites", 0L, PageRequest.of(0, 1)))
+        .thenReturn(List.of(response(4, "sites", "2024-04-16 11:22:33")));
+    when(auditRepositoryMock.findPageOnTableAfter("sites", 4L, PageRequest.of(0, 1)))
+        .thenReturn(List.of());
+
+    AuditPage first = (AuditPage) auditService.findAuditsOnTablePage("sites", null, 1).getBody();
+    assertEquals(1, first.getAudits().size());
+    AuditPage second =
+        (AuditPage) auditService.findAuditsOnTablePage("sites", first.getNextCursor(), 1).getBody();
+    assertTrue(second.getAudits().isEmpty());
+    assertNull(second.getNextCursor());
+  }
+
+  @Test
+  void testFindAuditsBetweenPeriodPage() {
+    Timestamp start = Timestamp.valueOf(LocalDate.parse("2024-01-01").atStartOfDay());
+    Timestamp end = Timestamp.valueOf(LocalDate.parse("2024-12-31").atStartOfDay());
+    Timestamp last = Timestamp.valueOf("2024-02-16 11:22:33");
+    when(auditRepositoryMock.findPageBetweenPeriodAfter(
+            start, end, start, 0L, PageRequest.of(0, 1)))
+        .thenReturn(List.of(response(7, "sites", "2024-02-16 11:22:33")));
+    when(auditRepositoryMock.findPageBetweenPeriodAfter(start, end, last, 7L, PageRequest.of(0, 1)))
+        .thenReturn(List.of());
+
+    AuditPage first =
+        (AuditPage)
+            auditService.findAuditsBetweenPeriodPage("2024-01-01", "2024-12-31", null, 1).getBody();
+    assertEquals(1, first.getAudits().size());
+    AuditPage second =
+        (AuditPage)
+            auditService
+                .findAuditsBetweenPeriodPage("2024-01-01", "2024-12-31", first.getNextCursor(), 1)
+                .getBody();
+    assertTrue(second.getAudits().isEmpty());
+
+    ResponseEntity<?> badDate = auditService.findAuditsBetweenPeriodPage("test", "test", null, 1);
+    assertEquals("Datetime format should be:\nYYYY-MM-DD", badDate.getBody());
+    ResponseEntity<?> badCursor =
+        auditService.findAuditsBetweenPeriodPage("2024-01-01", "2024-12-31", "MTI", 1);
+    assertEquals("Invalid cursor", badCursor.getBody());
+  }
+
+  @Test
+  void testStreamAudits() throws Exception {
+    when(auditRepositoryMock.streamAll())
+        .thenReturn(
+            Stream.of(
+                response(1, "sites", "2024-04-16 11:22:33"),
+                response(2, "items", "2024-02-16 11:22:33")));
+    ResponseEntity<StreamingResponseBody> res = auditService.streamAudits();
+    assertTrue(res.getStatusCode().is2xxSuccessful());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    res.getBody().writeTo(out);
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(2, lines.length);
+    assertTrue(lines[0].contains("\"auditId\":1"));
+    assertTrue(lines[1].contains("\"tableName\":\"items\""));
+  }
+
+  @Test
+  void testStreamAuditsInvalidArguments() throws Exception {
+    assertTrue(auditService.streamAuditsOnTable(null).getStatusCode().is4xxClientError());
+    ResponseEntity<StreamingResponseBody> res = auditService.streamAuditsBetweenPeriod("x", "y");
+    assertTrue(res.getStatusCode().is4xxClientError());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    res.getBody().writeTo(out);
+    assertEquals("Datetime format should be:\nYYYY-MM-DD", out.toString(StandardCharsets.UTF_8));
   }
 }
@@ -3,10 +3,22 @@ package com.depot.ims.services;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.inventory.LedgerLookup;
 import com.depot.ims.models.*;
+import com.depot.ims.models.projections.StockLevel;
 import com.depot.ims.repositories.*;
+import com.depot.ims.response.QuantityChangeResponse;
+import com.depot.ims.sharding.TestShards;
+import com.depot.ims.snapshots.StockHistory;
+import com.depot.ims.streaming.JsonStreamer;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.http.HttpStatus;
@@ -26,8 +38,18 @@ class AvailabilityServiceTest {
   @Mock private ItemRepository itemRepository = mock(ItemRepository.class);
   @Mock private AvailabilityRepository availabilityRepository = mock(AvailabilityRepository.class);
   @Mock private AuditService auditService = mock(AuditService.class);
+  @Mock private StockHistory stockHistory = mock(StockHistory.class);
+  private final InventoryLedger inventoryLedger = new InventoryLedger(1);
   private final AvailabilityService availabilityService =
-      new AvailabilityService(siteRepository, itemRepository, availabilityRepository, auditService);
+      new AvailabilityService(
+          siteRepository,
+          itemRepository,
+          availabilityRepository,
+          auditService,
+          inventoryLedger,
+          mock(JsonStreamer.class),
+          TestShards.unsharded(),
+          stockHistory);
 
   /**
    * Tests adding an availability mock the availability repository Verifies correct return of the
@@ -123,72 +145,100 @@ class AvailabilityServiceTest {
 
   /**
    * Tests retrieving a list of sites by a list of items mock the availability repository, item
-   * repository, and site repository Verifies the correct return of the getSitesByItems method
+   * repository, and site repository Verifies the correct return of the getSitesByItems method when
+   * the ledger is cold and the grouped query answers.
    */
   @Test
   void getSitesByItems() {
     MultiValueMap<String, String> item = new LinkedMultiValueMap<>();
     MultiValueMap<String, String> items = new LinkedMultiValueMap<>();
 
-    Item item1 = new Item(1L, "item1", 3.0);
-    Item item2 = new Item(2L, "item2", 4.0);
-    Item item3 = new Item(3L, "item3", 1.0);
-    Item item4 = new Item(4L, "item4", 1.0);
-
     Site site = new Site(11L, "HomeDepot 2", "W54 N53", "open", null, true);
-    Site site1 = new Site(12L, "HomeDepot 2", "W54 N53", "open", null, true);
     Site site2 = new Site(13L, "HomeDepot 2", "W54 N53", "open", null, true);
-    Site site3 = new Site(14L, "HomeDepot 2", "W54 N53", "open", null, true);
 
     item.add("item1", "1");
     items.add("item2", "2");
     items.add("item3", "3");
+    items.add("item3", "3");
 
-    Availability availability = new Availability(site, item1, 10);
-    Availability availability1 = new Availability(site1, item1, 10);
-    Availability availability2 = new Availability(site2, item1, 10);
-    Availability availability3 = new Availability(site2, item2, 10);
-    Availability availability4 = new Availability(site2, item3, 10);
-
-    List<Site> list1 = new ArrayList<>();
-    list1.add(site);
-    list1.add(site1);
-    list1.add(site2);
-
-    List<Site> list2 = new ArrayList<>();
-    list2.add(site2);
-
-    List<Site> list3 = new ArrayList<>();
-    list3.add(site2);
-
-    when(this.itemRepository.findByItemId(1L)).thenReturn(item1);
-    when(this.itemRepository.findByItemId(2L)).thenReturn(item2);
-    when(this.itemRepository.findByItemId(3L)).thenReturn(item3);
-
-    when(this.availabilityRepository.findSitesByOneItem(item1)).thenReturn(list1);
-    when(this.availabilityRepository.findSitesByOneItem(item2)).thenReturn(list2);
-    when(this.availabilityRepository.findSitesByOneItem(item3)).thenReturn(list3);
+    when(this.availabilityRepository.findSiteIdsHoldingAll(Set.of(2L, 3L), 2L))
+        .thenReturn(List.of(13L));
+    when(this.siteRepository.findAllById(List.of(13L))).thenReturn(List.of(site2));
 
     // Test1: when has multiple items
-    List<Site> expectedList = new ArrayList<>();
-    expectedList.add(site2);
     ResponseEntity<?> response6 = this.availabilityService.getSitesByItems(items);
     assertEquals(HttpStatus.OK, response6.getStatusCode());
-    assertNotNull(response6.getBody());
-    assertEquals(response6.getBody(), expectedList);
+    assertEquals(List.of(site2), response6.getBody());
 
     // Test2: when only has one item
-    List<Item> itemList = new ArrayList<>();
-    itemList.add(item1);
-    List<Site> siteList = new ArrayList<>();
-    siteList.add(site);
-
-    when(this.availabilityRepository.findSitesByItems(itemList)).thenReturn(siteList);
+    when(this.availabilityRepository.findSiteIdsHoldingAll(Set.of(1L), 1L))
+        .thenReturn(List.of(13L, 11L));
+    when(this.siteRepository.findAllById(List.of(13L, 11L))).thenReturn(List.of(site2, site));
 
     ResponseEntity<?> response7 = this.availabilityService.getSitesByItems(item);
     assertEquals(HttpStatus.OK, response7.getStatusCode());
-    assertNotNull(response7.getBody());
-    assertEquals(response7.getBody(), siteList);
+    assertEquals(List.of(site, site2), response7.getBody());
+  }
+
+  /**
+   * Tests that getSitesByItems and getSitesByOrder are answered from a warm ledger without touching
+   * the availability repository.
+   */
+  @Test
+  void getSitesByItemsFromLedger() {
+    Site site = new Site(11L, "HomeDepot 2", "W54 N53", "open", null, true);
+    Site site2 = new Site(13L, "HomeDepot 2", "W54 N53", "open", null, true);
+    InventoryLedger warmLedger = mock(InventoryLedger.class);
+    AvailabilityService service =
+        new AvailabilityService(
+            siteRepository,
+            itemRepository,
+            availabilityRepository,
+            auditService,
+            warmLedger,
+            mock(JsonStreamer.class),
+            TestShards.unsharded(),
+            stockHistory);
+    when(warmLedger.findSitesHoldingAll(new long[] {1L, 2L}))
+        .thenReturn(LedgerLookup.hit(List.of(site, site2)));
+    when(warmLedger.findSitesHoldingAtLeast(new long[] {1L, 2L}, new int[] {4, 2}))
+        .thenReturn(LedgerLookup.hit(List.of(site2)));
+
+    MultiValueMap<String, String> items = new LinkedMultiValueMap<>();
+    items.add("item1", "1");
+    items.add("item2", "2");
+    assertEquals(List.of(site, site2), service.getSitesByItems(items).getBody());
+
+    Map<Long, Integer> order = new LinkedHashMap<>();
+    order.put(1L, 4);
+    order.put(2L, 2);
+    assertEquals(List.of(site2), service.getSitesByOrder(order).getBody());
+    verifyNoInteractions(this.availabilityRepository);
+  }
+
+  /**
+   * Tests that getSitesByOrder intersects the per-item threshold queries when the ledger is cold,
+   * and rejects negative quantities.
+   */
+  @Test
+  void getSitesByOrder() {
+    Site site2 = new Site(13L, "HomeDepot 2", "W54 N53", "open", null, true);
+    when(this.availabilityRepository.findSiteIdsByItemIdAndMinQuantity(1L, 5))
+        .thenReturn(List.of(11L, 13L));
+    when(this.availabilityRepository.findSiteIdsByItemIdAndMinQuantity(2L, 1))
+        .thenReturn(List.of(13L, 14L));
+    when(this.siteRepository.findAllById(Set.of(13L))).thenReturn(List.of(site2));
+
+    Map<Long, Integer> order = new LinkedHashMap<>();
+    order.put(1L, 5);
+    order.put(2L, 1);
+    ResponseEntity<?> response = this.availabilityService.getSitesByOrder(order);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(List.of(site2), response.getBody());
+
+    order.put(3L, -1);
+    assertEquals(
+        HttpStatus.BAD_REQUEST, this.availabilityService.getSitesByOrder(order).getStatusCode());
   }
 
   /**
@@ -197,20 +247,101 @@ class AvailabilityServiceTest {
    */
   @Test
   void TestChangeQuantity() {
+    when(this.availabilityRepository.incrementQuantity(13L, 1L, 20)).thenReturn(1);
+    when(this.availabilityRepository.findQuantityBySiteIdAndItemId(13L, 1L)).thenReturn(40);
+
+    ResponseEntity<?> response8 = this.availabilityService.changeQuantity(13L, 1L, "+", 20);
+    assertEquals(HttpStatus.OK, response8.getStatusCode());
+    assertNotNull(response8.getBody());
+    assertEquals(new QuantityChangeResponse(13L, 1L, 20, 40), response8.getBody());
+    verify(this.siteRepository, never()).existsById(any());
+    verify(this.itemRepository, never()).existsById(any());
+    verify(this.auditService).saveUpdate("Availabilities", AuditField.QUANTITY, 13L, 1L, 20, 40);
+  }
 
+  /**
+   * Tests subtracting more than the site holds. The delta update matches no row, so the row is
+   * locked and the quantity is clamped at zero.
+   */
+  @Test
+  void TestChangeQuantitySubtractClampsAtZero() {
     Item item1 = new Item(1L, "item1", 3.0);
     Site site1 = new Site(13L, "HomeDepot 2", "W54 N53", "open", null, true);
-    Availability availability = new Availability(site1, item1, 20);
-    Availability updatedAvailability = new Availability(site1, item1, 40);
+    Availability availability = new Availability(site1, item1, 5);
 
-    when(this.itemRepository.existsById(1L)).thenReturn(true);
-    when(this.siteRepository.existsById(13L)).thenReturn(true);
-    when(this.availabilityRepository.findBySiteIdAndItemId(13L, 1L)).thenReturn(availability);
-    when(this.availabilityRepository.save(availability)).thenReturn(updatedAvailability);
+    when(this.availabilityRepository.decrementQuantity(13L, 1L, 20)).thenReturn(0);
+    when(this.availabilityRepository.findBySiteIdAndItemIdForUpdate(13L, 1L))
+        .thenReturn(availability);
 
-    ResponseEntity<?> response8 = this.availabilityService.changeQuantity(13L, 1L, "+", 20);
-    assertEquals(HttpStatus.OK, response8.getStatusCode());
-    assertNotNull(response8.getBody());
-    assertEquals(response8.getBody(), updatedAvailability);
+    ResponseEntity<?> response = this.availabilityService.changeQuantity(13L, 1L, "-", 20);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(new QuantityChangeResponse(13L, 1L, 5, 0), response.getBody());
+    assertEquals(0, availability.getQuantity());
+  }
+
+  /**
+   * Tests changing the quantity on a site that does not exist. No row is updated, and the error
+   * message names the missing site.
+   */
+  @Test
+  void TestChangeQuantitySiteNotFound() {
+    when(this.availabilityRepository.incrementQuantity(99L, 1L, 20)).thenReturn(0);
+    when(this.siteRepository.existsById(99L)).thenReturn(false);
+
+    ResponseEntity<?> response = this.availabilityService.changeQuantity(99L, 1L, "+", 20);
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals("Site not found by siteId", response.getBody());
+    verify(this.auditService, never()).saveUpdate(any(), any(), any(), any(), any(), any());
+  }
+
+  /**
+   * Tests that a site held by the InventoryLedger is answered from memory without touching the
+   * repositories, and that quantity changes are reported back to the ledger.
+   */
+  @Test
+  void TestGetAvailabilityFromLedger() {
+    Item item = new Item(20L, "item1", 3.0);
+    Site site = new Site(11L, "HomeDepot 2", "W54 N53", "open", null, true);
+    Availability availability = new Availability(site, item, 10);
+    inventoryLedger.loadSite(11L, List.of(availability), inventoryLedger.beginLoad());
+
+    when(this.availabilityRepository.incrementQuantity(11L, 20L, 5)).thenReturn(1);
+    when(this.availabilityRepository.findQuantityBySiteIdAndItemId(11L, 20L)).thenReturn(15);
+    this.availabilityService.changeQuantity(11L, 20L, "+", 5);
+
+    ResponseEntity<?> response = this.availabilityService.getAvailability(11L);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(List.of(new Availability(site, item, 15)), response.getBody());
+    verify(this.siteRepository, never()).existsById(11L);
+    verify(this.availabilityRepository, never()).findBySiteId(11L);
+  }
+
+  /**
+   * Tests that a quantity change is logged with the quantity it leaves, and that a past stock
+   * lookup parses its moment, a bare date meaning the end of that day, and rejects one it cannot.
+   */
+  @Test
+  void TestStockHistory() {
+    when(this.availabilityRepository.incrementQuantity(11L, 20L, 5)).thenReturn(1);
+    when(this.availabilityRepository.findQuantityBySiteIdAndItemId(11L, 20L)).thenReturn(15);
+    this.availabilityService.changeQuantity(11L, 20L, "+", 5);
+    verify(this.stockHistory).record(11L, 20L, 15);
+
+    List<StockLevel> levels = List.of(new StockLevel(11L, 20L, 10));
+    when(this.siteRepository.existsById(11L)).thenReturn(true);
+    when(this.stockHistory.stockAt(11L, Timestamp.valueOf("2024-05-07 23:59:59.999999999")))
+        .thenReturn(levels);
+    ResponseEntity<?> response = this.availabilityService.getStockHistory(11L, "2024-05-07");
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(levels, response.getBody());
+
+    when(this.stockHistory.stockAt(11L, Timestamp.valueOf("2024-05-07 10:00:00"))).thenReturn(null);
+    response = this.availabilityService.getStockHistory(11L, "2024-05-07T10:00:00");
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+
+    response = this.availabilityService.getStockHistory(11L, "yesterday");
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    response = this.availabilityService.getStockHistory(null, "2024-05-07");
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
   }
 }
@@ -3,8 +3,12 @@ package com.depot.ims.services;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import com.depot.ims.cache.ReferenceCache;
+import com.depot.ims.inventory.InventoryLedger;
 import com.depot.ims.models.Item;
 import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.sharding.TestShards;
+import com.depot.ims.streaming.JsonStreamer;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.http.HttpStatus;
@@ -20,7 +24,14 @@ public class ItemServiceTest {
   @Mock private ItemRepository itemsRepository = mock(ItemRepository.class);
   @Mock private AuditService auditService = mock(AuditService.class);
 
-  private final ItemService itemsService = new ItemService(itemsRepository, auditService);
+  private final ItemService itemsService =
+      new ItemService(
+          itemsRepository,
+          auditService,
+          new InventoryLedger(1),
+          mock(JsonStreamer.class),
+          TestShards.unsharded(),
+          mock(ReferenceCache.class));
 
   /**
    * Tests retrieving an availability mock the item repository Verifies correct return of the
@@ -48,7 +59,7 @@ public class ItemServiceTest {
     Item newItem = new Item(20L, "new", 3.0);
     when(itemsRepository.save(newItem)).thenReturn(newItem);
     ResponseEntity<?> response5 = this.itemsService.addItem(newItem);
-    doNothing().when(auditService).saveAudit(any(), any(), any(), any(), any(), any());
+    doNothing().when(auditService).saveInsert(any(), any(), any(), any());
     assertEquals(HttpStatus.OK, response5.getStatusCode());
     assertNotNull(response5.getBody());
     assertTrue(response5.getBody().equals(newItem));
@@ -0,0 +1,188 @@
+package com.depot.ims.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.depot.ims.listing.Listings;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.User;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.ListingRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.repositories.UserRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.response.ListingPage;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.threads.BackgroundThreads;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+
+/** Tests ListingService against the H2 in-memory database. */
+@DataJpaTest
+@Import({ListingService.class, ListingRepository.class, ShardRouter.class, BackgroundThreads.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop"
+    })
+class ListingServiceTest {
+
+  @Autowired private ListingService listingService;
+  @Autowired private ItemRepository itemRepository;
+  @Autowired private SiteRepository siteRepository;
+  @Autowired private AvailabilityRepository availabilityRepository;
+  @Autowired private UserRepository userRepository;
+
+  private final List<Item> items = new ArrayList<>();
+
+  /** Five items priced 5, 4, 3, 3 and 1, and one site holding the first two. */
+  @BeforeEach
+  void setUp() {
+    double[] prices = {5.0, 4.0, 3.0, 3.0, 1.0};
+    for (int i = 0; i < prices.length; i++) {
+      items.add(itemRepository.save(new Item("Item " + i, prices[i])));
+    }
+    Site site = siteRepository.save(new Site("Site", "Location", "open", null, true));
+    availabilityRepository.save(new Availability(site, items.get(0), 10));
+    availabilityRepository.save(new Availability(site, items.get(1), 20));
+  }
+
+  private ListingPage page(ResponseEntity<?> response) {
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    return (ListingPage) response.getBody();
+  }
+
+  /** Tests offset paging in key order. */
+  @Test
+  void testOffsetPages() {
+    ListingPage first =
+        page(listingService.list(Listings.ITEMS, ListingRequest.builder().size(2).build()));
+    assertEquals(2, first.getRows().size());
+    assertEquals(items.get(0).getItemId(), first.getRows().get(0).get("itemId"));
+    assertEquals(0, first.getPage());
+    assertNotNull(first.getNextCursor());
+
+    ListingPage last =
+        page(listingService.list(Listings.ITEMS, ListingRequest.builder().page(2).size(2).build()));
+    assertEquals(1, last.getRows().size());
+    assertEquals(items.get(4).getItemId(), last.getRows().get(0).get("itemId"));
+    assertNull(last.getNextCursor());
+  }
+
+  /** Tests that following the cursors of a descending sort visits every row once, in order. */
+  @Test
+  void testCursorPagesFollowDescendingSort() {
+    List<Object> visited = new ArrayList<>();
+    String after = null;
+    do {
+      ListingPage page =
+          page(
+              listingService.list(
+                  Listings.ITEMS,
+                  ListingRequest.builder()
+                      .size(2)
+                      .sort("-itemPrice")
+                      .fields("itemName")
+                      .after(after)
+                      .build()));
+      page.getRows().forEach(row -> visited.add(row.get("itemName")));
+      after = page.getNextCursor();
+    } while (after != null);
+
+    // the two items priced 3 are ordered by their key
+    assertEquals(List.of("Item 0", "Item 1", "Item 2", "Item 3", "Item 4"), visited);
+  }
+
+  /** Tests that rows hold only the requested fields, in the requested order. */
+  @Test
+  void testSparseFields() {
+    ListingPage page =
+        page(
+            listingService.list(
+                Listings.ITEMS, ListingRequest.builder().fields("itemPrice,itemName").build()));
+    assertEquals(List.of("itemPrice", "itemName"), List.copyOf(page.getRows().get(0).keySet()));
+
+    ListingPage single =
+        page(
+            listingService.list(Listings.ITEMS, ListingRequest.builder().fields("itemId").build()));
+    assertEquals(Map.of("itemId", items.get(0).getItemId()), single.getRows().get(0));
+  }
+
+  /** Tests that availabilities select the names of their site and item through joins. */
+  @Test
+  void testJoinedFields() {
+    ListingPage page =
+        page(
+            listingService.list(
+                Listings.AVAILABILITIES,
+                ListingRequest.builder().fields("siteName,itemName,quantity").build()));
+    assertEquals(2, page.getRows().size());
+    assertEquals(
+        Map.of("siteName", "Site", "itemName", "Item 0", "quantity", 10), page.getRows().get(0));
+  }
+
+  /** Tests that users are listed without their password. */
+  @Test
+  void testUsersHaveNoPassword() {
+    userRepository.save(new User(null, "user", "secret", "clerk"));
+    ListingPage page =
+        page(listingService.list(Listings.USERS, ListingRequest.builder().size(10).build()));
+    assertFalse(page.getRows().get(0).containsKey("password"));
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        listingService
+            .list(Listings.USERS, ListingRequest.builder().fields("password").build())
+            .getStatusCode());
+  }
+
+  /** Tests the parameters that are rejected. */
+  @Test
+  void testInvalidParameters() {
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        listingService
+            .list(Listings.ITEMS, ListingRequest.builder().size(0).build())
+            .getStatusCode());
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        listingService
+            .list(Listings.ITEMS, ListingRequest.builder().page(-1).build())
+            .getStatusCode());
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        listingService
+            .list(Listings.ITEMS, ListingRequest.builder().page(1).after("x").build())
+            .getStatusCode());
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        listingService
+            .list(Listings.ITEMS, ListingRequest.builder().sort("unknown").build())
+            .getStatusCode());
+    ResponseEntity<?> cursor =
+        listingService.list(Listings.ITEMS, ListingRequest.builder().after("not-a-cursor").build());
+    assertEquals(HttpStatus.BAD_REQUEST, cursor.getStatusCode());
+    assertEquals("Invalid cursor", cursor.getBody());
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        listingService
+            .list(Listings.SITES, ListingRequest.builder().sort("ceaseDate").after("x").build())
+            .getStatusCode());
+  }
+}
@@ -0,0 +1,119 @@
+package com.depot.ims.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.requests.HoldRequest;
+import com.depot.ims.reservations.Reservation;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.response.QuantityChangeResponse;
+import com.depot.ims.sharding.TestShards;
+import com.depot.ims.snapshots.StockHistory;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Unit tests for the ReservationService class. Validates hold requests, and that a confirm debits
+ * the availability with one conditional update, or leaves the hold in place if it cannot.
+ */
+class ReservationServiceTest {
+
+  @Mock private ReservationEngine reservationEngine = mock(ReservationEngine.class);
+  @Mock private AvailabilityRepository availabilityRepository = mock(AvailabilityRepository.class);
+  @Mock private AuditService auditService = mock(AuditService.class);
+  @Mock private InventoryLedger inventoryLedger = mock(InventoryLedger.class);
+  private final ReservationService reservationService =
+      new ReservationService(
+          reservationEngine,
+          availabilityRepository,
+          auditService,
+          inventoryLedger,
+          TestShards.unsharded(),
+          mock(StockHistory.class),
+          900_000,
+          3_600_000);
+
+  /** Tests that a hold takes the default TTL, and that invalid holds are rejected. */
+  @Test
+  void testHold() {
+    Reservation reservation = new Reservation(1L, 1L, 10L, 5, 0L, 900_000L);
+    when(reservationEngine.hold(1L, 10L, 5, 900_000)).thenReturn(reservation);
+
+    ResponseEntity<?> response =
+        reservationService.hold(HoldRequest.builder().siteId(1L).itemId(10L).quantity(5).build());
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertSame(reservation, response.getBody());
+
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        reservationService
+            .hold(HoldRequest.builder().siteId(1L).itemId(10L).quantity(0).build())
+            .getStatusCode());
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        reservationService
+            .hold(
+                HoldRequest.builder().siteId(1L).itemId(10L).quantity(5).ttlSeconds(7200L).build())
+            .getStatusCode());
+    // 2066035336255469781 * 1000 wraps round to a TTL of 8 ms
+    ResponseEntity<?> overflow =
+        reservationService.hold(
+            HoldRequest.builder()
+                .siteId(1L)
+                .itemId(10L)
+                .quantity(5)
+                .ttlSeconds(2066035336255469781L)
+                .build());
+    assertEquals(HttpStatus.BAD_REQUEST, overflow.getStatusCode());
+    assertEquals("ttlSeconds must be between 1 and 3600", overflow.getBody());
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        reservationService
+            .hold(HoldRequest.builder().siteId(1L).itemId(10L).quantity(6).build())
+            .getStatusCode());
+  }
+
+  /** Tests that a confirm debits the availability, reports it to the ledger and audits it. */
+  @Test
+  void testConfirm() {
+    Reservation reservation = new Reservation(1L, 1L, 10L, 5, 0L, 900_000L);
+    when(reservationEngine.beginConfirm(1L)).thenReturn(reservation);
+    when(availabilityRepository.decrementQuantity(1L, 10L, 5)).thenReturn(1);
+    when(availabilityRepository.findQuantityBySiteIdAndItemId(1L, 10L)).thenReturn(3);
+
+    ResponseEntity<?> response = reservationService.confirm(1L);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(new QuantityChangeResponse(1L, 10L, 8, 3), response.getBody());
+    verify(reservationEngine).confirmAfterCommit(reservation);
+    verify(inventoryLedger).adjust(1L, 10L, -5);
+    verify(auditService).saveUpdate("Availabilities", AuditField.QUANTITY, 1L, 10L, 8, 3);
+  }
+
+  /** Tests that a confirm the availability cannot cover leaves the hold in place. */
+  @Test
+  void testConfirmNotEnoughQuantity() {
+    Reservation reservation = new Reservation(1L, 1L, 10L, 5, 0L, 900_000L);
+    when(reservationEngine.beginConfirm(1L)).thenReturn(reservation);
+    when(availabilityRepository.decrementQuantity(1L, 10L, 5)).thenReturn(0);
+
+    ResponseEntity<?> response = reservationService.confirm(1L);
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    verify(reservationEngine).abortConfirm(reservation);
+    verify(reservationEngine, never()).confirmAfterCommit(any());
+    verifyNoInteractions(inventoryLedger, auditService);
+  }
+
+  /** Tests that confirming or releasing a reservation that is not held is a bad request. */
+  @Test
+  void testNotHeld() {
+    assertEquals(HttpStatus.BAD_REQUEST, reservationService.confirm(2L).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, reservationService.release(2L).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, reservationService.getReservation(2L).getStatusCode());
+    verifyNoInteractions(availabilityRepository);
+  }
+}
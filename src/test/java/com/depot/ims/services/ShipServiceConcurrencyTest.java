@@ -0,0 +1,177 @@
+package com.depot.ims.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.audit.AuditArchive;
+import com.depot.ims.audit.AuditWriter;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import com.depot.ims.repositories.AuditRepository;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.ShipRepository;
+import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ShipRequest;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.sharding.ShardTransfers;
+import com.depot.ims.snapshots.StockHistory;
+import com.depot.ims.streaming.JsonStreamer;
+import com.depot.ims.threads.BackgroundThreads;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Concurrency stress test for ShipService.addShip against the H2 in-memory database. Fires
+ * thousands of ships in parallel between a handful of sites, in both directions, and verifies that
+ * no stock is created or lost, no availability goes negative, and every accepted ship committed
+ * together with its audit record.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({
+  ShipService.class,
+  ShardRouter.class,
+  ShardTransfers.class,
+  ReservationEngine.class,
+  StockHistory.class,
+  AuditService.class,
+  AuditWriter.class,
+  AuditArchive.class,
+  BackgroundThreads.class,
+  InventoryLedger.class,
+  JsonStreamer.class
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:shipstress;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000",
+      "spring.datasource.username=sa",
+      "spring.datasource.password=",
+      "spring.datasource.driver-class-name=org.h2.Driver",
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.database=h2",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.show-sql=false",
+      "ims.audit.mode=flush-before-commit"
+    })
+class ShipServiceConcurrencyTest {
+
+  private static final int SITES = 4;
+  private static final int SHIPS = 2000;
+  private static final int THREADS = 16;
+  private static final int INITIAL_QUANTITY = 500;
+
+  @Autowired private ShipService shipService;
+  @Autowired private SiteRepository siteRepository;
+  @Autowired private ItemRepository itemRepository;
+  @Autowired private AvailabilityRepository availabilityRepository;
+  @Autowired private ShipmentRepository shipmentRepository;
+  @Autowired private ShipRepository shipRepository;
+  @Autowired private AuditRepository auditRepository;
+
+  /**
+   * Ships random quantities between random pairs of sites from many threads at once. Sources run
+   * dry along the way, so both accepted and rejected ships are exercised.
+   */
+  @Test
+  void testParallelShipsConserveStock() throws Exception {
+    Item item = itemRepository.save(new Item("Stress Item", 1.0));
+    List<Site> sites = new ArrayList<>();
+    for (int i = 0; i < SITES; i++) {
+      Site site = siteRepository.save(new Site("Stress Site " + i, "Location", "open", null, true));
+      availabilityRepository.save(new Availability(site, item, INITIAL_QUANTITY));
+      sites.add(site);
+    }
+
+    Random random = new Random(7);
+    List<Shipment> shipments = new ArrayList<>();
+    List<Integer> quantities = new ArrayList<>();
+    for (int i = 0; i < SHIPS; i++) {
+      int source = random.nextInt(SITES);
+      int destination = (source + 1 + random.nextInt(SITES - 1)) % SITES;
+      shipments.add(
+          new Shipment(
+              null,
+              sites.get(source).getSiteId(),
+              sites.get(destination).getSiteId(),
+              null,
+              null,
+              null,
+              null,
+              "In Transit"));
+      quantities.add(1 + random.nextInt(60));
+    }
+    shipments = shipmentRepository.saveAll(shipments);
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    List<Future<ResponseEntity<?>>> results = new ArrayList<>();
+    try {
+      for (int i = 0; i < SHIPS; i++) {
+        ShipRequest request =
+            ShipRequest.builder()
+                .shipmentId(shipments.get(i).getShipmentId())
+                .itemId(item.getItemId())
+                .quantity(quantities.get(i))
+                .build();
+        results.add(executor.submit(() -> shipService.addShip(request)));
+      }
+
+      // replay the accepted ships to know where every unit should have ended up
+      Map<Long, Integer> expected = new HashMap<>();
+      sites.forEach(site -> expected.put(site.getSiteId(), INITIAL_QUANTITY));
+      int accepted = 0;
+      for (int i = 0; i < SHIPS; i++) {
+        ResponseEntity<?> response = results.get(i).get();
+        if (response.getStatusCode() == HttpStatus.OK) {
+          accepted++;
+          expected.merge(shipments.get(i).getSource(), -quantities.get(i), Integer::sum);
+          expected.merge(shipments.get(i).getDestination(), quantities.get(i), Integer::sum);
+        } else {
+          assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        }
+      }
+
+      int total = 0;
+      for (Site site : sites) {
+        int quantity =
+            availabilityRepository
+                .findQuantityBySiteIdAndItemId(site.getSiteId(), item.getItemId())
+                .intValue();
+        assertTrue(quantity >= 0);
+        assertEquals(expected.get(site.getSiteId()), quantity);
+        total += quantity;
+      }
+      assertEquals(SITES * INITIAL_QUANTITY, total);
+      assertTrue(accepted > 0 && accepted < SHIPS);
+      assertEquals(accepted, shipRepository.count());
+      assertEquals(accepted, auditRepository.findByTableName("Ships").size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
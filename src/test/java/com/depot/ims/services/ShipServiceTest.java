@@ -4,9 +4,20 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.*;
 
+import com.depot.ims.inventory.InventoryLedger;
 import com.depot.ims.models.*;
 import com.depot.ims.repositories.*;
+import com.depot.ims.requests.ShipBatchRequest;
+import com.depot.ims.requests.ShipLineRequest;
 import com.depot.ims.requests.ShipRequest;
+import com.depot.ims.reservations.Reservation;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.response.ShipLineError;
+import com.depot.ims.sharding.ShardTransfers;
+import com.depot.ims.sharding.TestShards;
+import com.depot.ims.snapshots.StockHistory;
+import java.util.List;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.http.HttpStatus;
@@ -24,6 +35,7 @@ class ShipServiceTest {
 
   @Mock private SiteRepository siteRepositoryMock = mock(SiteRepository.class);
   @Mock private AuditService auditServiceMock = mock(AuditService.class);
+  @Mock private ReservationEngine reservationEngineMock = mock(ReservationEngine.class);
   private final ShipService shipService =
       new ShipService(
           shipRepositoryMock,
@@ -31,7 +43,12 @@ class ShipServiceTest {
           itemRepositoryMock,
           availabilityRepositoryMock,
           auditServiceMock,
-          siteRepositoryMock);
+          siteRepositoryMock,
+          new InventoryLedger(1),
+          TestShards.unsharded(),
+          mock(ShardTransfers.class),
+          reservationEngineMock,
+          mock(StockHistory.class));
 
   /**
    * This test checks if the addShip method works as expected.
@@ -56,8 +73,10 @@ class ShipServiceTest {
 
     when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
     when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(1L, 1L)).thenReturn(availability1);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(2L, 1L)).thenReturn(availability2);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
     when(shipRepositoryMock.save(any(Ship.class))).thenReturn(ship);
 
     // When
@@ -69,6 +88,155 @@ class ShipServiceTest {
     assertEquals(70, availability2.getQuantity());
   }
 
+  /**
+   * This test checks that addShip leaves stock held by reservations alone.
+   *
+   * <p>It works by mock sending 10 of 15 items from site1 while 8 of them are held. The result
+   * should be a bad request, with both availabilities unchanged.
+   */
+  @Test
+  void addShipSkipsReservedStockTest() {
+    // Given
+    Item item = new Item(1L, "TestItem", 10.0);
+    Site site1 = new Site(1L, "TestSite1", "TestAddress1", "Open", null, true);
+    Site site2 = new Site(2L, "TestSite2", "TestAddress2", "Open", null, true);
+    Shipment shipment = new Shipment(1L, 1L, 2L, null, null, null, null, null);
+    ShipRequest shipRequest = ShipRequest.builder().shipmentId(1L).itemId(1L).quantity(10).build();
+    Availability availability1 = new Availability(site1, item, 15);
+    Availability availability2 = new Availability(site2, item, 0);
+
+    when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
+    when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
+    when(reservationEngineMock.reservedQuantity(1L, 1L)).thenReturn(8);
+
+    // When
+    ResponseEntity<?> result = shipService.addShip(shipRequest);
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+    assertEquals(15, availability1.getQuantity());
+    assertEquals(0, availability2.getQuantity());
+    verify(shipRepositoryMock, never()).save(any(Ship.class));
+  }
+
+  /**
+   * This test checks that addShip refuses an item the shipment already ships.
+   *
+   * <p>It works by mock sending 10 of 15 items from site1 on a shipment that already has a ship of
+   * the item. The result should be a bad request, with both availabilities unchanged.
+   */
+  @Test
+  void addShipAlreadyShippedTest() {
+    // Given
+    Item item = new Item(1L, "TestItem", 10.0);
+    Site site1 = new Site(1L, "TestSite1", "TestAddress1", "Open", null, true);
+    Site site2 = new Site(2L, "TestSite2", "TestAddress2", "Open", null, true);
+    Shipment shipment = new Shipment(1L, 1L, 2L, null, null, null, null, null);
+    ShipRequest shipRequest = ShipRequest.builder().shipmentId(1L).itemId(1L).quantity(10).build();
+    Availability availability1 = new Availability(site1, item, 15);
+    Availability availability2 = new Availability(site2, item, 0);
+
+    when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
+    when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
+    when(shipRepositoryMock.existsByShipmentIdAndItemId(1L, 1L)).thenReturn(true);
+
+    // When
+    ResponseEntity<?> result = shipService.addShip(shipRequest);
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+    assertEquals("Item is already shipped on this shipment", result.getBody());
+    assertEquals(15, availability1.getQuantity());
+    assertEquals(0, availability2.getQuantity());
+    verify(availabilityRepositoryMock).findBySiteIdAndItemIdForUpdate(1L, 1L);
+    verify(shipRepositoryMock, never()).save(any(Ship.class));
+  }
+
+  /**
+   * This test checks that addShip consumes the reservation it names: the held quantity counts as
+   * available to this ship, and the hold is confirmed.
+   */
+  @Test
+  void addShipConsumesItsReservationTest() {
+    // Given
+    Item item = new Item(1L, "TestItem", 10.0);
+    Site site1 = new Site(1L, "TestSite1", "TestAddress1", "Open", null, true);
+    Site site2 = new Site(2L, "TestSite2", "TestAddress2", "Open", null, true);
+    Shipment shipment = new Shipment(1L, 1L, 2L, null, null, null, null, null);
+    Ship ship = Ship.builder().shipmentId(shipment).itemId(item).quantity(10).build();
+    ShipRequest shipRequest =
+        ShipRequest.builder().shipmentId(1L).itemId(1L).quantity(10).reservationId(7L).build();
+    Availability availability1 = new Availability(site1, item, 15);
+    Availability availability2 = new Availability(site2, item, 0);
+    Reservation reservation = new Reservation(7L, 1L, 1L, 10, 0L, Long.MAX_VALUE);
+
+    when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
+    when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
+    when(reservationEngineMock.reservedQuantity(1L, 1L)).thenReturn(10);
+    when(reservationEngineMock.beginConfirm(7L)).thenReturn(reservation);
+    when(shipRepositoryMock.save(any(Ship.class))).thenReturn(ship);
+
+    // When
+    ResponseEntity<?> result = shipService.addShip(shipRequest);
+
+    // Then
+    assertEquals(HttpStatus.OK, result.getStatusCode());
+    assertEquals(5, availability1.getQuantity());
+    assertEquals(10, availability2.getQuantity());
+    verify(reservationEngineMock).confirmAfterCommit(reservation);
+  }
+
+  /**
+   * This test checks that addShip locks the availabilities in ascending siteId order whatever the
+   * direction of the shipment, and reads each of them only once.
+   *
+   * <p>It works by mock sending a shipment of 5 items from site2 back to site1.
+   */
+  @Test
+  void addShipLocksInSiteIdOrderTest() {
+    // Given
+    Item item = new Item(1L, "TestItem", 10.0);
+    Site site1 = new Site(1L, "TestSite1", "TestAddress1", "Open", null, true);
+    Site site2 = new Site(2L, "TestSite2", "TestAddress2", "Open", null, true);
+    Shipment shipment = new Shipment(1L, 2L, 1L, null, null, null, null, null);
+    Ship ship = Ship.builder().shipmentId(shipment).itemId(item).quantity(5).build();
+    ShipRequest shipRequest = ShipRequest.builder().shipmentId(1L).itemId(1L).quantity(5).build();
+    Availability availability1 = new Availability(site1, item, 10);
+    Availability availability2 = new Availability(site2, item, 20);
+
+    when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
+    when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
+    when(shipRepositoryMock.save(any(Ship.class))).thenReturn(ship);
+
+    // When
+    ResponseEntity<?> result = shipService.addShip(shipRequest);
+
+    // Then
+    assertEquals(HttpStatus.OK, result.getStatusCode());
+    assertEquals(15, availability1.getQuantity());
+    assertEquals(15, availability2.getQuantity());
+    var inOrder = inOrder(availabilityRepositoryMock);
+    inOrder.verify(availabilityRepositoryMock).findBySiteIdAndItemIdForUpdate(1L, 1L);
+    inOrder.verify(availabilityRepositoryMock).findBySiteIdAndItemIdForUpdate(2L, 1L);
+    verify(availabilityRepositoryMock, never()).findBySiteIdAndItemId(anyLong(), anyLong());
+  }
+
   /**
    * This tests the addShip method with a shipment that does not exist.
    *
@@ -116,8 +284,10 @@ class ShipServiceTest {
 
     when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
     when(itemRepositoryMock.findByItemId(1L)).thenReturn(null); // Item does not exist
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(1L, 1L)).thenReturn(availability1);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(2L, 1L)).thenReturn(availability2);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
 
     // When
     ResponseEntity<?> result = shipService.addShip(shipRequest);
@@ -155,8 +325,9 @@ class ShipServiceTest {
 
     when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
     when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(1L, 1L)).thenReturn(availability1);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(2L, 1L))
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
         .thenReturn(null); // Item not in destination site
     when(siteRepositoryMock.findBySiteId(2L)).thenReturn(site2);
     when(shipRepositoryMock.save(any(Ship.class))).thenReturn(ship);
@@ -199,8 +370,10 @@ class ShipServiceTest {
 
     when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
     when(itemRepositoryMock.findByItemId(1L)).thenReturn(item);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(1L, 1L)).thenReturn(availability1);
-    when(availabilityRepositoryMock.findBySiteIdAndItemId(2L, 1L)).thenReturn(availability2);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(1L, 1L))
+        .thenReturn(availability1);
+    when(availabilityRepositoryMock.findBySiteIdAndItemIdForUpdate(2L, 1L))
+        .thenReturn(availability2);
 
     // When
     ResponseEntity<?> result = shipService.addShip(shipRequest);
@@ -233,4 +406,97 @@ class ShipServiceTest {
     assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
     assertEquals("Invalid shipRequest", result.getBody());
   }
+
+  /**
+   * This tests the addShips method with a manifest of two items.
+   *
+   * <p>Item 1 is already available at the destination and item 2 is not, so item 1 is moved with
+   * two quantity changes and item 2 gets a new destination availability. All rows and audits are
+   * written in bulk and each repository is queried once.
+   */
+  @Test
+  void addShipsTest() {
+    // Given
+    Item item1 = new Item(1L, "TestItem1", 10.0);
+    Item item2 = new Item(2L, "TestItem2", 20.0);
+    Site site1 = new Site(1L, "TestSite1", "TestAddress1", "Open", null, true);
+    Site site2 = new Site(2L, "TestSite2", "TestAddress2", "Open", null, true);
+    Shipment shipment = new Shipment(1L, 1L, 2L, null, null, null, null, null);
+    Availability source1 = new Availability(site1, item1, 50);
+    Availability source2 = new Availability(site1, item2, 30);
+    Availability destination1 = new Availability(site2, item1, 5);
+    ShipBatchRequest request =
+        ShipBatchRequest.builder()
+            .shipmentId(1L)
+            .lines(
+                List.of(
+                    ShipLineRequest.builder().itemId(1L).quantity(20).build(),
+                    ShipLineRequest.builder().itemId(2L).quantity(30).build()))
+            .build();
+
+    when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
+    when(itemRepositoryMock.findAllById(Set.of(1L, 2L))).thenReturn(List.of(item1, item2));
+    when(shipRepositoryMock.findShippedQuantitiesByShipmentId(1L)).thenReturn(List.of());
+    when(availabilityRepositoryMock.findBySiteIdsAndItemIdsForUpdate(any(), any()))
+        .thenReturn(List.of(source1, source2, destination1));
+    when(siteRepositoryMock.findBySiteId(2L)).thenReturn(site2);
+    when(shipRepositoryMock.persistAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    // When
+    ResponseEntity<?> result = shipService.addShips(request);
+
+    // Then
+    assertEquals(HttpStatus.OK, result.getStatusCode());
+    assertEquals(30, source1.getQuantity());
+    assertEquals(0, source2.getQuantity());
+    assertEquals(25, destination1.getQuantity());
+    verify(availabilityRepositoryMock).persistAll(List.of(new Availability(site2, item2, 30)));
+    verify(availabilityRepositoryMock, times(1)).findBySiteIdsAndItemIdsForUpdate(any(), any());
+    verify(auditServiceMock).saveAudits(argThat(audits -> audits.size() == 2));
+    assertEquals(2, ((List<?>) result.getBody()).size());
+  }
+
+  /**
+   * This tests the addShips method with a manifest where some lines fail.
+   *
+   * <p>The result should be a bad request listing every failing line, and no quantity should be
+   * changed.
+   */
+  @Test
+  void addShipsLineErrorsTest() {
+    // Given
+    Item item1 = new Item(1L, "TestItem1", 10.0);
+    Site site1 = new Site(1L, "TestSite1", "TestAddress1", "Open", null, true);
+    Shipment shipment = new Shipment(1L, 1L, 2L, null, null, null, null, null);
+    Availability source1 = new Availability(site1, item1, 10);
+    ShipBatchRequest request =
+        ShipBatchRequest.builder()
+            .shipmentId(1L)
+            .lines(
+                List.of(
+                    ShipLineRequest.builder().itemId(1L).quantity(5).build(),
+                    ShipLineRequest.builder().itemId(1L).quantity(50).build(),
+                    ShipLineRequest.builder().itemId(9L).quantity(1).build()))
+            .build();
+
+    when(shipmentRepositoryMock.findByShipmentId(1L)).thenReturn(shipment);
+    when(itemRepositoryMock.findAllById(any())).thenReturn(List.of(item1));
+    when(shipRepositoryMock.findShippedQuantitiesByShipmentId(1L)).thenReturn(List.of());
+    when(availabilityRepositoryMock.findBySiteIdsAndItemIdsForUpdate(any(), any()))
+        .thenReturn(List.of(source1));
+
+    // When
+    ResponseEntity<?> result = shipService.addShips(request);
+
+    // Then
+    assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+    assertEquals(
+        List.of(
+            new ShipLineError(1, 1L, "Item appears more than once in the manifest"),
+            new ShipLineError(2, 9L, "Item does not exist")),
+        result.getBody());
+    assertEquals(10, source1.getQuantity());
+    verify(shipRepositoryMock, never()).persistAll(any());
+    verify(auditServiceMock, never()).saveAudits(any());
+  }
 }
@@ -4,8 +4,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
+import com.depot.ims.audit.AuditField;
 import com.depot.ims.models.Shipment;
 import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.sharding.TestShards;
 import java.sql.Timestamp;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
@@ -22,7 +24,7 @@ public class ShipmentServiceTest {
   @Mock private ShipmentRepository shipmentRepository = mock(ShipmentRepository.class);
   @Mock private AuditService auditService = mock(AuditService.class);
   private final ShipmentService shipmentService =
-      new ShipmentService(shipmentRepository, auditService);
+      new ShipmentService(shipmentRepository, auditService, TestShards.unsharded());
 
   @BeforeEach
   void setup() {}
@@ -87,7 +89,7 @@ public class ShipmentServiceTest {
             "Delivered");
     when(shipmentRepository.existsById(shipmentId)).thenReturn(true);
     when(shipmentRepository.findByShipmentId(shipmentId)).thenReturn(shipment1);
-    doNothing().when(auditService).saveAudit(any(), any(), any(), any(), any(), any());
+    doNothing().when(auditService).saveDelete(any(), any(), any(), any());
 
     ResponseEntity<?> response = shipmentService.deleteShipment(shipmentId);
 
@@ -192,4 +194,20 @@ public class ShipmentServiceTest {
     assertEquals(shipment1, response.getBody());
     verify(shipmentRepository).save(shipment);
   }
+
+  /** Tests that a status change is audited with the new status, and needs no other value. */
+  @Test
+  void testUpdateShipmentStatusAudit() {
+    Shipment shipment = new Shipment(1L, 12L, 32L, "Warehouse Y", null, null, null, "Pending");
+    when(shipmentRepository.existsById(1L)).thenReturn(true);
+    when(shipmentRepository.findByShipmentId(1L)).thenReturn(shipment);
+    when(shipmentRepository.save(any(Shipment.class))).thenReturn(shipment);
+
+    ResponseEntity<?> response =
+        shipmentService.updateShipment(1L, null, null, null, null, null, null, "In transit");
+
+    assertTrue(response.getStatusCode().is2xxSuccessful());
+    verify(auditService)
+        .saveUpdate("Shipments", AuditField.SHIPMENT_STATUS, 1L, null, "Pending", "In transit");
+  }
 }
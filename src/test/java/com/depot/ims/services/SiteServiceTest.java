@@ -5,8 +5,12 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import com.depot.ims.audit.AuditField;
+import com.depot.ims.cache.ReferenceCache;
+import com.depot.ims.inventory.InventoryLedger;
 import com.depot.ims.models.Site;
 import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.sharding.TestShards;
 import java.sql.Date;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
@@ -20,9 +24,16 @@ import org.springframework.http.ResponseEntity;
 public class SiteServiceTest {
   @Mock private final SiteRepository siteRepositoryMock = mock(SiteRepository.class);
   @Mock private final AuditService auditService = mock(AuditService.class);
+  @Mock private final ReferenceCache referenceCacheMock = mock(ReferenceCache.class);
 
   @InjectMocks
-  private final SiteService siteService = new SiteService(siteRepositoryMock, auditService);
+  private final SiteService siteService =
+      new SiteService(
+          siteRepositoryMock,
+          auditService,
+          new InventoryLedger(1),
+          TestShards.unsharded(),
+          referenceCacheMock);
 
   @BeforeEach
   void setup() {}
@@ -96,6 +107,23 @@ public class SiteServiceTest {
         siteService
             .updateSite(1L, "site1Updated", "location1Updated", "open", null, true)
             .getBody());
+    verify(referenceCacheMock, times(1)).evictSite(1L);
+  }
+
+  /** Tests that a cease date can be set on a site that has none, and is audited. */
+  @Test
+  void testUpdateSiteFirstCeaseDate() {
+    Site site = new Site(1L, "site1", "location1", "open", null, true);
+    when(siteRepositoryMock.existsById(1L)).thenReturn(true);
+    when(siteRepositoryMock.findBySiteId(1L)).thenReturn(site);
+    when(siteRepositoryMock.save(any())).thenReturn(site);
+
+    ResponseEntity<?> res = siteService.updateSite(1L, null, null, null, "2024-05-01", null);
+
+    assertTrue(res.getStatusCode().is2xxSuccessful());
+    assertEquals(Date.valueOf("2024-05-01"), site.getCeaseDate());
+    verify(auditService)
+        .saveUpdate("sites", AuditField.CEASE_DATE, 1L, null, null, Date.valueOf("2024-05-01"));
   }
 
   /**
@@ -113,5 +141,10 @@ public class SiteServiceTest {
     doReturn(site2).when(siteRepositoryMock).saveAndFlush(any());
 
     assertEquals(site2, siteService.deleteSite(1L, "2024-4-5").getBody());
+    verify(referenceCacheMock).evictSite(1L);
+    // closing a site is a status change, recorded like every other site audit
+    verify(auditService).saveUpdate("sites", AuditField.SITE_STATUS, 1L, null, "open", "closed");
+    verify(auditService)
+        .saveUpdate("sites", AuditField.CEASE_DATE, 1L, null, null, Date.valueOf("2024-4-5"));
   }
 }
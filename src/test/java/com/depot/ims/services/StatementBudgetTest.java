@@ -0,0 +1,166 @@
+package com.depot.ims.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.audit.AuditArchive;
+import com.depot.ims.audit.AuditWriter;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.inventory.InventoryLedgerLoader;
+import com.depot.ims.metrics.SqlAssertions;
+import com.depot.ims.metrics.SqlStatementStats;
+import com.depot.ims.metrics.SqlTrackingConfiguration;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.requests.ShipRequest;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.sharding.ShardTransfers;
+import com.depot.ims.snapshots.StockHistory;
+import com.depot.ims.streaming.JsonStreamer;
+import com.depot.ims.threads.BackgroundThreads;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Statement budgets of the hottest service calls, measured with SqlAssertions against the H2
+ * in-memory database. A change that makes one of them issue more SQL, such as a new eager fetch or
+ * a lookup inside a loop, fails here instead of showing up as a slower endpoint.
+ */
+@DataJpaTest
+@Import({
+  ShipService.class,
+  ShardRouter.class,
+  ShardTransfers.class,
+  ReservationEngine.class,
+  StockHistory.class,
+  AvailabilityService.class,
+  AuditService.class,
+  JsonStreamer.class,
+  AuditWriter.class,
+  AuditArchive.class,
+  BackgroundThreads.class,
+  InventoryLedger.class,
+  InventoryLedgerLoader.class,
+  SqlTrackingConfiguration.class
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "ims.audit.mode=flush-before-commit"
+    })
+class StatementBudgetTest {
+
+  @Autowired private ShipService shipService;
+  @Autowired private AvailabilityService availabilityService;
+  @Autowired private InventoryLedgerLoader inventoryLedgerLoader;
+  @Autowired private SiteRepository siteRepository;
+  @Autowired private ItemRepository itemRepository;
+  @Autowired private AvailabilityRepository availabilityRepository;
+  @Autowired private ShipmentRepository shipmentRepository;
+  @Autowired private JdbcTemplate jdbcTemplate;
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  private Site source;
+  private Site destination;
+  private Item item1;
+  private Item item2;
+
+  /** Two sites holding two items, with the ledger warmed as on startup. */
+  @BeforeEach
+  void setUp() {
+    // these tests commit, so empty the tables first
+    JdbcTestUtils.deleteFromTables(
+        jdbcTemplate, "ships", "availabilities", "shipments", "audits", "items", "sites");
+    source = siteRepository.save(new Site("Source", "Location 1", "open", null, true));
+    destination = siteRepository.save(new Site("Destination", "Location 2", "open", null, true));
+    item1 = itemRepository.save(new Item("Item 1", 1.0));
+    item2 = itemRepository.save(new Item("Item 2", 2.0));
+    availabilityRepository.save(new Availability(source, item1, 100));
+    availabilityRepository.save(new Availability(source, item2, 100));
+    availabilityRepository.save(new Availability(destination, item1, 100));
+    inventoryLedgerLoader.warm();
+  }
+
+  /** Tests the statements of one ship between two sites that both hold the item. */
+  @Test
+  void testAddShip() throws Exception {
+    Shipment shipment =
+        shipmentRepository.save(
+            Shipment.builder()
+                .source(source.getSiteId())
+                .destination(destination.getSiteId())
+                .shipmentStatus("In Transit")
+                .build());
+    ShipRequest request =
+        ShipRequest.builder()
+            .shipmentId(shipment.getShipmentId())
+            .itemId(item1.getItemId())
+            .quantity(5)
+            .build();
+
+    SqlStatementStats stats =
+        SqlAssertions.assertStatementsAtMost(
+            9, () -> assertEquals(HttpStatus.OK, shipService.addShip(request).getStatusCode()));
+    assertTrue(stats.getEntitiesLoaded() <= 6, () -> "Loaded too many entities: " + stats);
+  }
+
+  /**
+   * Tests that inserting many sites in one transaction is batched: ids come from the pooled
+   * generator a block at a time, and the inserts go in JDBC batches instead of one round trip each.
+   */
+  @Test
+  void testBulkInsertIsBatched() throws Exception {
+    List<Site> sites = new ArrayList<>();
+    for (int i = 0; i < 120; i++) {
+      sites.add(new Site("Bulk " + i, "Location", "open", null, true));
+    }
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    SqlStatementStats stats =
+        SqlAssertions.measure(() -> transaction.execute(s -> siteRepository.saveAll(sites)));
+    // 3 batches of at most 50 inserts, and at most 3 blocks of 50 ids
+    assertTrue(stats.getRoundTrips() <= 6, () -> "Too many round trips: " + stats);
+    assertEquals(120, siteRepository.count() - 2);
+  }
+
+  /** Tests that a multi-item search on a warm ledger issues no SQL at all. */
+  @Test
+  void testGetSitesByItems() throws Exception {
+    MultiValueMap<String, String> items = new LinkedMultiValueMap<>();
+    items.add("itemId", item1.getItemId().toString());
+    items.add("itemId", item2.getItemId().toString());
+
+    SqlAssertions.assertStatementsAtMost(
+        0,
+        () ->
+            assertEquals(
+                HttpStatus.OK, availabilityService.getSitesByItems(items).getStatusCode()));
+  }
+}
@@ -0,0 +1,80 @@
+package com.depot.ims.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.projections.SiteValue;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.response.InventoryValuation;
+import com.depot.ims.response.SiteValuation;
+import com.depot.ims.sharding.TestShards;
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Unit tests for the ValuationService class. Validates that values the InventoryLedger holds are
+ * answered without the database, and that the others are recomputed from the repository.
+ */
+public class ValuationServiceTest {
+
+  private final SiteRepository siteRepository = mock(SiteRepository.class);
+  private final AvailabilityRepository availabilityRepository = mock(AvailabilityRepository.class);
+  private final InventoryLedger inventoryLedger = new InventoryLedger(1);
+
+  private final ValuationService valuationService =
+      new ValuationService(
+          siteRepository, availabilityRepository, inventoryLedger, TestShards.unsharded());
+
+  /** Tests that a site loaded in the ledger is valued from memory. */
+  @Test
+  public void testSiteValuationFromLedger() {
+    Site site = new Site(1L, "Site 1", "Location 1", "open", null, true);
+    Item item = new Item(10L, "Item 1", 2.5);
+    inventoryLedger.loadSite(
+        1L, List.of(new Availability(site, item, 4)), inventoryLedger.beginLoad());
+
+    ResponseEntity<?> response = valuationService.getSiteValuation(1L);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(new SiteValuation(1L, new BigDecimal("10.00")), response.getBody());
+    verifyNoInteractions(availabilityRepository, siteRepository);
+  }
+
+  /** Tests that a site the ledger does not hold is summed by the database, or rejected. */
+  @Test
+  public void testSiteValuationFromDatabase() {
+    when(siteRepository.existsById(2L)).thenReturn(true);
+    when(availabilityRepository.sumValueCentsBySiteId(2L)).thenReturn(1299L);
+
+    ResponseEntity<?> response = valuationService.getSiteValuation(2L);
+    assertEquals(new SiteValuation(2L, new BigDecimal("12.99")), response.getBody());
+
+    assertEquals(HttpStatus.BAD_REQUEST, valuationService.getSiteValuation(3L).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, valuationService.getSiteValuation(null).getStatusCode());
+  }
+
+  /** Tests that every site is recomputed, ordered by siteId, until the ledger has warmed. */
+  @Test
+  public void testValuationRecomputedBeforeWarm() {
+    when(availabilityRepository.sumValueCentsBySite())
+        .thenReturn(List.of(new SiteValue(2L, 150), new SiteValue(1L, 1000)));
+
+    ResponseEntity<?> response = valuationService.getValuation();
+    assertEquals(
+        new InventoryValuation(
+            new BigDecimal("11.50"),
+            List.of(
+                new SiteValuation(1L, new BigDecimal("10.00")),
+                new SiteValuation(2L, new BigDecimal("1.50"))),
+            false),
+        response.getBody());
+    assertEquals(new BigDecimal("11.50"), valuationService.getTotalValuation().getBody());
+  }
+}
@@ -0,0 +1,364 @@
+package com.depot.ims.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.audit.AuditArchive;
+import com.depot.ims.audit.AuditWriter;
+import com.depot.ims.cache.ReferenceCache;
+import com.depot.ims.inventory.InventoryLedger;
+import com.depot.ims.listing.Listings;
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.ShardTransfer;
+import com.depot.ims.models.Shipment;
+import com.depot.ims.models.Site;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ListingRepository;
+import com.depot.ims.repositories.ShardTransferRepository;
+import com.depot.ims.repositories.ShipRepository;
+import com.depot.ims.repositories.ShipmentRepository;
+import com.depot.ims.requests.ListingRequest;
+import com.depot.ims.requests.ShipRequest;
+import com.depot.ims.reservations.ReservationEngine;
+import com.depot.ims.response.ListingPage;
+import com.depot.ims.services.AuditService;
+import com.depot.ims.services.AvailabilityService;
+import com.depot.ims.services.ItemService;
+import com.depot.ims.services.ListingService;
+import com.depot.ims.services.ShipService;
+import com.depot.ims.services.SiteService;
+import com.depot.ims.snapshots.StockHistory;
+import com.depot.ims.streaming.JsonStreamer;
+import com.depot.ims.threads.BackgroundThreads;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Runs the services against three H2 in-memory databases, the home shard and two more, and checks
+ * where availabilities and shipments land, that reads gather every shard, and that a ship between
+ * two shards debits and credits each exactly once.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({
+  ShardingConfiguration.class,
+  ShardRouter.class,
+  ShardTransfers.class,
+  ReservationEngine.class,
+  StockHistory.class,
+  ShipService.class,
+  AvailabilityService.class,
+  SiteService.class,
+  ItemService.class,
+  ReferenceCache.class,
+  ListingService.class,
+  ListingRepository.class,
+  AuditService.class,
+  AuditWriter.class,
+  AuditArchive.class,
+  BackgroundThreads.class,
+  InventoryLedger.class,
+  JsonStreamer.class
+})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+      "spring.datasource.username=sa",
+      "spring.datasource.password=",
+      "spring.datasource.driver-class-name=org.h2.Driver",
+      "ims.sharding.shards[0].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+      "ims.sharding.shards[1].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+      "ims.sharding.transfer-retry-ms=60000",
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.database=h2",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.show-sql=false",
+      "ims.audit.mode=fire-and-forget"
+    })
+class ShardingTest {
+
+  // site and item names are unique
+  private static final AtomicInteger NAMES = new AtomicInteger();
+
+  @Autowired private ShardRouter shardRouter;
+  @Autowired private ShardTransfers shardTransfers;
+  @Autowired private ShipService shipService;
+  @Autowired private AvailabilityService availabilityService;
+  @Autowired private SiteService siteService;
+  @Autowired private ItemService itemService;
+  @Autowired private ListingService listingService;
+  @Autowired private AvailabilityRepository availabilityRepository;
+  @Autowired private ShipmentRepository shipmentRepository;
+  @Autowired private ShipRepository shipRepository;
+  @Autowired private ShardTransferRepository shardTransferRepository;
+
+  /** Each availability is stored on the shard of its site only. */
+  @Test
+  void testAvailabilitiesLiveOnTheShardOfTheirSite() {
+    Item item = newItem();
+    for (int shard = 0; shard < 3; shard++) {
+      Site site = newSiteOn(shard);
+      stock(site, item, 10);
+      for (int other = 0; other < 3; other++) {
+        Availability found =
+            ShardContext.on(
+                other,
+                () ->
+                    availabilityRepository.findBySiteIdAndItemId(
+                        site.getSiteId(), item.getItemId()));
+        if (other == shard) {
+          assertEquals(10, found.getQuantity());
+        } else {
+          assertNull(found);
+        }
+      }
+    }
+  }
+
+  /** The sites holding a set of items are gathered from every shard. */
+  @Test
+  void testSitesByItemsGathersEveryShard() {
+    Item item = newItem();
+    Item otherItem = newItem();
+    List<Long> expected = new ArrayList<>();
+    for (int shard = 0; shard < 3; shard++) {
+      Site site = newSiteOn(shard);
+      stock(site, item, 5);
+      stock(site, otherItem, 5);
+      expected.add(site.getSiteId());
+    }
+    // holds only one of the two items
+    stock(newSiteOn(1), item, 5);
+
+    MultiValueMap<String, String> items = new LinkedMultiValueMap<>();
+    items.add("item", item.getItemId().toString());
+    items.add("item", otherItem.getItemId().toString());
+    ResponseEntity<?> response = availabilityService.getSitesByItems(items);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    List<Long> siteIds = new ArrayList<>();
+    ((List<?>) response.getBody()).forEach(site -> siteIds.add(((Site) site).getSiteId()));
+    assertEquals(expected.stream().sorted().toList(), siteIds);
+  }
+
+  /** Shipment ids tell their shard, and a ship within one shard moves the stock at once. */
+  @Test
+  void testShipWithinOneShard() {
+    Item item = newItem();
+    Site source = newSiteOn(1);
+    Site destination = newSiteOn(1);
+    stock(source, item, 50);
+    stock(destination, item, 20);
+    Shipment shipment = newShipment(source, destination);
+    assertEquals(1, shipment.getShipmentId() / ShardRouter.SHIPMENT_ID_SPAN);
+    assertEquals(
+        0, newShipment(newSiteOn(0), source).getShipmentId() / ShardRouter.SHIPMENT_ID_SPAN);
+
+    ResponseEntity<?> response = ship(shipment, item, 30);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(20, quantity(source, item));
+    assertEquals(50, quantity(destination, item));
+    assertEquals(
+        1,
+        shardRouter
+            .onShipment(
+                shipment.getShipmentId(),
+                () -> shipRepository.findByShipmentId(shipment.getShipmentId()))
+            .size());
+  }
+
+  /**
+   * A ship between two shards debits the source in its transaction and credits the destination on
+   * the other shard after commit; delivering the transfer again credits nothing.
+   */
+  @Test
+  void testShipAcrossShardsCreditsOnce() {
+    Item item = newItem();
+    Site source = newSiteOn(1);
+    Site destination = newSiteOn(2);
+    stock(source, item, 50);
+    Shipment shipment = newShipment(source, destination);
+
+    ResponseEntity<?> response = ship(shipment, item, 30);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(20, quantity(source, item));
+    assertEquals(30, quantity(destination, item));
+    ShardTransfer transfer = transferOf(shipment);
+    assertEquals(ShardTransfer.APPLIED, transfer.getTransferStatus());
+
+    // a redelivery, e.g. by the relay after the APPLIED mark was lost
+    shardRouter.inTransaction(
+        1,
+        () -> {
+          shardTransferRepository
+              .findById(transfer.getTransferId())
+              .orElseThrow()
+              .setTransferStatus(ShardTransfer.PENDING);
+          return null;
+        });
+    assertTrue(shardTransfers.apply(1, transfer.getTransferId()));
+    assertEquals(30, quantity(destination, item));
+    assertEquals(ShardTransfer.APPLIED, transferOf(shipment).getTransferStatus());
+
+    // not enough left at the source: nothing is debited or recorded
+    Shipment second = newShipment(source, destination);
+    assertEquals(HttpStatus.BAD_REQUEST, ship(second, item, 21).getStatusCode());
+    assertEquals(20, quantity(source, item));
+  }
+
+  /** The relay delivers a transfer whose first delivery never happened. */
+  @Test
+  void testRelayDeliversPendingTransfers() {
+    Item item = newItem();
+    Site source = newSiteOn(2);
+    Site destination = newSiteOn(0);
+    stock(destination, item, 4);
+    Shipment shipment = newShipment(source, destination);
+    ShardTransfer pending =
+        shardRouter.inTransaction(
+            2,
+            () ->
+                shardTransferRepository.save(
+                    ShardTransfer.builder()
+                        .shipmentId(shipment.getShipmentId())
+                        .itemId(item.getItemId())
+                        .destinationId(destination.getSiteId())
+                        .quantity(6)
+                        .transferStatus(ShardTransfer.PENDING)
+                        .createdAt(new Timestamp(System.currentTimeMillis() - 120_000))
+                        .build()));
+
+    shardTransfers.relayPending();
+
+    assertEquals(10, quantity(destination, item));
+    assertEquals(
+        ShardTransfer.APPLIED,
+        shardRouter
+            .inTransaction(
+                2, () -> shardTransferRepository.findById(pending.getTransferId()).orElseThrow())
+            .getTransferStatus());
+  }
+
+  /** A listing of a sharded table is merged across the shards in the requested order. */
+  @Test
+  void testListingMergesShards() {
+    Item item = newItem();
+    for (int shard = 0; shard < 3; shard++) {
+      stock(newSiteOn(shard), item, 1000 + shard);
+      stock(newSiteOn(shard), item, 1003 + shard);
+    }
+
+    List<Integer> quantities = new ArrayList<>();
+    for (int page = 0; page < 3; page++) {
+      ResponseEntity<?> response =
+          listingService.list(
+              Listings.AVAILABILITIES,
+              ListingRequest.builder().page(page).size(2).sort("-quantity").build());
+      assertEquals(HttpStatus.OK, response.getStatusCode());
+      for (Map<String, Object> row : ((ListingPage) response.getBody()).getRows()) {
+        quantities.add((Integer) row.get("quantity"));
+      }
+    }
+
+    assertEquals(List.of(1005, 1004, 1003, 1002, 1001, 1000), quantities);
+  }
+
+  private Item newItem() {
+    return (Item)
+        itemService.addItem(new Item("Sharded Item " + NAMES.incrementAndGet(), 1.0)).getBody();
+  }
+
+  /** Add sites until one lands on the shard. */
+  private Site newSiteOn(int shard) {
+    while (true) {
+      Site site =
+          (Site)
+              siteService
+                  .addSite(
+                      new Site(
+                          "Sharded Site " + NAMES.incrementAndGet(),
+                          "Location",
+                          "open",
+                          null,
+                          true))
+                  .getBody();
+      if (shardRouter.shardOfSite(site.getSiteId()) == shard) {
+        return site;
+      }
+    }
+  }
+
+  private void stock(Site site, Item item, int quantity) {
+    ResponseEntity<?> response =
+        availabilityService.addAvailabilities(new Availability(site, item, quantity));
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+  }
+
+  private int quantity(Site site, Item item) {
+    return shardRouter.onSite(
+        site.getSiteId(),
+        () ->
+            availabilityRepository
+                .findQuantityBySiteIdAndItemId(site.getSiteId(), item.getItemId())
+                .intValue());
+  }
+
+  private Shipment newShipment(Site source, Site destination) {
+    return shardRouter.onSite(
+        source.getSiteId(),
+        () ->
+            shipmentRepository.save(
+                new Shipment(
+                    null,
+                    source.getSiteId(),
+                    destination.getSiteId(),
+                    null,
+                    null,
+                    null,
+                    null,
+                    "In Transit")));
+  }
+
+  private ResponseEntity<?> ship(Shipment shipment, Item item, int quantity) {
+    return shipService.addShip(
+        ShipRequest.builder()
+            .shipmentId(shipment.getShipmentId())
+            .itemId(item.getItemId())
+            .quantity(quantity)
+            .build());
+  }
+
+  private ShardTransfer transferOf(Shipment shipment) {
+    int shard = shardRouter.shardOfShipment(shipment.getShipmentId());
+    return shardRouter.inTransaction(
+        shard,
+        () ->
+            shardTransferRepository.findAll().stream()
+                .filter(transfer -> transfer.getShipmentId().equals(shipment.getShipmentId()))
+                .findFirst()
+                .orElseThrow());
+  }
+}
@@ -0,0 +1,33 @@
+package com.depot.ims.sharding;
+
+import static org.mockito.Mockito.mock;
+
+import com.depot.ims.threads.BackgroundThreads;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * ShardRouters for unit tests that construct services by hand:
+ *
+ * <pre>
+ *   new ShipmentService(shipmentRepository, auditService, TestShards.unsharded());
+ * </pre>
+ */
+public final class TestShards {
+
+  private TestShards() {}
+
+  /**
+   * A router without shards, which runs everything directly on the calling thread.
+   *
+   * @return the router
+   */
+  public static ShardRouter unsharded() {
+    return new ShardRouter(
+        new MockEnvironment(),
+        mock(PlatformTransactionManager.class),
+        mock(EntityManagerFactory.class),
+        new BackgroundThreads(new MockEnvironment()));
+  }
+}
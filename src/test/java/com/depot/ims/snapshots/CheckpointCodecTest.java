@@ -0,0 +1,65 @@
+package com.depot.ims.snapshots;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for CheckpointCodec. Validates that stock survives a round trip, negative and extreme
+ * quantities included, that dense item ids encode in a few bytes each, and that damaged checkpoints
+ * are rejected.
+ */
+class CheckpointCodecTest {
+
+  /** Tests that item ids and quantities come back as they went in. */
+  @Test
+  void testRoundTrip() {
+    long[] itemIds = {1L, 2L, 300L, 1L << 40, Long.MAX_VALUE};
+    int[] quantities = {0, 5, -3, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    CheckpointCodec.Stock stock =
+        CheckpointCodec.decode(CheckpointCodec.encode(itemIds, quantities));
+    assertArrayEquals(itemIds, stock.itemIds);
+    assertArrayEquals(quantities, stock.quantities);
+
+    CheckpointCodec.Stock empty =
+        CheckpointCodec.decode(CheckpointCodec.encode(new long[0], new int[0]));
+    assertEquals(0, empty.itemIds.length);
+  }
+
+  /** Tests that a site holding 100 consecutive items at small quantities takes 2 bytes per item. */
+  @Test
+  void testDenseStockIsCompact() {
+    long[] itemIds = new long[100];
+    int[] quantities = new int[100];
+    for (int i = 0; i < 100; i++) {
+      itemIds[i] = 1000 + i;
+      quantities[i] = i % 60;
+    }
+    byte[] bytes = CheckpointCodec.encode(itemIds, quantities);
+    assertTrue(bytes.length <= 1 + 2 + 99 + 100, () -> bytes.length + " bytes");
+  }
+
+  /** Tests that unsorted ids cannot be encoded and that cut or padded bytes cannot be decoded. */
+  @Test
+  void testInvalidInput() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CheckpointCodec.encode(new long[] {5L, 4L}, new int[] {1, 1}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CheckpointCodec.encode(new long[] {-1L}, new int[] {1}));
+
+    byte[] bytes = CheckpointCodec.encode(new long[] {1L, 200L}, new int[] {1, 1000});
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CheckpointCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> CheckpointCodec.decode(Arrays.copyOf(bytes, bytes.length + 1)));
+  }
+}
@@ -0,0 +1,158 @@
+package com.depot.ims.snapshots;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.depot.ims.models.Availability;
+import com.depot.ims.models.Item;
+import com.depot.ims.models.Site;
+import com.depot.ims.models.StockChange;
+import com.depot.ims.models.StockCheckpoint;
+import com.depot.ims.models.projections.StockLevel;
+import com.depot.ims.repositories.AvailabilityRepository;
+import com.depot.ims.repositories.ItemRepository;
+import com.depot.ims.repositories.SiteRepository;
+import com.depot.ims.repositories.StockChangeRepository;
+import com.depot.ims.repositories.StockCheckpointRepository;
+import com.depot.ims.sharding.ShardRouter;
+import com.depot.ims.threads.BackgroundThreads;
+import java.sql.Timestamp;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Integration tests for StockHistory against the H2 test database. Validates that past stock is
+ * rebuilt from a checkpoint and the changes after it, that checkpoints roll forward from the
+ * previous one, and that a baseline read from the availabilities bounds how far back history goes.
+ */
+@DataJpaTest
+@Import({StockHistory.class, ShardRouter.class, BackgroundThreads.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(
+    properties = {
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "ims.snapshots.checkpoint-interval-ms=0",
+      "ims.snapshots.settle-ms=0"
+    })
+class StockHistoryTest {
+
+  @Autowired private StockHistory stockHistory;
+  @Autowired private StockChangeRepository stockChangeRepository;
+  @Autowired private StockCheckpointRepository stockCheckpointRepository;
+  @Autowired private SiteRepository siteRepository;
+  @Autowired private ItemRepository itemRepository;
+  @Autowired private AvailabilityRepository availabilityRepository;
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  private Long siteId;
+
+  /** One empty site, and no history. */
+  @BeforeEach
+  void setUp() {
+    // these tests commit, so empty the tables first
+    JdbcTestUtils.deleteFromTables(
+        jdbcTemplate, "stock_changes", "stock_checkpoints", "availabilities", "items", "sites");
+    siteId = siteRepository.save(new Site("Site 1", "Location 1", "open", null, true)).getSiteId();
+  }
+
+  /**
+   * Tests that a lookup replays the logged changes made up to the moment asked for, and that once a
+   * checkpoint is taken only the changes after it are needed.
+   */
+  @Test
+  void testStockAtReplaysChangesAfterCheckpoint() {
+    record(10L, 5, "2024-05-01 09:00:00");
+    record(11L, 7, "2024-05-01 10:00:00");
+    record(10L, 3, "2024-05-02 09:00:00");
+
+    assertEquals(List.of(), stockAt("2024-04-30 00:00:00"));
+    assertEquals(List.of(level(10L, 5)), stockAt("2024-05-01 09:30:00"));
+    assertEquals(List.of(level(10L, 3), level(11L, 7)), stockAt("2024-05-02 12:00:00"));
+
+    assertEquals(1, stockHistory.checkpoint());
+    // the changes the checkpoint holds are no longer needed
+    stockChangeRepository.deleteAll();
+    stockHistory.record(siteId, 12L, 1);
+    stockHistory.record(siteId, 10L, 0);
+    assertEquals(
+        List.of(level(10L, 0), level(11L, 7), level(12L, 1)),
+        stockHistory.stockAt(siteId, new Timestamp(System.currentTimeMillis())));
+  }
+
+  /**
+   * Tests that a checkpoint holds the previous checkpoint with the changes since applied, and that
+   * only sites that changed get one.
+   */
+  @Test
+  void testCheckpointRollsForward() {
+    Long otherSiteId =
+        siteRepository.save(new Site("Site 2", "Location 2", "open", null, true)).getSiteId();
+    stockHistory.record(siteId, 10L, 5);
+    stockHistory.record(otherSiteId, 10L, 1);
+    assertEquals(2, stockHistory.checkpoint());
+    assertEquals(0, stockHistory.checkpoint());
+
+    stockHistory.record(siteId, 10L, 4);
+    stockHistory.record(siteId, 20L, 2);
+    assertEquals(1, stockHistory.checkpoint());
+
+    StockCheckpoint latest =
+        stockCheckpointRepository.findFirstBySiteIdOrderByLastChangeIdDesc(siteId);
+    CheckpointCodec.Stock stock = CheckpointCodec.decode(latest.getStock());
+    assertEquals(2, latest.getItemCount());
+    assertEquals(List.of(10L, 20L), List.of(stock.itemIds[0], stock.itemIds[1]));
+    assertEquals(List.of(4, 2), List.of(stock.quantities[0], stock.quantities[1]));
+    assertEquals(stockChangeRepository.findLastChangeId(), latest.getLastChangeId());
+  }
+
+  /**
+   * Tests that stock held before history started becomes a baseline checkpoint, and that lookups
+   * before the baseline are refused.
+   */
+  @Test
+  void testBaselineFromAvailabilities() {
+    Site site = siteRepository.findBySiteId(siteId);
+    Item item = itemRepository.save(new Item("Item 1", 1.0));
+    availabilityRepository.save(new Availability(site, item, 8));
+
+    stockHistory.start();
+    Timestamp start = stockHistory.historyStart(siteId);
+    assertTrue(start != null);
+    assertNull(stockHistory.stockAt(siteId, new Timestamp(start.getTime() - 1)));
+    assertEquals(List.of(level(item.getItemId(), 8)), stockHistory.stockAt(siteId, start));
+
+    stockHistory.record(siteId, item.getItemId(), 6);
+    assertEquals(
+        List.of(level(item.getItemId(), 6)),
+        stockHistory.stockAt(siteId, new Timestamp(System.currentTimeMillis())));
+  }
+
+  private void record(Long itemId, int quantity, String changedAt) {
+    stockChangeRepository.save(
+        StockChange.builder()
+            .siteId(siteId)
+            .itemId(itemId)
+            .quantity(quantity)
+            .changedAt(Timestamp.valueOf(changedAt))
+            .build());
+  }
+
+  private List<StockLevel> stockAt(String at) {
+    return stockHistory.stockAt(siteId, Timestamp.valueOf(at));
+  }
+
+  private StockLevel level(Long itemId, int quantity) {
+    return new StockLevel(siteId, itemId, quantity);
+  }
+}
@@ -0,0 +1,85 @@
+package com.depot.ims.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.depot.ims.models.Item;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/** Unit tests for JsonStreamer. */
+public class JsonStreamerTest {
+
+  private final EntityManager entityManager = mock(EntityManager.class);
+  private final JsonStreamer jsonStreamer =
+      new JsonStreamer(mock(PlatformTransactionManager.class), new ObjectMapper(), entityManager);
+
+  private static String write(ResponseEntity<StreamingResponseBody> response) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    response.getBody().writeTo(out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  /** Tests that every row is written on its own line, and the stream is closed afterwards. */
+  @Test
+  void testNdjson() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    ResponseEntity<StreamingResponseBody> response =
+        jsonStreamer.ndjson(
+            Item.class,
+            () ->
+                Stream.of(new Item(1L, "a", 1.0), new Item(2L, "b", 2.0))
+                    .onClose(() -> closed.set(true)));
+
+    assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+    assertEquals(
+        "{\"itemId\":1,\"itemName\":\"a\",\"itemPrice\":1.0}\n"
+            + "{\"itemId\":2,\"itemName\":\"b\",\"itemPrice\":2.0}\n",
+        write(response));
+    assertTrue(closed.get());
+    verify(entityManager, never()).clear();
+  }
+
+  /** Tests that the persistence context is cleared after every full chunk. */
+  @Test
+  void testClearsEveryChunk() throws Exception {
+    int rows = JsonStreamer.CHUNK_SIZE * 2 + 1;
+    ResponseEntity<StreamingResponseBody> response =
+        jsonStreamer.ndjson(
+            Item.class,
+            () -> LongStream.rangeClosed(1, rows).mapToObj(id -> new Item(id, "item", 1.0)));
+
+    assertEquals(rows, write(response).lines().count());
+    verify(entityManager, times(2)).clear();
+  }
+
+  /** Tests that nothing is written for an empty result. */
+  @Test
+  void testEmpty() throws Exception {
+    assertEquals("", write(jsonStreamer.ndjson(Item.class, Stream::empty)));
+  }
+
+  /** Tests the plain text response. */
+  @Test
+  void testText() throws Exception {
+    ResponseEntity<StreamingResponseBody> response =
+        JsonStreamer.text(HttpStatus.BAD_REQUEST, "bad");
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals("bad", write(response));
+  }
+}
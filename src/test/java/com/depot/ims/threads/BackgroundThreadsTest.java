@@ -0,0 +1,47 @@
+package com.depot.ims.threads;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.mock.env.MockEnvironment;
+
+/** Unit tests for BackgroundThreads. */
+public class BackgroundThreadsTest {
+
+  /** Tests that jobs run on platform daemon threads unless virtual threads are enabled. */
+  @Test
+  void testPlatformByDefault() throws Exception {
+    BackgroundThreads threads = new BackgroundThreads(new MockEnvironment());
+    assertFalse(threads.isVirtual());
+
+    boolean[] ran = {false};
+    Thread thread = threads.newThread("job", () -> ran[0] = true);
+    assertEquals("job", thread.getName());
+    assertTrue(thread.isDaemon());
+    thread.start();
+    thread.join();
+    assertTrue(ran[0]);
+  }
+
+  /** Tests that enabling virtual threads takes effect only on a runtime that has them. */
+  @Test
+  void testVirtualOnlyOnJava21() throws Exception {
+    BackgroundThreads threads =
+        new BackgroundThreads(
+            new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true"));
+    assertEquals(
+        JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE),
+        threads.isVirtual());
+
+    boolean[] ran = {false};
+    Thread thread = threads.newThread("job", () -> ran[0] = true);
+    assertEquals("job", thread.getName());
+    assertTrue(thread.isDaemon());
+    thread.start();
+    thread.join();
+    assertTrue(ran[0]);
+  }
+}